@@ -4,10 +4,19 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -25,6 +34,11 @@ import com.salesforce.hbase.index.table.HTableInterfaceReference;
 /**
  * Do the actual work of writing to the index tables. Ensures that if we do fail to write to the
  * index table that we cleanly kill the region/server to ensure that the region's WAL gets replayed.
+ * <p>
+ * Updates are grouped by the index table to which they are written and each group is sent as a
+ * single batch. If a pool is provided, the batches for different index tables are written in
+ * parallel. {@link HTableInterface}s are cached and reused across calls to {@link #write(Collection)}
+ * until the writer is {@link #stop() stopped}.
  */
 public class IndexWriter {
 
@@ -33,6 +47,14 @@ public class IndexWriter {
   private final String sourceInfo;
   private final Abortable abortable;
   private final HTableFactory factory;
+  private final ExecutorService pool;
+  /**
+   * Tables not currently in use, by table name. {@link HTableInterface}s are not thread-safe, so a
+   * table is taken out of the cache while it is written to and put back afterwards.
+   */
+  private final ConcurrentMap<String, Queue<HTableInterface>> tables =
+      new ConcurrentHashMap<String, Queue<HTableInterface>>();
+  private volatile boolean stopped = false;
 
   /**
    * @param sourceInfo log info string about where we are writing from
@@ -43,17 +65,32 @@ public class IndexWriter {
    *          its not already set, a {@link NullPointerException} is thrown.
    */
   public IndexWriter(String sourceInfo, Abortable abortable, HTableFactory factory) {
+    this(sourceInfo, abortable, factory, null);
+  }
+
+  /**
+   * @param sourceInfo log info string about where we are writing from
+   * @param abortable to notify in the case of failure
+   * @param factory Factory to use when resolving the {@link HTableInterfaceReference}. See
+   *          {@link #IndexWriter(String, Abortable, HTableFactory)}.
+   * @param pool pool on which to write to different index tables in parallel. If <tt>null</tt>,
+   *          index tables are written one after another on the calling thread. The pool is owned
+   *          by the caller, which is responsible for shutting it down.
+   */
+  public IndexWriter(String sourceInfo, Abortable abortable, HTableFactory factory,
+      ExecutorService pool) {
     this.sourceInfo = sourceInfo;
     this.abortable = abortable;
     this.factory = factory;
+    this.pool = pool;
   }
 
   /**
    * Just write the index update portions of of the edit, if it is an {@link IndexedWALEdit}. If it
    * is not passed an {@link IndexedWALEdit}, any further actions are ignored.
    * <p>
-   * Internally, uses {@link #wri to make the write and if is receives a {
-   * @link CannotReachIndexException}, it attempts to move (
+   * Internally, uses {@link #write(Collection)} to make the write and if is receives a
+   * {@link CannotReachIndexException}, it attempts to move (
    * {@link HBaseAdmin#unassign(byte[], boolean)}) the region and then failing that calls
    * {@link System#exit(int)} to kill the server.
    */
@@ -64,58 +101,154 @@ public class IndexWriter {
       killYourself(e);
     }
   }
+
   /**
    * Write the mutations to their respective table using the provided factory.
    * <p>
-   * This method is not thread-safe and if accessed in a non-serial manner could leak HTables.
+   * All the mutations for a single table are sent as one batch. When there is more than one table
+   * to write and a pool was provided, the tables are written in parallel. This method may be called
+   * concurrently from multiple threads.
    * @param updates Updates to write
-   * @throws CannotReachIndexException if we cannot successfully write a single index entry. We stop
-   *           immediately on the first failed index write, rather than attempting all writes.
+   * @throws CannotReachIndexException if we cannot successfully write to an index table. We stop
+   *           on the first failed index write, rather than waiting for all the writes to complete.
    */
   public void write(Collection<Pair<Mutation, String>> updates)
       throws CannotReachIndexException {
-    // conver the strings to htableinterfaces to which we can talk
-    Collection<Pair<Mutation, HTableInterfaceReference>> toWrite =
-        resolveTableReferences(factory, updates);
-
-    // write each mutation, as a part of a batch, to its respective table
-    List<Mutation> singleMutation = new ArrayList<Mutation>(1);
-    Set<HTableInterface> tables = new HashSet<HTableInterface>();
-    for (Pair<Mutation, HTableInterfaceReference> entry : toWrite) {
-      // do the put into the index table
-      singleMutation.add(entry.getFirst());
-      LOG.info("Writing index update:" + entry.getFirst() + " to table: "
-          + entry.getSecond().getTableName());
-      try {
-        HTableInterface table;
-
-        if (factory == null) {
-          table = entry.getSecond().getTable();
-        } else {
-          table = entry.getSecond().getTable(factory);
+    // conver the strings to htableinterfaces to which we can talk and group by table
+    Map<HTableInterfaceReference, List<Mutation>> toWrite = groupByTable(
+      resolveTableReferences(factory, updates));
+
+    if (pool == null || toWrite.size() == 1) {
+      for (Map.Entry<HTableInterfaceReference, List<Mutation>> entry : toWrite.entrySet()) {
+        write(entry.getKey(), entry.getValue());
+      }
+    } else {
+      writeInParallel(toWrite);
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Done writing " + updates.size() + " index updates to " + toWrite.size()
+          + " tables");
+    }
+  }
+
+  private void writeInParallel(Map<HTableInterfaceReference, List<Mutation>> toWrite)
+      throws CannotReachIndexException {
+    CompletionService<Void> completions = new ExecutorCompletionService<Void>(pool);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>(toWrite.size());
+    boolean success = false;
+    try {
+      for (final Map.Entry<HTableInterfaceReference, List<Mutation>> entry : toWrite.entrySet()) {
+        futures.add(completions.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws CannotReachIndexException {
+            write(entry.getKey(), entry.getValue());
+            return null;
+          }
+        }));
+      }
+      // wait for the writes in the order they complete, so we fail as soon as any write fails
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          completions.take().get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof CannotReachIndexException) {
+            throw (CannotReachIndexException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw (RuntimeException) cause;
+        }
+      }
+      success = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      Map.Entry<HTableInterfaceReference, List<Mutation>> first = toWrite.entrySet().iterator().next();
+      throw new CannotReachIndexException(first.getKey().getTableName(), first.getValue().get(0), e);
+    } finally {
+      if (!success) {
+        // don't bother with the remaining writes, we are going to fail anyways
+        for (Future<Void> future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write all the mutations to a single table as one batch
+   */
+  private void write(HTableInterfaceReference reference, List<Mutation> mutations)
+      throws CannotReachIndexException {
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("Writing index updates:" + mutations + " to table: " + reference.getTableName());
+    }
+    HTableInterface table = null;
+    try {
+      table = getTable(reference);
+      // do the update
+      table.batch(mutations);
+    } catch (IOException e) {
+      throw new CannotReachIndexException(reference.getTableName(), mutations.get(0), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CannotReachIndexException(reference.getTableName(), mutations.get(0), e);
+    } finally {
+      if (table != null) {
+        releaseTable(reference.getTableName(), table);
+      }
+    }
+  }
+
+  private HTableInterface getTable(HTableInterfaceReference reference) throws IOException {
+    Queue<HTableInterface> cached = tables.get(reference.getTableName());
+    HTableInterface table = cached == null ? null : cached.poll();
+    if (table != null) {
+      return table;
+    }
+    return factory == null ? reference.getTable() : reference.getTable(factory);
+  }
+
+  private void releaseTable(String tableName, HTableInterface table) {
+    if (!stopped) {
+      Queue<HTableInterface> cached = tables.get(tableName);
+      if (cached == null) {
+        cached = new ConcurrentLinkedQueue<HTableInterface>();
+        Queue<HTableInterface> existing = tables.putIfAbsent(tableName, cached);
+        if (existing != null) {
+          cached = existing;
         }
-        // do the update
-        table.batch(singleMutation);
-        tables.add(table);
-      } catch (IOException e) {
-        throw new CannotReachIndexException(entry.getSecond().getTableName(), entry.getFirst(), e);
-      } catch (InterruptedException e) {
-        throw new CannotReachIndexException(entry.getSecond().getTableName(), entry.getFirst(), e);
       }
-      singleMutation.clear();
+      cached.add(table);
+      // we may have been stopped while adding the table, in which case it needs to be closed here
+      if (!stopped || !cached.remove(table)) {
+        return;
+      }
     }
-    // go through each reference and close the connection
-    // we can't do this earlier as we may reuse table references between different index entries,
-    // which would prematurely close a table before we could write the later update
-    for (HTableInterface table : tables) {
-      try {
-        table.close();
-      } catch (IOException e) {
-        LOG.error("Failed to close connection to table:" + Bytes.toString(table.getTableName()), e);
+    close(table);
+  }
+
+  /**
+   * Close all the cached tables. Tables in use when the writer is stopped are closed once the
+   * write to them completes.
+   */
+  public void stop() {
+    this.stopped = true;
+    for (Queue<HTableInterface> cached : tables.values()) {
+      HTableInterface table;
+      while ((table = cached.poll()) != null) {
+        close(table);
       }
     }
+  }
 
-    LOG.info("Done writing all index updates");
+  private static void close(HTableInterface table) {
+    try {
+      table.close();
+    } catch (IOException e) {
+      LOG.error("Failed to close connection to table:" + Bytes.toString(table.getTableName()), e);
+    }
   }
 
   /**
@@ -134,6 +267,28 @@ public class IndexWriter {
     }
   }
 
+  /**
+   * Group the resolved updates by the table to which they are written, keeping the order of the
+   * updates within each table.
+   * @param updates resolved from {@link #resolveTableReferences(HTableFactory, Collection)}
+   * @return the mutations to write to each table
+   */
+  private static Map<HTableInterfaceReference, List<Mutation>> groupByTable(
+      Collection<Pair<Mutation, HTableInterfaceReference>> updates) {
+    // references are shared for the same table name, so we can group by identity
+    Map<HTableInterfaceReference, List<Mutation>> grouped =
+        new LinkedHashMap<HTableInterfaceReference, List<Mutation>>();
+    for (Pair<Mutation, HTableInterfaceReference> entry : updates) {
+      List<Mutation> mutations = grouped.get(entry.getSecond());
+      if (mutations == null) {
+        mutations = new ArrayList<Mutation>();
+        grouped.put(entry.getSecond(), mutations);
+      }
+      mutations.add(entry.getFirst());
+    }
+    return grouped;
+  }
+
   /**
    * Convert the passed index updates to {@link HTableInterfaceReference}s.
    * @param factory factory to use when resolving the table references.
@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 
@@ -27,6 +29,7 @@ import org.apache.hadoop.hbase.regionserver.wal.HLog;
 import org.apache.hadoop.hbase.regionserver.wal.HLogKey;
 import org.apache.hadoop.hbase.regionserver.wal.WALEdit;
 import org.apache.hadoop.hbase.util.Pair;
+import org.apache.hadoop.hbase.util.Threads;
 
 import com.salesforce.hbase.index.builder.IndexBuilder;
 import com.salesforce.hbase.index.table.CoprocessorHTableFactory;
@@ -53,6 +56,8 @@ public class Indexer extends BaseRegionObserver {
   private HLog log;
   protected IndexWriter writer;
   protected HTableFactory factory;
+  /** Pool on which the writer writes to different index tables in parallel */
+  private ExecutorService writerPool;
 
   protected IndexBuilder builder;
 
@@ -68,6 +73,18 @@ public class Indexer extends BaseRegionObserver {
    */
   public static final String CHECK_VERSION_CONF_KEY = "com.saleforce.hbase.index.checkversion";
 
+  /**
+   * Configuration key for the maximum number of threads used to write to the index tables of a
+   * region in parallel.
+   */
+  public static final String NUM_WRITER_THREADS_CONF_KEY = "index.writer.threads.max";
+  private static final int DEFAULT_NUM_WRITER_THREADS = 10;
+  /**
+   * Configuration key for the number of seconds an idle index writer thread is kept alive.
+   */
+  public static final String WRITER_KEEP_ALIVE_TIME_CONF_KEY = "index.writer.threads.keepalivetime";
+  private static final long DEFAULT_WRITER_KEEP_ALIVE_TIME = 60;
+
   @Override
   public void start(CoprocessorEnvironment e) throws IOException {
     this.factory = new CoprocessorHTableFactory(e);
@@ -104,9 +121,23 @@ public class Indexer extends BaseRegionObserver {
     // add a synchronizer so we don't archive a WAL that we need
     log.registerWALActionsListener(new IndexLogRollSynchronizer(INDEX_READ_WRITE_LOCK.writeLock()));
 
-    // and setup the actual index writer
+    // and setup the actual index writer, with a bounded pool to write the index tables in parallel
+    int maxThreads = conf.getInt(NUM_WRITER_THREADS_CONF_KEY, DEFAULT_NUM_WRITER_THREADS);
+    long keepAliveTime = conf.getLong(WRITER_KEEP_ALIVE_TIME_CONF_KEY, DEFAULT_WRITER_KEEP_ALIVE_TIME);
+    this.writerPool = Threads.getBoundedCachedThreadPool(maxThreads, keepAliveTime, TimeUnit.SECONDS,
+      Threads.newDaemonThreadFactory("index-writer-" + env.getRegion().getRegionInfo().getEncodedName()));
     this.writer = new IndexWriter("Region: " + env.getRegion().getRegionNameAsString(),
-            env.getRegionServerServices(), factory);
+            env.getRegionServerServices(), factory, writerPool);
+  }
+
+  @Override
+  public void stop(CoprocessorEnvironment e) throws IOException {
+    if (this.writerPool != null) {
+      this.writerPool.shutdownNow();
+    }
+    if (this.writer != null) {
+      this.writer.stop();
+    }
   }
 
   @Override
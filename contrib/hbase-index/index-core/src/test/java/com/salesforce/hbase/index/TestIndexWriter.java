@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.salesforce.hbase.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.hadoop.hbase.Abortable;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.salesforce.hbase.index.table.HTableFactory;
+
+/**
+ * Test that the {@link IndexWriter} batches the updates to each table and writes the tables in
+ * parallel, failing if any of the tables cannot be written.
+ */
+public class TestIndexWriter {
+
+  private static final String TABLE1 = "INDEX1";
+  private static final String TABLE2 = "INDEX2";
+
+  private ExecutorService pool;
+  private HTableFactory factory;
+  private HTableInterface table1;
+  private HTableInterface table2;
+  private final List<List<Mutation>> batches1 = new ArrayList<List<Mutation>>();
+
+  @Before
+  public void setup() throws Exception {
+    pool = Executors.newFixedThreadPool(2);
+    table1 = mock(HTableInterface.class);
+    table2 = mock(HTableInterface.class);
+    factory = mock(HTableFactory.class);
+    when(factory.getTable(Bytes.toBytes(TABLE1))).thenReturn(table1);
+    when(factory.getTable(Bytes.toBytes(TABLE2))).thenReturn(table2);
+    // copy each batch, since the writer is free to reuse the list
+    when(table1.batch(any(List.class))).thenAnswer(new Answer<Object[]>() {
+      @Override
+      public Object[] answer(InvocationOnMock invocation) throws Throwable {
+        List<?> batch = (List<?>) invocation.getArguments()[0];
+        synchronized (batches1) {
+          List<Mutation> copy = new ArrayList<Mutation>();
+          for (Object m : batch) {
+            copy.add((Mutation) m);
+          }
+          batches1.add(copy);
+        }
+        return new Object[batch.size()];
+      }
+    });
+  }
+
+  @After
+  public void teardown() {
+    pool.shutdownNow();
+  }
+
+  private static Put put(String row) {
+    Put put = new Put(Bytes.toBytes(row));
+    put.add(Bytes.toBytes("fam"), Bytes.toBytes("qual"), Bytes.toBytes(row));
+    return put;
+  }
+
+  @Test
+  public void testBatchesUpdatesPerTableAndReusesTables() throws Exception {
+    IndexWriter writer = new IndexWriter("test", mock(Abortable.class), factory, pool);
+    Put a = put("a"), b = put("b"), c = put("c");
+    List<Pair<Mutation, String>> updates = Arrays.asList(new Pair<Mutation, String>(a, TABLE1),
+      new Pair<Mutation, String>(b, TABLE2), new Pair<Mutation, String>(c, TABLE1));
+
+    writer.write(updates);
+    writer.write(updates);
+
+    // one batch per table per write, keeping the order of the updates
+    assertEquals(2, batches1.size());
+    assertEquals(Arrays.<Mutation> asList(a, c), batches1.get(0));
+    assertEquals(Arrays.<Mutation> asList(a, c), batches1.get(1));
+    verify(table2, times(2)).batch(any(List.class));
+    // the tables are cached between writes
+    verify(factory, times(1)).getTable(Bytes.toBytes(TABLE1));
+    verify(factory, times(1)).getTable(Bytes.toBytes(TABLE2));
+    verify(table1, times(0)).close();
+
+    writer.stop();
+    verify(table1).close();
+    verify(table2).close();
+  }
+
+  @Test
+  public void testFailsIfAnyTableCannotBeReached() throws Exception {
+    IndexWriter writer = new IndexWriter("test", mock(Abortable.class), factory, pool);
+    doThrow(new IOException("unreachable")).when(table2).batch(any(List.class));
+    List<Pair<Mutation, String>> updates = Arrays.asList(
+      new Pair<Mutation, String>(put("a"), TABLE1), new Pair<Mutation, String>(put("b"), TABLE2));
+    try {
+      writer.write(updates);
+      fail("Should not have been able to write to " + TABLE2);
+    } catch (CannotReachIndexException e) {
+      assertEquals(IOException.class, e.getCause().getClass());
+    }
+    writer.stop();
+  }
+
+  @Test
+  public void testKillsServerOnFailure() throws Exception {
+    Abortable abortable = mock(Abortable.class);
+    IndexWriter writer = new IndexWriter("test", abortable, factory, pool);
+    doThrow(new IOException("unreachable")).when(table1).batch(any(List.class));
+    List<Pair<Mutation, String>> updates = Arrays.asList(
+      new Pair<Mutation, String>(put("a"), TABLE1), new Pair<Mutation, String>(put("b"), TABLE2));
+    writer.writeAndKillYourselfOnFailure(updates);
+    verify(abortable).abort(any(String.class), any(Throwable.class));
+    writer.stop();
+  }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.benchmark;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.*;
+
+import com.salesforce.phoenix.expression.*;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+
+
+/**
+ * 
+ * Benchmarks the evaluation of LIKE and IN expressions against a VARCHAR column,
+ * as done by the filters on the region servers for each row.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExpressionBenchmark {
+    private static final int ROW_COUNT = 1024;
+    private static final byte[] CF = Bytes.toBytes("CF");
+    private static final byte[] CQ = Bytes.toBytes("V");
+
+    @State(Scope.Benchmark)
+    public static class Rows {
+        Tuple[] tuples;
+        Expression column;
+        
+        @Setup
+        public void setup() {
+            Random random = new Random(0);
+            tuples = new Tuple[ROW_COUNT];
+            for (int i = 0; i < ROW_COUNT; i++) {
+                String value = PDataTypeBenchmark.newString(random, 5 + random.nextInt(20));
+                tuples[i] = new SingleKeyValueTuple(new KeyValue(Bytes.toBytes(i), CF, CQ, Bytes.toBytes(value)));
+            }
+            column = new KeyValueColumnExpression(new PColumnImpl(new PNameImpl("V"), new PNameImpl("CF"), PDataType.VARCHAR, null, null, true, 0, null));
+        }
+    }
+    
+    @State(Scope.Benchmark)
+    public static class Like {
+        @Param({"abc%", "%abc", "%abc%", "a_c%", "abcdefg"})
+        public String pattern;
+        Expression expression;
+        
+        @Setup
+        public void setup(Rows rows) {
+            expression = new LikeExpression(Arrays.<Expression>asList(rows.column, LiteralExpression.newConstant(pattern)));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class InList {
+        @Param({"3", "100", "1000"})
+        public int size;
+        Expression expression;
+        
+        @Setup
+        public void setup(Rows rows) throws SQLException {
+            Random random = new Random(1);
+            List<Expression> children = new ArrayList<Expression>(size + 1);
+            children.add(rows.column);
+            for (int i = 0; i < size; i++) {
+                children.add(LiteralExpression.newConstant(PDataTypeBenchmark.newString(random, 5 + random.nextInt(3)), PDataType.VARCHAR));
+            }
+            expression = new InListExpression(children);
+        }
+    }
+    
+    private static int evaluate(Expression expression, Tuple[] tuples) {
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        int count = 0;
+        for (Tuple tuple : tuples) {
+            if (expression.evaluate(tuple, ptr) && Boolean.TRUE.equals(PDataType.BOOLEAN.toObject(ptr))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public int like(Rows rows, Like like) {
+        return evaluate(like.expression, rows.tuples);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public int inList(Rows rows, InList inList) {
+        return evaluate(inList.expression, rows.tuples);
+    }
+}
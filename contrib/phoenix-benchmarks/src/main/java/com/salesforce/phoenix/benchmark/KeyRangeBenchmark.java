@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.benchmark;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.salesforce.phoenix.query.KeyRange;
+
+
+/**
+ * 
+ * Benchmarks the intersection and coalescing of {@link KeyRange}s done while compiling
+ * the WHERE clause of a query and while splitting its scan.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KeyRangeBenchmark {
+    @Param({"10", "1000"})
+    public int rangeCount;
+    
+    private List<KeyRange> ranges;
+    private List<KeyRange> otherRanges;
+    private KeyRange range;
+
+    private static byte[] key(long value) {
+        return Bytes.toBytes(value);
+    }
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        ranges = new ArrayList<KeyRange>(rangeCount);
+        otherRanges = new ArrayList<KeyRange>(rangeCount);
+        // Overlapping ranges, half of which coalesce with their neighbor
+        for (int i = 0; i < rangeCount; i++) {
+            long lower = i * 100L;
+            ranges.add(KeyRange.getKeyRange(key(lower), true, key(lower + 50 + random.nextInt(100)), false));
+            long otherLower = i * 100L + random.nextInt(100);
+            otherRanges.add(KeyRange.getKeyRange(key(otherLower), true, key(otherLower + 25), true));
+        }
+        Collections.shuffle(ranges, random);
+        range = KeyRange.getKeyRange(key(rangeCount * 25L), true, key(rangeCount * 75L), false);
+    }
+
+    @Benchmark
+    public void intersect(Blackhole bh) {
+        for (KeyRange r : ranges) {
+            bh.consume(r.intersect(range));
+        }
+    }
+
+    @Benchmark
+    public List<KeyRange> coalesce() {
+        return KeyRange.coalesce(ranges);
+    }
+
+    @Benchmark
+    public List<KeyRange> intersectLists() {
+        return KeyRange.intersect(ranges, otherRanges);
+    }
+}
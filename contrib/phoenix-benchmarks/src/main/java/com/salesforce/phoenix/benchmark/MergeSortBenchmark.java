@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.benchmark;
+
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN;
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.*;
+
+import com.salesforce.phoenix.iterate.*;
+import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+
+
+/**
+ * 
+ * Benchmarks the merge of many sorted {@link PeekingResultIterator} instances
+ * through a {@link MergeSortRowKeyResultIterator}.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MergeSortBenchmark {
+    @Param({"10", "500"})
+    public int iteratorCount;
+    
+    @Param({"2000"})
+    public int rowsPerIterator;
+    
+    private List<List<Tuple>> data;
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        data = new ArrayList<List<Tuple>>(iteratorCount);
+        for (int i = 0; i < iteratorCount; i++) {
+            long[] keys = new long[rowsPerIterator];
+            for (int j = 0; j < rowsPerIterator; j++) {
+                keys[j] = random.nextLong() & Long.MAX_VALUE;
+            }
+            Arrays.sort(keys);
+            List<Tuple> tuples = new ArrayList<Tuple>(rowsPerIterator);
+            for (long key : keys) {
+                tuples.add(new SingleKeyValueTuple(new KeyValue(Bytes.toBytes(key), SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(1))));
+            }
+            data.add(tuples);
+        }
+    }
+    
+    @Benchmark
+    public int mergeSort() throws SQLException {
+        final List<PeekingResultIterator> iterators = new ArrayList<PeekingResultIterator>(data.size());
+        for (List<Tuple> tuples : data) {
+            iterators.add(new MaterializedResultIterator(tuples));
+        }
+        ResultIterator iterator = new MergeSortRowKeyResultIterator(new ResultIterators() {
+
+            @Override
+            public List<PeekingResultIterator> getIterators() throws SQLException {
+                return iterators;
+            }
+
+            @Override
+            public int size() {
+                return iterators.size();
+            }
+
+            @Override
+            public void explain(List<String> planSteps) {
+            }
+        });
+        int count = 0;
+        try {
+            while (iterator.next() != null) {
+                count++;
+            }
+        } finally {
+            iterator.close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.salesforce.phoenix.schema.PDataType;
+
+
+/**
+ * 
+ * Benchmarks the conversion of values to and from their serialized form for each
+ * scalar {@link PDataType}.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PDataTypeBenchmark {
+    private static final int VALUE_COUNT = 1024;
+
+    @Param({"VARCHAR", "CHAR", "LONG", "INTEGER", "SMALLINT", "TINYINT", "FLOAT", "DOUBLE", "DECIMAL",
+        "TIMESTAMP", "TIME", "DATE", "UNSIGNED_LONG", "UNSIGNED_INT", "UNSIGNED_SMALLINT", "UNSIGNED_TINYINT",
+        "UNSIGNED_FLOAT", "UNSIGNED_DOUBLE", "BOOLEAN", "VARBINARY", "BINARY"})
+    public String typeName;
+    
+    private PDataType type;
+    private Object[] values;
+    private byte[][] bytes;
+
+    @Setup
+    public void setup() {
+        type = PDataType.valueOf(typeName);
+        Random random = new Random(0);
+        values = new Object[VALUE_COUNT];
+        bytes = new byte[VALUE_COUNT][];
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            values[i] = newValue(type, random);
+            bytes[i] = type.toBytes(values[i]);
+        }
+    }
+    
+    static String newString(Random random, int length) {
+        StringBuilder buf = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            buf.append((char)('a' + random.nextInt(26)));
+        }
+        return buf.toString();
+    }
+    
+    private static Object newValue(PDataType type, Random random) {
+        switch (type) {
+        case VARCHAR:
+            return newString(random, 1 + random.nextInt(20));
+        case CHAR:
+            return newString(random, 10);
+        case LONG:
+            return random.nextLong();
+        case UNSIGNED_LONG:
+            return Math.abs(random.nextLong() >> 1);
+        case INTEGER:
+            return random.nextInt();
+        case UNSIGNED_INT:
+            return random.nextInt(Integer.MAX_VALUE);
+        case SMALLINT:
+            return (short)random.nextInt();
+        case UNSIGNED_SMALLINT:
+            return (short)random.nextInt(Short.MAX_VALUE);
+        case TINYINT:
+            return (byte)random.nextInt();
+        case UNSIGNED_TINYINT:
+            return (byte)random.nextInt(Byte.MAX_VALUE);
+        case FLOAT:
+            return random.nextFloat() * 1000 - 500;
+        case UNSIGNED_FLOAT:
+            return random.nextFloat() * 1000;
+        case DOUBLE:
+            return random.nextDouble() * 1000000 - 500000;
+        case UNSIGNED_DOUBLE:
+            return random.nextDouble() * 1000000;
+        case DECIMAL:
+            return BigDecimal.valueOf(random.nextLong() >> 8, random.nextInt(10));
+        case TIMESTAMP:
+            return new Timestamp(random.nextLong() >>> 24);
+        case TIME:
+            return new Time(random.nextLong() >>> 24);
+        case DATE:
+            return new Date(random.nextLong() >>> 24);
+        case BOOLEAN:
+            return random.nextBoolean();
+        case VARBINARY:
+            byte[] varbinary = new byte[1 + random.nextInt(20)];
+            random.nextBytes(varbinary);
+            return varbinary;
+        case BINARY:
+            byte[] binary = new byte[16];
+            random.nextBytes(binary);
+            return binary;
+        default:
+            throw new IllegalArgumentException("Unsupported type " + type);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUE_COUNT)
+    public void toBytes(Blackhole bh) {
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            bh.consume(type.toBytes(values[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUE_COUNT)
+    public void toObject(Blackhole bh) {
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            bh.consume(type.toObject(bytes[i]));
+        }
+    }
+}
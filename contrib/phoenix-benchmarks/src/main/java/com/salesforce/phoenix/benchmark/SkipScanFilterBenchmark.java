@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.benchmark;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.*;
+
+import com.salesforce.phoenix.filter.SkipScanFilter;
+import com.salesforce.phoenix.query.KeyRange;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.schema.RowKeySchema.RowKeySchemaBuilder;
+
+
+/**
+ * 
+ * Benchmarks a {@link SkipScanFilter} over a sorted set of rows, seeking to the
+ * next key hint the same way a region scanner does. The row key is made up of a
+ * CHAR(3) key prefix, a CHAR(8) date and a CHAR(4) id. The slots select a few of
+ * the key prefixes with an IN list and a range of dates, the typical shape of a
+ * multi-tenant or time series query.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SkipScanFilterBenchmark {
+    private static final int PREFIX_COUNT = 100;
+    private static final int DATE_COUNT = 100;
+    private static final int ID_COUNT = 10;
+
+    // Number of key prefixes in the IN list
+    @Param({"1", "10", "50"})
+    public int inListSize;
+    
+    private List<List<KeyRange>> slots;
+    private RowKeySchema schema;
+    private KeyValue[] rows;
+    
+    private static PDatum newDatum(final int width) {
+        return new PDatum() {
+            @Override
+            public boolean isNullable() {
+                return false;
+            }
+
+            @Override
+            public PDataType getDataType() {
+                return PDataType.CHAR;
+            }
+
+            @Override
+            public Integer getByteSize() {
+                return width;
+            }
+
+            @Override
+            public Integer getMaxLength() {
+                return width;
+            }
+
+            @Override
+            public Integer getScale() {
+                return null;
+            }
+
+            @Override
+            public ColumnModifier getColumnModifier() {
+                return null;
+            }
+        };
+    }
+    
+    private static String prefix(int i) {
+        return String.format("%03d", i);
+    }
+    
+    private static String date(int i) {
+        return String.format("2013%04d", i);
+    }
+    
+    @Setup
+    public void setup() {
+        schema = new RowKeySchemaBuilder().setMinNullable(3)
+            .addField(newDatum(3)).addField(newDatum(8)).addField(newDatum(4)).build();
+        List<String> keys = new ArrayList<String>(PREFIX_COUNT * DATE_COUNT * ID_COUNT);
+        for (int i = 0; i < PREFIX_COUNT; i++) {
+            for (int j = 0; j < DATE_COUNT; j++) {
+                for (int k = 0; k < ID_COUNT; k++) {
+                    keys.add(prefix(i) + date(j) + String.format("%04d", k));
+                }
+            }
+        }
+        rows = new KeyValue[keys.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = KeyValue.createFirstOnRow(Bytes.toBytes(keys.get(i)));
+        }
+        List<KeyRange> prefixes = new ArrayList<KeyRange>(inListSize);
+        for (int i = 0; i < inListSize; i++) {
+            prefixes.add(PDataType.CHAR.getKeyRange(Bytes.toBytes(prefix(i * PREFIX_COUNT / inListSize)), true, Bytes.toBytes(prefix(i * PREFIX_COUNT / inListSize)), true));
+        }
+        List<KeyRange> dates = Collections.singletonList(PDataType.CHAR.getKeyRange(Bytes.toBytes(date(DATE_COUNT / 4)), true, Bytes.toBytes(date(DATE_COUNT / 2)), false));
+        slots = Arrays.asList(prefixes, dates);
+    }
+    
+    /**
+     * Run the filter over the rows, seeking to the next key hint as a region scanner does.
+     * @return the number of rows included
+     */
+    @Benchmark
+    public int scan() {
+        SkipScanFilter filter = new SkipScanFilter(slots, schema);
+        int count = 0;
+        int i = 0;
+        while (i < rows.length && !filter.filterAllRemaining()) {
+            filter.reset();
+            KeyValue kv = rows[i];
+            ReturnCode code = filter.filterKeyValue(kv);
+            if (code == ReturnCode.SEEK_NEXT_USING_HINT) {
+                KeyValue hint = filter.getNextKeyHint(kv);
+                int index = Arrays.binarySearch(rows, i + 1, rows.length, hint, KeyValue.COMPARATOR);
+                i = index < 0 ? -(index + 1) : index;
+            } else {
+                if (code == ReturnCode.INCLUDE) {
+                    count++;
+                }
+                i++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.benchmark;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.*;
+
+import com.salesforce.phoenix.iterate.*;
+import com.salesforce.phoenix.query.*;
+import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.TrustedByteArrayOutputStream;
+import com.salesforce.phoenix.util.TupleUtil;
+
+
+/**
+ * 
+ * Benchmarks the serialization of result rows with {@link TupleUtil#write(Tuple, java.io.DataOutput)}
+ * and the round trip of rows through a {@link SpoolingResultIterator}, both when the rows
+ * are kept in memory and when they're spooled to disk.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TupleSpoolingBenchmark {
+    private static final int ROW_COUNT = 10000;
+    private static final byte[] CF = Bytes.toBytes("CF");
+    private static final byte[] CQ = Bytes.toBytes("V");
+
+    // Threshold after which rows are spooled to disk: 1 spools everything
+    @Param({"1", "104857600"})
+    public int spoolThresholdBytes;
+    
+    private List<Tuple> tuples;
+    private QueryServices services;
+    
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        tuples = new ArrayList<Tuple>(ROW_COUNT);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            byte[] value = new byte[50 + random.nextInt(100)];
+            random.nextBytes(value);
+            tuples.add(new SingleKeyValueTuple(new KeyValue(Bytes.toBytes(String.format("row%08d", i)), CF, CQ, value)));
+        }
+        services = new BaseQueryServicesImpl(QueryServicesOptions.withDefaults().setSpoolThresholdBytes(spoolThresholdBytes)) {};
+    }
+    
+    @TearDown
+    public void tearDown() throws SQLException {
+        services.close();
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        TrustedByteArrayOutputStream bytesOut = new TrustedByteArrayOutputStream(ROW_COUNT * 128);
+        DataOutputStream out = new DataOutputStream(bytesOut);
+        for (Tuple tuple : tuples) {
+            TupleUtil.write(tuple, out);
+        }
+        out.flush();
+        return bytesOut.size();
+    }
+
+    @Benchmark
+    public int spoolRoundTrip() throws SQLException {
+        ResultIterator iterator = new SpoolingResultIterator(new MaterializedResultIterator(tuples), services);
+        int count = 0;
+        try {
+            while (iterator.next() != null) {
+                count++;
+            }
+        } finally {
+            iterator.close();
+        }
+        return count;
+    }
+}
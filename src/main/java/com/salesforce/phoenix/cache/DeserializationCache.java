@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Hash;
+
+import com.google.common.cache.*;
+import com.google.common.collect.Lists;
+import com.salesforce.phoenix.util.SizedUtil;
+
+
+/**
+ * 
+ * Region server wide cache of the objects deserialized from the attributes and filters of
+ * scans, such as expression trees, keyed by their serialized form. The scans of the regions
+ * of a query, and the scans of repeated executions of a statement, send the same bytes, which
+ * are then only deserialized once rather than by every scan.
+ * 
+ * Immutable objects are shared by all scans. Objects that hold state while being evaluated,
+ * such as expressions and aggregators, are pooled instead. A scan takes an instance from the
+ * pool through a {@link Lease}, or deserializes a new one if none is free, and returns it to
+ * the pool when the lease is closed at the end of the scan. That way concurrent scans of the
+ * same statement each use their own instance. The cache is bounded by the size of the
+ * serialized objects, and the least recently used ones are evicted first.
+ * 
+ * Clients set the attributes through {@link #setAttribute(Scan, String, byte[])}, which sends
+ * a hash of the value with the scan, so that the region server need not hash it.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class DeserializationCache {
+    public static final String HASH_ATTRIB_SUFFIX = "Hash";
+    // Instances returned by concurrent scans beyond this many per object are dropped
+    private static final int MAX_POOLED_INSTANCES = 8;
+    private static final Hash HASH = Hash.getInstance(Hash.MURMUR_HASH);
+    
+    private final Cache<Key,Entry<?>> cache;
+    
+    /**
+     * @param maxSize the maximum size in bytes of the cached objects, counted as the size of
+     *  their serialized form times the number of instances that may be cached
+     */
+    public DeserializationCache(long maxSize) {
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxSize)
+            .weigher(new Weigher<Key,Entry<?>>() {
+                @Override
+                public int weigh(Key key, Entry<?> entry) {
+                    return entry.getEstimatedSize();
+                }
+            })
+            .build();
+    }
+    
+    /**
+     * 
+     * Deserializes an object from a scan attribute or filter and readies a pooled instance
+     * for reuse by the next scan
+     *
+     * @author jtaylor
+     * @since 2.1
+     */
+    public static abstract class Deserializer<T> {
+        public abstract T deserialize(byte[] b) throws IOException;
+        
+        /**
+         * @return true if a single instance may be used by concurrent scans, and false
+         *  if each scan must use its own instance.
+         */
+        public boolean isImmutable() {
+            return false;
+        }
+        
+        /**
+         * Clears any state left in an instance by the scan that used it. Note that expressions
+         * need not be reset, as an expression only keeps state between evaluations once it has been
+         * reset for partial evaluation, in which case its user resets it for every row anyway. Since
+         * reset enables partial evaluation, an expression must only be reused by the same kind of user.
+         */
+        public void reset(T instance) {
+        }
+    }
+    
+    /**
+     * Sets a scan attribute whose deserialized value may be cached by the region servers,
+     * together with the hash of the value.
+     */
+    public static void setAttribute(Scan scan, String name, byte[] value) {
+        scan.setAttribute(name, value);
+        scan.setAttribute(name + HASH_ATTRIB_SUFFIX, value == null ? null : Bytes.toBytes(hash(value)));
+    }
+    
+    public static int hash(byte[] value) {
+        return HASH.hash(value);
+    }
+    
+    public Lease newLease() {
+        return new Lease();
+    }
+    
+    public long size() {
+        return cache.size();
+    }
+    
+    public CacheStats stats() {
+        return cache.stats();
+    }
+    
+    /**
+     * 
+     * The objects taken from the cache by a scan, which are returned to it on close
+     *
+     * @author jtaylor
+     * @since 2.1
+     */
+    public class Lease implements Closeable {
+        private List<Entry<?>> entries;
+        private List<Object> instances;
+        
+        private Lease() {
+        }
+        
+        /**
+         * @return the deserialized value of the scan attribute, or null if the attribute is not set
+         */
+        public <T> T get(Scan scan, String name, Deserializer<T> deserializer) throws IOException {
+            byte[] value = scan.getAttribute(name);
+            if (value == null) {
+                return null;
+            }
+            byte[] hash = scan.getAttribute(name + HASH_ATTRIB_SUFFIX);
+            return get(name, hash == null ? hash(value) : Bytes.toInt(hash), value, deserializer);
+        }
+        
+        /**
+         * @param name the name under which the object is cached, which must be used
+         *  for only one kind of object
+         * @param hash the hash of the serialized object, as returned by {@link DeserializationCache#hash(byte[])}
+         * @param value the serialized object
+         * @return an instance of the deserialized object, which must only be used until the
+         *  lease is closed
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(String name, int hash, byte[] value, Deserializer<T> deserializer) throws IOException {
+            Key key = new Key(name, hash, value);
+            Entry<T> entry = (Entry<T>)cache.getIfPresent(key);
+            if (entry == null) {
+                Entry<T> newEntry = new Entry<T>(value, deserializer);
+                entry = (Entry<T>)cache.asMap().putIfAbsent(key, newEntry);
+                if (entry == null) {
+                    entry = newEntry;
+                }
+            }
+            T instance = entry.take();
+            if (!deserializer.isImmutable()) {
+                if (entries == null) {
+                    entries = Lists.newArrayListWithExpectedSize(3);
+                    instances = Lists.newArrayListWithExpectedSize(3);
+                }
+                entries.add(entry);
+                instances.add(instance);
+            }
+            return instance;
+        }
+        
+        /**
+         * Returns the instances taken through the lease to the cache
+         */
+        @SuppressWarnings("unchecked")
+        @Override
+        public void close() {
+            if (entries != null) {
+                for (int i = 0; i < entries.size(); i++) {
+                    ((Entry<Object>)entries.get(i)).give(instances.get(i));
+                }
+                entries = null;
+                instances = null;
+            }
+        }
+    }
+    
+    private static final class Key {
+        private final String name;
+        private final int hash;
+        private final byte[] value;
+        
+        private Key(String name, int hash, byte[] value) {
+            this.name = name;
+            this.hash = hash;
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null) return false;
+            if (getClass() != obj.getClass()) return false;
+            Key other = (Key)obj;
+            // Compare the values too, as different values may have the same hash
+            return hash == other.hash && name.equals(other.name) && Bytes.equals(value, other.value);
+        }
+    }
+    
+    private static final class Entry<T> {
+        private final byte[] value;
+        private final Deserializer<T> deserializer;
+        private final Queue<T> pool = new ConcurrentLinkedQueue<T>();
+        private final AtomicInteger poolSize = new AtomicInteger();
+        private volatile T sharedInstance;
+        
+        private Entry(byte[] value, Deserializer<T> deserializer) {
+            this.value = value;
+            this.deserializer = deserializer;
+        }
+        
+        private int getEstimatedSize() {
+            int nInstances = deserializer.isImmutable() ? 1 : MAX_POOLED_INSTANCES;
+            return SizedUtil.OBJECT_SIZE * 2 + SizedUtil.ARRAY_SIZE + value.length * (1 + nInstances);
+        }
+        
+        private T take() throws IOException {
+            if (deserializer.isImmutable()) {
+                // Two scans may both deserialize it at first, but that's harmless
+                T instance = sharedInstance;
+                if (instance == null) {
+                    sharedInstance = instance = deserializer.deserialize(value);
+                }
+                return instance;
+            }
+            T instance = pool.poll();
+            if (instance == null) {
+                return deserializer.deserialize(value);
+            }
+            poolSize.decrementAndGet();
+            return instance;
+        }
+        
+        private void give(T instance) {
+            deserializer.reset(instance);
+            if (poolSize.incrementAndGet() <= MAX_POOLED_INSTANCES) {
+                pool.offer(instance);
+            } else {
+                poolSize.decrementAndGet();
+            }
+        }
+    }
+}
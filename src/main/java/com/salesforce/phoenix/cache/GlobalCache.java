@@ -29,18 +29,28 @@ package com.salesforce.phoenix.cache;
 
 import static com.salesforce.phoenix.query.QueryServices.*;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.management.ObjectName;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.*;
 import com.salesforce.phoenix.memory.ChildMemoryManager;
 import com.salesforce.phoenix.memory.GlobalMemoryManager;
 import com.salesforce.phoenix.query.QueryServices;
 import com.salesforce.phoenix.query.QueryServicesOptions;
 import com.salesforce.phoenix.schema.PTable;
 import com.salesforce.phoenix.util.ImmutableBytesPtr;
+import com.salesforce.phoenix.util.SizedUtil;
 
 
 /**
@@ -51,14 +61,25 @@ import com.salesforce.phoenix.util.ImmutableBytesPtr;
  * @author jtaylor
  * @since 0.1
  */
-public class GlobalCache extends TenantCacheImpl {
+public class GlobalCache extends TenantCacheImpl implements GlobalCacheMBean {
+    private static final Logger logger = LoggerFactory.getLogger(GlobalCache.class);
+    public static final String OBJECT_NAME = "com.salesforce.phoenix:type=GlobalCache";
     private static volatile GlobalCache INSTANCE = null; 
     
     private final Configuration config;
-    // TODO: Use Guava cache with auto removal after lack of access 
-    private final ConcurrentMap<ImmutableBytesWritable,TenantCache> perTenantCacheMap = new ConcurrentHashMap<ImmutableBytesWritable,TenantCache>();
-    // Cache for lastest PTable for a given Phoenix table
-    private final ConcurrentHashMap<ImmutableBytesPtr,PTable> metaDataCacheMap = new ConcurrentHashMap<ImmutableBytesPtr,PTable>();
+    // Tenant caches that aren't accessed for the max server cache time to live and that are not in
+    // use by a query are removed together with their server caches and child memory manager
+    private final Cache<ImmutableBytesWritable,TenantCacheImpl> perTenantCacheMap;
+    private final int maxTenantIdleTimeMs;
+    // Held for read while a tenant cache is looked up and for write while idle ones are removed,
+    // so that a tenant cache is never removed while it is being handed out
+    private final ReadWriteLock tenantLock = new ReentrantReadWriteLock();
+    private final AtomicLong lastTenantSweepTimeMs = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong tenantEvictionCount = new AtomicLong();
+    // Cache for lastest PTable for a given Phoenix table, bounded by the estimated size of the tables
+    private final Cache<ImmutableBytesPtr,PTable> metaDataCache;
+    // Cache of the expression trees and other objects deserialized from scans
+    private final DeserializationCache deserializationCache;
     
     public static GlobalCache getInstance(Configuration config) {
         if (INSTANCE == null) {
@@ -71,8 +92,22 @@ public class GlobalCache extends TenantCacheImpl {
         return INSTANCE;
     }
     
-    public ConcurrentHashMap<ImmutableBytesPtr,PTable> getMetaDataCache() {
-        return metaDataCacheMap;
+    public Cache<ImmutableBytesPtr,PTable> getMetaDataCache() {
+        return metaDataCache;
+    }
+    
+    public DeserializationCache getDeserializationCache() {
+        return deserializationCache;
+    }
+    
+    /**
+     * Get the cache of deserialized objects without the configuration, for example from a
+     * filter being deserialized.
+     * @return the cache, or null if the global cache has not been created yet.
+     */
+    public static DeserializationCache getDeserializationCacheIfCreated() {
+        GlobalCache globalCache = INSTANCE;
+        return globalCache == null ? null : globalCache.getDeserializationCache();
     }
     
     /**
@@ -88,12 +123,52 @@ public class GlobalCache extends TenantCacheImpl {
         return tenantCache;
     }
     
-    private GlobalCache(Configuration config) {
-        super(new GlobalMemoryManager(Runtime.getRuntime().totalMemory() * 
-                                          config.getInt(MAX_MEMORY_PERC_ATTRIB, QueryServicesOptions.DEFAULT_MAX_MEMORY_PERC) / 100,
-                                      config.getInt(MAX_MEMORY_WAIT_MS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_MEMORY_WAIT_MS)),
+    // Not private for testing
+    GlobalCache(Configuration config) {
+        super(newMemoryManager(config),
               config.getInt(QueryServices.MAX_SERVER_CACHE_TIME_TO_LIVE_MS, QueryServicesOptions.DEFAULT_MAX_SERVER_CACHE_TIME_TO_LIVE_MS));
         this.config = config;
+        this.maxTenantIdleTimeMs = config.getInt(QueryServices.MAX_SERVER_CACHE_TIME_TO_LIVE_MS, QueryServicesOptions.DEFAULT_MAX_SERVER_CACHE_TIME_TO_LIVE_MS);
+        // Not expired by the cache itself, as it cannot tell whether a tenant is in use
+        this.perTenantCacheMap = CacheBuilder.newBuilder()
+            .removalListener(new RemovalListener<ImmutableBytesWritable, TenantCacheImpl>(){
+                @Override
+                public void onRemoval(RemovalNotification<ImmutableBytesWritable, TenantCacheImpl> notification) {
+                    notification.getValue().removeAllServerCaches();
+                }
+            })
+            .build();
+        this.metaDataCache = CacheBuilder.newBuilder()
+            .maximumWeight(config.getLong(MAX_METADATA_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MAX_METADATA_CACHE_SIZE))
+            .expireAfterAccess(config.getLong(MAX_METADATA_CACHE_TIME_TO_LIVE_MS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_METADATA_CACHE_TIME_TO_LIVE_MS), TimeUnit.MILLISECONDS)
+            .weigher(new Weigher<ImmutableBytesPtr, PTable>() {
+                @Override
+                public int weigh(ImmutableBytesPtr key, PTable table) {
+                    return SizedUtil.IMMUTABLE_BYTES_PTR_SIZE + key.getLength() + table.getEstimatedSize();
+                }
+            })
+            .build();
+        this.deserializationCache = new DeserializationCache(
+            config.getLong(MAX_DESERIALIZATION_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MAX_DESERIALIZATION_CACHE_SIZE));
+        registerMBean(this);
+    }
+    
+    private static void registerMBean(GlobalCache cache) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(cache, new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            // Don't fail because of JMX
+            logger.warn("Unable to register " + OBJECT_NAME + " with the MBean server", e);
+        }
+    }
+    
+    private static GlobalMemoryManager newMemoryManager(Configuration config) {
+        GlobalMemoryManager memoryManager = new GlobalMemoryManager(Runtime.getRuntime().totalMemory() * 
+                config.getInt(MAX_MEMORY_PERC_ATTRIB, QueryServicesOptions.DEFAULT_MAX_MEMORY_PERC) / 100,
+            config.getInt(MAX_MEMORY_WAIT_MS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_MEMORY_WAIT_MS));
+        // Expose the queue depth, wait time and denials of the region server's memory through JMX
+        memoryManager.registerMBean("GlobalCache");
+        return memoryManager;
     }
     
     public Configuration getConfig() {
@@ -106,16 +181,108 @@ public class GlobalCache extends TenantCacheImpl {
      * @return the existing or newly created TenantCache
      */
     public TenantCache getChildTenantCache(ImmutableBytesWritable tenantId) {
-        TenantCache tenantCache = perTenantCacheMap.get(tenantId);
-        if (tenantCache == null) {
-            int maxTenantMemoryPerc = config.getInt(MAX_TENANT_MEMORY_PERC_ATTRIB, QueryServicesOptions.DEFAULT_MAX_TENANT_MEMORY_PERC);
-            int maxServerCacheTimeToLive = config.getInt(QueryServices.MAX_SERVER_CACHE_TIME_TO_LIVE_MS, QueryServicesOptions.DEFAULT_MAX_SERVER_CACHE_TIME_TO_LIVE_MS);
-            TenantCacheImpl newTenantCache = new TenantCacheImpl(new ChildMemoryManager(getMemoryManager(), maxTenantMemoryPerc), maxServerCacheTimeToLive);
-            tenantCache = perTenantCacheMap.putIfAbsent(tenantId, newTenantCache);
+        removeIdleTenantCaches();
+        TenantCacheImpl tenantCache;
+        tenantLock.readLock().lock();
+        try {
+            tenantCache = perTenantCacheMap.getIfPresent(tenantId);
             if (tenantCache == null) {
-                tenantCache = newTenantCache;
+                int maxTenantMemoryPerc = config.getInt(MAX_TENANT_MEMORY_PERC_ATTRIB, QueryServicesOptions.DEFAULT_MAX_TENANT_MEMORY_PERC);
+                TenantCacheImpl newTenantCache = new TenantCacheImpl(new ChildMemoryManager(getMemoryManager(), maxTenantMemoryPerc), maxTenantIdleTimeMs);
+                tenantCache = perTenantCacheMap.asMap().putIfAbsent(tenantId, newTenantCache);
+                if (tenantCache == null) {
+                    tenantCache = newTenantCache;
+                }
             }
+            tenantCache.touch();
+        } finally {
+            tenantLock.readLock().unlock();
         }
         return tenantCache;
     }
+    
+    /**
+     * Remove the tenant caches that have not been accessed for the max server cache time to live,
+     * unless they still hold server caches or memory, which means a query is using them. At most
+     * one thread checks at a time, and only once per time to live.
+     */
+    private void removeIdleTenantCaches() {
+        long nowMs = System.currentTimeMillis();
+        long lastSweepTimeMs = lastTenantSweepTimeMs.get();
+        if (nowMs - lastSweepTimeMs < maxTenantIdleTimeMs || !lastTenantSweepTimeMs.compareAndSet(lastSweepTimeMs, nowMs)) {
+            return;
+        }
+        tenantLock.writeLock().lock();
+        try {
+            for (Map.Entry<ImmutableBytesWritable,TenantCacheImpl> entry : perTenantCacheMap.asMap().entrySet()) {
+                TenantCacheImpl tenantCache = entry.getValue();
+                if (nowMs - tenantCache.getLastAccessTimeMs() >= maxTenantIdleTimeMs && !tenantCache.isInUse()
+                        && perTenantCacheMap.asMap().remove(entry.getKey(), tenantCache)) {
+                    tenantEvictionCount.incrementAndGet();
+                }
+            }
+        } finally {
+            tenantLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long getMetaDataCacheSize() {
+        return metaDataCache.size();
+    }
+
+    @Override
+    public long getMetaDataCacheHitCount() {
+        return metaDataCache.stats().hitCount();
+    }
+
+    @Override
+    public long getMetaDataCacheMissCount() {
+        return metaDataCache.stats().missCount();
+    }
+
+    @Override
+    public long getMetaDataCacheEvictionCount() {
+        return metaDataCache.stats().evictionCount();
+    }
+
+    @Override
+    public long getTenantCacheSize() {
+        return perTenantCacheMap.size();
+    }
+
+    @Override
+    public long getTenantCacheHitCount() {
+        return perTenantCacheMap.stats().hitCount();
+    }
+
+    @Override
+    public long getTenantCacheMissCount() {
+        return perTenantCacheMap.stats().missCount();
+    }
+
+    @Override
+    public long getTenantCacheEvictionCount() {
+        return tenantEvictionCount.get();
+    }
+
+    @Override
+    public long getDeserializationCacheSize() {
+        return deserializationCache.size();
+    }
+
+    @Override
+    public long getDeserializationCacheHitCount() {
+        return deserializationCache.stats().hitCount();
+    }
+
+    @Override
+    public long getDeserializationCacheMissCount() {
+        return deserializationCache.stats().missCount();
+    }
+
+    @Override
+    public long getDeserializationCacheEvictionCount() {
+        return deserializationCache.stats().evictionCount();
+    }
 }
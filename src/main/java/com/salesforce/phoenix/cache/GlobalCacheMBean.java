@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.cache;
+
+
+/**
+ * 
+ * JMX interface exposing how well the region server's metadata, per tenant and
+ * deserialization caches of the {@link GlobalCache} are working.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public interface GlobalCacheMBean {
+    /**
+     * @return the number of tables in the metadata cache
+     */
+    long getMetaDataCacheSize();
+    long getMetaDataCacheHitCount();
+    long getMetaDataCacheMissCount();
+    /**
+     * @return the number of tables evicted from the metadata cache, because it was full
+     * or they were not accessed in time
+     */
+    long getMetaDataCacheEvictionCount();
+    /**
+     * @return the number of tenants with a tenant cache
+     */
+    long getTenantCacheSize();
+    long getTenantCacheHitCount();
+    long getTenantCacheMissCount();
+    /**
+     * @return the number of idle tenant caches that were removed
+     */
+    long getTenantCacheEvictionCount();
+    /**
+     * @return the number of distinct expression trees and other objects deserialized from
+     * scans in the deserialization cache
+     */
+    long getDeserializationCacheSize();
+    long getDeserializationCacheHitCount();
+    long getDeserializationCacheMissCount();
+    long getDeserializationCacheEvictionCount();
+}
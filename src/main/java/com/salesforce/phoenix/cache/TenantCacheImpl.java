@@ -53,6 +53,7 @@ public class TenantCacheImpl implements TenantCache {
     private final int maxTimeToLiveMs;
     private final MemoryManager memoryManager;
     private volatile Cache<ImmutableBytesPtr, Closeable> serverCaches;
+    private volatile long lastAccessTimeMs = System.currentTimeMillis();
 
     public TenantCacheImpl(MemoryManager memoryManager, int maxTimeToLiveMs) {
         this.memoryManager = memoryManager;
@@ -101,4 +102,40 @@ public class TenantCacheImpl implements TenantCache {
     public void removeServerCache(ImmutableBytesPtr cacheId) throws SQLException {
         getServerCaches().invalidate(cacheId);
     }
+    
+    /**
+     * Record an access to the tenant cache, which keeps it from being removed as idle.
+     */
+    void touch() {
+        lastAccessTimeMs = System.currentTimeMillis();
+    }
+    
+    long getLastAccessTimeMs() {
+        return lastAccessTimeMs;
+    }
+    
+    /**
+     * @return true if the tenant cache holds server caches that have not expired or memory
+     *  that has not been released, in which case a query is using it.
+     */
+    boolean isInUse() {
+        Cache<ImmutableBytesPtr, Closeable> serverCaches = this.serverCaches;
+        if (serverCaches != null) {
+            // Close the server caches that have expired, so that they don't count
+            serverCaches.cleanUp();
+            if (serverCaches.size() > 0) {
+                return true;
+            }
+        }
+        return memoryManager.getAvailableMemory() < memoryManager.getMaxMemory();
+    }
+    
+    /**
+     * Remove and close all server caches, releasing the memory they hold.
+     */
+    public void removeAllServerCaches() {
+        if (serverCaches != null) {
+            serverCaches.invalidateAll();
+        }
+    }
 }
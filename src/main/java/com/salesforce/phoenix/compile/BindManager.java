@@ -56,7 +56,7 @@ import com.salesforce.phoenix.schema.PDatum;
  * @since 0.1
  */
 public class BindManager {
-    private final List<Object> binds;
+    private List<Object> binds;
     private final PhoenixParameterMetaData bindMetaData;
 
     public BindManager(List<Object> binds, int bindCount) {
@@ -64,6 +64,15 @@ public class BindManager {
         this.bindMetaData = new PhoenixParameterMetaData(bindCount);
     }
 
+    /**
+     * Use the bind values of the next row of a batch, which is compiled with the same
+     * statement and the same parameter metadata.
+     * @param binds the bind values of the next row
+     */
+    public void setBindValues(List<Object> binds) {
+        this.binds = binds;
+    }
+
     public ParameterMetaData getParameterMetaData() {
         return bindMetaData;
     }
@@ -63,7 +63,7 @@ public abstract class MutatingParallelIteratorFactory implements ParallelIterato
     abstract protected MutationState mutate(PhoenixConnection connection, ResultIterator iterator) throws SQLException;
     
     @Override
-    public PeekingResultIterator newIterator(ResultIterator iterator) throws SQLException {
+    public PeekingResultIterator newIterator(StatementContext context, ResultIterator iterator) throws SQLException {
         // Clone the connection as it's not thread safe and will be operated on in parallel
         final PhoenixConnection connection = new PhoenixConnection(this.connection);
         MutationState state = mutate(connection, iterator);
@@ -33,6 +33,7 @@ import java.util.*;
 import org.apache.hadoop.hbase.client.Scan;
 
 import com.google.common.collect.*;
+import com.salesforce.phoenix.cache.DeserializationCache;
 import com.salesforce.phoenix.compile.GroupByCompiler.GroupBy;
 import com.salesforce.phoenix.coprocessor.GroupedAggregateRegionObserver;
 import com.salesforce.phoenix.expression.CoerceExpression;
@@ -262,7 +263,7 @@ public class ProjectionCompiler {
             Collections.sort(aggFuncs, SingleAggregateFunction.SCHEMA_COMPARATOR);
     
             int minNullableIndex = getMinNullableIndex(aggFuncs,groupBy.isEmpty());
-            context.getScan().setAttribute(GroupedAggregateRegionObserver.AGGREGATORS, ServerAggregators.serialize(aggFuncs, minNullableIndex));
+            DeserializationCache.setAttribute(context.getScan(), GroupedAggregateRegionObserver.AGGREGATORS, ServerAggregators.serialize(aggFuncs, minNullableIndex));
             ClientAggregators clientAggregators = new ClientAggregators(aggFuncs, minNullableIndex);
             context.getAggregationManager().setAggregators(clientAggregators);
         }
@@ -27,15 +27,16 @@
  ******************************************************************************/
 package com.salesforce.phoenix.compile;
 
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
 import com.salesforce.phoenix.filter.SkipScanFilter;
 import com.salesforce.phoenix.query.KeyRange;
+import com.salesforce.phoenix.query.KeyRange.Bound;
 import com.salesforce.phoenix.schema.RowKeySchema;
+import com.salesforce.phoenix.schema.SaltingUtil;
 import com.salesforce.phoenix.util.ScanUtil;
 
 
@@ -123,6 +124,68 @@ public class ScanRanges {
         return isSingleKey;
     }
 
+    /**
+     * @return true if this represents the full keys to a set of rows, as is the case for
+     * an equality comparison or an IN list on each of the PK columns
+     */
+    public boolean isPointLookup() {
+        if (schema == null || ranges.size() < schema.getMaxFields()) {
+            return false;
+        }
+        return ScanUtil.isAllSingleRowScan(ranges, schema);
+    }
+
+    /**
+     * @return true if the first slot holds the salt byte ranges of every bucket, in which
+     * case only one of them applies to a given key
+     */
+    private boolean hasSaltSlot(Integer bucketNum) {
+        return bucketNum != null && schema != SaltingUtil.VAR_BINARY_SCHEMA;
+    }
+
+    /**
+     * @param bucketNum the number of salt buckets of the table or null if it's not salted
+     * @return the number of rows looked up if {@link #isPointLookup()}, or Integer.MAX_VALUE
+     * if there are at least as many
+     */
+    public int getPointLookupCount(Integer bucketNum) {
+        long count = 1;
+        for (int i = hasSaltSlot(bucketNum) ? 1 : 0; i < ranges.size(); i++) {
+            count *= ranges.get(i).size();
+            if (count >= Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            }
+        }
+        return (int)count;
+    }
+
+    /**
+     * Form the row key of each row looked up by combining the single keys of each slot.
+     * Should only be called if {@link #isPointLookup()}.
+     * @param bucketNum the number of salt buckets of the table or null if it's not salted
+     * @return the row keys
+     */
+    public List<byte[]> getPointKeys(Integer bucketNum) {
+        List<byte[]> keys = new ArrayList<byte[]>(getPointLookupCount(bucketNum));
+        List<List<KeyRange>> slots = ranges;
+        boolean hasSaltSlot = hasSaltSlot(bucketNum);
+        if (hasSaltSlot) {
+            // Use a placeholder for the salt byte and calculate it once the rest of the key is formed
+            slots = new ArrayList<List<KeyRange>>(ranges);
+            slots.set(0, Collections.singletonList(ranges.get(0).get(0)));
+        }
+        int[] position = new int[slots.size()];
+        byte[] key = new byte[ScanUtil.estimateMaximumKeyLength(schema, 0, slots)];
+        do {
+            int length = ScanUtil.setKey(schema, slots, position, Bound.LOWER, key, 0, 0, slots.size());
+            if (hasSaltSlot) {
+                key[0] = SaltingUtil.getSaltingByte(key, SaltingUtil.NUM_SALTING_BYTES, length - SaltingUtil.NUM_SALTING_BYTES, bucketNum);
+            }
+            keys.add(Arrays.copyOf(key, length));
+        } while (ScanUtil.incrementKey(slots, position));
+        return keys;
+    }
+
     public void setScanStartStopRow(Scan scan) {
         if (isEverything()) {
             return;
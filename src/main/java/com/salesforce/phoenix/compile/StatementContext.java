@@ -34,10 +34,14 @@ import java.util.List;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
+import com.salesforce.phoenix.iterate.ScanCacheSizer;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.memory.MemoryManager;
+import com.salesforce.phoenix.monitoring.QueryMetrics;
 import com.salesforce.phoenix.parse.BindableStatement;
 import com.salesforce.phoenix.query.QueryConstants;
 import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
 import com.salesforce.phoenix.schema.MetaDataClient;
 import com.salesforce.phoenix.schema.TableRef;
 import com.salesforce.phoenix.util.DateUtil;
@@ -64,9 +68,12 @@ public class StatementContext {
     private final String numberFormat;
     private final ImmutableBytesWritable tempPtr;
     private final PhoenixConnection connection;
+    private final QueryMetrics queryMetrics;
+    private MemoryManager memoryManager;
     
     private long currentTime = QueryConstants.UNSET_TIMESTAMP;
     private ScanRanges scanRanges = ScanRanges.EVERYTHING;
+    private ScanCacheSizer scanCacheSizer;
 
     public StatementContext(BindableStatement statement, PhoenixConnection connection, ColumnResolver resolver, List<Object> binds, Scan scan) {
         this.connection = connection;
@@ -80,6 +87,10 @@ public class StatementContext {
         this.dateParser = DateUtil.getDateParser(dateFormat);
         this.numberFormat = connection.getQueryServices().getProps().get(QueryServices.NUMBER_FORMAT_ATTRIB, NumberUtil.DEFAULT_NUMBER_FORMAT);
         this.tempPtr = new ImmutableBytesWritable();
+        this.queryMetrics = new QueryMetrics(
+                connection.getQueryServices().getProps().getBoolean(QueryServices.QUERY_METRICS_ENABLED_ATTRIB, QueryServicesOptions.DEFAULT_QUERY_METRICS_ENABLED),
+                connection.getQueryServices().getProps().getInt(QueryServices.SLOW_QUERY_THRESHOLD_MS_ATTRIB, QueryServicesOptions.DEFAULT_SLOW_QUERY_THRESHOLD_MS));
+        this.memoryManager = connection.getQueryServices().getMemoryManager();
     }
 
     public String getDateFormat() {
@@ -132,9 +143,39 @@ public class StatementContext {
         this.scanRanges.setScanStartStopRow(scan);
     }
     
+    /**
+     * @return the sizer of the scanner caching of the scans of the statement, or null if the
+     *  caching of the scan is used as is.
+     */
+    public ScanCacheSizer getScanCacheSizer() {
+        return scanCacheSizer;
+    }
+    
+    public void setScanCacheSizer(ScanCacheSizer scanCacheSizer) {
+        this.scanCacheSizer = scanCacheSizer;
+    }
+    
     public PhoenixConnection getConnection() {
         return connection;
     }
+    
+    /**
+     * @return the metrics collected while executing the statement
+     */
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
+
+    /**
+     * @return the memory manager from which the query allocates memory on the client
+     */
+    public MemoryManager getMemoryManager() {
+        return memoryManager;
+    }
+
+    public void setMemoryManager(MemoryManager memoryManager) {
+        this.memoryManager = memoryManager;
+    }
 
     public long getCurrentTime() throws SQLException {
         long ts = this.getResolver().getTables().get(0).getTimeStamp();
@@ -36,6 +36,7 @@ import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.salesforce.phoenix.cache.DeserializationCache;
 import com.salesforce.phoenix.compile.GroupByCompiler.GroupBy;
 import com.salesforce.phoenix.compile.OrderByCompiler.OrderBy;
 import com.salesforce.phoenix.coprocessor.UngroupedAggregateRegionObserver;
@@ -171,6 +172,24 @@ public class UpsertCompiler {
     }
     
     public MutationPlan compile(UpsertStatement upsert, List<Object> binds) throws SQLException {
+        return compileBatch(upsert, Collections.singletonList(binds));
+    }
+    
+    /**
+     * Compile an UPSERT statement against a batch of bind values. For UPSERT VALUES, the
+     * table is resolved and the statement compiled only once, while the values are evaluated
+     * for each set of binds. The returned plan puts all of the rows into a single MutationState.
+     * @param upsert the UPSERT statement
+     * @param batch the list of bind values, one per row. Must contain exactly one entry for
+     *  an UPSERT SELECT statement.
+     * @return the plan that executes all the rows of the batch
+     * @throws SQLException
+     */
+    public MutationPlan compileBatch(UpsertStatement upsert, List<List<Object>> batch) throws SQLException {
+        if (batch.isEmpty() || (upsert.getValues() == null && batch.size() != 1)) {
+            throw new IllegalArgumentException("Expected a single set of binds for UPSERT SELECT, but got " + batch.size());
+        }
+        List<Object> binds = batch.get(0);
         final PhoenixConnection connection = statement.getConnection();
         ConnectionQueryServices services = connection.getQueryServices();
         final int maxSize = services.getProps().getInt(QueryServices.MAX_MUTATION_SIZE_ATTRIB,QueryServicesOptions.DEFAULT_MAX_MUTATION_SIZE);
@@ -373,7 +392,7 @@ public class UpsertCompiler {
                      * Create the PRow and get the mutations, adding them to the batch
                      */
                     scan.setAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_TABLE, UngroupedAggregateRegionObserver.serialize(projectedTable));
-                    scan.setAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_EXPRS, UngroupedAggregateRegionObserver.serialize(projectedExpressions));
+                    DeserializationCache.setAttribute(scan, UngroupedAggregateRegionObserver.UPSERT_SELECT_EXPRS, UngroupedAggregateRegionObserver.serialize(projectedExpressions));
                     // Ignore order by - it has no impact
                     final QueryPlan aggPlan = new AggregatePlan(context, select, tableRef, projector, null, OrderBy.EMPTY_ORDER_BY, new SpoolingResultIteratorFactory(services), GroupBy.EMPTY_GROUP_BY, null);
                     return new MutationPlan() {
@@ -471,11 +490,48 @@ public class UpsertCompiler {
         ////////////////////////////////////////////////////////////////////
         // UPSERT VALUES
         /////////////////////////////////////////////////////////////////////
+        // The rows of the batch share one context, in which only the bind values change
+        final List<byte[][]> valuesBatch = Lists.newArrayListWithExpectedSize(batch.size());
+        for (List<Object> valueBinds : batch) {
+            context.getBindManager().setBindValues(valueBinds);
+            valuesBatch.add(compileValues(context, valueNodes, allColumns, columnIndexes, nValuesToSet));
+        }
+        return new MutationPlan() {
+
+            @Override
+            public PhoenixConnection getConnection() {
+                return connection;
+            }
+
+            @Override
+            public ParameterMetaData getParameterMetaData() {
+                return context.getBindManager().getParameterMetaData();
+            }
+
+            @Override
+            public MutationState execute() {
+                Map<ImmutableBytesPtr, Map<PColumn, byte[]>> mutation = Maps.newHashMapWithExpectedSize(valuesBatch.size());
+                for (byte[][] values : valuesBatch) {
+                    setValues(values, pkSlotIndexes, columnIndexes, tableRef.getTable(), mutation);
+                }
+                return new MutationState(tableRef, mutation, 0, maxSize, connection);
+            }
+
+            @Override
+            public ExplainPlan getExplainPlan() throws SQLException {
+                int nRows = valuesBatch.size();
+                return new ExplainPlan(Collections.singletonList(nRows == 1 ? "PUT SINGLE ROW" : "PUT " + nRows + " ROWS"));
+            }
+
+        };
+    }
+    
+    private static byte[][] compileValues(StatementContext context, List<ParseNode> valueNodes, List<PColumn> allColumns, int[] columnIndexes, int nValuesToSet) throws SQLException {
         int nodeIndex = 0;
         // Allocate array based on size of all columns in table,
         // since some values may not be set (if they're nullable).
         UpsertValuesCompiler expressionBuilder = new UpsertValuesCompiler(context);
-        final byte[][] values = new byte[nValuesToSet][];
+        byte[][] values = new byte[nValuesToSet][];
         for (ParseNode valueNode : valueNodes) {
             if (!valueNode.isConstant()) {
                 throw new SQLExceptionInfo.Builder(SQLExceptionCode.VALUE_IN_UPSERT_NOT_CONSTANT).build().buildException();
@@ -510,31 +566,7 @@ public class UpsertCompiler {
             values[nodeIndex] = byteValue;
             nodeIndex++;
         }
-        return new MutationPlan() {
-
-            @Override
-            public PhoenixConnection getConnection() {
-                return connection;
-            }
-
-            @Override
-            public ParameterMetaData getParameterMetaData() {
-                return context.getBindManager().getParameterMetaData();
-            }
-
-            @Override
-            public MutationState execute() {
-                Map<ImmutableBytesPtr, Map<PColumn, byte[]>> mutation = Maps.newHashMapWithExpectedSize(1);
-                setValues(values, pkSlotIndexes, columnIndexes, tableRef.getTable(), mutation);
-                return new MutationState(tableRef, mutation, 0, maxSize, connection);
-            }
-
-            @Override
-            public ExplainPlan getExplainPlan() throws SQLException {
-                return new ExplainPlan(Collections.singletonList("PUT SINGLE ROW"));
-            }
-
-        };
+        return values;
     }
     
     private static final class UpsertValuesCompiler extends ExpressionCompiler {
@@ -41,6 +41,8 @@ import com.salesforce.phoenix.parse.FilterableStatement;
 import com.salesforce.phoenix.parse.HintNode.Hint;
 import com.salesforce.phoenix.query.KeyRange;
 import com.salesforce.phoenix.query.QueryConstants;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
 import com.salesforce.phoenix.schema.*;
 import com.salesforce.phoenix.util.*;
 
@@ -104,6 +106,11 @@ public class WhereOptimizer {
         if (extractNodes == null) {
             extractNodes = new HashSet<Expression>(table.getPKColumns().size());
         }
+        // Use a skip scan for a large IN list on a PK column even if the PK columns before it
+        // are not constrained, since matching so many keys as a filter on every row is costly.
+        int inListSkipScanThreshold = context.getConnection().getQueryServices().getProps().getInt(
+                QueryServices.IN_LIST_SKIP_SCAN_THRESHOLD_ATTRIB, QueryServicesOptions.DEFAULT_IN_LIST_SKIP_SCAN_THRESHOLD);
+        boolean useSkipScanFilter = forcedSkipScanFilter || hasLargeInList(keySlots, inListSkipScanThreshold);
 
         int pkPos = table.getBucketNum() == null ? -1 : 0;
         LinkedList<List<KeyRange>> cnf = new LinkedList<List<KeyRange>>();
@@ -114,7 +121,7 @@ public class WhereOptimizer {
             // then we have to handle in the next phase through a key filter.
             // If the slot is null this means we have no entry for this pk position.
             if ((slot == null || slot.getPKPosition() != pkPos + 1)) {
-                if (!forcedSkipScanFilter) {
+                if (!useSkipScanFilter) {
                     break;
                 }
                 if (slot == null) {
@@ -167,6 +174,32 @@ public class WhereOptimizer {
         return whereClause.accept(new RemoveExtractedNodesVisitor(extractNodes));
     }
 
+    /**
+     * @return true if any slot has at least threshold single keys, as is the case for a large
+     *  IN list (or the equivalent ORed equality expressions) on a PK column, and false otherwise.
+     */
+    private static boolean hasLargeInList(KeyExpressionVisitor.KeySlots keySlots, int threshold) {
+        if (threshold <= 0) {
+            return false;
+        }
+        for (KeyExpressionVisitor.KeySlot slot : keySlots) {
+            if (slot == null || slot.getKeyRanges().size() < threshold) {
+                continue;
+            }
+            boolean isAllSingleKey = true;
+            for (KeyRange range : slot.getKeyRanges()) {
+                if (!range.isSingleKey()) {
+                    isAllSingleKey = false;
+                    break;
+                }
+            }
+            if (isAllSingleKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static class RemoveExtractedNodesVisitor extends TraverseNoExpressionVisitor<Expression> {
         private final Set<Expression> nodesToRemove;
 
@@ -28,15 +28,26 @@
 package com.salesforce.phoenix.coprocessor;
 
 import java.io.IOException;
+import java.util.List;
 
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.coprocessor.*;
 import org.apache.hadoop.hbase.regionserver.RegionScanner;
 
+import com.salesforce.phoenix.cache.DeserializationCache;
+import com.salesforce.phoenix.cache.GlobalCache;
+import com.salesforce.phoenix.coprocessor.ServerMetricsRegionScanner.RowCountingRegionScanner;
 import com.salesforce.phoenix.util.ServerUtil;
 
 
 abstract public class BaseScannerRegionObserver extends BaseRegionObserver {
+    /**
+     * Scan attribute set by the client to request the server side metrics of the scan,
+     * which are sent back in a trailing row once the scan is exhausted.
+     */
+    public static final String QUERY_METRICS = "QueryMetrics";
     
     /**
      * Used by logger to identify coprocessor
@@ -46,7 +57,12 @@ abstract public class BaseScannerRegionObserver extends BaseRegionObserver {
         return this.getClass().getName();
     }
     
-    abstract protected RegionScanner doPostScannerOpen(final ObserverContext<RegionCoprocessorEnvironment> c, final Scan scan, final RegionScanner s) throws Throwable;
+    /**
+     * @param lease lease through which to deserialize the attributes of the scan, which is closed
+     *  when the returned scanner is closed.
+     * @return the scanner handling the query, or s if the observer does not handle the scan
+     */
+    abstract protected RegionScanner doPostScannerOpen(final ObserverContext<RegionCoprocessorEnvironment> c, final Scan scan, final RegionScanner s, final DeserializationCache.Lease lease) throws Throwable;
     
     /**
      * Wrapper for {@link #postScannerOpen(ObserverContext, Scan, RegionScanner)} that ensures no non IOException is thrown,
@@ -55,11 +71,44 @@ abstract public class BaseScannerRegionObserver extends BaseRegionObserver {
      */
     @Override
     public final RegionScanner postScannerOpen(final ObserverContext<RegionCoprocessorEnvironment> c, final Scan scan, final RegionScanner s) throws IOException {
+        DeserializationCache.Lease lease = GlobalCache.getInstance(c.getEnvironment().getConfiguration()).getDeserializationCache().newLease();
+        boolean success = false;
         try {
-            return doPostScannerOpen(c, scan, s);
+            RegionScanner scanner;
+            if (scan.getAttribute(QUERY_METRICS) == null) {
+                scanner = doPostScannerOpen(c, scan, s, lease);
+            } else {
+                long startTimeNanos = System.nanoTime();
+                RowCountingRegionScanner rowsMatched = new RowCountingRegionScanner(s);
+                scanner = doPostScannerOpen(c, scan, rowsMatched, lease);
+                // Only the observer handling the query sends back metrics
+                scanner = scanner == rowsMatched ? s : new ServerMetricsRegionScanner(scanner, rowsMatched, System.nanoTime() - startTimeNanos, scan.getStartRow());
+            }
+            // Even if the observer does not handle the scan, the expressions of its filter
+            // may have been taken from the cache and may only be returned once the scan is done
+            if (scanner == s && !LeasedRegionScanner.hasFilterLease(scan.getFilter())) {
+                return s;
+            }
+            scanner = new LeasedRegionScanner(scanner, lease, scan.getFilter());
+            success = true;
+            return scanner;
         } catch (Throwable t) {
             ServerUtil.throwIOException(c.getEnvironment().getRegion().getRegionNameAsString(), t);
             return null; // impossible
+        } finally {
+            // Nothing taken through the lease is in use unless the observer handles the scan
+            if (!success) {
+                lease.close();
+            }
         }
     }
+    
+    /**
+     * Returns the expressions of the filter of the get to the cache, since a get does not go
+     * through {@link #postScannerOpen(ObserverContext, Scan, RegionScanner)}.
+     */
+    @Override
+    public void postGet(final ObserverContext<RegionCoprocessorEnvironment> c, final Get get, final List<KeyValue> results) throws IOException {
+        LeasedRegionScanner.closeFilterLeases(get.getFilter());
+    }
 }
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.coprocessor;
+
+import static com.salesforce.phoenix.query.QueryConstants.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.salesforce.phoenix.expression.aggregator.Aggregator;
+import com.salesforce.phoenix.expression.aggregator.ServerAggregators;
+import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+import com.salesforce.phoenix.util.KeyValueUtil;
+
+
+/**
+ * 
+ * Sorted runs of partially aggregated groups that have been spooled to local disk
+ * by {@link GroupedAggregateRegionObserver} when the distinct groups of a region
+ * no longer fit into the memory granted by the tenant memory manager. The runs
+ * are read back through a k-way merge, so the rows returned are in group by key
+ * order. A group may appear in more than one run, in which case its partial
+ * aggregations are returned next to each other and are combined by the client in
+ * the same way as the partial aggregations coming back from different regions.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class GroupBySpillFiles implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(GroupBySpillFiles.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final List<File> files = new ArrayList<File>();
+    
+    public boolean isEmpty() {
+        return files.isEmpty();
+    }
+    
+    public int size() {
+        return files.size();
+    }
+    
+    /**
+     * Write the groups in aggregateMap to a new run file in group by key order.
+     * The caller is expected to clear the map once this returns.
+     */
+    public void spill(Map<ImmutableBytesWritable, Aggregator[]> aggregateMap, ServerAggregators aggregators) throws IOException {
+        List<ImmutableBytesWritable> keys = new ArrayList<ImmutableBytesWritable>(aggregateMap.keySet());
+        Collections.sort(keys);
+        File file = File.createTempFile("GroupBySpill", ".bin");
+        files.add(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        try {
+            for (ImmutableBytesWritable key : keys) {
+                byte[] value = aggregators.toBytes(aggregateMap.get(key));
+                WritableUtils.writeVInt(out, key.getLength());
+                out.write(key.get(), key.getOffset(), key.getLength());
+                WritableUtils.writeVInt(out, value.length);
+                out.write(value);
+            }
+        } finally {
+            out.close();
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Spilled " + keys.size() + " groups (" + file.length() + " bytes) to " + file);
+        }
+    }
+    
+    /**
+     * Create a RegionScanner that returns the merged contents of all runs. Closing
+     * the returned scanner closes s, closes chunk, and deletes the run files.
+     */
+    public RegionScanner newMergingScanner(final RegionScanner s, final MemoryChunk chunk) throws IOException {
+        final PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(files.size());
+        List<RunReader> readers = new ArrayList<RunReader>(files.size());
+        boolean success = false;
+        try {
+            for (File file : files) {
+                RunReader reader = new RunReader(file);
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                for (RunReader reader : readers) {
+                    reader.closeQuietly();
+                }
+                close();
+            }
+        }
+        return new BaseRegionScanner() {
+
+            @Override
+            public HRegionInfo getRegionInfo() {
+                return s.getRegionInfo();
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    s.close();
+                } finally {
+                    try {
+                        for (RunReader reader : queue) {
+                            reader.closeQuietly();
+                        }
+                        queue.clear();
+                        GroupBySpillFiles.this.close();
+                    } finally {
+                        chunk.close();
+                    }
+                }
+            }
+
+            @Override
+            public boolean next(List<KeyValue> results) throws IOException {
+                RunReader reader = queue.poll();
+                if (reader == null) {
+                    return false;
+                }
+                results.add(reader.getKeyValue());
+                if (reader.advance()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+                return !queue.isEmpty();
+            }
+        };
+    }
+    
+    @Override
+    public void close() {
+        for (File file : files) {
+            if (!file.delete() && file.exists()) {
+                logger.warn("Unable to delete group by spill file " + file);
+            }
+        }
+        files.clear();
+    }
+    
+    private static class RunReader implements Comparable<RunReader> {
+        private final DataInputStream in;
+        private byte[] key;
+        private byte[] value;
+        
+        private RunReader(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        }
+        
+        private boolean advance() throws IOException {
+            int keyLength;
+            try {
+                keyLength = WritableUtils.readVInt(in);
+            } catch (EOFException e) {
+                key = value = null;
+                return false;
+            }
+            key = new byte[keyLength];
+            in.readFully(key);
+            value = new byte[WritableUtils.readVInt(in)];
+            in.readFully(value);
+            return true;
+        }
+        
+        private KeyValue getKeyValue() {
+            return KeyValueUtil.newKeyValue(key, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, AGG_TIMESTAMP, value, 0, value.length);
+        }
+        
+        private void close() throws IOException {
+            in.close();
+        }
+        
+        private void closeQuietly() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close group by spill file", e);
+            }
+        }
+
+        @Override
+        public int compareTo(RunReader o) {
+            return Bytes.compareTo(key, o.key);
+        }
+    }
+}
@@ -32,6 +32,7 @@ import static com.salesforce.phoenix.query.QueryConstants.*;
 import java.io.*;
 import java.util.*;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.*;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.coprocessor.ObserverContext;
@@ -43,6 +44,8 @@ import org.apache.hadoop.io.WritableUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.salesforce.phoenix.cache.DeserializationCache;
+import com.salesforce.phoenix.cache.DeserializationCache.Deserializer;
 import com.salesforce.phoenix.cache.GlobalCache;
 import com.salesforce.phoenix.cache.TenantCache;
 import com.salesforce.phoenix.expression.Expression;
@@ -50,8 +53,10 @@ import com.salesforce.phoenix.expression.ExpressionType;
 import com.salesforce.phoenix.expression.aggregator.Aggregator;
 import com.salesforce.phoenix.expression.aggregator.ServerAggregators;
 import com.salesforce.phoenix.join.HashJoinInfo;
+import com.salesforce.phoenix.memory.InsufficientMemoryException;
+import com.salesforce.phoenix.memory.MemoryManager;
 import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
-import com.salesforce.phoenix.query.QueryConstants;
+import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.schema.tuple.MultiKeyValueTuple;
 import com.salesforce.phoenix.util.*;
 
@@ -74,6 +79,12 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
     public static final int DEFAULT_ESTIMATED_DISTINCT_VALUES = 10000;
     public static final int MIN_DISTINCT_VALUES = 100;
     
+    private static final Deserializer<List<Expression>> GROUP_BY_EXPRESSIONS_DESERIALIZER = new Deserializer<List<Expression>>() {
+        @Override
+        public List<Expression> deserialize(byte[] b) throws IOException {
+            return deserializeGroupByExpressions(b);
+        }
+    };
 
     /**
      * Replaces the RegionScanner s with a RegionScanner that groups by the key formed by the list of expressions from the scan
@@ -93,22 +104,24 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
      * are in sorted order.
      */
     @Override
-    protected RegionScanner doPostScannerOpen(ObserverContext<RegionCoprocessorEnvironment> c, Scan scan, RegionScanner s) throws IOException {
+    protected RegionScanner doPostScannerOpen(ObserverContext<RegionCoprocessorEnvironment> c, Scan scan, RegionScanner s, DeserializationCache.Lease lease) throws IOException {
         boolean keyOrdered = false;
-        byte[] expressionBytes = scan.getAttribute(UNORDERED_GROUP_BY_EXPRESSIONS);
+        List<Expression> expressions = lease.get(scan, UNORDERED_GROUP_BY_EXPRESSIONS, GROUP_BY_EXPRESSIONS_DESERIALIZER);
 
-        if (expressionBytes == null) {
-            expressionBytes = scan.getAttribute(KEY_ORDERED_GROUP_BY_EXPRESSIONS);
-            if (expressionBytes == null) {
+        if (expressions == null) {
+            expressions = lease.get(scan, KEY_ORDERED_GROUP_BY_EXPRESSIONS, GROUP_BY_EXPRESSIONS_DESERIALIZER);
+            if (expressions == null) {
                 return s;
             }
             keyOrdered = true;
         }
-        List<Expression> expressions = deserializeGroupByExpressions(expressionBytes);
         
-        ServerAggregators aggregators = ServerAggregators.deserialize(scan.getAttribute(GroupedAggregateRegionObserver.AGGREGATORS));
+        ServerAggregators aggregators = lease.get(scan, GroupedAggregateRegionObserver.AGGREGATORS, ServerAggregators.DESERIALIZER);
+        if (aggregators == null) {
+            aggregators = ServerAggregators.EMPTY_AGGREGATORS;
+        }
 
-        final ScanProjector p = ScanProjector.deserializeProjectorFromScan(scan);
+        final ScanProjector p = ScanProjector.deserializeProjectorFromScan(scan, lease);
         final HashJoinInfo j = HashJoinInfo.deserializeHashJoinFromScan(scan);        
         RegionScanner innerScanner = s;
         if (p != null || j != null) {
@@ -147,11 +160,11 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
                 throw new RuntimeException(e);
             }
         }
-        scan.setAttribute(attribName, stream.toByteArray());
+        DeserializationCache.setAttribute(scan, attribName, stream.toByteArray());
 
     }
 
-    private List<Expression> deserializeGroupByExpressions(byte[] expressionBytes) throws IOException {
+    private static List<Expression> deserializeGroupByExpressions(byte[] expressionBytes) throws IOException {
         List<Expression> expressions = new ArrayList<Expression>(3);
         ByteArrayInputStream stream = new ByteArrayInputStream(expressionBytes);
         try {
@@ -175,7 +188,9 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
     /**
      * Used for an aggregate query in which the key order does not necessarily match the group by key order. In this case,
      * we must collect all distinct groups within a region into a map, aggregating as we go, and then at the end of the
-     * underlying scan, sort them and return them one by one during iteration.
+     * underlying scan, sort them and return them one by one during iteration. If the map outgrows the memory
+     * available from the tenant memory manager, it is spilled to disk as a sorted run (see {@link GroupBySpillFiles})
+     * and the runs are merged during iteration.
      */
     private RegionScanner scanUnordered(ObserverContext<RegionCoprocessorEnvironment> c, Scan scan, final RegionScanner s, List<Expression> expressions, ServerAggregators aggregators) throws IOException {
         
@@ -188,12 +203,16 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
             estDistVals = Math.min(MIN_DISTINCT_VALUES, (int)(Bytes.toInt(estDistValsBytes) * 1.5f));  // Allocate 1.5x estimation
         }
         
-        TenantCache tenantCache = GlobalCache.getTenantCache(c.getEnvironment().getConfiguration(), ScanUtil.getTenantId(scan));
+        Configuration conf = c.getEnvironment().getConfiguration();
+        boolean spillable = conf.getBoolean(QueryServices.GROUPBY_SPILLABLE_ATTRIB, QueryServicesOptions.DEFAULT_GROUPBY_SPILLABLE);
+        TenantCache tenantCache = GlobalCache.getTenantCache(conf, ScanUtil.getTenantId(scan));
+        MemoryManager memoryManager = tenantCache.getMemoryManager();
+        final int initialEstDistVals = estDistVals;
         int estSize = sizeOfUnorderedGroupByMap(estDistVals, aggregators.getSize());
-        final MemoryChunk chunk = tenantCache.getMemoryManager().allocate(estSize);
+        final MemoryChunk chunk = memoryManager.allocate(estSize);
+        final GroupBySpillFiles spillFiles = new GroupBySpillFiles();
         boolean success = false;
         try {
-            // TODO: spool map to disk if map becomes too big
             boolean hasMore;
             int estValueSize = aggregators.getSize();
             MultiKeyValueTuple result = new MultiKeyValueTuple();
@@ -228,7 +247,15 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
                         if (aggregateMap.size() > estDistVals) { // increase allocation
                             estDistVals *= 1.5f;
                             estSize = sizeOfUnorderedGroupByMap(estDistVals, estValueSize);
-                            chunk.resize(estSize);
+                            if (!spillable) {
+                                chunk.resize(estSize);
+                            } else if (!tryResize(chunk, estSize, memoryManager)) {
+                                // Write out what we have so far as a sorted run and start over with an empty map
+                                spillFiles.spill(aggregateMap, aggregators);
+                                aggregateMap.clear();
+                                estDistVals = initialEstDistVals;
+                                chunk.resize(sizeOfUnorderedGroupByMap(estDistVals, estValueSize));
+                            }
                         }
                     }
                 } while (hasMore);
@@ -236,11 +263,25 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
                 region.closeRegionOperation();
             }
     
+            if (!spillFiles.isEmpty()) {
+                // Spill the remaining groups too and merge the sorted runs as we go
+                if (!aggregateMap.isEmpty()) {
+                    spillFiles.spill(aggregateMap, aggregators);
+                    aggregateMap.clear();
+                }
+                chunk.resize(0);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Merging " + spillFiles.size() + " spilled runs of grouped aggregation over unordered rows");
+                }
+                RegionScanner scanner = spillFiles.newMergingScanner(s, chunk);
+                success = true;
+                return scanner;
+            }
+            
             // Compute final allocation
             estSize = sizeOfUnorderedGroupByMap(aggregateMap.size(), estValueSize);
             chunk.resize(estSize);
             
-            // TODO: spool list to disk if too big and free memory?
             final List<KeyValue> aggResults = new ArrayList<KeyValue>(aggregateMap.size());
             for (Map.Entry<ImmutableBytesWritable, Aggregator[]> entry : aggregateMap.entrySet()) {
                 ImmutableBytesWritable key = entry.getKey();
@@ -285,8 +326,33 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
             success = true;
             return scanner;
         } finally {
-            if (!success)
-                chunk.close();
+            if (!success) {
+                try {
+                    spillFiles.close();
+                } finally {
+                    chunk.close();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Attempt to grow the memory chunk backing the map of distinct groups, without
+     * waiting on the memory manager if the memory is clearly not available.
+     * @return true if the chunk was resized and false if the groups should be spilled instead.
+     */
+    private static boolean tryResize(MemoryChunk chunk, long nBytes, MemoryManager memoryManager) {
+        if (nBytes - chunk.getSize() > memoryManager.getAvailableMemory()) {
+            return false;
+        }
+        try {
+            chunk.resize(nBytes);
+            return true;
+        } catch (InsufficientMemoryException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Unable to grow grouped aggregation map to " + nBytes + " bytes, spilling to disk", e);
+            }
+            return false;
         }
     }
 
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.coprocessor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+
+import com.salesforce.phoenix.cache.DeserializationCache;
+import com.salesforce.phoenix.filter.BooleanExpressionFilter;
+
+
+/**
+ * 
+ * Region scanner wrapping the scanner returned by a region observer that returns the
+ * objects the scan took from the {@link DeserializationCache}, including the expressions
+ * of its filters, once the scan is closed.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+class LeasedRegionScanner implements RegionScanner {
+    private final RegionScanner delegate;
+    private final DeserializationCache.Lease lease;
+    private final List<DeserializationCache.Lease> filterLeases;
+
+    LeasedRegionScanner(RegionScanner delegate, DeserializationCache.Lease lease, Filter filter) {
+        this.delegate = delegate;
+        this.lease = lease;
+        this.filterLeases = takeFilterLeases(filter, new ArrayList<DeserializationCache.Lease>(1));
+    }
+    
+    /**
+     * Take over the leases held by the filter and its child filters, so that only one
+     * scanner returns the expressions of the filter to the cache, even if more than
+     * one region observer wraps the scanner.
+     */
+    private static List<DeserializationCache.Lease> takeFilterLeases(Filter filter, List<DeserializationCache.Lease> leases) {
+        if (filter instanceof BooleanExpressionFilter) {
+            DeserializationCache.Lease lease = ((BooleanExpressionFilter)filter).takeLease();
+            if (lease != null) {
+                leases.add(lease);
+            }
+        } else if (filter instanceof FilterList) {
+            for (Filter childFilter : ((FilterList)filter).getFilters()) {
+                takeFilterLeases(childFilter, leases);
+            }
+        }
+        return leases;
+    }
+    
+    /**
+     * @return true if the filter or one of its child filters holds expressions taken from the cache
+     */
+    static boolean hasFilterLease(Filter filter) {
+        if (filter instanceof BooleanExpressionFilter) {
+            return ((BooleanExpressionFilter)filter).hasLease();
+        } else if (filter instanceof FilterList) {
+            for (Filter childFilter : ((FilterList)filter).getFilters()) {
+                if (hasFilterLease(childFilter)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Return the expressions of the filter to the cache, used once a get that does not
+     * go through a region scanner is done with the filter.
+     */
+    static void closeFilterLeases(Filter filter) {
+        closeLeases(takeFilterLeases(filter, new ArrayList<DeserializationCache.Lease>(1)));
+    }
+    
+    private static void closeLeases(List<DeserializationCache.Lease> leases) {
+        for (DeserializationCache.Lease lease : leases) {
+            lease.close();
+        }
+    }
+
+    @Override
+    public boolean next(List<KeyValue> results) throws IOException {
+        return delegate.next(results);
+    }
+
+    @Override
+    public boolean next(List<KeyValue> results, String metric) throws IOException {
+        return delegate.next(results, metric);
+    }
+
+    @Override
+    public boolean next(List<KeyValue> results, int limit) throws IOException {
+        return delegate.next(results, limit);
+    }
+
+    @Override
+    public boolean next(List<KeyValue> results, int limit, String metric) throws IOException {
+        return delegate.next(results, limit, metric);
+    }
+
+    @Override
+    public boolean nextRaw(List<KeyValue> results, String metric) throws IOException {
+        return delegate.nextRaw(results, metric);
+    }
+
+    @Override
+    public boolean nextRaw(List<KeyValue> results, int limit, String metric) throws IOException {
+        return delegate.nextRaw(results, limit, metric);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            delegate.close();
+        } finally {
+            // Only once the scan is done may other scans use the same objects
+            lease.close();
+            closeLeases(filterLeases);
+        }
+    }
+
+    @Override
+    public HRegionInfo getRegionInfo() {
+        return delegate.getRegionInfo();
+    }
+
+    @Override
+    public boolean isFilterDone() {
+        return delegate.isFilterDone();
+    }
+
+    @Override
+    public boolean reseek(byte[] row) throws IOException {
+        return delegate.reseek(row);
+    }
+
+    @Override
+    public long getMvccReadPoint() {
+        return delegate.getMvccReadPoint();
+    }
+}
@@ -41,6 +41,6 @@ public class MetaDataRegionObserver extends BaseRegionObserver {
     @Override
     public void preClose(final ObserverContext<RegionCoprocessorEnvironment> c,
             boolean abortRequested) {
-        GlobalCache.getInstance(c.getEnvironment().getConfiguration()).getMetaDataCache().clear();
+        GlobalCache.getInstance(c.getEnvironment().getConfiguration()).getMetaDataCache().invalidateAll();
     }
 }
@@ -41,6 +41,8 @@ import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Pair;
 import org.apache.hadoop.io.WritableUtils;
 
+import com.salesforce.phoenix.cache.DeserializationCache;
+import com.salesforce.phoenix.cache.DeserializationCache.Deserializer;
 import com.salesforce.phoenix.util.ByteUtil;
 import com.salesforce.phoenix.util.ImmutableBytesPtr;
 import com.salesforce.phoenix.util.KeyValueUtil;
@@ -51,6 +53,17 @@ public class ScanProjector {
     
     private static final String SCAN_PROJECTOR = "scanProjector";
     private static final byte[] SEPERATOR = Bytes.toBytes(":");
+    private static final Deserializer<ScanProjector> DESERIALIZER = new Deserializer<ScanProjector>() {
+        @Override
+        public ScanProjector deserialize(byte[] b) {
+            return deserializeProjector(b);
+        }
+
+        @Override
+        public boolean isImmutable() {
+            return true;
+        }
+    };
     
     private final ProjectionType type;
     private final byte[] tablePrefix;
@@ -99,7 +112,7 @@ public class ScanProjector {
             default:
                 throw new IOException("Unrecognized projection type '" + projector.type + "'");    
             }
-            scan.setAttribute(SCAN_PROJECTOR, stream.toByteArray());
+            DeserializationCache.setAttribute(scan, SCAN_PROJECTOR, stream.toByteArray());
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
@@ -117,6 +130,18 @@ public class ScanProjector {
         if (proj == null) {
             return null;
         }
+        return deserializeProjector(proj);
+    }
+    
+    /**
+     * Deserializes the projector of the scan through the region server's cache, which
+     * shares a single instance among all the scans with the same projector.
+     */
+    public static ScanProjector deserializeProjectorFromScan(Scan scan, DeserializationCache.Lease lease) throws IOException {
+        return lease.get(scan, SCAN_PROJECTOR, DESERIALIZER);
+    }
+    
+    private static ScanProjector deserializeProjector(byte[] proj) {
         ByteArrayInputStream stream = new ByteArrayInputStream(proj);
         try {
             DataInputStream input = new DataInputStream(stream);
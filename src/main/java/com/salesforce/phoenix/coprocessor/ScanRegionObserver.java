@@ -28,8 +28,11 @@
 package com.salesforce.phoenix.coprocessor;
 
 import java.io.*;
+import java.sql.SQLException;
 import java.util.List;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CoprocessorEnvironment;
 import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Scan;
@@ -42,14 +45,18 @@ import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.WritableUtils;
 
 import com.google.common.collect.Lists;
+import com.salesforce.phoenix.cache.DeserializationCache;
+import com.salesforce.phoenix.cache.DeserializationCache.Deserializer;
 import com.salesforce.phoenix.cache.GlobalCache;
 import com.salesforce.phoenix.cache.TenantCache;
 import com.salesforce.phoenix.expression.OrderByExpression;
 import com.salesforce.phoenix.iterate.*;
 import com.salesforce.phoenix.join.HashJoinInfo;
+import com.salesforce.phoenix.memory.MemoryManager;
 import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
 import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ReadOnlyProps;
 import com.salesforce.phoenix.util.ScanUtil;
 import com.salesforce.phoenix.util.ServerUtil;
 
@@ -67,6 +74,50 @@ import com.salesforce.phoenix.util.ServerUtil;
 public class ScanRegionObserver extends BaseScannerRegionObserver {
     public static final String NON_AGGREGATE_QUERY = "NonAggregateQuery";
     private static final String TOPN = "TopN";
+    private static final Deserializer<TopN> TOPN_DESERIALIZER = new Deserializer<TopN>() {
+        @Override
+        public TopN deserialize(byte[] b) throws IOException {
+            return TopN.deserialize(b);
+        }
+    };
+    
+    // Settings read by the sorts of TopN scans without a limit, copied from the configuration
+    // once rather than for every scan
+    private ReadOnlyProps props;
+    
+    private static class TopN {
+        private final int thresholdBytes;
+        private final int limit;
+        private final int estimatedRowSize;
+        private final List<OrderByExpression> orderByExpressions;
+        
+        private TopN(int thresholdBytes, int limit, int estimatedRowSize, List<OrderByExpression> orderByExpressions) {
+            this.thresholdBytes = thresholdBytes;
+            this.limit = limit;
+            this.estimatedRowSize = estimatedRowSize;
+            this.orderByExpressions = orderByExpressions;
+        }
+        
+        private static TopN deserialize(byte[] topN) throws IOException {
+            ByteArrayInputStream stream = new ByteArrayInputStream(topN); // TODO: size?
+            try {
+                DataInputStream input = new DataInputStream(stream);
+                int thresholdBytes = WritableUtils.readVInt(input);
+                int limit = WritableUtils.readVInt(input);
+                int estimatedRowSize = WritableUtils.readVInt(input);
+                int size = WritableUtils.readVInt(input);
+                List<OrderByExpression> orderByExpressions = Lists.newArrayListWithExpectedSize(size);           
+                for (int i = 0; i < size; i++) {
+                    OrderByExpression orderByExpression = new OrderByExpression();
+                    orderByExpression.readFields(input);
+                    orderByExpressions.add(orderByExpression);
+                }
+                return new TopN(thresholdBytes, limit, estimatedRowSize, orderByExpressions);
+            } finally {
+                stream.close();
+            }
+        }
+    }
 
     public static void serializeIntoScan(Scan scan, int thresholdBytes, int limit, List<OrderByExpression> orderByExpressions, int estimatedRowSize) {
         ByteArrayOutputStream stream = new ByteArrayOutputStream(); // TODO: size?
@@ -79,7 +130,7 @@ public class ScanRegionObserver extends BaseScannerRegionObserver {
             for (OrderByExpression orderingCol : orderByExpressions) {
                 orderingCol.write(output);
             }
-            scan.setAttribute(TOPN, stream.toByteArray());
+            DeserializationCache.setAttribute(scan, TOPN, stream.toByteArray());
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
@@ -91,49 +142,38 @@ public class ScanRegionObserver extends BaseScannerRegionObserver {
         }
     }
     
-    public static OrderedResultIterator deserializeFromScan(Scan scan, RegionScanner s) {
-        byte[] topN = scan.getAttribute(TOPN);
+    @Override
+    public void start(CoprocessorEnvironment e) throws IOException {
+        super.start(e);
+        this.props = new ReadOnlyProps(e.getConfiguration().iterator());
+    }
+    
+    public static OrderedResultIterator deserializeFromScan(Scan scan, RegionScanner s, Configuration config, ReadOnlyProps props, ImmutableBytesWritable tenantId, DeserializationCache.Lease lease) throws IOException {
+        TopN topN = lease.get(scan, TOPN, TOPN_DESERIALIZER);
         if (topN == null) {
             return null;
         }
-        ByteArrayInputStream stream = new ByteArrayInputStream(topN); // TODO: size?
-        try {
-            DataInputStream input = new DataInputStream(stream);
-            int thresholdBytes = WritableUtils.readVInt(input);
-            int limit = WritableUtils.readVInt(input);
-            int estimatedRowSize = WritableUtils.readVInt(input);
-            int size = WritableUtils.readVInt(input);
-            List<OrderByExpression> orderByExpressions = Lists.newArrayListWithExpectedSize(size);           
-            for (int i = 0; i < size; i++) {
-                OrderByExpression orderByExpression = new OrderByExpression();
-                orderByExpression.readFields(input);
-                orderByExpressions.add(orderByExpression);
-            }
-            ResultIterator inner = new RegionScannerResultIterator(s);
-            return new OrderedResultIterator(inner, orderByExpressions, thresholdBytes, limit >= 0 ? limit : null, estimatedRowSize);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        } finally {
-            try {
-                stream.close();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+        ResultIterator inner = new RegionScannerResultIterator(s);
+        if (topN.limit >= 0) {
+            return new OrderedResultIterator(inner, topN.orderByExpressions, topN.thresholdBytes, topN.limit, topN.estimatedRowSize);
         }
+        // Without a limit, all the rows of the region are sorted with memory from the tenant's memory manager
+        MemoryManager mm = GlobalCache.getTenantCache(config, tenantId).getMemoryManager();
+        return new OrderedResultIterator(inner, topN.orderByExpressions, topN.thresholdBytes, null, topN.estimatedRowSize, mm, props);
     }
 
     @Override
-    protected RegionScanner doPostScannerOpen(final ObserverContext<RegionCoprocessorEnvironment> c, final Scan scan, final RegionScanner s) throws Throwable {
+    protected RegionScanner doPostScannerOpen(final ObserverContext<RegionCoprocessorEnvironment> c, final Scan scan, final RegionScanner s, DeserializationCache.Lease lease) throws Throwable {
         byte[] isScanQuery = scan.getAttribute(NON_AGGREGATE_QUERY);
 
         if (isScanQuery == null || Bytes.compareTo(PDataType.FALSE_BYTES, isScanQuery) == 0) {
             return s;
         }
         
-        final ScanProjector p = ScanProjector.deserializeProjectorFromScan(scan);
+        final ScanProjector p = ScanProjector.deserializeProjectorFromScan(scan, lease);
         final HashJoinInfo j = HashJoinInfo.deserializeHashJoinFromScan(scan);
-        final OrderedResultIterator iterator = deserializeFromScan(scan,s);
         final ImmutableBytesWritable tenantId = ScanUtil.getTenantId(scan);
+        final OrderedResultIterator iterator = deserializeFromScan(scan, s, c.getEnvironment().getConfiguration(), props, tenantId, lease);
         
         RegionScanner innerScanner = s;
         if (p != null || j != null) {
@@ -210,7 +250,14 @@ public class ScanRegionObserver extends BaseScannerRegionObserver {
                 try {
                     s.close();
                 } finally {
-                    chunk.close();                }
+                    try {
+                        iterator.close();
+                    } catch (SQLException e) {
+                        ServerUtil.throwIOException(region.getRegionNameAsString(), e);
+                    } finally {
+                        chunk.close();
+                    }
+                }
             }
         };
     }
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.coprocessor;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+
+import com.salesforce.phoenix.monitoring.QueryMetrics;
+
+
+/**
+ * 
+ * Region scanner wrapping the scanner returned by a region observer that counts the rows
+ * returned and the time spent producing them. Once the wrapped scanner is exhausted, one
+ * more row is returned holding the metrics of the scan (see
+ * {@link QueryMetrics#newServerMetricsKeyValue(byte[], int, int, long, long, long)}),
+ * which the client strips from the results.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+class ServerMetricsRegionScanner implements RegionScanner {
+    private final RegionScanner delegate;
+    private final RowCountingRegionScanner rowsMatched;
+    private final byte[] startRow;
+    private long timeNanos;
+    private long rowsReturned;
+    private KeyValue lastKeyValue;
+    private boolean isExhausted;
+    private boolean isMetricsSent;
+
+    /**
+     * @param delegate the scanner returned by the region observer
+     * @param rowsMatched the scanner passed to the region observer
+     * @param openTimeNanos the time spent opening the scanner returned by the region observer,
+     *  which includes all the work done up front by aggregating observers.
+     * @param startRow the start row of the scan, used as the row of the metrics if no rows are returned
+     */
+    ServerMetricsRegionScanner(RegionScanner delegate, RowCountingRegionScanner rowsMatched, long openTimeNanos, byte[] startRow) {
+        this.delegate = delegate;
+        this.rowsMatched = rowsMatched;
+        this.timeNanos = openTimeNanos;
+        this.startRow = startRow;
+    }
+    
+    private boolean afterNext(List<KeyValue> results, int size, boolean hasMore, long startTimeNanos) {
+        timeNanos += System.nanoTime() - startTimeNanos;
+        isExhausted = !hasMore;
+        if (results.size() > size) {
+            KeyValue kv = results.get(size);
+            // A row may be returned in parts when the scan has a batch size, so only count it once
+            if (lastKeyValue == null || !lastKeyValue.matchingRow(kv)) {
+                rowsReturned++;
+            }
+            lastKeyValue = kv;
+            // Send the metrics on the next call so that they're not part of the last row
+            return true;
+        }
+        return isExhausted ? addMetrics(results) : true;
+    }
+    
+    private boolean addMetrics(List<KeyValue> results) {
+        if (!isMetricsSent) {
+            isMetricsSent = true;
+            long timeMs = timeNanos / 1000000;
+            KeyValue kv = lastKeyValue == null ?
+                    QueryMetrics.newServerMetricsKeyValue(startRow, 0, startRow.length, rowsMatched.getRowCount(), rowsReturned, timeMs) :
+                    QueryMetrics.newServerMetricsKeyValue(lastKeyValue.getBuffer(), lastKeyValue.getRowOffset(), lastKeyValue.getRowLength(), rowsMatched.getRowCount(), rowsReturned, timeMs);
+            results.add(kv);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean next(List<KeyValue> results) throws IOException {
+        if (isExhausted) {
+            return addMetrics(results);
+        }
+        int size = results.size();
+        long startTimeNanos = System.nanoTime();
+        return afterNext(results, size, delegate.next(results), startTimeNanos);
+    }
+
+    @Override
+    public boolean next(List<KeyValue> results, String metric) throws IOException {
+        if (isExhausted) {
+            return addMetrics(results);
+        }
+        int size = results.size();
+        long startTimeNanos = System.nanoTime();
+        return afterNext(results, size, delegate.next(results, metric), startTimeNanos);
+    }
+
+    @Override
+    public boolean next(List<KeyValue> results, int limit) throws IOException {
+        if (isExhausted) {
+            return addMetrics(results);
+        }
+        int size = results.size();
+        long startTimeNanos = System.nanoTime();
+        return afterNext(results, size, delegate.next(results, limit), startTimeNanos);
+    }
+
+    @Override
+    public boolean next(List<KeyValue> results, int limit, String metric) throws IOException {
+        if (isExhausted) {
+            return addMetrics(results);
+        }
+        int size = results.size();
+        long startTimeNanos = System.nanoTime();
+        return afterNext(results, size, delegate.next(results, limit, metric), startTimeNanos);
+    }
+
+    @Override
+    public boolean nextRaw(List<KeyValue> results, String metric) throws IOException {
+        if (isExhausted) {
+            return addMetrics(results);
+        }
+        int size = results.size();
+        long startTimeNanos = System.nanoTime();
+        return afterNext(results, size, delegate.nextRaw(results, metric), startTimeNanos);
+    }
+
+    @Override
+    public boolean nextRaw(List<KeyValue> results, int limit, String metric) throws IOException {
+        if (isExhausted) {
+            return addMetrics(results);
+        }
+        int size = results.size();
+        long startTimeNanos = System.nanoTime();
+        return afterNext(results, size, delegate.nextRaw(results, limit, metric), startTimeNanos);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    @Override
+    public HRegionInfo getRegionInfo() {
+        return delegate.getRegionInfo();
+    }
+
+    @Override
+    public boolean isFilterDone() {
+        return isMetricsSent && delegate.isFilterDone();
+    }
+
+    @Override
+    public boolean reseek(byte[] row) throws IOException {
+        return delegate.reseek(row);
+    }
+
+    @Override
+    public long getMvccReadPoint() {
+        return delegate.getMvccReadPoint();
+    }
+    
+    /**
+     * 
+     * Region scanner passed to a region observer in place of the scanner over the region
+     * that counts the rows read by the observer. These are the rows that passed the filter of
+     * the scan, as the filter is applied beneath this scanner, so rows skipped by the filter
+     * are not counted.
+     *
+     * @author jtaylor
+     * @since 2.1
+     */
+    static class RowCountingRegionScanner implements RegionScanner {
+        private final RegionScanner delegate;
+        private long rowCount;
+        private KeyValue lastKeyValue;
+        
+        RowCountingRegionScanner(RegionScanner delegate) {
+            this.delegate = delegate;
+        }
+        
+        long getRowCount() {
+            return rowCount;
+        }
+        
+        private boolean count(List<KeyValue> results, int size, boolean hasMore) {
+            if (results.size() > size) {
+                KeyValue kv = results.get(size);
+                // A row may be read in parts when the scan has a batch size, so only count it once
+                if (lastKeyValue == null || !lastKeyValue.matchingRow(kv)) {
+                    rowCount++;
+                }
+                lastKeyValue = kv;
+            }
+            return hasMore;
+        }
+
+        @Override
+        public boolean next(List<KeyValue> results) throws IOException {
+            return count(results, results.size(), delegate.next(results));
+        }
+
+        @Override
+        public boolean next(List<KeyValue> results, String metric) throws IOException {
+            return count(results, results.size(), delegate.next(results, metric));
+        }
+
+        @Override
+        public boolean next(List<KeyValue> results, int limit) throws IOException {
+            return count(results, results.size(), delegate.next(results, limit));
+        }
+
+        @Override
+        public boolean next(List<KeyValue> results, int limit, String metric) throws IOException {
+            return count(results, results.size(), delegate.next(results, limit, metric));
+        }
+
+        @Override
+        public boolean nextRaw(List<KeyValue> results, String metric) throws IOException {
+            return count(results, results.size(), delegate.nextRaw(results, metric));
+        }
+
+        @Override
+        public boolean nextRaw(List<KeyValue> results, int limit, String metric) throws IOException {
+            return count(results, results.size(), delegate.nextRaw(results, limit, metric));
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public HRegionInfo getRegionInfo() {
+            return delegate.getRegionInfo();
+        }
+
+        @Override
+        public boolean isFilterDone() {
+            return delegate.isFilterDone();
+        }
+
+        @Override
+        public boolean reseek(byte[] row) throws IOException {
+            return delegate.reseek(row);
+        }
+
+        @Override
+        public long getMvccReadPoint() {
+            return delegate.getMvccReadPoint();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.coprocessor;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.coprocessor.*;
+import org.apache.hadoop.hbase.regionserver.*;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequest;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.collect.Lists;
+import com.salesforce.phoenix.jdbc.PhoenixDatabaseMetaData;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
+import com.salesforce.phoenix.util.StatsUtil;
+
+
+/**
+ * 
+ * Region observer that collects the guide posts of a region while it is major compacted
+ * and stores them in the SYSTEM.STATS table. A guide post is collected every
+ * {@link com.salesforce.phoenix.query.QueryServices#STATS_GUIDEPOST_WIDTH_BYTES_ATTRIB}
+ * bytes of key values, so that the client can split a scan into chunks that have roughly
+ * the same amount of data. Failing to store the guide posts never fails the compaction.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class StatsCollectorRegionObserver extends BaseRegionObserver {
+    private static final Log LOG = LogFactory.getLog(StatsCollectorRegionObserver.class);
+
+    /**
+     * Get the configuration of the region server rather than that of the coprocessor
+     * environment, as the latter merges in the values of the table descriptor and
+     * does not return the settings of the region server, such as the ZooKeeper quorum.
+     */
+    private static Configuration getConfiguration(RegionCoprocessorEnvironment env) {
+        RegionServerServices services = env.getRegionServerServices();
+        return services == null ? env.getConfiguration() : services.getConfiguration();
+    }
+    
+    private static HTableInterface getStatsTable(RegionCoprocessorEnvironment env) throws IOException {
+        return new HTable(getConfiguration(env), PhoenixDatabaseMetaData.STATS_TABLE_NAME);
+    }
+
+    @Override
+    public InternalScanner preCompact(ObserverContext<RegionCoprocessorEnvironment> c, Store store,
+            InternalScanner scanner, CompactionRequest request) throws IOException {
+        // Only a major compaction goes through all the data of the store
+        if (request == null || !request.isMajor()) {
+            return scanner;
+        }
+        long guidePostWidth = getConfiguration(c.getEnvironment()).getLong(QueryServices.STATS_GUIDEPOST_WIDTH_BYTES_ATTRIB, 
+                QueryServicesOptions.DEFAULT_STATS_GUIDEPOST_WIDTH_BYTES);
+        return new GuidePostsCollectingScanner(scanner, c.getEnvironment(), store.getFamily().getName(), guidePostWidth);
+    }
+
+    @Override
+    public void postSplit(ObserverContext<RegionCoprocessorEnvironment> c, HRegion l, HRegion r) throws IOException {
+        // The daughter regions will collect their own guide posts once they're compacted
+        HRegion region = c.getEnvironment().getRegion();
+        byte[] rowKey = StatsUtil.getRowKey(region.getTableDesc().getName(), region.getRegionName());
+        try {
+            HTableInterface statsTable = getStatsTable(c.getEnvironment());
+            try {
+                statsTable.delete(new Delete(rowKey));
+            } finally {
+                statsTable.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to delete guide posts of split region " + region.getRegionNameAsString(), e);
+        }
+    }
+
+    private static class GuidePostsCollectingScanner implements InternalScanner {
+        private final InternalScanner delegate;
+        private final RegionCoprocessorEnvironment env;
+        private final byte[] family;
+        private final long guidePostWidth;
+        private final List<byte[]> guidePosts = Lists.newArrayList();
+        private long byteCount = 0;
+        private boolean isExhausted = false;
+        
+        private GuidePostsCollectingScanner(InternalScanner delegate, RegionCoprocessorEnvironment env, byte[] family, long guidePostWidth) {
+            this.delegate = delegate;
+            this.env = env;
+            this.family = family;
+            this.guidePostWidth = guidePostWidth;
+        }
+        
+        private boolean collect(List<KeyValue> results, boolean hasMore) {
+            for (KeyValue kv : results) {
+                byteCount += kv.getLength();
+                if (byteCount >= guidePostWidth) {
+                    // Rows may come back in more than one batch, so make sure a row is only a guide post once
+                    if (guidePosts.isEmpty() || !kv.matchingRow(guidePosts.get(guidePosts.size()-1))) {
+                        guidePosts.add(kv.getRow());
+                    }
+                    byteCount = 0;
+                }
+            }
+            isExhausted = !hasMore;
+            return hasMore;
+        }
+        
+        @Override
+        public boolean next(List<KeyValue> results) throws IOException {
+            return collect(results, delegate.next(results));
+        }
+
+        @Override
+        public boolean next(List<KeyValue> results, String metric) throws IOException {
+            return collect(results, delegate.next(results, metric));
+        }
+
+        @Override
+        public boolean next(List<KeyValue> results, int limit) throws IOException {
+            return collect(results, delegate.next(results, limit));
+        }
+
+        @Override
+        public boolean next(List<KeyValue> results, int limit, String metric) throws IOException {
+            return collect(results, delegate.next(results, limit, metric));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                delegate.close();
+            } finally {
+                // Only replace the guide posts if the compaction went through the entire store
+                if (isExhausted) {
+                    writeGuidePosts();
+                }
+            }
+        }
+        
+        private void writeGuidePosts() {
+            HRegion region = env.getRegion();
+            byte[] rowKey = StatsUtil.getRowKey(region.getTableDesc().getName(), region.getRegionName());
+            Put put = new Put(rowKey);
+            put.add(StatsUtil.STATS_FAMILY, family, StatsUtil.toBytes(guidePosts));
+            try {
+                HTableInterface statsTable = getStatsTable(env);
+                try {
+                    statsTable.put(put);
+                } finally {
+                    statsTable.close();
+                }
+            } catch (IOException e) {
+                LOG.warn("Unable to store " + guidePosts.size() + " guide posts for family " + Bytes.toString(family)
+                        + " of region " + region.getRegionNameAsString(), e);
+            }
+        }
+    }
+}
@@ -48,6 +48,8 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.salesforce.phoenix.cache.DeserializationCache;
+import com.salesforce.phoenix.cache.DeserializationCache.Deserializer;
 import com.salesforce.phoenix.exception.ValueTypeIncompatibleException;
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.ExpressionType;
@@ -77,6 +79,13 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
     public static final String DELETE_CF = "DeleteCF";
     public static final String EMPTY_CF = "EmptyCF";
     
+    private static final Deserializer<List<Expression>> EXPRESSIONS_DESERIALIZER = new Deserializer<List<Expression>>() {
+        @Override
+        public List<Expression> deserialize(byte[] b) {
+            return deserializeExpressions(b);
+        }
+    };
+    
     private static void commitBatch(HRegion region, List<Pair<Mutation,Integer>> mutations) throws IOException {
         @SuppressWarnings("unchecked")
         Pair<Mutation,Integer>[] mutationArray = new Pair[mutations.size()];
@@ -89,7 +98,7 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
     }
 
     @Override
-    protected RegionScanner doPostScannerOpen(final ObserverContext<RegionCoprocessorEnvironment> c, final Scan scan, final RegionScanner s) throws IOException {
+    protected RegionScanner doPostScannerOpen(final ObserverContext<RegionCoprocessorEnvironment> c, final Scan scan, final RegionScanner s, DeserializationCache.Lease lease) throws IOException {
         byte[] isUngroupedAgg = scan.getAttribute(UNGROUPED_AGG);
         if (isUngroupedAgg == null) {
             return s;
@@ -119,7 +128,7 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
             };
         }
         
-        final ScanProjector p = ScanProjector.deserializeProjectorFromScan(scan);
+        final ScanProjector p = ScanProjector.deserializeProjectorFromScan(scan, lease);
         final HashJoinInfo j = HashJoinInfo.deserializeHashJoinFromScan(scan);
         RegionScanner theScanner = s;
         if (p != null && j != null)  {
@@ -140,7 +149,7 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
         if (upsertSelectTable != null) {
             isUpsert = true;
             projectedTable = deserializeTable(upsertSelectTable);
-            selectExpressions = deserializeExpressions(scan.getAttribute(UPSERT_SELECT_EXPRS));
+            selectExpressions = lease.get(scan, UPSERT_SELECT_EXPRS, EXPRESSIONS_DESERIALIZER);
             values = new byte[projectedTable.getPKColumns().size()][];
             ptr = new ImmutableBytesWritable();
         } else {
@@ -162,7 +171,10 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
             mutations = Lists.newArrayListWithExpectedSize(1024);
             batchSize = c.getEnvironment().getConfiguration().getInt(MUTATE_BATCH_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MUTATE_BATCH_SIZE);
         }
-        Aggregators aggregators = ServerAggregators.deserialize(scan.getAttribute(GroupedAggregateRegionObserver.AGGREGATORS));
+        Aggregators aggregators = lease.get(scan, GroupedAggregateRegionObserver.AGGREGATORS, ServerAggregators.DESERIALIZER);
+        if (aggregators == null) {
+            aggregators = ServerAggregators.EMPTY_AGGREGATORS;
+        }
         Aggregator[] rowAggregators = aggregators.getAggregators();
         boolean hasMore;
         boolean hasAny = false;
@@ -98,6 +98,7 @@ public enum SQLExceptionCode {
      */
     COLUMN_FAMILY_NOT_FOUND(1001, "42I01", "Undefined column family."),
     PROPERTIES_FOR_FAMILY(1002, "42I02","Properties may not be defined for an unused family name."),
+    RESERVED_FAMILY_NAME(1026, "42I03", "Column family name is reserved."),
     // Primary/row key related exceptions.
     PRIMARY_KEY_WITH_FAMILY_NAME(1003, "42J01", "Primary key should not have a family name."),
     PRIMARY_KEY_OUT_OF_ORDER(1004, "42J02", "Order of columns in primary key constraint must match the order in which they're declared."),
@@ -148,6 +149,7 @@ public enum SQLExceptionCode {
     EXECUTE_QUERY_NOT_APPLICABLE(1103, "XCL03", "executeQuery may not be used."),
     EXECUTE_UPDATE_NOT_APPLICABLE(1104, "XCL03", "executeUpdate may not be used."),
     SPLIT_POINT_NOT_CONSTANT(1105, "XCL04", "Split points must be constants."),
+    NEGATIVE_FETCH_SIZE(1106, "XCL05", "Fetch size may not be negative."),
     
     /**
      * Implementation defined class. Phoenix internal error. (errorcode 20, sqlstate INT).
@@ -88,9 +88,10 @@ public class AggregatePlan extends BasicQueryPlan {
         splits = parallelIterators.getSplits();
 
         AggregatingResultIterator aggResultIterator;
-        // No need to merge sort for ungrouped aggregation
+        // No need to merge sort for ungrouped aggregation. Aggregate the partial results
+        // of each scan as soon as it completes, since their order doesn't matter.
         if (groupBy.isEmpty()) {
-            aggResultIterator = new UngroupedAggregatingResultIterator(new ConcatResultIterator(parallelIterators), aggregators);
+            aggResultIterator = new UngroupedAggregatingResultIterator(new CompletionOrderResultIterator(parallelIterators), aggregators);
         } else {
             aggResultIterator = new GroupedAggregatingResultIterator(new MergeSortRowKeyResultIterator(parallelIterators), aggregators);
         }
@@ -111,7 +112,8 @@ public class AggregatePlan extends BasicQueryPlan {
         } else {
             int thresholdBytes = services.getProps().getInt(QueryServices.SPOOL_THRESHOLD_BYTES_ATTRIB, 
                     QueryServicesOptions.DEFAULT_SPOOL_THRESHOLD_BYTES);
-            resultScanner = new OrderedAggregatingResultIterator(aggResultIterator, orderBy.getOrderByExpressions(), thresholdBytes, limit);
+            resultScanner = new OrderedAggregatingResultIterator(aggResultIterator, orderBy.getOrderByExpressions(), thresholdBytes, limit,
+                    context.getMemoryManager(), services.getProps());
         }
         
         return new WrappedScanner(resultScanner, getProjector());
@@ -37,10 +37,12 @@ import com.salesforce.phoenix.compile.*;
 import com.salesforce.phoenix.compile.GroupByCompiler.GroupBy;
 import com.salesforce.phoenix.compile.OrderByCompiler.OrderBy;
 import com.salesforce.phoenix.iterate.ParallelIterators.ParallelIteratorFactory;
+import com.salesforce.phoenix.iterate.ScanCacheSizer;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
 import com.salesforce.phoenix.parse.FilterableStatement;
 import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.util.ReadOnlyProps;
 import com.salesforce.phoenix.util.ScanUtil;
 import com.salesforce.phoenix.util.SchemaUtil;
 
@@ -146,6 +148,14 @@ public abstract class BasicQueryPlan implements QueryPlan {
         Long scn = connection.getSCN();
         ScanUtil.setTimeRange(scan, scn == null ? context.getCurrentTime() : scn);
         ScanUtil.setTenantId(scan, connection.getTenantId());
+        // Size the scanner caching from the width of the rows, unless set through the fetch size of the statement
+        ReadOnlyProps props = connection.getQueryServices().getProps();
+        long scanCacheTargetBytes = props.getLong(QueryServices.SCAN_CACHE_TARGET_BYTES_ATTRIB, QueryServicesOptions.DEFAULT_SCAN_CACHE_TARGET_BYTES);
+        if (scan.getCaching() <= 0 && scanCacheTargetBytes > 0) {
+            int defaultCaching = props.getInt(QueryServices.SCAN_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_SCAN_CACHE_SIZE);
+            int maxCaching = props.getInt(QueryServices.MAX_SCAN_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MAX_SCAN_CACHE_SIZE);
+            context.setScanCacheSizer(new ScanCacheSizer(scanCacheTargetBytes, projection.getEstimatedRowByteSize(), defaultCaching, maxCaching));
+        }
         scanner = newScanner();
         return scanner;
     }
@@ -30,15 +30,17 @@ package com.salesforce.phoenix.execute;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.apache.hadoop.hbase.HConstants;
-import org.apache.hadoop.hbase.client.HTableInterface;
-import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Pair;
 
 import com.google.common.collect.*;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.job.JobManager.JobCallable;
+import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.schema.*;
 import com.salesforce.phoenix.util.*;
 
@@ -276,48 +278,215 @@ public class MutationState implements SQLCloseable {
         return timeStamps;
     }
     
-    public void commit() throws SQLException {
-        int i = 0;
-        long[] serverTimeStamps = validate();
-        Iterator<Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>>> iterator = this.mutations.entrySet().iterator();
-        List<Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>>> committedList = Lists.newArrayListWithCapacity(this.mutations.size());
-        while (iterator.hasNext()) {
-            Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>> entry = iterator.next();
-            TableRef tableRef = entry.getKey();
-            long serverTimestamp = serverTimeStamps[i++];
-            Iterator<Pair<byte[],List<Mutation>>> mutationsIterator = addRowMutations(tableRef, entry.getValue(), serverTimestamp);
+    /**
+     * A chunk of mutations for a single HBase table, all destined for the same region server.
+     */
+    private static class TableMutations {
+        private final int entryIndex; // Index of the entry of the data table for which the mutations were produced
+        private final byte[] htableName;
+        private final List<Mutation> mutations;
+        
+        private TableMutations(int entryIndex, byte[] htableName, List<Mutation> mutations) {
+            this.entryIndex = entryIndex;
+            this.htableName = htableName;
+            this.mutations = mutations;
+        }
+    }
+    
+    /**
+     * Group the mutations of the data tables and of the index tables maintained on
+     * the client by the region server hosting each row and split them into chunks of
+     * at most commitBatchSize mutations.
+     * @return list of chunks for each region server
+     */
+    private Collection<List<TableMutations>> groupByServer(List<Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>>> entries, long[] serverTimeStamps, int commitBatchSize) throws SQLException, IOException {
+        ConnectionQueryServices services = connection.getQueryServices();
+        // The mutations of each server are kept apart by entry as well as by HBase table, as more than
+        // one entry may map to the same HBase table and a failed chunk must be reported for its own entry
+        Map<String,Map<Pair<Integer,ImmutableBytesPtr>,List<Mutation>>> mutationsByServer = Maps.newLinkedHashMap();
+        for (int i = 0; i < entries.size(); i++) {
+            Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>> entry = entries.get(i);
+            Iterator<Pair<byte[],List<Mutation>>> mutationsIterator = addRowMutations(entry.getKey(), entry.getValue(), serverTimeStamps[i]);
             while (mutationsIterator.hasNext()) {
                 Pair<byte[],List<Mutation>> pair = mutationsIterator.next();
-                byte[] htableName = pair.getFirst();
-                List<Mutation> mutations = pair.getSecond();
-                
-                SQLException sqlE = null;
-                HTableInterface hTable = connection.getQueryServices().getTable(htableName);
+                Pair<Integer,ImmutableBytesPtr> entryTable = new Pair<Integer,ImmutableBytesPtr>(i, new ImmutableBytesPtr(pair.getFirst()));
+                HTableInterface hTable = services.getTable(pair.getFirst());
                 try {
-                    hTable.batch(mutations);
-                    committedList.add(entry);
-                } catch (Exception e) {
-                    // Throw to client with both what was committed so far and what is left to be committed.
-                    // That way, client can either undo what was done or try again with what was not done.
-                    sqlE = new CommitException(e, this, new MutationState(committedList, this.sizeOffset, this.maxSize, this.connection));
+                    for (Mutation mutation : pair.getSecond()) {
+                        // Without an HTable, we cannot locate the region, so group by table only
+                        String server = hTable instanceof HTable ? ((HTable)hTable).getRegionLocation(mutation.getRow(), false).getHostnamePort() : "";
+                        Map<Pair<Integer,ImmutableBytesPtr>,List<Mutation>> serverMutations = mutationsByServer.get(server);
+                        if (serverMutations == null) {
+                            serverMutations = Maps.newLinkedHashMap();
+                            mutationsByServer.put(server, serverMutations);
+                        }
+                        List<Mutation> tableMutations = serverMutations.get(entryTable);
+                        if (tableMutations == null) {
+                            tableMutations = Lists.newArrayList();
+                            serverMutations.put(entryTable, tableMutations);
+                        }
+                        tableMutations.add(mutation);
+                    }
                 } finally {
+                    hTable.close();
+                }
+            }
+        }
+        List<List<TableMutations>> serverBatches = Lists.newArrayListWithExpectedSize(mutationsByServer.size());
+        for (Map<Pair<Integer,ImmutableBytesPtr>,List<Mutation>> serverMutations : mutationsByServer.values()) {
+            List<TableMutations> serverBatch = Lists.newArrayList();
+            for (Map.Entry<Pair<Integer,ImmutableBytesPtr>,List<Mutation>> tableEntry : serverMutations.entrySet()) {
+                Pair<Integer,ImmutableBytesPtr> entryTable = tableEntry.getKey();
+                for (List<Mutation> chunk : Lists.partition(tableEntry.getValue(), commitBatchSize)) {
+                    serverBatch.add(new TableMutations(entryTable.getFirst(), entryTable.getSecond().get(), chunk));
+                }
+            }
+            serverBatches.add(serverBatch);
+        }
+        return serverBatches;
+    }
+    
+    /**
+     * Send the chunks of mutations in order. If a chunk fails, the entries of it and of all the
+     * remaining chunks are marked as failed.
+     */
+    private void commit(List<TableMutations> batch, Set<Integer> failedEntries) throws Exception {
+        int i = 0;
+        try {
+            for (; i < batch.size(); i++) {
+                TableMutations tableMutations = batch.get(i);
+                HTableInterface hTable = connection.getQueryServices().getTable(tableMutations.htableName);
+                try {
+                    hTable.batch(tableMutations.mutations);
+                } finally {
+                    hTable.close();
+                }
+            }
+        } finally {
+            for (; i < batch.size(); i++) {
+                failedEntries.add(batch.get(i).entryIndex);
+            }
+        }
+    }
+    
+    /**
+     * Commit the uncommitted mutations. The mutations of all tables, including the index tables
+     * of tables with immutable rows, are grouped by region server and the groups are committed
+     * in parallel. If the commit fails, a {@link CommitException} is thrown holding the state for
+     * the tables whose mutations were all committed and the state that is left to be committed.
+     * @throws SQLException
+     */
+    public void commit() throws SQLException {
+        long[] serverTimeStamps = validate();
+        List<Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>>> entries = Lists.newArrayList(this.mutations.entrySet());
+        ConnectionQueryServices services = connection.getQueryServices();
+        ReadOnlyProps props = services.getProps();
+        int commitBatchSize = props.getInt(QueryServices.COMMIT_BATCH_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_COMMIT_BATCH_SIZE);
+        Collection<List<TableMutations>> serverBatches;
+        try {
+            serverBatches = groupByServer(entries, serverTimeStamps, commitBatchSize);
+        } catch (IOException e) {
+            // Nothing has been committed yet
+            throw new CommitException(ServerUtil.parseServerException(e), this, new MutationState(Collections.<Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>>>emptyList(), this.sizeOffset, this.maxSize, this.connection));
+        }
+        // The server batches run on a pool separate from the one HTable.batch uses, so that
+        // concurrent commits can never take the threads HTable needs to complete them. Fold
+        // the server batches into at most as many tasks as that pool has threads.
+        int maxConcurrency = Math.max(1, props.getInt(QueryServices.COMMIT_THREAD_POOL_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_COMMIT_THREAD_POOL_SIZE));
+        final List<List<TableMutations>> tasks = Lists.newArrayListWithExpectedSize(Math.min(maxConcurrency, serverBatches.size()));
+        int i = 0;
+        for (List<TableMutations> serverBatch : serverBatches) {
+            if (i < maxConcurrency) {
+                tasks.add(Lists.newArrayList(serverBatch));
+            } else {
+                tasks.get(i % maxConcurrency).addAll(serverBatch);
+            }
+            i++;
+        }
+        final Set<Integer> failedEntries = Collections.synchronizedSet(new HashSet<Integer>());
+        Exception firstException = null;
+        if (tasks.size() == 1) { // No need to go through the executor
+            try {
+                commit(tasks.get(0), failedEntries);
+            } catch (Exception e) {
+                firstException = e;
+            }
+        } else if (tasks.size() > 1) {
+            ExecutorService executor = services.getCommitExecutor();
+            List<Future<Void>> futures = Lists.newArrayListWithExpectedSize(tasks.size());
+            for (final List<TableMutations> task : tasks) {
+                Future<Void> future = null;
+                try {
+                    future = executor.submit(new JobCallable<Void>() {
+    
+                        @Override
+                        public Void call() throws Exception {
+                            commit(task, failedEntries);
+                            return null;
+                        }
+    
+                        /**
+                         * Defines the grouping for round robin behavior.  All threads spawned to
+                         * commit these mutations will be grouped together and time sliced with
+                         * other simultaneously executing jobs.
+                         */
+                        @Override
+                        public Object getJobId() {
+                            return MutationState.this;
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // No thread available, so commit on the caller thread instead
                     try {
-                        hTable.close();
-                    } catch (IOException e) {
-                        if (sqlE != null) {
-                            sqlE.setNextException(ServerUtil.parseServerException(e));
-                        } else {
-                            sqlE = ServerUtil.parseServerException(e);
+                        commit(task, failedEntries);
+                    } catch (Exception commitE) {
+                        if (firstException == null) {
+                            firstException = commitE;
                         }
-                    } finally {
-                        if (sqlE != null) {
-                            throw sqlE;
+                    }
+                }
+                futures.add(future);
+            }
+            // Bound the wait by a single timeout for all of the tasks together
+            int timeoutMs = props.getInt(QueryServices.THREAD_TIMEOUT_MS_ATTRIB, QueryServicesOptions.DEFAULT_THREAD_TIMEOUT_MS);
+            long deadlineMs = System.currentTimeMillis() + timeoutMs;
+            for (int j = 0; j < futures.size(); j++) {
+                if (futures.get(j) == null) { // Already committed on the caller thread
+                    continue;
+                }
+                try {
+                    long waitMs = Math.max(0, deadlineMs - System.currentTimeMillis());
+                    futures.get(j).get(waitMs, TimeUnit.MILLISECONDS);
+                } catch (Exception e) {
+                    if (e instanceof ExecutionException && e.getCause() instanceof Exception) {
+                        e = (Exception)e.getCause();
+                    } else {
+                        // Unknown how much of the task completed, so consider none of it committed.
+                        // Don't interrupt the task, as that would abort HBase RPCs still in flight.
+                        futures.get(j).cancel(false);
+                        for (TableMutations tableMutations : tasks.get(j)) {
+                            failedEntries.add(tableMutations.entryIndex);
                         }
                     }
+                    if (firstException == null) {
+                        firstException = e;
+                    }
                 }
             }
-            numEntries -= entry.getValue().size();
-            iterator.remove(); // Remove batches as we process them
+        }
+        List<Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>>> committedList = Lists.newArrayListWithCapacity(entries.size());
+        for (i = 0; i < entries.size(); i++) {
+            if (!failedEntries.contains(i)) {
+                Map.Entry<TableRef, Map<ImmutableBytesPtr,Map<PColumn,byte[]>>> entry = entries.get(i);
+                committedList.add(entry);
+                numEntries -= entry.getValue().size();
+                this.mutations.remove(entry.getKey()); // Remove batches once they're committed
+            }
+        }
+        if (firstException != null) {
+            // Throw to client with both what was committed so far and what is left to be committed.
+            // That way, client can either undo what was done or try again with what was not done.
+            throw new CommitException(firstException, this, new MutationState(committedList, this.sizeOffset, this.maxSize, this.connection));
         }
         assert(numEntries==0);
         assert(this.mutations.isEmpty());
@@ -29,6 +29,7 @@ package com.salesforce.phoenix.execute;
 
 
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.List;
 
 import com.salesforce.phoenix.compile.GroupByCompiler.GroupBy;
@@ -37,6 +38,7 @@ import com.salesforce.phoenix.compile.*;
 import com.salesforce.phoenix.coprocessor.ScanRegionObserver;
 import com.salesforce.phoenix.iterate.*;
 import com.salesforce.phoenix.iterate.ParallelIterators.ParallelIteratorFactory;
+import com.salesforce.phoenix.iterate.SpoolingResultIterator.SpoolingResultIteratorFactory;
 import com.salesforce.phoenix.parse.FilterableStatement;
 import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.schema.*;
@@ -79,6 +81,40 @@ public class ScanPlan extends BasicQueryPlan {
          * limit is provided, run query serially.
          */
         boolean isOrdered = !orderBy.getOrderByExpressions().isEmpty();
+        if (!isOrdered && PointLookupResultIterator.isPointLookup(context, tableRef, statement)) {
+            // Look up the rows by their keys, bypassing the splitting of the table into parallel scans
+            splits = Collections.emptyList();
+            if (projection.isProjectEmptyKeyValue()) {
+                ParallelIterators.projectEmptyKeyValue(context.getScan(), table);
+            }
+            final ResultIterator lookupIterator = new PointLookupResultIterator(context, tableRef, limit);
+            scanner = lookupIterator;
+            // No need to spool the rows, but a factory that mutates the rows must still process them
+            if (!(parallelIteratorFactory instanceof SpoolingResultIteratorFactory)) {
+                final PeekingResultIterator mutatingIterator = parallelIteratorFactory.newIterator(context, lookupIterator);
+                // Concatenate, as the mutating iterator must be closed once consumed, like those of parallel scans
+                scanner = new ConcatResultIterator(new ResultIterators() {
+                    @Override
+                    public List<PeekingResultIterator> getIterators() throws SQLException {
+                        return Collections.singletonList(mutatingIterator);
+                    }
+
+                    @Override
+                    public int size() {
+                        return 1;
+                    }
+
+                    @Override
+                    public void explain(List<String> planSteps) {
+                        lookupIterator.explain(planSteps);
+                    }
+                });
+            }
+            if (limit != null) {
+                scanner = new LimitingResultIterator(scanner, limit);
+            }
+            return new WrappedScanner(scanner, getProjector());
+        }
         ParallelIterators iterators = new ParallelIterators(context, tableRef, statement, projection, GroupBy.EMPTY_GROUP_BY, isOrdered ? null : limit, parallelIteratorFactory);
         splits = iterators.getSplits();
         if (isOrdered) {
@@ -90,6 +126,11 @@ public class ScanPlan extends BasicQueryPlan {
                             QueryServicesOptions.DEFAULT_ROW_KEY_ORDER_SALTED_TABLE) ||
                      orderBy == OrderBy.ROW_KEY_ORDER_BY)) { // ORDER BY was optimized out b/c query is in row key order
                 scanner = new MergeSortRowKeyResultIterator(iterators, SaltingUtil.NUM_SALTING_BYTES);
+            } else if (orderBy != OrderBy.ROW_KEY_ORDER_BY && services.getProps().getBoolean(
+                    QueryServices.COMPLETION_ORDER_SCAN_ATTRIB,
+                    QueryServicesOptions.DEFAULT_COMPLETION_ORDER_SCAN)) {
+                // Return rows as soon as any scan completes, since rows need not be in row key order
+                scanner = new CompletionOrderResultIterator(iterators);
             } else {
                 scanner = new ConcatResultIterator(iterators);
             }
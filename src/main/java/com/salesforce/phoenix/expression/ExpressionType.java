@@ -95,7 +95,11 @@ public enum ExpressionType {
     DoubleAddExpression(DoubleAddExpression.class),
     DoubleSubtractExpression(DoubleSubtractExpression.class),
     DoubleMultiplyExpression(DoubleMultiplyExpression.class),
-    DoubleDivideExpression(DoubleDivideExpression.class);
+    DoubleDivideExpression(DoubleDivideExpression.class),
+    ApproxPercentileContAggregateFunction(ApproxPercentileContAggregateFunction.class),
+    ApproxPercentileDiscAggregateFunction(ApproxPercentileDiscAggregateFunction.class),
+    ApproxPercentRankAggregateFunction(ApproxPercentRankAggregateFunction.class),
+    ApproxCountDistinctAggregateFunction(ApproxCountDistinctAggregateFunction.class);
     ExpressionType(Class<? extends Expression> clazz) {
         this.clazz = clazz;
     }
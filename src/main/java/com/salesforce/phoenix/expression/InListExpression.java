@@ -45,15 +45,18 @@ import com.salesforce.phoenix.util.ImmutableBytesPtr;
 /*
  * Implementation of a SQL foo IN (a,b,c) expression. Other than the first
  * expression, child expressions must be constants.
- *
- * TODO: optimize this for row key columns by having multiple scans move
- * from key to key using a custom filter with a hint
+ * 
+ * The distinct values are kept sorted in a single byte array, along with the
+ * offset of each one, so that a value is found through a binary search without
+ * any per row allocation and large IN lists take little memory and serialize
+ * compactly.
  */
 public class InListExpression extends BaseSingleExpression {
-    private Set<ImmutableBytesPtr> values;
-    private int valuesByteLength;
+    // Distinct values, sorted by their bytes and concatenated
+    private byte[] valuesBytes;
+    // Offset of each value in valuesBytes, followed by the length of valuesBytes
+    private int[] offsets;
     private boolean containsNull;
-    private ImmutableBytesPtr value = new ImmutableBytesPtr();
 
     public InListExpression() {
     }
@@ -62,6 +65,7 @@ public class InListExpression extends BaseSingleExpression {
         super(children.get(0));
         PDataType type = getChild().getDataType();
         Set<ImmutableBytesPtr> values = Sets.newHashSetWithExpectedSize(children.size()-1);
+        int valuesByteLength = 0;
         for (int i = 1; i < children.size(); i++) {
             LiteralExpression child = (LiteralExpression)children.get(i);
             PDataType childType = child.getDataType();
@@ -81,7 +85,41 @@ public class InListExpression extends BaseSingleExpression {
         // Sort values by byte value
         ImmutableBytesPtr[] valuesArray = values.toArray(new ImmutableBytesPtr[values.size()]);
         Arrays.sort(valuesArray, ByteUtil.BYTES_PTR_COMPARATOR);
-        this.values = new LinkedHashSet<ImmutableBytesPtr>(Arrays.asList(valuesArray));
+        valuesBytes = new byte[valuesByteLength];
+        offsets = new int[valuesArray.length + 1];
+        int offset = 0;
+        for (int i = 0; i < valuesArray.length; i++) {
+            ImmutableBytesPtr ptr = valuesArray[i];
+            offsets[i] = offset;
+            System.arraycopy(ptr.get(), ptr.getOffset(), valuesBytes, offset, ptr.getLength());
+            offset += ptr.getLength();
+        }
+        offsets[valuesArray.length] = offset;
+    }
+    
+    private int getValueCount() {
+        return offsets.length - 1;
+    }
+    
+    private int getValueLength(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    private boolean contains(byte[] b, int offset, int length) {
+        int low = 0;
+        int high = getValueCount() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Bytes.compareTo(valuesBytes, offsets[mid], getValueLength(mid), b, offset, length);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -89,8 +127,7 @@ public class InListExpression extends BaseSingleExpression {
         if (!getChild().evaluate(tuple, ptr)) {
             return false;
         }
-        value.set(ptr);
-        if (values.contains(value)) {
+        if (contains(ptr.get(), ptr.getOffset(), ptr.getLength())) {
             ptr.set(PDataType.TRUE_BYTES);
             return true;
         }
@@ -106,7 +143,8 @@ public class InListExpression extends BaseSingleExpression {
         final int prime = 31;
         int result = 1;
         result = prime * result + (containsNull ? 1231 : 1237);
-        result = prime * result + values.hashCode();
+        result = prime * result + Arrays.hashCode(valuesBytes);
+        result = prime * result + Arrays.hashCode(offsets);
         return result;
     }
 
@@ -117,7 +155,8 @@ public class InListExpression extends BaseSingleExpression {
         if (getClass() != obj.getClass()) return false;
         InListExpression other = (InListExpression)obj;
         if (containsNull != other.containsNull) return false;
-        if (!values.equals(other.values)) return false;
+        if (!Arrays.equals(valuesBytes, other.valuesBytes)) return false;
+        if (!Arrays.equals(offsets, other.offsets)) return false;
         return true;
     }
 
@@ -136,30 +175,26 @@ public class InListExpression extends BaseSingleExpression {
         super.readFields(input);
         boolean fixedWidth = getChild().getDataType().isFixedWidth();
         containsNull = input.readBoolean();
-        byte[] valuesBytes = Bytes.readByteArray(input);
-        valuesByteLength = valuesBytes.length;
-        int len = fixedWidth ? valuesByteLength / getChild().getByteSize() : WritableUtils.readVInt(input);
-        values = Sets.newLinkedHashSetWithExpectedSize(len);
+        valuesBytes = Bytes.readByteArray(input);
+        int len = fixedWidth ? valuesBytes.length / getChild().getByteSize() : WritableUtils.readVInt(input);
+        offsets = new int[len + 1];
         int offset = 0;
         for (int i = 0; i < len; i++) {
-            int valueLen = fixedWidth ? getChild().getByteSize() : WritableUtils.readVInt(input);
-            values.add(new ImmutableBytesPtr(valuesBytes,offset,valueLen));
-            offset += valueLen;
+            offsets[i] = offset;
+            offset += fixedWidth ? getChild().getByteSize() : WritableUtils.readVInt(input);
         }
+        offsets[len] = offset;
     }
 
     @Override
     public void write(DataOutput output) throws IOException {
         super.write(output);
         output.writeBoolean(containsNull);
-        WritableUtils.writeVInt(output, valuesByteLength);
-        for (ImmutableBytesPtr ptr : values) {
-            output.write(ptr.get(), ptr.getOffset(), ptr.getLength());
-        }
+        Bytes.writeByteArray(output, valuesBytes);
         if (!getChild().getDataType().isFixedWidth()) {
-            WritableUtils.writeVInt(output, values.size());
-            for (ImmutableBytesPtr ptr : values) {
-                WritableUtils.writeVInt(output, ptr.getLength());
+            WritableUtils.writeVInt(output, getValueCount());
+            for (int i = 0; i < getValueCount(); i++) {
+                WritableUtils.writeVInt(output, getValueLength(i));
             }
         }
     }
@@ -180,31 +215,20 @@ public class InListExpression extends BaseSingleExpression {
      * @return the list of values in the IN expression
      */
     public List<byte[]> getKeys() {
-      List<byte[]> keys = new ArrayList<byte[]>(values.size());
-      for (ImmutableBytesPtr value : values) {
-        keys.add(value.getOffset() == 0 && value.getLength() == value.get().length ? value.get() : value.copyBytes());
-      }
-      return keys;
+        List<byte[]> keys = new ArrayList<byte[]>(getValueCount());
+        for (int i = 0; i < getValueCount(); i++) {
+            keys.add(Arrays.copyOfRange(valuesBytes, offsets[i], offsets[i + 1]));
+        }
+        return keys;
     }
 
     public ImmutableBytesWritable getMinKey() {
-        ImmutableBytesWritable minKey = null;
-        for (ImmutableBytesPtr value : values) {
-            if (minKey == null || Bytes.compareTo(value.get(), value.getOffset(), value.getLength(), minKey.get(), minKey.getOffset(), minKey.getLength()) < 0)  {
-                minKey = value;
-            }
-        }
-        return minKey;
+        return getValueCount() == 0 ? null : new ImmutableBytesWritable(valuesBytes, offsets[0], getValueLength(0));
     }
 
     public ImmutableBytesWritable getMaxKey() {
-        ImmutableBytesWritable maxKey = null;
-        for (ImmutableBytesPtr value : values) {
-            if (maxKey == null || Bytes.compareTo(value.get(), value.getOffset(), value.getLength(), maxKey.get(), maxKey.getOffset(), maxKey.getLength()) > 0)  {
-                maxKey = value;
-            }
-        }
-        return maxKey;
+        int last = getValueCount() - 1;
+        return last < 0 ? null : new ImmutableBytesWritable(valuesBytes, offsets[last], getValueLength(last));
     }
 
     @Override
@@ -216,9 +240,9 @@ public class InListExpression extends BaseSingleExpression {
         if (containsNull) {
             buf.append("null,");
         }
-        for (ImmutableBytesPtr value : values) {
+        for (int i = 0; i < getValueCount(); i++) {
             if (isString) buf.append('\'');
-            buf.append(type.toObject(value));
+            buf.append(type.toObject(valuesBytes, offsets[i], getValueLength(i)));
             if (isString) buf.append('\'');
             buf.append(',');
         }
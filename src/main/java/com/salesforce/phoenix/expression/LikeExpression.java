@@ -30,13 +30,13 @@ package com.salesforce.phoenix.expression;
 import java.io.DataInput;
 import java.io.IOException;
 import java.util.List;
-import java.util.regex.Pattern;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.salesforce.phoenix.expression.visitor.ExpressionVisitor;
+import com.salesforce.phoenix.schema.ColumnModifier;
 import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.schema.tuple.Tuple;
 import com.salesforce.phoenix.util.StringUtil;
@@ -50,6 +50,9 @@ import com.salesforce.phoenix.util.StringUtil;
  * characters may be escaped by preceding them with a '\'.
  * 
  * Example: foo LIKE 'ab%' will match a row in which foo starts with 'ab'
+ * 
+ * The matching is done by a {@link LikeMatcher} directly against the bytes of the string,
+ * which is created once for a constant pattern and otherwise obtained from a bounded cache.
  *
  * @author jtaylor
  * @since 0.1
@@ -146,7 +149,7 @@ public class LikeExpression extends BaseCompoundExpression {
         }
     }
 
-    private static String toPattern(String s) {
+    static String toPattern(String s) {
         StringBuilder sb = new StringBuilder(s.length());
 
         // From the JDK doc: \Q and \E protect everything between them
@@ -195,7 +198,9 @@ public class LikeExpression extends BaseCompoundExpression {
 //        return sb.toString();
 //    }
 
-    private Pattern pattern;
+    // Regular expression equivalent of a constant pattern, used to determine the scan key range
+    private String pattern;
+    private LikeMatcher matcher;
     
     public LikeExpression() {
     }
@@ -206,7 +211,7 @@ public class LikeExpression extends BaseCompoundExpression {
     }
     
     public boolean startsWithWildcard() {
-        return pattern != null && pattern.pattern().startsWith("\\Q\\E");
+        return pattern != null && pattern.startsWith("\\Q\\E");
     }
     
     private void init() {
@@ -214,7 +219,8 @@ public class LikeExpression extends BaseCompoundExpression {
         if (e instanceof LiteralExpression) {
             LiteralExpression patternExpression = (LiteralExpression)e;
             String value = (String)patternExpression.getValue();
-            pattern = Pattern.compile(toPattern(value));
+            pattern = toPattern(value);
+            matcher = LikeMatcher.compile(value);
         }
     }
 
@@ -228,18 +234,19 @@ public class LikeExpression extends BaseCompoundExpression {
 
     @Override
     public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
-        Pattern pattern = this.pattern;
-        if (pattern == null) { // TODO: don't allow? this is going to be slooowwww
+        LikeMatcher matcher = this.matcher;
+        String likePattern = null;
+        if (matcher == null) {
             if (!getPatternExpression().evaluate(tuple, ptr)) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("LIKE is FALSE: pattern is null");
                 }
                 return false;
             }
-            String value = (String)PDataType.VARCHAR.toObject(ptr, getPatternExpression().getColumnModifier());
-            pattern = Pattern.compile(toPattern(value));
+            likePattern = (String)PDataType.VARCHAR.toObject(ptr, getPatternExpression().getColumnModifier());
+            matcher = LikeMatcher.get(likePattern);
             if (logger.isDebugEnabled()) {
-                logger.debug("LIKE pattern is expression: " + pattern.pattern());
+                logger.debug("LIKE pattern is expression: " + likePattern);
             }
         }
         
@@ -250,12 +257,13 @@ public class LikeExpression extends BaseCompoundExpression {
             return false;
         }
         
-        String value = (String)PDataType.VARCHAR.toObject(ptr, getStrExpression().getColumnModifier());
-        boolean matched = pattern.matcher(value).matches();
-        ptr.set(matched ? PDataType.TRUE_BYTES : PDataType.FALSE_BYTES);
+        ColumnModifier columnModifier = getStrExpression().getColumnModifier();
+        boolean matched = matcher.matches(ptr.get(), ptr.getOffset(), ptr.getLength(), columnModifier);
         if (logger.isDebugEnabled()) {
-            logger.debug("LIKE(value='" + value + "'pattern='" + pattern.pattern() + "' is " + matched);
+            String value = (String)PDataType.VARCHAR.toObject(ptr, columnModifier);
+            logger.debug("LIKE(value='" + value + "'pattern='" + (likePattern == null ? getPatternExpression() : likePattern) + "' is " + matched);
         }
+        ptr.set(matched ? PDataType.TRUE_BYTES : PDataType.FALSE_BYTES);
         return true;
     }
 
@@ -284,7 +292,6 @@ public class LikeExpression extends BaseCompoundExpression {
         if (pattern == null) {
             return "";
         }
-        String pattern = this.pattern.pattern();
         int fromIndex = "\\Q".length();
         return pattern.substring(fromIndex, pattern.indexOf("\\E", fromIndex));
     }
@@ -293,7 +300,6 @@ public class LikeExpression extends BaseCompoundExpression {
         if (pattern == null) {
             return false;
         }
-        String pattern = this.pattern.pattern();
         String endsWith = ZERO_OR_MORE + "\\E";
         return pattern.endsWith(endsWith) && 
         pattern.lastIndexOf(ANY_ONE, pattern.length() - endsWith.length() - 1) == -1 &&
@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.salesforce.phoenix.schema.ColumnModifier;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.util.StringUtil;
+
+
+/**
+ * 
+ * Matcher for a LIKE pattern which is classified once, so that the common shapes of
+ * patterns ('abc', 'abc%', '%abc', '%abc%' and more generally any pattern with only
+ * '%' wildcards) are evaluated directly against the UTF-8 encoded bytes of a value,
+ * without decoding it into a String. Since UTF-8 is self synchronizing, a byte match
+ * of a literal segment is always a character match. Patterns containing the single
+ * character '_' wildcard fall back to a regular expression.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public abstract class LikeMatcher {
+    private static final int MAX_CACHED_MATCHERS = 1000;
+    // Matchers for patterns that are not constant, such as a pattern stored in a column
+    private static final Cache<String, LikeMatcher> matchers = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_MATCHERS).build();
+    
+    /**
+     * Get the matcher for a LIKE pattern from a bounded cache, compiling it if necessary.
+     * Used when the pattern is not a constant, and thus may vary by row.
+     */
+    public static LikeMatcher get(final String likePattern) {
+        try {
+            return matchers.get(likePattern, new Callable<LikeMatcher>() {
+                @Override
+                public LikeMatcher call() {
+                    return compile(likePattern);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+    
+    /**
+     * Classify a LIKE pattern and create the matcher best suited for it
+     * @param likePattern the pattern which supports '_' for a single character and '%' for
+     * zero or more characters, where these characters may be escaped by preceding them with a '\'.
+     */
+    public static LikeMatcher compile(String likePattern) {
+        // The literal segments of the pattern, separated by the '%' wildcards
+        List<String> segments = new ArrayList<String>();
+        StringBuilder segment = new StringBuilder(likePattern.length());
+        boolean wasSlash = false;
+        for (int i = 0; i < likePattern.length(); i++) {
+            char c = likePattern.charAt(i);
+            if (wasSlash) {
+                segment.append(c);
+                wasSlash = false;
+            } else if (c == StringUtil.SINGLE_CHAR_LIKE) {
+                return new RegexMatcher(likePattern);
+            } else if (c == StringUtil.MULTI_CHAR_LIKE) {
+                segments.add(segment.toString());
+                segment.setLength(0);
+            } else if (c == '\\') {
+                wasSlash = true;
+            } else {
+                segment.append(c);
+            }
+        }
+        segments.add(segment.toString());
+        byte[] prefix = Bytes.toBytes(segments.get(0));
+        if (segments.size() == 1) {
+            return new ExactMatcher(prefix);
+        }
+        byte[] suffix = Bytes.toBytes(segments.get(segments.size() - 1));
+        List<byte[]> middles = new ArrayList<byte[]>(segments.size() - 2);
+        for (int i = 1; i < segments.size() - 1; i++) {
+            // Consecutive wildcards are the same as one
+            if (segments.get(i).length() > 0) {
+                middles.add(Bytes.toBytes(segments.get(i)));
+            }
+        }
+        if (middles.isEmpty()) {
+            if (suffix.length == 0) {
+                return new StartsWithMatcher(prefix);
+            }
+            if (prefix.length == 0) {
+                return new EndsWithMatcher(suffix);
+            }
+        } else if (middles.size() == 1 && prefix.length == 0 && suffix.length == 0) {
+            return new ContainsMatcher(middles.get(0));
+        }
+        return new SegmentsMatcher(prefix, middles.toArray(new byte[middles.size()][]), suffix);
+    }
+    
+    /**
+     * @param b the bytes of a VARCHAR value
+     * @param offset the offset of the value in b
+     * @param length the length of the value
+     * @param columnModifier the modifier with which the bytes were written
+     * @return true if the value matches the LIKE pattern and false otherwise
+     */
+    public abstract boolean matches(byte[] b, int offset, int length, ColumnModifier columnModifier);
+    
+    private static byte[] invert(byte[] literal) {
+        return ColumnModifier.SORT_DESC.apply(literal, 0, new byte[literal.length], 0, literal.length);
+    }
+    
+    private static boolean matchesAt(byte[] b, int offset, byte[] literal) {
+        for (int i = 0; i < literal.length; i++) {
+            if (b[offset + i] != literal[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @return the index of the first occurrence of literal in b between offset and endOffset, or -1 if not found
+     */
+    private static int indexOf(byte[] b, int offset, int endOffset, byte[] literal) {
+        if (literal.length == 0) {
+            return offset;
+        }
+        byte first = literal[0];
+        for (int i = offset, last = endOffset - literal.length; i <= last; i++) {
+            if (b[i] == first && matchesAt(b, i, literal)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Base class for a matcher of a single literal, kept in both byte orders
+     */
+    private static abstract class LiteralMatcher extends LikeMatcher {
+        protected final byte[] literal;
+        protected final byte[] invertedLiteral;
+        
+        private LiteralMatcher(byte[] literal) {
+            this.literal = literal;
+            this.invertedLiteral = invert(literal);
+        }
+        
+        protected byte[] getLiteral(ColumnModifier columnModifier) {
+            return columnModifier == null ? literal : invertedLiteral;
+        }
+    }
+    
+    private static class ExactMatcher extends LiteralMatcher {
+        private ExactMatcher(byte[] literal) {
+            super(literal);
+        }
+
+        @Override
+        public boolean matches(byte[] b, int offset, int length, ColumnModifier columnModifier) {
+            return length == literal.length && matchesAt(b, offset, getLiteral(columnModifier));
+        }
+    }
+    
+    private static class StartsWithMatcher extends LiteralMatcher {
+        private StartsWithMatcher(byte[] literal) {
+            super(literal);
+        }
+
+        @Override
+        public boolean matches(byte[] b, int offset, int length, ColumnModifier columnModifier) {
+            return length >= literal.length && matchesAt(b, offset, getLiteral(columnModifier));
+        }
+    }
+    
+    private static class EndsWithMatcher extends LiteralMatcher {
+        private EndsWithMatcher(byte[] literal) {
+            super(literal);
+        }
+
+        @Override
+        public boolean matches(byte[] b, int offset, int length, ColumnModifier columnModifier) {
+            return length >= literal.length && matchesAt(b, offset + length - literal.length, getLiteral(columnModifier));
+        }
+    }
+    
+    private static class ContainsMatcher extends LiteralMatcher {
+        private ContainsMatcher(byte[] literal) {
+            super(literal);
+        }
+
+        @Override
+        public boolean matches(byte[] b, int offset, int length, ColumnModifier columnModifier) {
+            return indexOf(b, offset, offset + length, getLiteral(columnModifier)) >= 0;
+        }
+    }
+    
+    /**
+     * Matcher for any other pattern with only '%' wildcards, which matches the literal
+     * before the first wildcard and after the last wildcard at the ends of the value and
+     * then finds the literals between wildcards in order in the rest of the value.
+     */
+    private static class SegmentsMatcher extends LikeMatcher {
+        private final LiteralMatcher prefix;
+        private final LiteralMatcher suffix;
+        private final LiteralMatcher[] middles;
+        
+        private SegmentsMatcher(byte[] prefix, byte[][] middles, byte[] suffix) {
+            this.prefix = new StartsWithMatcher(prefix);
+            this.suffix = new EndsWithMatcher(suffix);
+            this.middles = new LiteralMatcher[middles.length];
+            for (int i = 0; i < middles.length; i++) {
+                this.middles[i] = new ContainsMatcher(middles[i]);
+            }
+        }
+
+        @Override
+        public boolean matches(byte[] b, int offset, int length, ColumnModifier columnModifier) {
+            // The prefix and suffix may not overlap
+            if (length < prefix.literal.length + suffix.literal.length
+                    || !prefix.matches(b, offset, length, columnModifier)
+                    || !suffix.matches(b, offset, length, columnModifier)) {
+                return false;
+            }
+            int endOffset = offset + length - suffix.literal.length;
+            offset += prefix.literal.length;
+            for (LiteralMatcher middle : middles) {
+                byte[] literal = middle.getLiteral(columnModifier);
+                int index = indexOf(b, offset, endOffset, literal);
+                if (index < 0) {
+                    return false;
+                }
+                offset = index + literal.length;
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Matcher for patterns with a single character wildcard, which needs to decode
+     * the value to know where each character starts.
+     */
+    private static class RegexMatcher extends LikeMatcher {
+        private final Pattern pattern;
+        
+        private RegexMatcher(String likePattern) {
+            this.pattern = Pattern.compile(LikeExpression.toPattern(likePattern), Pattern.DOTALL);
+        }
+
+        @Override
+        public boolean matches(byte[] b, int offset, int length, ColumnModifier columnModifier) {
+            String value = length == 0 ? "" : (String)PDataType.VARCHAR.toObject(b, offset, length, PDataType.VARCHAR, columnModifier);
+            return pattern.matcher(value).matches();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.aggregator;
+
+import java.util.List;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.LiteralExpression;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.HyperLogLog;
+
+
+/**
+ * 
+ * Client side Aggregator for APPROX_COUNT_DISTINCT aggregations, which merges the
+ * {@link HyperLogLog} sketch returned by each {@link ApproxCountDistinctServerAggregator}.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class ApproxCountDistinctClientAggregator extends BaseAggregator {
+    private final List<Expression> exps;
+    private HyperLogLog sketch;
+    private final byte[] buffer = new byte[PDataType.LONG.getByteSize()];
+
+    public ApproxCountDistinctClientAggregator(List<Expression> exps) {
+        super(null);
+        this.exps = exps;
+    }
+
+    @Override
+    public void aggregate(Tuple tuple, ImmutableBytesWritable ptr) {
+        if (sketch == null) {
+            // Second expression will be a LiteralExpression with the precision of the sketch
+            int precision = ((Number)((LiteralExpression)exps.get(1)).getValue()).intValue();
+            sketch = new HyperLogLog(precision);
+        }
+        sketch.merge(ptr.get(), ptr.getOffset());
+    }
+
+    @Override
+    public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+        PDataType.LONG.getCodec().encodeLong(sketch == null ? 0 : sketch.estimate(), buffer, 0);
+        ptr.set(buffer);
+        return true;
+    }
+
+    @Override
+    public boolean isNullable() {
+        return false;
+    }
+
+    @Override
+    public PDataType getDataType() {
+        return PDataType.VARBINARY;
+    }
+
+    @Override
+    public void reset() {
+        if (sketch != null) {
+            sketch.reset();
+        }
+        super.reset();
+    }
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.aggregator;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.schema.PDataType;
+
+
+/**
+ * 
+ * Client side Aggregator for APPROX_PERCENT_RANK aggregations, which returns the approximate
+ * fraction of values that are before or equal to the given value in the order of the function.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class ApproxPercentRankClientAggregator extends BaseApproxPercentileClientAggregator {
+
+    public ApproxPercentRankClientAggregator(List<Expression> exps) {
+        super(exps);
+    }
+
+    @Override
+    protected byte[] evaluate() {
+        double value = ((Number)getValue()).doubleValue();
+        long count = sketch.getCount();
+        long rank = isAscending() ? sketch.getRank(value, true) : count - sketch.getRank(value, true);
+        return PDataType.DECIMAL.toBytes(new BigDecimal((double)rank / count));
+    }
+}
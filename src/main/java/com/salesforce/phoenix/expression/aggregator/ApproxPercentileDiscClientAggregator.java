@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.aggregator;
+
+import java.util.List;
+
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.schema.PDataType;
+
+
+/**
+ * 
+ * Client side Aggregator for APPROX_PERCENTILE_DISC aggregations, which returns the
+ * approximate first value whose cumulative distribution is greater than or equal
+ * to the requested percentile, as the data type of the column.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class ApproxPercentileDiscClientAggregator extends BaseApproxPercentileClientAggregator {
+
+    public ApproxPercentileDiscClientAggregator(List<Expression> exps) {
+        super(exps);
+    }
+
+    @Override
+    protected byte[] evaluate() {
+        double p = ((Number)getValue()).doubleValue();
+        long rank = Math.max(1, (long)Math.ceil(p * sketch.getCount()));
+        double result = getValueAtRank(rank);
+        PDataType type = exps.get(0).getDataType();
+        return type.toBytes(type.toObject(result, PDataType.DOUBLE));
+    }
+}
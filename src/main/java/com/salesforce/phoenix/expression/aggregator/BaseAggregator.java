@@ -27,9 +27,13 @@
  ******************************************************************************/
 package com.salesforce.phoenix.expression.aggregator;
 
+import java.math.BigDecimal;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
 import com.salesforce.phoenix.expression.BaseTerminalExpression;
 import com.salesforce.phoenix.schema.ColumnModifier;
+import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.util.SizedUtil;
 
 /**
@@ -55,4 +59,14 @@ public abstract class BaseAggregator extends BaseTerminalExpression implements A
     public int getSize() {
         return SizedUtil.OBJECT_SIZE;
     }
+    
+    /**
+     * Decode a numeric value of the given type as a double
+     */
+    protected double toDouble(ImmutableBytesWritable ptr, PDataType inputDataType) {
+        if (inputDataType == PDataType.DECIMAL) {
+            return ((BigDecimal)PDataType.DECIMAL.toObject(ptr, inputDataType, columnModifier)).doubleValue();
+        }
+        return inputDataType.getCodec().decodeDouble(ptr, columnModifier);
+    }
 }
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.aggregator;
+
+import java.util.List;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.LiteralExpression;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.QuantileSketch;
+
+
+/**
+ * 
+ * Base class for the client side Aggregators of the approximate percentile functions,
+ * which merge the {@link QuantileSketch} returned by each {@link ApproxPercentileServerAggregator}.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public abstract class BaseApproxPercentileClientAggregator extends BaseAggregator {
+    protected final List<Expression> exps;
+    protected QuantileSketch sketch;
+    private byte[] cachedResult;
+
+    public BaseApproxPercentileClientAggregator(List<Expression> exps) {
+        super(null);
+        this.exps = exps;
+    }
+    
+    /**
+     * @return true if the ordering is ascending, based on the second expression,
+     *  which will be a LiteralExpression of Boolean type.
+     */
+    protected boolean isAscending() {
+        return (Boolean)((LiteralExpression)exps.get(1)).getValue();
+    }
+    
+    /**
+     * @return the value of the third expression, which will be a LiteralExpression
+     */
+    protected Object getValue() {
+        return ((LiteralExpression)exps.get(2)).getValue();
+    }
+    
+    /**
+     * Get the approximate value at the given rank in the order of the function
+     */
+    protected double getValueAtRank(long rank) {
+        return sketch.getValueAtRank(isAscending() ? rank : sketch.getCount() - rank + 1);
+    }
+
+    @Override
+    public void aggregate(Tuple tuple, ImmutableBytesWritable ptr) {
+        if (sketch == null) {
+            // Fourth expression will be a LiteralExpression with the size of the sketch
+            int sketchSize = ((Number)((LiteralExpression)exps.get(3)).getValue()).intValue();
+            sketch = new QuantileSketch(sketchSize);
+        }
+        sketch.merge(ptr.get(), ptr.getOffset());
+        cachedResult = null;
+    }
+
+    @Override
+    public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+        if (sketch == null || sketch.isEmpty()) {
+            return false;
+        }
+        if (cachedResult == null) {
+            cachedResult = evaluate();
+        }
+        ptr.set(cachedResult);
+        return true;
+    }
+    
+    /**
+     * @return the serialized result of the function based on the merged sketch
+     */
+    protected abstract byte[] evaluate();
+
+    @Override
+    public PDataType getDataType() {
+        return PDataType.VARBINARY;
+    }
+    
+    @Override
+    public void reset() {
+        if (sketch != null) {
+            sketch.reset();
+        }
+        cachedResult = null;
+        super.reset();
+    }
+}
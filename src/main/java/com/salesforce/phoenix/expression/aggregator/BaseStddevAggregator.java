@@ -29,74 +29,80 @@ package com.salesforce.phoenix.expression.aggregator;
 
 import java.math.BigDecimal;
 import java.util.List;
-import java.util.Map.Entry;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.schema.tuple.Tuple;
-import com.salesforce.phoenix.util.ImmutableBytesPtr;
+import com.salesforce.phoenix.util.SizedUtil;
 
 /**
+ * Client side Aggregator for STDDEV_POP and STDDEV_SAMP which merges the count, mean and
+ * sum of squared deviations computed by each {@link StddevServerAggregator} using the
+ * parallel variance formula.
  * 
  * @author anoopsjohn
  * @since 1.2.1
  */
-public abstract class BaseStddevAggregator extends DistinctValueWithCountClientAggregator {
+public abstract class BaseStddevAggregator extends BaseAggregator {
 
-    protected Expression stdDevColExp;
-    private BigDecimal cachedResult = null;
+    protected long count = 0L;
+    private double mean = 0.0;
+    private double m2 = 0.0;
+    private byte[] buffer;
 
     public BaseStddevAggregator(List<Expression> exps) {
-        this.stdDevColExp = exps.get(0);
+        super(null);
     }
 
     @Override
-    protected int getBufferLength() {
-        return PDataType.DECIMAL.getByteSize();
+    public void aggregate(Tuple tuple, ImmutableBytesWritable ptr) {
+        byte[] b = ptr.get();
+        int offset = ptr.getOffset();
+        long otherCount = StddevServerAggregator.getCount(b, offset);
+        if (otherCount == 0) {
+            return;
+        }
+        double otherMean = StddevServerAggregator.getMean(b, offset);
+        double otherM2 = StddevServerAggregator.getM2(b, offset);
+        long totalCount = count + otherCount;
+        double delta = otherMean - mean;
+        mean += delta * otherCount / totalCount;
+        m2 += otherM2 + delta * delta * ((double)count * otherCount / totalCount);
+        count = totalCount;
     }
 
     @Override
     public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
-        if (cachedResult == null) {
-            double ssd = sumSquaredDeviation();
-            double result = Math.sqrt(ssd / getDataPointsCount());
-            cachedResult = new BigDecimal(result);
-        }
-        if (buffer == null) {
-            initBuffer();
+        long dataPointsCount = getDataPointsCount();
+        if (dataPointsCount <= 0) {
+            return false;
         }
-        buffer = PDataType.DECIMAL.toBytes(cachedResult);
+        BigDecimal result = new BigDecimal(Math.sqrt(m2 / dataPointsCount));
+        buffer = PDataType.DECIMAL.toBytes(result);
         ptr.set(buffer);
         return true;
     }
     
     protected abstract long getDataPointsCount();
     
-    private double sumSquaredDeviation() {
-        double m = mean();
-        double result = 0.0;
-        for (Entry<ImmutableBytesPtr, Integer> entry : valueVsCount.entrySet()) {
-            double colValue = (Double)PDataType.DOUBLE.toObject(entry.getKey(), this.stdDevColExp.getDataType());
-            double delta = colValue - m;
-            result += (delta * delta) * entry.getValue();
-        }
-        return result;
-    }
-
-    private double mean() {
-        double sum = 0.0;
-        for (Entry<ImmutableBytesPtr, Integer> entry : valueVsCount.entrySet()) {
-            double colValue = (Double)PDataType.DOUBLE.toObject(entry.getKey(), this.stdDevColExp.getDataType());
-            sum += colValue * entry.getValue();
-        }
-        return sum / totalCount;
+    @Override
+    public PDataType getDataType() {
+        return PDataType.VARBINARY;
     }
     
     @Override
     public void reset() {
+        count = 0L;
+        mean = 0.0;
+        m2 = 0.0;
+        buffer = null;
         super.reset();
-        this.cachedResult = null;
+    }
+
+    @Override
+    public int getSize() {
+        return super.getSize() + 3 * SizedUtil.LONG_SIZE + SizedUtil.ARRAY_SIZE + PDataType.DECIMAL.getByteSize();
     }
 }
@@ -33,6 +33,7 @@ import java.util.List;
 
 import org.apache.hadoop.io.WritableUtils;
 
+import com.salesforce.phoenix.cache.DeserializationCache.Deserializer;
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.ExpressionType;
 import com.salesforce.phoenix.expression.function.SingleAggregateFunction;
@@ -48,6 +49,21 @@ import com.salesforce.phoenix.schema.tuple.Tuple;
  */
 public class ServerAggregators extends Aggregators {
     public static final ServerAggregators EMPTY_AGGREGATORS = new ServerAggregators(new SingleAggregateFunction[0], new Aggregator[0], new Expression[0], 0);
+    /**
+     * Deserializer through which region servers cache the aggregators of a scan. Since aggregators
+     * hold the aggregated values, each scan uses its own instance, which is reset before being reused.
+     */
+    public static final Deserializer<ServerAggregators> DESERIALIZER = new Deserializer<ServerAggregators>() {
+        @Override
+        public ServerAggregators deserialize(byte[] b) {
+            return ServerAggregators.deserialize(b);
+        }
+
+        @Override
+        public void reset(ServerAggregators aggregators) {
+            aggregators.reset(aggregators.getAggregators());
+        }
+    };
     private final Expression[] expressions;
     
     private ServerAggregators(SingleAggregateFunction[] functions, Aggregator[] aggregators, Expression[] expressions, int minNullableIndex) {
@@ -45,6 +45,6 @@ public class StddevPopAggregator extends BaseStddevAggregator {
 
     @Override
     protected long getDataPointsCount() {
-        return totalCount;
+        return count;
     }
 }
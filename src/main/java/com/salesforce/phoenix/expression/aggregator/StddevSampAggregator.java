@@ -45,6 +45,6 @@ public class StddevSampAggregator extends BaseStddevAggregator {
 
     @Override
     protected long getDataPointsCount() {
-        return totalCount - 1;
+        return count - 1;
     }
 }
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.aggregator;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.phoenix.schema.ColumnModifier;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.SizedUtil;
+
+
+/**
+ * 
+ * Server side Aggregator for STDDEV_POP and STDDEV_SAMP which computes the count, mean
+ * and sum of squared deviations from the mean of the values in a single pass using
+ * Welford's algorithm. These moments are merged by {@link BaseStddevAggregator} on
+ * the client, so only a constant number of bytes is returned per group.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class StddevServerAggregator extends BaseAggregator {
+    public static final int BUFFER_LENGTH = Bytes.SIZEOF_LONG + 2 * Bytes.SIZEOF_DOUBLE;
+    
+    private final PDataType inputDataType;
+    private long count = 0L;
+    private double mean = 0.0;
+    private double m2 = 0.0;
+    private byte[] buffer;
+    
+    public StddevServerAggregator(PDataType inputDataType, ColumnModifier columnModifier) {
+        super(columnModifier);
+        this.inputDataType = inputDataType;
+    }
+    
+    @Override
+    public void aggregate(Tuple tuple, ImmutableBytesWritable ptr) {
+        if (ptr.getLength() == 0) {
+            return;
+        }
+        double value = toDouble(ptr, inputDataType);
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+    }
+
+    @Override
+    public boolean isNullable() {
+        return false;
+    }
+
+    @Override
+    public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+        if (buffer == null) {
+            buffer = new byte[BUFFER_LENGTH];
+        }
+        serialize(buffer, count, mean, m2);
+        ptr.set(buffer);
+        return true;
+    }
+    
+    /**
+     * Serialize the moments computed by this aggregator in the form expected by {@link #getCount(byte[], int)},
+     * {@link #getMean(byte[], int)}, and {@link #getM2(byte[], int)}.
+     */
+    static void serialize(byte[] buffer, long count, double mean, double m2) {
+        int offset = Bytes.putLong(buffer, 0, count);
+        offset = Bytes.putDouble(buffer, offset, mean);
+        Bytes.putDouble(buffer, offset, m2);
+    }
+    
+    static long getCount(byte[] buffer, int offset) {
+        return Bytes.toLong(buffer, offset);
+    }
+    
+    static double getMean(byte[] buffer, int offset) {
+        return Bytes.toDouble(buffer, offset + Bytes.SIZEOF_LONG);
+    }
+    
+    static double getM2(byte[] buffer, int offset) {
+        return Bytes.toDouble(buffer, offset + Bytes.SIZEOF_LONG + Bytes.SIZEOF_DOUBLE);
+    }
+
+    @Override
+    public final PDataType getDataType() {
+        return PDataType.VARBINARY;
+    }
+
+    @Override
+    public void reset() {
+        count = 0L;
+        mean = 0.0;
+        m2 = 0.0;
+        buffer = null;
+        super.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "STDDEV [count=" + count + ",mean=" + mean + ",m2=" + m2 + "]";
+    }
+
+    @Override
+    public int getSize() {
+        return super.getSize() + 3 * SizedUtil.LONG_SIZE + SizedUtil.POINTER_SIZE + SizedUtil.ARRAY_SIZE + BUFFER_LENGTH;
+    }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.function;
+
+import java.util.List;
+
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.aggregator.*;
+import com.salesforce.phoenix.parse.ApproxPercentileParseNode;
+import com.salesforce.phoenix.parse.FunctionParseNode.Argument;
+import com.salesforce.phoenix.parse.FunctionParseNode.BuiltInFunction;
+import com.salesforce.phoenix.schema.PDataType;
+
+/**
+ * 
+ * Built-in function for APPROX_PERCENT_RANK(<expression>[,<sketch size>]) WITHIN GROUP (ORDER BY <expression> ASC/DESC)
+ * aggregate function, an approximation of PERCENT_RANK for numeric values that uses a bounded amount of memory per group
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+@BuiltInFunction(name = ApproxPercentRankAggregateFunction.NAME, nodeClass = ApproxPercentileParseNode.class, args = { @Argument(allowedTypes = { PDataType.DECIMAL }),
+        @Argument(allowedTypes = { PDataType.BOOLEAN }, isConstant = true),
+        @Argument(allowedTypes = { PDataType.DECIMAL }, isConstant = true),
+        @Argument(allowedTypes = { PDataType.INTEGER }, isConstant = true, minValue = "8", maxValue = "10000", defaultValue = "null") })
+public class ApproxPercentRankAggregateFunction extends BaseApproxPercentileAggregateFunction {
+    public static final String NAME = "APPROX_PERCENT_RANK";
+
+    public ApproxPercentRankAggregateFunction() {
+    }
+    
+    public ApproxPercentRankAggregateFunction(List<Expression> children) {
+        super(children);
+    }
+
+    @Override
+    public Aggregator newClientAggregator() {
+        return new ApproxPercentRankClientAggregator(children);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+    
+    @Override
+    public PDataType getDataType() {
+        return PDataType.DECIMAL;
+    }
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.function;
+
+import java.util.List;
+
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.LiteralExpression;
+import com.salesforce.phoenix.expression.aggregator.Aggregator;
+import com.salesforce.phoenix.expression.aggregator.ApproxPercentileServerAggregator;
+
+
+/**
+ * 
+ * Base class for the approximate percentile aggregate functions, which summarize the values
+ * of each group on the server with a fixed size sketch instead of sending back every
+ * distinct value with its count.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public abstract class BaseApproxPercentileAggregateFunction extends SingleAggregateFunction {
+
+    public BaseApproxPercentileAggregateFunction() {
+    }
+    
+    public BaseApproxPercentileAggregateFunction(List<Expression> children) {
+        super(children);
+    }
+
+    /**
+     * @return the size of the sketch, based on the fourth expression which will be a LiteralExpression
+     */
+    protected int getSketchSize() {
+        return ((Number)((LiteralExpression)children.get(3)).getValue()).intValue();
+    }
+    
+    @Override
+    public Aggregator newServerAggregator() {
+        Expression child = getAggregatorExpression();
+        return new ApproxPercentileServerAggregator(child.getDataType(), child.getColumnModifier(), getSketchSize());
+    }
+}
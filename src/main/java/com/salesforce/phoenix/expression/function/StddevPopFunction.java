@@ -56,7 +56,8 @@ public class StddevPopFunction extends SingleAggregateFunction {
 
     @Override
     public Aggregator newServerAggregator() {
-        return new DistinctValueWithCountServerAggregator();
+        Expression child = getAggregatorExpression();
+        return new StddevServerAggregator(child.getDataType(), child.getColumnModifier());
     }
 
     @Override
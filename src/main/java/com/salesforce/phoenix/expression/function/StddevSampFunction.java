@@ -56,7 +56,8 @@ public class StddevSampFunction extends SingleAggregateFunction {
 
     @Override
     public Aggregator newServerAggregator() {
-        return new DistinctValueWithCountServerAggregator();
+        Expression child = getAggregatorExpression();
+        return new StddevServerAggregator(child.getDataType(), child.getColumnModifier());
     }
 
     @Override
@@ -33,6 +33,9 @@ import org.apache.hadoop.hbase.filter.FilterBase;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.io.WritableUtils;
 
+import com.salesforce.phoenix.cache.DeserializationCache;
+import com.salesforce.phoenix.cache.DeserializationCache.Deserializer;
+import com.salesforce.phoenix.cache.GlobalCache;
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.ExpressionType;
 import com.salesforce.phoenix.schema.IllegalDataException;
@@ -42,15 +45,32 @@ import com.salesforce.phoenix.schema.tuple.Tuple;
 /**
  * 
  * Base class for filter that evaluates a WHERE clause expression.
+ * The expression is serialized together with its hash, so that region servers
+ * may take an already deserialized copy of it from their {@link DeserializationCache}.
+ * The region observers then return it to the cache through {@link #takeLease()} once the
+ * scan or get using the filter is done.
  *
  * @author jtaylor
  * @since 0.1
  */
 abstract public class BooleanExpressionFilter extends FilterBase {
+    private static final Deserializer<Expression> EXPRESSION_DESERIALIZER = new Deserializer<Expression>() {
+        @Override
+        public Expression deserialize(byte[] b) throws IOException {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(b));
+            Expression expression = ExpressionType.values()[WritableUtils.readVInt(input)].newInstance();
+            expression.readFields(input);
+            return expression;
+        }
+    };
 
     protected Expression expression;
     protected boolean evaluateOnCompletion;
     private ImmutableBytesWritable tempPtr = new ImmutableBytesWritable();
+    // The serialized expression, kept as the filter is serialized once per region scanned
+    private byte[] expressionBytes;
+    private int expressionHash;
+    private DeserializationCache.Lease lease;
     
     public BooleanExpressionFilter() {
     }
@@ -104,15 +124,55 @@ abstract public class BooleanExpressionFilter extends FilterBase {
         return (Boolean)expression.getDataType().toObject(tempPtr);
     }
 
+    /**
+     * @return true if the expression was taken from the region server's cache of deserialized
+     *  expressions and must be returned to it once the filter is no longer used
+     */
+    public boolean hasLease() {
+        return lease != null;
+    }
+    
+    /**
+     * Hands over the lease through which the expression was taken from the region server's
+     * cache of deserialized expressions. Closing the lease returns the expression to the cache,
+     * after which the filter may no longer be used.
+     * @return the lease, or null if the expression was not taken from the cache or the lease
+     *  was already handed over
+     */
+    public DeserializationCache.Lease takeLease() {
+        DeserializationCache.Lease lease = this.lease;
+        this.lease = null;
+        return lease;
+    }
+
     @Override
     public void readFields(DataInput input) throws IOException {
-        expression = ExpressionType.values()[WritableUtils.readVInt(input)].newInstance();
-        expression.readFields(input);
+        expressionBytes = new byte[WritableUtils.readVInt(input)];
+        expressionHash = input.readInt();
+        input.readFully(expressionBytes);
+        DeserializationCache cache = GlobalCache.getDeserializationCacheIfCreated();
+        if (cache == null) {
+            expression = EXPRESSION_DESERIALIZER.deserialize(expressionBytes);
+        } else {
+            lease = cache.newLease();
+            // Cached per filter class, as filters differ in whether they reset their expression for partial evaluation
+            expression = lease.get(getClass().getName(), expressionHash, expressionBytes, EXPRESSION_DESERIALIZER);
+        }
     }
 
     @Override
     public void write(DataOutput output) throws IOException {
-        WritableUtils.writeVInt(output, ExpressionType.valueOf(expression).ordinal());
-        expression.write(output);
+        if (expressionBytes == null) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            DataOutputStream dataOutput = new DataOutputStream(stream);
+            WritableUtils.writeVInt(dataOutput, ExpressionType.valueOf(expression).ordinal());
+            expression.write(dataOutput);
+            dataOutput.flush();
+            expressionBytes = stream.toByteArray();
+            expressionHash = DeserializationCache.hash(expressionBytes);
+        }
+        WritableUtils.writeVInt(output, expressionBytes.length);
+        output.writeInt(expressionHash);
+        output.write(expressionBytes);
     }
 }
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.filter;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.FilterBase;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.ExpressionType;
+import com.salesforce.phoenix.join.JoinKeyBloomFilter;
+import com.salesforce.phoenix.schema.IllegalDataException;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ImmutableBytesPtr;
+import com.salesforce.phoenix.util.TupleUtil;
+
+
+/**
+ *
+ * Filter for the probe side of a hash join that drops rows whose join key
+ * cannot be in the hash cache, based on the {@link JoinKeyBloomFilter} built
+ * over the keys of the hashed side. Since the join key expressions may only
+ * reference row key columns, rows are dropped based on their row key alone,
+ * before any of their key values are read.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class JoinKeyFilter extends FilterBase {
+    private List<List<Expression>> joinExpressions;
+    private List<JoinKeyBloomFilter> keyFilters;
+    private final RowKeyTuple inputTuple = new RowKeyTuple();
+    private boolean filterRow = false;
+
+    public JoinKeyFilter() {
+    }
+
+    public JoinKeyFilter(List<List<Expression>> joinExpressions, List<JoinKeyBloomFilter> keyFilters) {
+        this.joinExpressions = joinExpressions;
+        this.keyFilters = keyFilters;
+    }
+
+    @Override
+    public void reset() {
+        this.filterRow = false;
+    }
+
+    @Override
+    public boolean filterRowKey(byte[] buffer, int offset, int length) {
+        inputTuple.setKey(buffer, offset, length);
+        this.filterRow = false;
+        for (int i = 0; i < joinExpressions.size() && !this.filterRow; i++) {
+            try {
+                ImmutableBytesPtr key = TupleUtil.getConcatenatedValue(inputTuple, joinExpressions.get(i));
+                this.filterRow = !keyFilters.get(i).mightContain(key);
+            } catch (IllegalDataException e) {
+                // Let the hash join decide what to do with the row
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return this.filterRow;
+    }
+
+    @Override
+    public ReturnCode filterKeyValue(KeyValue v) {
+        return this.filterRow ? ReturnCode.NEXT_ROW : ReturnCode.INCLUDE;
+    }
+
+    @Override
+    public boolean filterRow() {
+        return this.filterRow;
+    }
+
+    private static final class RowKeyTuple implements Tuple {
+        private byte[] buf;
+        private int offset;
+        private int length;
+
+        public void setKey(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void getKey(ImmutableBytesWritable ptr) {
+            ptr.set(buf, offset, length);
+        }
+
+        @Override
+        public KeyValue getValue(byte[] cf, byte[] cq) {
+            return null;
+        }
+
+        @Override
+        public boolean isImmutable() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return Bytes.toStringBinary(buf, offset, length);
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public KeyValue getValue(int index) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+    }
+
+    @Override
+    public void readFields(DataInput input) throws IOException {
+        int count = WritableUtils.readVInt(input);
+        joinExpressions = new ArrayList<List<Expression>>(count);
+        keyFilters = new ArrayList<JoinKeyBloomFilter>(count);
+        for (int i = 0; i < count; i++) {
+            int nExprs = WritableUtils.readVInt(input);
+            List<Expression> expressions = new ArrayList<Expression>(nExprs);
+            for (int j = 0; j < nExprs; j++) {
+                Expression expression = ExpressionType.values()[WritableUtils.readVInt(input)].newInstance();
+                expression.readFields(input);
+                expressions.add(expression);
+            }
+            joinExpressions.add(expressions);
+            JoinKeyBloomFilter keyFilter = new JoinKeyBloomFilter();
+            keyFilter.readFields(input);
+            keyFilters.add(keyFilter);
+        }
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        WritableUtils.writeVInt(output, joinExpressions.size());
+        for (int i = 0; i < joinExpressions.size(); i++) {
+            List<Expression> expressions = joinExpressions.get(i);
+            WritableUtils.writeVInt(output, expressions.size());
+            for (Expression expression : expressions) {
+                WritableUtils.writeVInt(output, ExpressionType.valueOf(expression).ordinal());
+                expression.write(output);
+            }
+            keyFilters.get(i).write(output);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JoinKeyFilter " + joinExpressions;
+    }
+}
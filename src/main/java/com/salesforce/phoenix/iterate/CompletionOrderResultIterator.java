@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.hbase.util.Pair;
+
+import com.salesforce.phoenix.query.ConnectionQueryServices;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ServerUtil;
+
+
+/**
+ * 
+ * Result iterator that concatenates the results of the parallel scans in the order in
+ * which the scans complete, rather than in row key order. Unlike {@link ConcatResultIterator},
+ * the rows of the first scan to complete may be returned while other scans are still running,
+ * which reduces the time to the first row when some scans take much longer than others.
+ * Only use when the order of the rows across scans does not matter.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class CompletionOrderResultIterator implements PeekingResultIterator {
+    private final ParallelIterators resultIterators;
+    private List<Pair<byte[],Future<PeekingResultIterator>>> futures;
+    private BlockingQueue<Integer> completedScans;
+    private final AtomicBoolean isClosed = new AtomicBoolean(false);
+    private boolean[] consumed;
+    private int remaining;
+    private int timeoutMs;
+    private PeekingResultIterator iterator;
+    
+    public CompletionOrderResultIterator(ParallelIterators iterators) {
+        this.resultIterators = iterators;
+    }
+    
+    private void submitWork() throws SQLException {
+        ConnectionQueryServices services = resultIterators.context.getConnection().getQueryServices();
+        timeoutMs = services.getProps().getInt(QueryServices.THREAD_TIMEOUT_MS_ATTRIB, ParallelIterators.DEFAULT_THREAD_TIMEOUT_MS);
+        futures = new ArrayList<Pair<byte[],Future<PeekingResultIterator>>>(resultIterators.size());
+        completedScans = new LinkedBlockingQueue<Integer>();
+        boolean success = false;
+        try {
+            resultIterators.submitWork(services.getExecutor(), futures, completedScans, isClosed);
+            success = true;
+        } catch (Exception e) {
+            throw ServerUtil.parseServerException(e);
+        } finally {
+            consumed = new boolean[futures.size()];
+            remaining = futures.size();
+            if (!success) {
+                close();
+            }
+        }
+    }
+    
+    /**
+     * Wait for the next scan to complete
+     * @return the result iterator of the scan
+     */
+    private PeekingResultIterator nextCompletedIterator() throws SQLException {
+        try {
+            Integer index = completedScans.poll(timeoutMs, TimeUnit.MILLISECONDS);
+            if (index == null) {
+                throw new TimeoutException("No parallel scan completed within " + timeoutMs + "ms");
+            }
+            consumed[index] = true;
+            if (--remaining == 0) {
+                resultIterators.releaseMemoryReservation();
+            }
+            // The scan signals its completion just before its future is done, so this won't block long
+            return futures.get(index).getSecond().get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw ServerUtil.parseServerException(e);
+        }
+    }
+    
+    @Override
+    public void close() throws SQLException {
+        if (futures == null) {
+            return;
+        }
+        SQLException sqlE = null;
+        try {
+            if (iterator != null) {
+                iterator.close();
+            }
+        } catch (SQLException e) {
+            sqlE = e;
+        } finally {
+            iterator = null;
+            // Skip the scans that have not started yet and close the results of the ones that
+            // ran without having been consumed. The running scans are not interrupted, as an
+            // interrupt in the middle of an RPC may break the HBase connection shared with
+            // other threads, so wait for them to finish instead. The wait is bounded by a single
+            // timeout for all of the scans together rather than by one for each of them. A scan
+            // still running past that deadline closes its own result once it sees isClosed.
+            isClosed.set(true);
+            long deadlineMs = System.currentTimeMillis() + timeoutMs;
+            for (int i = 0; i < consumed.length; i++) {
+                if (consumed[i]) {
+                    continue;
+                }
+                consumed[i] = true;
+                try {
+                    long waitMs = Math.max(0, deadlineMs - System.currentTimeMillis());
+                    PeekingResultIterator scanIterator = futures.get(i).getSecond().get(waitMs, TimeUnit.MILLISECONDS);
+                    if (scanIterator != null) {
+                        scanIterator.close();
+                    }
+                } catch (Exception e) {
+                    // Ignore, as the scan failed or we're already failing
+                }
+            }
+            remaining = 0;
+            resultIterators.releaseMemoryReservation();
+        }
+        if (sqlE != null) {
+            throw sqlE;
+        }
+    }
+
+    @Override
+    public void explain(List<String> planSteps) {
+        resultIterators.explain(planSteps);
+    }
+
+    private PeekingResultIterator currentIterator() throws SQLException {
+        if (futures == null) {
+            submitWork();
+        }
+        while (true) {
+            if (iterator != null) {
+                Tuple r = iterator.peek();
+                if (r != null) {
+                    return iterator;
+                }
+                iterator.close();
+                iterator = null;
+            }
+            if (remaining == 0) {
+                return EMPTY_ITERATOR;
+            }
+            boolean success = false;
+            try {
+                iterator = nextCompletedIterator();
+                success = true;
+            } finally {
+                if (!success) {
+                    close();
+                }
+            }
+        }
+    }
+    
+    @Override
+    public Tuple peek() throws SQLException {
+        return currentIterator().peek();
+    }
+
+    @Override
+    public Tuple next() throws SQLException {
+        return currentIterator().next();
+    }
+
+}
@@ -143,53 +143,87 @@ public class DefaultParallelIteratorRegionSplitter implements ParallelIteratorRe
         // Create a multi-map of ServerName to List<KeyRange> which we'll use to round robin from to ensure
         // that we keep each region server busy for each query.
         ListMultimap<ServerName,KeyRange> keyRangesPerRegion = ArrayListMultimap.create(regions.size(),regions.size() * splitsPerRegion);;
-        if (splitsPerRegion == 1) {
-            for (Map.Entry<HRegionInfo, ServerName> region : regions) {
+        /*
+         * If guide posts have been collected, split on the ones within the scanned part of each
+         * region. The data between guide posts is of roughly equal size, so unlike splitting the
+         * key space evenly, this produces even chunks of work regardless of how the row keys are
+         * distributed. Guide posts outside of the scan range would only produce empty chunks.
+         */
+        Scan scan = context.getScan();
+        List<byte[]> guidePosts = statsManager.getGuidePosts(table);
+        List<List<byte[]>> guidePostsPerRegion = Lists.newArrayListWithExpectedSize(regions.size());
+        int totalGuidePosts = 0;
+        for (Map.Entry<HRegionInfo, ServerName> region : regions) {
+            List<byte[]> regionGuidePosts = getGuidePosts(guidePosts, 
+                    getScannedStartKey(region.getKey().getStartKey(), scan.getStartRow()),
+                    getScannedStopKey(region.getKey().getEndKey(), scan.getStopRow()));
+            guidePostsPerRegion.add(regionGuidePosts);
+            totalGuidePosts += regionGuidePosts.size();
+        }
+        // Maintain bucket for each server and then returns KeyRanges in round-robin
+        // order to ensure all servers are utilized.
+        for (int r = 0; r < regions.size(); r++) {
+            Map.Entry<HRegionInfo, ServerName> region = regions.get(r);
+            byte[] startKey = region.getKey().getStartKey();
+            byte[] stopKey = region.getKey().getEndKey();
+            List<byte[]> regionGuidePosts = guidePostsPerRegion.get(r);
+            if (!regionGuidePosts.isEmpty()) {
+                int nGuidePosts = regionGuidePosts.size();
+                // A region holding more of the scanned data than the average is split into
+                // proportionally more chunks, even if the regions are not split otherwise
+                long nChunks = (long)splitsPerRegion * (nGuidePosts + 1) * regions.size() / (totalGuidePosts + regions.size());
+                nChunks = Math.min(maxIntraRegionParallelization, Math.max(splitsPerRegion, nChunks));
+                int nBoundaries = (int)Math.min(nChunks - 1, nGuidePosts);
+                byte[] lowerRange = startKey;
+                for (int i = 1; i <= nBoundaries; i++) {
+                    // Pick guide posts spaced evenly among the ones available
+                    byte[] boundary = regionGuidePosts.get((i * (nGuidePosts + 1)) / (nBoundaries + 1) - 1);
+                    keyRangesPerRegion.put(region.getValue(),KeyRange.getKeyRange(lowerRange, true, boundary, false));
+                    lowerRange = boundary;
+                }
+                keyRangesPerRegion.put(region.getValue(),KeyRange.getKeyRange(lowerRange, true, stopKey, false));
+                continue;
+            }
+            if (splitsPerRegion == 1) {
                 keyRangesPerRegion.put(region.getValue(), ParallelIterators.TO_KEY_RANGE.apply(region));
+                continue;
             }
-        } else {
-            // Maintain bucket for each server and then returns KeyRanges in round-robin
-            // order to ensure all servers are utilized.
-            for (Map.Entry<HRegionInfo, ServerName> region : regions) {
-                byte[] startKey = region.getKey().getStartKey();
-                byte[] stopKey = region.getKey().getEndKey();
-                boolean lowerUnbound = Bytes.compareTo(startKey, HConstants.EMPTY_START_ROW) == 0;
-                boolean upperUnbound = Bytes.compareTo(stopKey, HConstants.EMPTY_END_ROW) == 0;
-                /*
-                 * If lower/upper unbound, get the min/max key from the stats manager.
-                 * We use this as the boundary to split on, but we still use the empty
-                 * byte as the boundary in the actual scan (in case our stats are out
-                 * of date).
-                 */
-                if (lowerUnbound) {
-                    startKey = statsManager.getMinKey(table);
-                    if (startKey == null) {
-                        keyRangesPerRegion.put(region.getValue(),ParallelIterators.TO_KEY_RANGE.apply(region));
-                        continue;
-                    }
-                }
-                if (upperUnbound) {
-                    stopKey = statsManager.getMaxKey(table);
-                    if (stopKey == null) {
-                        keyRangesPerRegion.put(region.getValue(),ParallelIterators.TO_KEY_RANGE.apply(region));
-                        continue;
-                    }
+            boolean lowerUnbound = Bytes.compareTo(startKey, HConstants.EMPTY_START_ROW) == 0;
+            boolean upperUnbound = Bytes.compareTo(stopKey, HConstants.EMPTY_END_ROW) == 0;
+            /*
+             * If lower/upper unbound, get the min/max key from the stats manager.
+             * We use this as the boundary to split on, but we still use the empty
+             * byte as the boundary in the actual scan (in case our stats are out
+             * of date).
+             */
+            if (lowerUnbound) {
+                startKey = statsManager.getMinKey(table);
+                if (startKey == null) {
+                    keyRangesPerRegion.put(region.getValue(),ParallelIterators.TO_KEY_RANGE.apply(region));
+                    continue;
                 }
-                
-                byte[][] boundaries = null;
-                // Both startKey and stopKey will be empty the first time
-                if (Bytes.compareTo(startKey, stopKey) >= 0 || (boundaries = Bytes.split(startKey, stopKey, splitsPerRegion - 1)) == null) {
-                    // Bytes.split may return null if the key space
-                    // between start and end key is too small
+            }
+            if (upperUnbound) {
+                stopKey = statsManager.getMaxKey(table);
+                if (stopKey == null) {
                     keyRangesPerRegion.put(region.getValue(),ParallelIterators.TO_KEY_RANGE.apply(region));
-                } else {
-                    keyRangesPerRegion.put(region.getValue(),KeyRange.getKeyRange(lowerUnbound ? KeyRange.UNBOUND : boundaries[0], boundaries[1]));
-                    if (boundaries.length > 1) {
-                        for (int i = 1; i < boundaries.length-2; i++) {
-                            keyRangesPerRegion.put(region.getValue(),KeyRange.getKeyRange(boundaries[i], true, boundaries[i+1], false));
-                        }
-                        keyRangesPerRegion.put(region.getValue(),KeyRange.getKeyRange(boundaries[boundaries.length-2], true, upperUnbound ? KeyRange.UNBOUND : boundaries[boundaries.length-1], false));
+                    continue;
+                }
+            }
+            
+            byte[][] boundaries = null;
+            // Both startKey and stopKey will be empty the first time
+            if (Bytes.compareTo(startKey, stopKey) >= 0 || (boundaries = Bytes.split(startKey, stopKey, splitsPerRegion - 1)) == null) {
+                // Bytes.split may return null if the key space
+                // between start and end key is too small
+                keyRangesPerRegion.put(region.getValue(),ParallelIterators.TO_KEY_RANGE.apply(region));
+            } else {
+                keyRangesPerRegion.put(region.getValue(),KeyRange.getKeyRange(lowerUnbound ? KeyRange.UNBOUND : boundaries[0], boundaries[1]));
+                if (boundaries.length > 1) {
+                    for (int i = 1; i < boundaries.length-2; i++) {
+                        keyRangesPerRegion.put(region.getValue(),KeyRange.getKeyRange(boundaries[i], true, boundaries[i+1], false));
                     }
+                    keyRangesPerRegion.put(region.getValue(),KeyRange.getKeyRange(boundaries[boundaries.length-2], true, upperUnbound ? KeyRange.UNBOUND : boundaries[boundaries.length-1], false));
                 }
             }
         }
@@ -218,6 +252,50 @@ public class DefaultParallelIteratorRegionSplitter implements ParallelIteratorRe
         return splits;
     }
 
+    /**
+     * @return the greater of the start key of a region and the start row of the scan
+     */
+    private static byte[] getScannedStartKey(byte[] regionStartKey, byte[] scanStartRow) {
+        return Bytes.compareTo(regionStartKey, scanStartRow) >= 0 ? regionStartKey : scanStartRow;
+    }
+
+    /**
+     * @return the lesser of the end key of a region and the stop row of the scan, either of
+     * which is unbound if empty
+     */
+    private static byte[] getScannedStopKey(byte[] regionEndKey, byte[] scanStopRow) {
+        if (regionEndKey.length == 0) {
+            return scanStopRow;
+        }
+        if (scanStopRow.length == 0) {
+            return regionEndKey;
+        }
+        return Bytes.compareTo(regionEndKey, scanStopRow) <= 0 ? regionEndKey : scanStopRow;
+    }
+
+    /**
+     * Get the guide posts that fall strictly within a region
+     * @param guidePosts the sorted guide posts of the table
+     * @param startKey the start key of the region, inclusive
+     * @param stopKey the end key of the region, exclusive, or empty if unbound
+     * @return the guide posts between the start and end key of the region
+     */
+    // exposed for tests
+    public static List<byte[]> getGuidePosts(List<byte[]> guidePosts, byte[] startKey, byte[] stopKey) {
+        if (guidePosts.isEmpty()) {
+            return guidePosts;
+        }
+        int fromIndex = Collections.binarySearch(guidePosts, startKey, Bytes.BYTES_COMPARATOR);
+        // Skip a guide post equal to the start key, as splitting on it would produce an empty range
+        fromIndex = fromIndex < 0 ? -(fromIndex + 1) : fromIndex + 1;
+        int toIndex = guidePosts.size();
+        if (stopKey.length > 0) {
+            toIndex = Collections.binarySearch(guidePosts, stopKey, Bytes.BYTES_COMPARATOR);
+            toIndex = toIndex < 0 ? -(toIndex + 1) : toIndex;
+        }
+        return fromIndex >= toIndex ? Collections.<byte[]>emptyList() : guidePosts.subList(fromIndex, toIndex);
+    }
+
     @Override
     public List<KeyRange> getSplits() throws SQLException {
         return genKeyRanges(getAllRegions());
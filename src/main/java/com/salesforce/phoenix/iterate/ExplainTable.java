@@ -55,6 +55,13 @@ public abstract class ExplainTable {
         this.groupBy = groupBy;
     }
 
+    /**
+     * @return true if the rows are looked up by their keys instead of being scanned
+     */
+    protected boolean isPointLookup() {
+        return false;
+    }
+
     private boolean explainSkipScan(StringBuilder buf) {
         ScanRanges scanRanges = context.getScanRanges();
         if (scanRanges.useSkipScanFilter()) {
@@ -84,6 +91,9 @@ public abstract class ExplainTable {
         boolean hasSkipScanFilter = false;
         if (scanRanges.isEverything()) {
             buf.append("FULL SCAN ");
+        } else if (isPointLookup()) {
+            int count = scanRanges.getPointLookupCount(table.getTable().getBucketNum());
+            buf.append("POINT LOOKUP ON " + count + " KEY" + (count > 1 ? "S " : " "));
         } else {
             hasSkipScanFilter = explainSkipScan(buf);
         }
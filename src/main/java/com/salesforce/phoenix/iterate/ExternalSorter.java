@@ -0,0 +1,504 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import java.io.*;
+import java.sql.SQLException;
+import java.util.*;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.collect.Lists;
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.OrderByExpression;
+import com.salesforce.phoenix.memory.InsufficientMemoryException;
+import com.salesforce.phoenix.memory.MemoryManager;
+import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.ResultTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.*;
+
+
+/**
+ * 
+ * Sorts any number of rows by the expressions of an ORDER BY clause with an external merge sort.
+ * Rows are sorted in memory in runs of up to {@link QueryServices#SORT_RUN_SIZE_BYTES_ATTRIB} bytes.
+ * If more than one run is needed, each run is spooled to a {@link SpoolFile} and the runs are then
+ * merged, as many at a time as the memory of a run allows for the read buffers and the current row
+ * of each of them.
+ * <p>
+ * Rows are ordered by a normalized sort key that is built once per row by encoding the value of
+ * each ORDER BY expression such that the keys of two rows may be compared byte by byte. The
+ * memory used while the rows of a run are collected and then while runs are merged is allocated
+ * from the {@link MemoryManager}. If it cannot provide enough memory for a full run, the rows
+ * collected so far are sorted as a smaller run instead.
+ * 
+ * Not thread safe.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class ExternalSorter implements SQLCloseable {
+    // Marks whether the value of an ORDER BY expression is null in a normalized sort key
+    private static final byte NULL_FIRST = 0;
+    private static final byte NOT_NULL = 1;
+    private static final byte NULL_LAST = 2;
+    // Escapes a zero byte and terminates a variable length value in a normalized sort key
+    private static final byte ZERO = 0;
+    private static final byte ESCAPED_ZERO = (byte)0xFF;
+    private static final byte TERMINATOR = 1;
+    // Memory first allocated for a run, which grows as rows are added
+    private static final long INITIAL_RUN_SIZE = 64 * 1024;
+    
+    private static final Comparator<SortEntry> SORT_KEY_COMPARATOR = new Comparator<SortEntry>() {
+        @Override
+        public int compare(SortEntry e1, SortEntry e2) {
+            return Bytes.compareTo(e1.sortKey, e2.sortKey);
+        }
+    };
+    
+    private final List<OrderByExpression> orderByExpressions;
+    // Whether all the values of each ORDER BY expression have the same length
+    private final boolean[] isFixedWidth;
+    private final MemoryManager mm;
+    private final ReadOnlyProps props;
+    private final long runSizeBytes;
+    private final boolean isCompressed;
+    private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+    private final TrustedByteArrayOutputStream sortKeyStream = new TrustedByteArrayOutputStream(64);
+    
+    private MemoryChunk chunk;
+    private List<SortEntry> run = Lists.newArrayList();
+    private long runByteSize;
+    private int maxEntrySize;
+    // Runs spooled to disk that are not yet being merged
+    private final LinkedList<SpoolFile> runFiles = Lists.newLinkedList();
+    private int runCount;
+    private ResultIterator resultIterator;
+    
+    /**
+     * @param orderByExpressions the expressions by which rows are sorted
+     * @param mm the memory manager from which the memory used to sort is allocated
+     * @param props the properties configuring the size of a run and the files to which runs are spooled
+     */
+    public ExternalSorter(List<OrderByExpression> orderByExpressions, MemoryManager mm, ReadOnlyProps props) {
+        this.orderByExpressions = orderByExpressions;
+        this.isFixedWidth = new boolean[orderByExpressions.size()];
+        for (int i = 0; i < isFixedWidth.length; i++) {
+            PDataType type = orderByExpressions.get(i).getExpression().getDataType();
+            isFixedWidth[i] = type != null && type.isFixedWidth() && type.getByteSize() != null;
+        }
+        this.mm = mm;
+        this.props = props;
+        this.runSizeBytes = props.getLong(QueryServices.SORT_RUN_SIZE_BYTES_ATTRIB, QueryServicesOptions.DEFAULT_SORT_RUN_SIZE_BYTES);
+        this.isCompressed = props.getBoolean(QueryServices.SPOOL_FILE_COMPRESSION_ATTRIB, QueryServicesOptions.DEFAULT_SPOOL_FILE_COMPRESSION);
+    }
+    
+    /**
+     * @return the number of runs that were sorted, which is one more than
+     * the number of runs spooled to disk once more than one run is needed
+     */
+    public int getRunCount() {
+        return runCount;
+    }
+    
+    /**
+     * Add a row to be sorted
+     */
+    public void add(Tuple tuple) throws SQLException {
+        if (resultIterator != null) {
+            throw new IllegalStateException("Rows may not be added once they've been sorted");
+        }
+        try {
+            add(new SortEntry(getSortKey(tuple), tuple));
+        } catch (IOException e) {
+            throw ServerUtil.parseServerException(e);
+        }
+    }
+    
+    private void add(SortEntry entry) throws IOException {
+        long size = entry.getByteSize();
+        maxEntrySize = (int)Math.max(maxEntrySize, size);
+        if (!run.isEmpty() && runByteSize + size > runSizeBytes) {
+            spoolRun();
+        }
+        if (chunk == null) {
+            chunk = mm.allocate(Math.max(size, Math.min(INITIAL_RUN_SIZE, runSizeBytes)));
+        } else if (runByteSize + size > chunk.getSize()) {
+            try {
+                chunk.resize(Math.max(runByteSize + size, Math.min(runSizeBytes, chunk.getSize() * 2)));
+            } catch (InsufficientMemoryException e) {
+                if (run.isEmpty()) {
+                    throw e;
+                }
+                // Sort the rows that fit in the memory we've got as a smaller run
+                spoolRun();
+                if (size > chunk.getSize()) {
+                    chunk.resize(size);
+                }
+            }
+        }
+        run.add(entry);
+        runByteSize += size;
+    }
+    
+    /**
+     * Build a key for the row that sorts in the same order as the values of the ORDER BY expressions
+     * when compared byte by byte. Each value is prefixed by a byte that places nulls first or last.
+     * Values of variable length have each zero byte escaped and are terminated so that a value sorts
+     * before any longer value that it's a prefix of. The bytes of descending values are inverted.
+     */
+    private byte[] getSortKey(Tuple tuple) {
+        sortKeyStream.reset();
+        for (int i = 0; i < orderByExpressions.size(); i++) {
+            OrderByExpression orderByExpression = orderByExpressions.get(i);
+            Expression expression = orderByExpression.getExpression();
+            if (!expression.evaluate(tuple, ptr) || ptr.getLength() == 0) {
+                sortKeyStream.write(orderByExpression.isNullsLast() ? NULL_LAST : NULL_FIRST);
+                continue;
+            }
+            sortKeyStream.write(NOT_NULL);
+            int mask = orderByExpression.isAscending() ? 0 : 0xFF;
+            byte[] b = ptr.get();
+            int end = ptr.getOffset() + ptr.getLength();
+            if (isFixedWidth[i]) {
+                for (int j = ptr.getOffset(); j < end; j++) {
+                    sortKeyStream.write(b[j] ^ mask);
+                }
+            } else {
+                for (int j = ptr.getOffset(); j < end; j++) {
+                    sortKeyStream.write(b[j] ^ mask);
+                    if (b[j] == ZERO) {
+                        sortKeyStream.write(ESCAPED_ZERO ^ mask);
+                    }
+                }
+                sortKeyStream.write(ZERO ^ mask);
+                sortKeyStream.write(TERMINATOR ^ mask);
+            }
+        }
+        return Arrays.copyOf(sortKeyStream.getBuffer(), sortKeyStream.size());
+    }
+    
+    /**
+     * Sort the rows of the current run and write them to a new spool file
+     */
+    private void spoolRun() throws IOException {
+        Collections.sort(run, SORT_KEY_COMPARATOR);
+        SpoolFile file = SpoolFile.newSpoolFile(props);
+        runFiles.add(file);
+        runCount++;
+        DataOutputStream out = new DataOutputStream(file.newOutputStream());
+        try {
+            for (SortEntry entry : run) {
+                entry.write(out);
+            }
+        } finally {
+            out.close();
+        }
+        run.clear();
+        runByteSize = 0;
+    }
+    
+    /**
+     * Sort all the rows that were added. Once more than one run is needed, runs are merged
+     * into longer runs until they may all be merged at once by the returned iterator.
+     * @return an iterator over the sorted rows, which closes the sorter when it is closed
+     */
+    public ResultIterator getResultIterator() throws SQLException {
+        if (resultIterator != null) {
+            return resultIterator;
+        }
+        try {
+            if (runFiles.isEmpty()) {
+                Collections.sort(run, SORT_KEY_COMPARATOR);
+                runCount = run.isEmpty() ? 0 : 1;
+                resultIterator = new InMemoryResultIterator();
+            } else {
+                spoolRun();
+                run = null;
+                // Only known once all the rows were added, as it depends on the largest row
+                int maxMergeFanIn = getMaxMergeFanIn();
+                while (runFiles.size() > maxMergeFanIn) {
+                    List<SpoolFile> files = Lists.newArrayListWithExpectedSize(maxMergeFanIn);
+                    for (int i = 0; i < maxMergeFanIn; i++) {
+                        files.add(runFiles.removeFirst());
+                    }
+                    mergeRuns(files);
+                }
+                List<SpoolFile> files = Lists.newArrayList(runFiles);
+                runFiles.clear();
+                resultIterator = new MergeResultIterator(files, false);
+            }
+            return resultIterator;
+        } catch (IOException e) {
+            throw ServerUtil.parseServerException(e);
+        }
+    }
+    
+    /**
+     * @return the memory (in bytes) used for each run that is merged: the buffers
+     * of the stream reading it and the row of it that is next in the merge
+     */
+    private long getMergeRunSize() {
+        return SpoolFile.getInputStreamBufferSize(isCompressed) + maxEntrySize;
+    }
+    
+    /**
+     * @return the number of runs that may be merged at once within the memory of a run,
+     * leaving room for the stream to which the merged runs are spooled
+     */
+    private int getMaxMergeFanIn() {
+        long mergeBytes = runSizeBytes - SpoolFile.getOutputStreamBufferSize(isCompressed);
+        return (int)Math.max(2, Math.min(Integer.MAX_VALUE, mergeBytes / getMergeRunSize()));
+    }
+    
+    /**
+     * Resize the memory chunk to what's needed to merge the given number of runs
+     * @param isSpooled true if the merged runs are spooled to a new run
+     */
+    private void resizeForMerge(int nRuns, boolean isSpooled) {
+        chunk.resize(nRuns * getMergeRunSize() + (isSpooled ? SpoolFile.getOutputStreamBufferSize(isCompressed) : 0));
+    }
+    
+    /**
+     * Merge the given runs into a new run at the end of the runs left to merge
+     */
+    private void mergeRuns(List<SpoolFile> files) throws IOException {
+        MergeResultIterator merge = new MergeResultIterator(files, true);
+        try {
+            SpoolFile file = SpoolFile.newSpoolFile(props);
+            runFiles.addLast(file);
+            DataOutputStream out = new DataOutputStream(file.newOutputStream());
+            try {
+                for (SortEntry entry = merge.nextEntry(); entry != null; entry = merge.nextEntry()) {
+                    entry.write(out);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            merge.closeRuns();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (resultIterator instanceof MergeResultIterator) {
+                ((MergeResultIterator)resultIterator).closeRuns();
+            }
+        } finally {
+            resultIterator = ResultIterator.EMPTY_ITERATOR;
+            run = null;
+            for (SpoolFile file : runFiles) {
+                file.delete();
+            }
+            runFiles.clear();
+            if (chunk != null) {
+                chunk.close();
+                chunk = null;
+            }
+        }
+    }
+    
+    private static class SortEntry {
+        private final byte[] sortKey;
+        private final Tuple tuple;
+        
+        private SortEntry(byte[] sortKey, Tuple tuple) {
+            this.sortKey = sortKey;
+            this.tuple = tuple;
+        }
+        
+        private long getByteSize() {
+            long size = SizedUtil.OBJECT_SIZE + 2 * SizedUtil.POINTER_SIZE + SizedUtil.ARRAY_SIZE + sortKey.length + SizedUtil.RESULT_SIZE;
+            for (int i = 0; i < tuple.size(); i++) {
+                size += SizedUtil.KEY_VALUE_SIZE + tuple.getValue(i).getLength();
+            }
+            return size;
+        }
+        
+        private void write(DataOutput out) throws IOException {
+            WritableUtils.writeVInt(out, sortKey.length);
+            out.write(sortKey);
+            TupleUtil.write(tuple, out);
+        }
+        
+        /**
+         * @return the next entry of the run or null if the end of the run was reached
+         */
+        private static SortEntry read(DataInput in) throws IOException {
+            int length;
+            try {
+                length = WritableUtils.readVInt(in);
+            } catch (EOFException e) {
+                return null;
+            }
+            byte[] sortKey = new byte[length];
+            in.readFully(sortKey);
+            byte[] row = new byte[WritableUtils.readVInt(in)];
+            in.readFully(row);
+            return new SortEntry(sortKey, new ResultTuple(new Result(new ImmutableBytesWritable(row))));
+        }
+    }
+    
+    private class InMemoryResultIterator extends BaseResultIterator {
+        private int index;
+        
+        @Override
+        public Tuple next() throws SQLException {
+            if (run == null || index == run.size()) {
+                ExternalSorter.this.close();
+                return null;
+            }
+            // Let go of each row as it is returned
+            return run.set(index++, null).tuple;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            ExternalSorter.this.close();
+        }
+    }
+    
+    /**
+     * 
+     * Reads the rows of a run spooled to disk
+     */
+    private static class RunReader {
+        private final SpoolFile file;
+        private final DataInputStream in;
+        private SortEntry entry;
+        
+        private RunReader(SpoolFile file) throws IOException {
+            this.file = file;
+            this.in = new DataInputStream(file.newInputStream());
+        }
+        
+        /**
+         * Read the next entry of the run
+         * @return false if the end of the run was reached and true otherwise
+         */
+        private boolean advance() throws IOException {
+            entry = SortEntry.read(in);
+            return entry != null;
+        }
+        
+        private void close() {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            } finally {
+                file.delete();
+            }
+        }
+    }
+    
+    /**
+     * 
+     * Merges runs spooled to disk by repeatedly returning the smallest
+     * of the next rows of each run
+     */
+    private class MergeResultIterator extends BaseResultIterator {
+        private final List<RunReader> readers;
+        private final PriorityQueue<RunReader> queue;
+        
+        private MergeResultIterator(List<SpoolFile> files, boolean isSpooled) throws IOException {
+            resizeForMerge(files.size(), isSpooled);
+            this.readers = Lists.newArrayListWithExpectedSize(files.size());
+            this.queue = new PriorityQueue<RunReader>(files.size(), new Comparator<RunReader>() {
+                @Override
+                public int compare(RunReader r1, RunReader r2) {
+                    return SORT_KEY_COMPARATOR.compare(r1.entry, r2.entry);
+                }
+            });
+            try {
+                for (SpoolFile file : files) {
+                    RunReader reader = new RunReader(file);
+                    readers.add(reader);
+                    if (reader.advance()) {
+                        queue.add(reader);
+                    }
+                }
+            } catch (IOException e) {
+                closeRuns();
+                // Delete the runs for which no reader was opened
+                for (SpoolFile file : files.subList(readers.size(), files.size())) {
+                    file.delete();
+                }
+                throw e;
+            }
+        }
+        
+        private SortEntry nextEntry() throws IOException {
+            RunReader reader = queue.poll();
+            if (reader == null) {
+                return null;
+            }
+            SortEntry entry = reader.entry;
+            if (reader.advance()) {
+                queue.add(reader);
+            } else {
+                reader.close();
+            }
+            return entry;
+        }
+        
+        private void closeRuns() {
+            queue.clear();
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+        
+        @Override
+        public Tuple next() throws SQLException {
+            try {
+                SortEntry entry = nextEntry();
+                if (entry == null) {
+                    ExternalSorter.this.close();
+                    return null;
+                }
+                return entry.tuple;
+            } catch (IOException e) {
+                throw ServerUtil.parseServerException(e);
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            ExternalSorter.this.close();
+        }
+    }
+}
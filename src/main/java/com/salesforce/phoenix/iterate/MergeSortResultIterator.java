@@ -28,6 +28,7 @@
 package com.salesforce.phoenix.iterate;
 
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
@@ -39,7 +40,9 @@ import com.salesforce.phoenix.util.SQLCloseables;
 /**
  * 
  * Base class for a ResultIterator that does a merge sort on the list of iterators
- * provided.
+ * provided. The iterators are kept in a binary min heap ordered by their current
+ * head, so that each row costs O(log k) comparisons for k iterators instead of
+ * the O(k) required to scan all of them.
  *
  * @author jtaylor
  * @since 1.2
@@ -47,57 +50,107 @@ import com.salesforce.phoenix.util.SQLCloseables;
 public abstract class MergeSortResultIterator implements PeekingResultIterator {
     protected final ResultIterators resultIterators;
     protected final ImmutableBytesWritable tempPtr = new ImmutableBytesWritable();
-    private List<PeekingResultIterator> iterators;
+    private PeekingResultIterator[] heap;
+    private Tuple[] heads;
+    private int size;
     
     public MergeSortResultIterator(ResultIterators iterators) {
         this.resultIterators = iterators;
     }
     
-    private List<PeekingResultIterator> getIterators() throws SQLException {
-        if (iterators == null) {
-            iterators = resultIterators.getIterators();
+    private void init() throws SQLException {
+        if (heap != null) {
+            return;
+        }
+        List<PeekingResultIterator> iterators = resultIterators.getIterators();
+        heap = new PeekingResultIterator[iterators.size()];
+        heads = new Tuple[iterators.size()];
+        size = 0;
+        for (int i = 0; i < iterators.size(); i++) {
+            PeekingResultIterator iterator = iterators.get(i);
+            Tuple head;
+            try {
+                head = iterator.peek();
+            } catch (SQLException e) {
+                // Hold onto the iterators not yet examined so that close() releases them
+                while (i < iterators.size()) {
+                    heap[size++] = iterators.get(i++);
+                }
+                throw e;
+            }
+            if (head == null) {
+                iterator.close();
+            } else {
+                heap[size] = iterator;
+                heads[size] = head;
+                size++;
+            }
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
         }
-        return iterators;
     }
     
     @Override
     public void close() throws SQLException {
-        if (iterators != null) {
+        if (heap != null) {
+            List<PeekingResultIterator> iterators = Arrays.asList(heap).subList(0, size);
+            size = 0;
             SQLCloseables.closeAll(iterators);
         }
     }
 
     abstract protected int compare(Tuple t1, Tuple t2);
     
-    private PeekingResultIterator minIterator() throws SQLException {
-        List<PeekingResultIterator> iterators = getIterators();
-        Tuple minResult = null;
-        PeekingResultIterator minIterator = EMPTY_ITERATOR;
-        for (int i = iterators.size()-1; i >= 0; i--) {
-            PeekingResultIterator iterator = iterators.get(i);
-            Tuple r = iterator.peek();
-            if (r != null) {
-                if (minResult == null || compare(r, minResult) < 0) {
-                    minResult = r;
-                    minIterator = iterator;
-                }
-                continue;
+    private void siftDown(int i) {
+        PeekingResultIterator iterator = heap[i];
+        Tuple head = heads[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && compare(heads[right], heads[child]) < 0) {
+                child = right;
             }
-            iterator.close();
-            iterators.remove(i);
+            if (compare(head, heads[child]) <= 0) {
+                break;
+            }
+            heap[i] = heap[child];
+            heads[i] = heads[child];
+            i = child;
         }
-        return minIterator;
+        heap[i] = iterator;
+        heads[i] = head;
     }
     
     @Override
     public Tuple peek() throws SQLException {
-        PeekingResultIterator iterator = minIterator();
-        return iterator.peek();
+        init();
+        return size == 0 ? null : heads[0];
     }
 
     @Override
     public Tuple next() throws SQLException {
-        PeekingResultIterator iterator = minIterator();
-        return iterator.next();
+        init();
+        if (size == 0) {
+            return null;
+        }
+        PeekingResultIterator iterator = heap[0];
+        Tuple next = iterator.next();
+        Tuple head = iterator.peek();
+        if (head == null) {
+            iterator.close();
+            size--;
+            heap[0] = heap[size];
+            heads[0] = heads[size];
+            heap[size] = null;
+            heads[size] = null;
+        } else {
+            heads[0] = head;
+        }
+        if (size > 1) {
+            siftDown(0);
+        }
+        return next;
     }
 }
@@ -31,13 +31,15 @@ import java.sql.SQLException;
 import java.util.List;
 
 import com.salesforce.phoenix.expression.OrderByExpression;
+import com.salesforce.phoenix.memory.MemoryManager;
 import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ReadOnlyProps;
 
 
 /**
  * Result scanner that sorts aggregated rows by columns specified in the ORDER BY clause.
  * <p>
- * Note that currently the sort is entirely done in memory. 
+ * Without a LIMIT, all the rows are sorted by an {@link ExternalSorter}.
  *  
  * @author syyang
  * @since 0.1
@@ -50,6 +52,12 @@ public class OrderedAggregatingResultIterator extends OrderedResultIterator impl
         super (delegate, orderByExpressions, thresholdBytes, limit);
     }
 
+    public OrderedAggregatingResultIterator(AggregatingResultIterator delegate,
+                                List<OrderByExpression> orderByExpressions,
+                                int thresholdBytes, Integer limit, MemoryManager mm, ReadOnlyProps props) throws SQLException {
+        super (delegate, orderByExpressions, thresholdBytes, limit, 0, mm, props);
+    }
+
     @Override
     protected AggregatingResultIterator getDelegate() {
         return (AggregatingResultIterator)super.getDelegate();
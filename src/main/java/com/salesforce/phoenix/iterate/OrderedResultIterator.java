@@ -44,13 +44,17 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.OrderByExpression;
+import com.salesforce.phoenix.memory.GlobalMemoryManager;
+import com.salesforce.phoenix.memory.MemoryManager;
 import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ReadOnlyProps;
 import com.salesforce.phoenix.util.SizedUtil;
 
 /**
  * Result scanner that sorts aggregated rows by columns specified in the ORDER BY clause.
  * <p>
- * Note that currently the sort is entirely done in memory. 
+ * With a LIMIT, only the top N rows are kept, in memory until they exceed the threshold
+ * and on disk otherwise. Without a LIMIT, all the rows are sorted by an {@link ExternalSorter}.
  *  
  * @author syyang, jtaylor
  * @since 0.1
@@ -103,6 +107,8 @@ public class OrderedResultIterator implements ResultIterator {
     private final ResultIterator delegate;
     private final List<OrderByExpression> orderByExpressions;
     private final long estimatedByteSize;
+    private final MemoryManager mm;
+    private final ReadOnlyProps props;
     
     private ResultIterator resultIterator;
     private long byteSize;
@@ -124,11 +130,22 @@ public class OrderedResultIterator implements ResultIterator {
 
     public OrderedResultIterator(ResultIterator delegate, List<OrderByExpression> orderByExpressions, 
             int thresholdBytes, Integer limit, int estimatedRowSize) {
+        this(delegate, orderByExpressions, thresholdBytes, limit, estimatedRowSize, new GlobalMemoryManager(Long.MAX_VALUE, 0), ReadOnlyProps.EMPTY_PROPS);
+    }
+
+    /**
+     * @param mm memory manager from which the memory used to sort the rows is allocated when there's no limit
+     * @param props properties configuring the sort when there's no limit
+     */
+    public OrderedResultIterator(ResultIterator delegate, List<OrderByExpression> orderByExpressions, 
+            int thresholdBytes, Integer limit, int estimatedRowSize, MemoryManager mm, ReadOnlyProps props) {
         checkArgument(!orderByExpressions.isEmpty());
         this.delegate = delegate;
         this.orderByExpressions = orderByExpressions;
         this.thresholdBytes = thresholdBytes;
         this.limit = limit;
+        this.mm = mm;
+        this.props = props;
         long estimatedEntrySize =
             // ResultEntry
             SizedUtil.OBJECT_SIZE + 
@@ -151,6 +168,10 @@ public class OrderedResultIterator implements ResultIterator {
         return estimatedByteSize;
     }
 
+    /**
+     * @return the number of bytes of the sorted rows held in memory. Without a limit, this is
+     * always zero, since the sort allocates the memory it uses from the memory manager itself.
+     */
     public long getByteSize() {
         return byteSize;
     }
@@ -183,6 +204,9 @@ public class OrderedResultIterator implements ResultIterator {
         if (resultIterator != null) {
             return resultIterator;
         }
+        if (limit == null) {
+            return getExternalSortResultIterator();
+        }
         
         final int numSortKeys = orderByExpressions.size();
         List<Expression> expressions = Lists.newArrayList(Collections2.transform(orderByExpressions, TO_EXPRESSION));
@@ -226,10 +250,35 @@ public class OrderedResultIterator implements ResultIterator {
         
         return resultIterator;
     }
+    
+    private ResultIterator getExternalSortResultIterator() throws SQLException {
+        ExternalSorter sorter = new ExternalSorter(orderByExpressions, mm, props);
+        boolean success = false;
+        try {
+            for (Tuple result = delegate.next(); result != null; result = delegate.next()) {
+                sorter.add(result);
+            }
+            resultIterator = sorter.getResultIterator();
+            success = true;
+        } finally {
+            try {
+                delegate.close();
+            } finally {
+                if (!success) {
+                    sorter.close();
+                }
+            }
+        }
+        return resultIterator;
+    }
 
     @Override
-    public void close()  {
+    public void close() throws SQLException {
+        ResultIterator iterator = resultIterator;
         resultIterator = ResultIterator.EMPTY_ITERATOR;
+        if (iterator != null) {
+            iterator.close();
+        }
     }
 
 
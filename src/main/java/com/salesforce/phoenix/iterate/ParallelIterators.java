@@ -27,9 +27,11 @@
  ******************************************************************************/
 package com.salesforce.phoenix.iterate;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.ServerName;
@@ -44,7 +46,11 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Function;
 import com.salesforce.phoenix.compile.GroupByCompiler.GroupBy;
 import com.salesforce.phoenix.compile.*;
+import com.salesforce.phoenix.iterate.SpoolingResultIterator.SpoolingResultIteratorFactory;
 import com.salesforce.phoenix.job.JobManager.JobCallable;
+import com.salesforce.phoenix.memory.InsufficientMemoryException;
+import com.salesforce.phoenix.memory.MemoryManager;
+import com.salesforce.phoenix.memory.ReservedMemoryManager;
 import com.salesforce.phoenix.parse.FilterableStatement;
 import com.salesforce.phoenix.parse.HintNode;
 import com.salesforce.phoenix.query.*;
@@ -65,12 +71,13 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
 	private static final Logger logger = LoggerFactory.getLogger(ParallelIterators.class);
     private final List<KeyRange> splits;
     private final ParallelIteratorFactory iteratorFactory;
+    private ReservedMemoryManager memoryReservation;
     
     public static interface ParallelIteratorFactory {
-        PeekingResultIterator newIterator(ResultIterator scanner) throws SQLException;
+        PeekingResultIterator newIterator(StatementContext context, ResultIterator scanner) throws SQLException;
     }
 
-    private static final int DEFAULT_THREAD_TIMEOUT_MS = 60000; // 1min
+    static final int DEFAULT_THREAD_TIMEOUT_MS = 60000; // 1min
 
     static final Function<Map.Entry<HRegionInfo, ServerName>, KeyRange> TO_KEY_RANGE = new Function<Map.Entry<HRegionInfo, ServerName>, KeyRange>() {
         @Override
@@ -86,29 +93,37 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
         Scan scan = context.getScan();
         PTable table = tableRef.getTable();
         if (projector.isProjectEmptyKeyValue()) {
-            Map<byte [], NavigableSet<byte []>> familyMap = scan.getFamilyMap();
-            // If nothing projected into scan and we only have one column family, just allow everything
-            // to be projected and use a FirstKeyOnlyFilter to skip from row to row. This turns out to
-            // be quite a bit faster.
-            if (familyMap.isEmpty() && table.getColumnFamilies().size() == 1) {
-                // Project the one column family. We must project a column family since it's possible
-                // that there are other non declared column families that we need to ignore.
-                scan.addFamily(table.getColumnFamilies().get(0).getName().getBytes());
-                ScanUtil.andFilterAtBeginning(scan, new FirstKeyOnlyFilter());
-            } else {
-                byte[] ecf = SchemaUtil.getEmptyColumnFamily(table.getColumnFamilies());
-                // Project empty key value unless the column family containing it has
-                // been projected in its entirety.
-                if (!familyMap.containsKey(ecf) || familyMap.get(ecf) != null) {
-                    scan.addColumn(ecf, QueryConstants.EMPTY_COLUMN_BYTES);
-                }
-            }
+            projectEmptyKeyValue(scan, table);
         }
         if (limit != null) {
             ScanUtil.andFilterAtEnd(scan, new PageFilter(limit));
         }
     }
 
+    /**
+     * Project the empty key value of the table into the scan, so that a row is returned even
+     * if none of its key value columns are projected.
+     */
+    public static void projectEmptyKeyValue(Scan scan, PTable table) {
+        Map<byte [], NavigableSet<byte []>> familyMap = scan.getFamilyMap();
+        // If nothing projected into scan and we only have one column family, just allow everything
+        // to be projected and use a FirstKeyOnlyFilter to skip from row to row. This turns out to
+        // be quite a bit faster.
+        if (familyMap.isEmpty() && table.getColumnFamilies().size() == 1) {
+            // Project the one column family. We must project a column family since it's possible
+            // that there are other non declared column families that we need to ignore.
+            scan.addFamily(table.getColumnFamilies().get(0).getName().getBytes());
+            ScanUtil.andFilterAtBeginning(scan, new FirstKeyOnlyFilter());
+        } else {
+            byte[] ecf = SchemaUtil.getEmptyColumnFamily(table.getColumnFamilies());
+            // Project empty key value unless the column family containing it has
+            // been projected in its entirety.
+            if (!familyMap.containsKey(ecf) || familyMap.get(ecf) != null) {
+                scan.addColumn(ecf, QueryConstants.EMPTY_COLUMN_BYTES);
+            }
+        }
+    }
+
     /**
      * Splits the given scan's key range so that each split can be queried in parallel
      * @param hintNode TODO
@@ -137,41 +152,8 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
             int numSplits = splits.size();
             List<PeekingResultIterator> iterators = new ArrayList<PeekingResultIterator>(numSplits);
             List<Pair<byte[],Future<PeekingResultIterator>>> futures = new ArrayList<Pair<byte[],Future<PeekingResultIterator>>>(numSplits);
-            final UUID scanId = UUID.randomUUID();
             try {
-                ExecutorService executor = services.getExecutor();
-                for (final KeyRange split : splits) {
-                    final Scan splitScan = new Scan(this.context.getScan());
-                    // Intersect with existing start/stop key
-                    if (ScanUtil.intersectScanRange(splitScan, split.getLowerRange(), split.getUpperRange(), this.context.getScanRanges().useSkipScanFilter())) {
-                        Future<PeekingResultIterator> future =
-                            executor.submit(new JobCallable<PeekingResultIterator>() {
-    
-                            @Override
-                            public PeekingResultIterator call() throws Exception {
-                                // TODO: different HTableInterfaces for each thread or the same is better?
-                            	long startTime = System.currentTimeMillis();
-                                ResultIterator scanner = new TableResultIterator(context, table, splitScan);
-                                if (logger.isDebugEnabled()) {
-                                	logger.debug("Id: " + scanId + ", Time: " + (System.currentTimeMillis() - startTime) + "ms, Scan: " + split);
-                                }
-                                return iteratorFactory.newIterator(scanner);
-                            }
-    
-                            /**
-                             * Defines the grouping for round robin behavior.  All threads spawned to process
-                             * this scan will be grouped together and time sliced with other simultaneously
-                             * executing parallel scans.
-                             */
-                            @Override
-                            public Object getJobId() {
-                                return ParallelIterators.this;
-                            }
-                        });
-                        futures.add(new Pair<byte[],Future<PeekingResultIterator>>(split.getLowerRange(),future));
-                    }
-                }
-
+                submitWork(services.getExecutor(), futures, null, null);
                 int timeoutMs = props.getInt(QueryServices.THREAD_TIMEOUT_MS_ATTRIB, DEFAULT_THREAD_TIMEOUT_MS);
                 // Sort futures by row key so that we have a predicatble order we're getting rows back for scans.
                 // We're going to wait here until they're finished anyway and this makes testing much easier.
@@ -188,6 +170,7 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
                 success = true;
                 return iterators;
             } finally {
+                releaseMemoryReservation();
                 if (!success) {
                     for (Pair<byte[],Future<PeekingResultIterator>> future : futures) {
                         future.getSecond().cancel(true);
@@ -200,6 +183,114 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
         }
     }
 
+    /**
+     * Starts the scan in parallel across all regions without waiting for any of the scans to complete.
+     * @param executor the executor on which to run the scans
+     * @param futures the list to which the future of each scan is added, paired with the start key of
+     *  the scan. Futures are added as the scans are submitted, so that the caller may cancel them if
+     *  this call fails part way through.
+     * @param completedScans if not null, the queue to which the index in futures of each scan is added
+     *  when the scan finishes, whether or not it succeeded. Allows the caller to process the scans in
+     *  the order in which they complete.
+     * @param isClosed if not null, set by the caller once it no longer needs the results of the scans.
+     *  The scans that have not started by then return null instead of running, and the scans
+     *  that finish after it is set close their result and return null.
+     */
+    void submitWork(ExecutorService executor, List<Pair<byte[],Future<PeekingResultIterator>>> futures, final BlockingQueue<Integer> completedScans, final AtomicBoolean isClosed) throws IOException {
+        final UUID scanId = UUID.randomUUID();
+        reserveMemory();
+        for (final KeyRange split : splits) {
+            final Scan splitScan = new Scan(this.context.getScan());
+            // Intersect with existing start/stop key
+            if (ScanUtil.intersectScanRange(splitScan, split.getLowerRange(), split.getUpperRange(), this.context.getScanRanges().useSkipScanFilter())) {
+                final int index = futures.size();
+                Future<PeekingResultIterator> future =
+                    executor.submit(new JobCallable<PeekingResultIterator>() {
+
+                    @Override
+                    public PeekingResultIterator call() throws Exception {
+                        try {
+                            if (isClosed != null && isClosed.get()) {
+                                return null;
+                            }
+                            // TODO: different HTableInterfaces for each thread or the same is better?
+                        	long startTime = System.currentTimeMillis();
+                            ResultIterator scanner = new TableResultIterator(context, table, splitScan);
+                            if (logger.isDebugEnabled()) {
+                            	logger.debug("Id: " + scanId + ", Time: " + (System.currentTimeMillis() - startTime) + "ms, Scan: " + split);
+                            }
+                            PeekingResultIterator iterator = iteratorFactory.newIterator(context, scanner);
+                            // The caller may have stopped waiting for this scan while it ran,
+                            // in which case nobody else will close its result
+                            if (isClosed != null && isClosed.get()) {
+                                iterator.close();
+                                return null;
+                            }
+                            return iterator;
+                        } finally {
+                            if (completedScans != null) {
+                                completedScans.add(index);
+                            }
+                        }
+                    }
+
+                    /**
+                     * Defines the grouping for round robin behavior.  All threads spawned to process
+                     * this scan will be grouped together and time sliced with other simultaneously
+                     * executing parallel scans.
+                     */
+                    @Override
+                    public Object getJobId() {
+                        return ParallelIterators.this;
+                    }
+                });
+                futures.add(new Pair<byte[],Future<PeekingResultIterator>>(split.getLowerRange(),future));
+            }
+        }
+        context.getQueryMetrics().addParallelScans(futures.size());
+    }
+
+    /**
+     * Reserve the memory for spooling the results of all the scans up front, so that the scans
+     * of this query draw from a single allocation instead of each competing for memory with
+     * the scans of other queries. The whole reservation is requested as the minimum, so that
+     * the query waits its turn in the memory manager queue when the memory isn't available.
+     * If it still isn't available after the maximum wait time, the scans allocate their memory
+     * one at a time as they would without a reservation.
+     */
+    private void reserveMemory() {
+        if (!(iteratorFactory instanceof SpoolingResultIteratorFactory) || splits.isEmpty()) {
+            return;
+        }
+        ReadOnlyProps props = context.getConnection().getQueryServices().getProps();
+        int maxReservationPerc = props.getInt(QueryServices.MAX_MEMORY_RESERVATION_PERC_ATTRIB, QueryServicesOptions.DEFAULT_MAX_MEMORY_RESERVATION_PERC);
+        if (maxReservationPerc <= 0) {
+            return;
+        }
+        MemoryManager mm = context.getConnection().getQueryServices().getMemoryManager();
+        long thresholdBytes = props.getInt(QueryServices.SPOOL_THRESHOLD_BYTES_ATTRIB, QueryServicesOptions.DEFAULT_SPOOL_THRESHOLD_BYTES);
+        long reqBytes = Math.min(splits.size() * thresholdBytes, mm.getMaxMemory() * maxReservationPerc / 100);
+        try {
+            memoryReservation = new ReservedMemoryManager(mm, reqBytes, reqBytes);
+        } catch (InsufficientMemoryException e) {
+            logger.warn("Unable to reserve " + reqBytes + " bytes for the parallel scans, so allocating memory for each scan instead: " + e.getMessage());
+            return;
+        }
+        context.setMemoryManager(memoryReservation);
+    }
+    
+    /**
+     * Return the part of the memory reserved for the scans that they did not use. Called
+     * once all the scans have allocated their memory or have been canceled.
+     */
+    void releaseMemoryReservation() {
+        if (memoryReservation != null) {
+            memoryReservation.close();
+            memoryReservation = null;
+            context.setMemoryManager(context.getConnection().getQueryServices().getMemoryManager());
+        }
+    }
+
     @Override
     public int size() {
         return this.splits.size();
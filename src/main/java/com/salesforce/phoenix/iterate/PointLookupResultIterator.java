@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.phoenix.compile.ScanRanges;
+import com.salesforce.phoenix.compile.StatementContext;
+import com.salesforce.phoenix.coprocessor.ScanProjector;
+import com.salesforce.phoenix.filter.SkipScanFilter;
+import com.salesforce.phoenix.join.HashJoinInfo;
+import com.salesforce.phoenix.monitoring.QueryMetrics;
+import com.salesforce.phoenix.parse.FilterableStatement;
+import com.salesforce.phoenix.parse.HintNode.Hint;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
+import com.salesforce.phoenix.schema.SaltingUtil;
+import com.salesforce.phoenix.schema.TableRef;
+import com.salesforce.phoenix.schema.tuple.ResultTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ServerUtil;
+
+
+/**
+ * 
+ * Result iterator for a query that fully qualifies the primary key of each row it
+ * returns, such as an equality comparison or an IN list on every PK column. Instead
+ * of splitting the table and running a parallel scan per split, the rows are looked
+ * up by batches of {@link Get}s. Batches are sent one after the other, while the Gets
+ * of a batch are grouped by region server and sent to the region servers concurrently,
+ * on the Phoenix executor that the HTable is created with. The WHERE clause filter and
+ * the projected columns of the scan are applied to each Get. Rows are returned in row
+ * key order. Since every key is formed and sorted up front, queries with more keys than
+ * {@link QueryServices#MAX_POINT_LOOKUP_KEYS_ATTRIB} are scanned instead.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class PointLookupResultIterator extends ExplainTable implements ResultIterator {
+    private static final Result[] NO_RESULTS = new Result[0];
+    
+    private final List<byte[]> keys;
+    private final int batchSize;
+    private final QueryMetrics metrics;
+    private HTableInterface htable;
+    private long startTimeMs;
+    private int keyIndex;
+    private Result[] results = NO_RESULTS;
+    private int resultIndex;
+
+    /**
+     * @return true if the rows of the query may be looked up by their keys, and false
+     * if they must be scanned
+     */
+    public static boolean isPointLookup(StatementContext context, TableRef table, FilterableStatement statement) {
+        int batchSize = context.getConnection().getQueryServices().getProps().getInt(
+                QueryServices.POINT_LOOKUP_BATCH_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_POINT_LOOKUP_BATCH_SIZE);
+        if (batchSize <= 0) {
+            return false;
+        }
+        // Honor a hint to scan the table
+        if (statement.getHint().hasHint(Hint.RANGE_SCAN) || statement.getHint().hasHint(Hint.SKIP_SCAN)) {
+            return false;
+        }
+        // A projection or join done by a region observer is only applied to scans
+        Scan scan = context.getScan();
+        if (ScanProjector.deserializeProjectorFromScan(scan) != null || HashJoinInfo.deserializeHashJoinFromScan(scan) != null) {
+            return false;
+        }
+        ScanRanges scanRanges = context.getScanRanges();
+        if (!scanRanges.isPointLookup()) {
+            return false;
+        }
+        int maxKeys = context.getConnection().getQueryServices().getProps().getInt(
+                QueryServices.MAX_POINT_LOOKUP_KEYS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_POINT_LOOKUP_KEYS);
+        // Fall back to a skip scan rather than form too many keys on the client
+        return scanRanges.getPointLookupCount(table.getTable().getBucketNum()) <= maxKeys;
+    }
+    
+    public PointLookupResultIterator(StatementContext context, TableRef table, Integer limit) {
+        super(context, table);
+        Scan scan = context.getScan();
+        // Every row looked up matches the ranges, so there's no need to skip through them
+        scan.setFilter(removeSkipScanFilter(scan.getFilter()));
+        int batchSize = context.getConnection().getQueryServices().getProps().getInt(
+                QueryServices.POINT_LOOKUP_BATCH_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_POINT_LOOKUP_BATCH_SIZE);
+        this.batchSize = limit == null ? batchSize : Math.max(1, Math.min(batchSize, limit));
+        this.metrics = context.getQueryMetrics();
+        Integer bucketNum = table.getTable().getBucketNum();
+        this.keys = context.getScanRanges().getPointKeys(bucketNum);
+        // Salted keys are ordered by their salt byte first, so order them by the
+        // rest of the key to return the rows in row key order
+        final int offset = bucketNum == null ? 0 : SaltingUtil.NUM_SALTING_BYTES;
+        Collections.sort(keys, new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] key1, byte[] key2) {
+                return Bytes.compareTo(key1, offset, key1.length - offset, key2, offset, key2.length - offset);
+            }
+        });
+    }
+    
+    private static Filter removeSkipScanFilter(Filter filter) {
+        if (filter instanceof SkipScanFilter) {
+            return null;
+        }
+        if (filter instanceof FilterList && ((FilterList)filter).getOperator() == FilterList.Operator.MUST_PASS_ALL) {
+            List<Filter> filters = new ArrayList<Filter>(((FilterList)filter).getFilters());
+            for (Iterator<Filter> iterator = filters.iterator(); iterator.hasNext();) {
+                if (iterator.next() instanceof SkipScanFilter) {
+                    iterator.remove();
+                }
+            }
+            if (filters.isEmpty()) {
+                return null;
+            }
+            return filters.size() == 1 ? filters.get(0) : new FilterList(FilterList.Operator.MUST_PASS_ALL, filters);
+        }
+        return filter;
+    }
+    
+    private Get newGet(Scan scan, byte[] key) throws IOException {
+        Get get = new Get(key);
+        for (Map.Entry<byte[], NavigableSet<byte[]>> entry : scan.getFamilyMap().entrySet()) {
+            if (entry.getValue() == null) {
+                get.addFamily(entry.getKey());
+            } else {
+                for (byte[] qualifier : entry.getValue()) {
+                    get.addColumn(entry.getKey(), qualifier);
+                }
+            }
+        }
+        TimeRange timeRange = scan.getTimeRange();
+        get.setTimeRange(timeRange.getMin(), timeRange.getMax());
+        get.setMaxVersions(scan.getMaxVersions());
+        get.setCacheBlocks(scan.getCacheBlocks());
+        get.setFilter(scan.getFilter());
+        for (Map.Entry<String, byte[]> entry : scan.getAttributesMap().entrySet()) {
+            get.setAttribute(entry.getKey(), entry.getValue());
+        }
+        return get;
+    }
+    
+    private void lookupNextBatch() throws SQLException {
+        if (htable == null) {
+            startTimeMs = System.currentTimeMillis();
+            htable = context.getConnection().getQueryServices().getTable(table.getTableName());
+            metrics.addParallelScans(1);
+        }
+        try {
+            Scan scan = context.getScan();
+            int endIndex = Math.min(keyIndex + batchSize, keys.size());
+            List<Get> gets = new ArrayList<Get>(endIndex - keyIndex);
+            for (int i = keyIndex; i < endIndex; i++) {
+                gets.add(newGet(scan, keys.get(i)));
+            }
+            keyIndex = endIndex;
+            results = htable.get(gets);
+            resultIndex = 0;
+        } catch (IOException e) {
+            throw ServerUtil.parseServerException(e);
+        }
+    }
+    
+    @Override
+    public Tuple next() throws SQLException {
+        while (true) {
+            while (resultIndex < results.length) {
+                Result result = results[resultIndex];
+                // Let go of the result once it's returned
+                results[resultIndex++] = null;
+                // Rows that don't exist or that are filtered out come back empty
+                if (result != null && !result.isEmpty()) {
+                    return new ResultTuple(result);
+                }
+            }
+            if (keyIndex >= keys.size()) {
+                return null;
+            }
+            lookupNextBatch();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        results = NO_RESULTS;
+        keyIndex = keys.size();
+        if (htable != null) {
+            try {
+                htable.close();
+            } catch (IOException e) {
+                throw ServerUtil.parseServerException(e);
+            } finally {
+                htable = null;
+                metrics.addScanTime(System.currentTimeMillis() - startTimeMs);
+            }
+        }
+    }
+
+    @Override
+    protected boolean isPointLookup() {
+        return true;
+    }
+
+    @Override
+    public void explain(List<String> planSteps) {
+        explain("CLIENT ", planSteps);
+    }
+}
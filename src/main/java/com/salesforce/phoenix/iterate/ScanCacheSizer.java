@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hbase.KeyValue;
+
+import com.salesforce.phoenix.schema.tuple.Tuple;
+
+
+/**
+ * 
+ * Sizes the scanner caching of the scans of a query, that is the number of rows returned by
+ * each RPC to a region server, so that each RPC returns about a target number of bytes. Until
+ * any rows have been read, the size of a row is estimated from the projection of the query.
+ * The sizes of the rows read by the scans of the query then refine the estimate, so that the
+ * scans opened later, for example for the regions that are scanned once others are done, use
+ * a caching sized from the actual rows. The caching is capped, so that scans of very narrow rows
+ * don't hold an unbounded number of rows per RPC.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class ScanCacheSizer {
+    private final long targetBytes;
+    private final int estimatedRowBytes;
+    private final int defaultCaching;
+    private final int maxCaching;
+    private final AtomicLong observedBytes = new AtomicLong();
+    private final AtomicLong observedRows = new AtomicLong();
+    
+    /**
+     * @param targetBytes the number of bytes that each RPC should return
+     * @param estimatedRowBytes the estimated size in bytes of a row returned by the scans, or
+     *  zero if unknown
+     * @param defaultCaching the caching used until rows have been read if the size of a row
+     *  is unknown
+     * @param maxCaching the maximum caching sized from the size of a row
+     */
+    public ScanCacheSizer(long targetBytes, int estimatedRowBytes, int defaultCaching, int maxCaching) {
+        this.targetBytes = targetBytes;
+        this.estimatedRowBytes = estimatedRowBytes;
+        this.defaultCaching = defaultCaching;
+        this.maxCaching = Math.max(1, maxCaching);
+    }
+    
+    /**
+     * @return the number of rows to return per RPC for a scan opened now
+     */
+    public int getCaching() {
+        long rows = observedRows.get();
+        if (rows == 0 && estimatedRowBytes <= 0) {
+            return defaultCaching;
+        }
+        long rowBytes = rows == 0 ? estimatedRowBytes : Math.max(1, observedBytes.get() / rows);
+        return (int)Math.max(1, Math.min(maxCaching, targetBytes / rowBytes));
+    }
+    
+    /**
+     * Adds the sizes of rows read by a scan to those observed so far.
+     * @param bytes the total size in bytes of the rows
+     * @param rows the number of rows
+     */
+    public void addObservedRows(long bytes, long rows) {
+        if (rows > 0) {
+            // Not atomic as a pair, but an estimate that is briefly off by a few rows is fine
+            observedBytes.addAndGet(bytes);
+            observedRows.addAndGet(rows);
+        }
+    }
+    
+    /**
+     * @return the size in bytes of the key values of the row
+     */
+    public static long getByteSize(Tuple tuple) {
+        long size = 0;
+        for (int i = 0; i < tuple.size(); i++) {
+            KeyValue kv = tuple.getValue(i);
+            size += kv.getLength();
+        }
+        return size;
+    }
+}
@@ -29,11 +29,20 @@ package com.salesforce.phoenix.iterate;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 
+import com.salesforce.phoenix.exception.SQLExceptionCode;
+import com.salesforce.phoenix.exception.SQLExceptionInfo;
+import com.salesforce.phoenix.job.JobManager.JobCallable;
+import com.salesforce.phoenix.monitoring.QueryMetrics;
 import com.salesforce.phoenix.schema.tuple.ResultTuple;
 import com.salesforce.phoenix.schema.tuple.Tuple;
 import com.salesforce.phoenix.util.ServerUtil;
@@ -41,20 +50,100 @@ import com.salesforce.phoenix.util.ServerUtil;
 
 public class ScanningResultIterator implements ResultIterator {
     private final ResultScanner scanner;
+    private final QueryMetrics metrics;
+    private final ExecutorService executor;
+    private final int batchSize;
+    private final int maxPrefetchBatches;
     
-    public ScanningResultIterator(ResultScanner scanner) {
+    // Batches fetched ahead of the consumer, and the state of the fetching, all guarded by the lock
+    private final Object lock = new Object();
+    private final Deque<Result[]> batches;
+    private AtomicBoolean pendingFetch;
+    private boolean isFetching;
+    private boolean isExhausted;
+    private boolean isClosed;
+    private IOException fetchException;
+    
+    // Only accessed by the consumer
+    private Result[] batch;
+    private int batchIndex;
+    
+    /**
+     * @param scanner the scanner from which to read
+     * @param metrics the metrics to which the server side metrics sent back at the end of the
+     *  scan are added, or null if they were not requested.
+     */
+    public ScanningResultIterator(ResultScanner scanner, QueryMetrics metrics) {
+        this(scanner, metrics, null, 0, 0);
+    }
+    
+    /**
+     * Creates an iterator that reads ahead of its consumer, fetching the next batches of
+     * rows from the scanner on the executor while the current batch is being processed.
+     * This overlaps the RPCs to the region server and the time spent scanning there with
+     * the client side evaluation of the rows.
+     * @param scanner the scanner from which to read
+     * @param metrics the metrics to which the server side metrics sent back at the end of the
+     *  scan are added, or null if they were not requested.
+     * @param executor the executor on which the batches are fetched, or null to fetch on the
+     *  consuming thread.
+     * @param batchSize the number of rows fetched at a time, typically the scanner caching
+     * @param maxPrefetchBatches the maximum number of batches fetched ahead of the consumer.
+     *  Zero disables prefetching.
+     */
+    public ScanningResultIterator(ResultScanner scanner, QueryMetrics metrics, ExecutorService executor, int batchSize, int maxPrefetchBatches) {
         this.scanner = scanner;
+        this.metrics = metrics;
+        boolean isPrefetching = executor != null && batchSize > 0 && maxPrefetchBatches > 0;
+        this.executor = isPrefetching ? executor : null;
+        this.batchSize = batchSize;
+        this.maxPrefetchBatches = maxPrefetchBatches;
+        this.batches = isPrefetching ? new ArrayDeque<Result[]>(maxPrefetchBatches) : null;
+        if (isPrefetching) {
+            synchronized (lock) {
+                scheduleFetch();
+            }
+        }
     }
     
     @Override
     public void close() throws SQLException {
+        if (executor != null) {
+            boolean isInterrupted = false;
+            synchronized (lock) {
+                isClosed = true;
+                batches.clear();
+                // A fetch that has not started yet will never run, but one that is running
+                // must finish before the scanner can be closed underneath it. It is not
+                // interrupted, as that may leave the HBase connection in a bad state.
+                if (pendingFetch != null && pendingFetch.compareAndSet(false, true)) {
+                    isFetching = false;
+                }
+                while (isFetching) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        isInterrupted = true;
+                    }
+                }
+            }
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
         scanner.close();
     }
 
     @Override
     public Tuple next() throws SQLException {
         try {
-            Result result = scanner.next();
+            Result result = nextResult();
+            // Strip the trailing row of server side metrics. There may be more than one if
+            // the scan crossed a region boundary because a region split during the query.
+            while (result != null && metrics != null && QueryMetrics.isServerMetrics(result)) {
+                metrics.addServerMetrics(result);
+                result = nextResult();
+            }
             // TODO: use ResultTuple.setResult(result)
             // Need to create a new one if holding on to it (i.e. OrderedResultIterator)
             return result == null ? null : new ResultTuple(result);
@@ -63,6 +152,127 @@ public class ScanningResultIterator implements ResultIterator {
         }
     }
 
+    private Result nextResult() throws IOException, SQLException {
+        if (executor == null) {
+            return scanner.next();
+        }
+        while (batch == null || batchIndex == batch.length) {
+            batch = nextBatch();
+            batchIndex = 0;
+            if (batch == null) {
+                return null;
+            }
+        }
+        Result result = batch[batchIndex];
+        batch[batchIndex++] = null; // Let the row be collected once the consumer is done with it
+        return result;
+    }
+    
+    private Result[] nextBatch() throws IOException, SQLException {
+        while (true) {
+            synchronized (lock) {
+                while (true) {
+                    if (!batches.isEmpty()) {
+                        Result[] nextBatch = batches.poll();
+                        scheduleFetch();
+                        return nextBatch;
+                    }
+                    if (fetchException != null) {
+                        throw fetchException;
+                    }
+                    if (isExhausted) {
+                        return null;
+                    }
+                    scheduleFetch();
+                    // Rather than wait for a fetch that is still queued behind other work on the
+                    // executor, for example when the scan itself runs on one of its threads, fetch
+                    // on this thread instead.
+                    if (pendingFetch == null || pendingFetch.compareAndSet(false, true)) {
+                        isFetching = true;
+                        break;
+                    }
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLExceptionInfo.Builder(SQLExceptionCode.INTERRUPTED_EXCEPTION)
+                            .setRootCause(e).build().buildException();
+                    }
+                }
+            }
+            fetch(false);
+        }
+    }
+    
+    /**
+     * Submits a fetch of the next batches to the executor, unless one is already in progress,
+     * the scan is done, or enough batches have been fetched ahead of the consumer. Must be
+     * called while holding the lock.
+     */
+    private void scheduleFetch() {
+        if (isFetching || isExhausted || isClosed || fetchException != null || batches.size() >= maxPrefetchBatches) {
+            return;
+        }
+        final AtomicBoolean isStarted = new AtomicBoolean(false);
+        try {
+            executor.submit(new JobCallable<Void>() {
+                @Override
+                public Void call() {
+                    if (isStarted.compareAndSet(false, true)) {
+                        fetch(true);
+                    }
+                    return null;
+                }
+
+                @Override
+                public Object getJobId() {
+                    return ScanningResultIterator.this;
+                }
+            });
+            pendingFetch = isStarted;
+            isFetching = true;
+        } catch (RejectedExecutionException e) {
+            // The executor is saturated, so let the consumer fetch the next batch itself
+            pendingFetch = null;
+        }
+    }
+    
+    /**
+     * Fetches batches from the scanner and adds them to the queued batches. The caller must
+     * have set isFetching while holding the lock, which is cleared once done.
+     * @param fetchAhead true to keep fetching until the maximum number of batches have been
+     *  queued, and false to fetch only a single batch.
+     */
+    private void fetch(boolean fetchAhead) {
+        boolean isDone = false;
+        while (!isDone) {
+            Result[] nextBatch = null;
+            IOException exception = null;
+            try {
+                nextBatch = scanner.next(batchSize);
+            } catch (IOException e) {
+                exception = e;
+            } catch (RuntimeException e) {
+                exception = new IOException(e);
+            }
+            synchronized (lock) {
+                if (exception != null) {
+                    fetchException = exception;
+                } else if (nextBatch == null || nextBatch.length == 0) {
+                    isExhausted = true;
+                } else if (!isClosed) {
+                    batches.add(nextBatch);
+                }
+                isDone = !fetchAhead || isClosed || isExhausted || fetchException != null || batches.size() >= maxPrefetchBatches;
+                if (isDone) {
+                    isFetching = false;
+                    pendingFetch = null;
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
     @Override
     public void explain(List<String> planSteps) {
     }
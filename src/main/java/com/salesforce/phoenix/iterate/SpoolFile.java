@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.xerial.snappy.Snappy;
+
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
+import com.salesforce.phoenix.util.ReadOnlyProps;
+
+
+/**
+ * 
+ * Temporary file to which the results of a scan are spooled once they no longer fit in memory.
+ * The file is either written as is or as a sequence of Snappy compressed blocks, which are
+ * read back one at a time. The disk space used by all the spool files of the process may be
+ * limited by a quota, beyond which writing fails.
+ * 
+ * Not thread safe.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class SpoolFile {
+    static final int BLOCK_SIZE = 64 * 1024;
+    // Uncompressed and compressed length of each block
+    private static final int BLOCK_HEADER_SIZE = 2 * Bytes.SIZEOF_INT;
+    // Buffer size of the streams reading and writing the file itself
+    private static final int STREAM_BUFFER_SIZE = 8 * 1024;
+    private static final AtomicLong totalDiskBytes = new AtomicLong();
+    
+    private final File file;
+    private final boolean isCompressed;
+    private final long maxDiskBytes;
+    // Number of bytes written to the file and counted against the quota
+    private long diskBytes;
+    
+    /**
+     * Create an empty spool file
+     * @param directory the directory in which to create the file or null for the default temporary directory
+     * @param isCompressed true to write the file as Snappy compressed blocks
+     * @param maxDiskBytes the maximum number of bytes used by all spool files of the process, or zero for no limit
+     * @throws IOException
+     */
+    public SpoolFile(File directory, boolean isCompressed, long maxDiskBytes) throws IOException {
+        this.file = File.createTempFile("ResultSpooler", ".bin", directory);
+        this.isCompressed = isCompressed;
+        this.maxDiskBytes = maxDiskBytes;
+    }
+    
+    /**
+     * Create an empty spool file as configured by {@link QueryServices#SPOOL_DIRECTORY_ATTRIB},
+     * {@link QueryServices#SPOOL_FILE_COMPRESSION_ATTRIB} and {@link QueryServices#MAX_SPOOL_DISK_BYTES_ATTRIB}
+     */
+    public static SpoolFile newSpoolFile(ReadOnlyProps props) throws IOException {
+        String directory = props.get(QueryServices.SPOOL_DIRECTORY_ATTRIB);
+        return new SpoolFile(directory == null ? null : new File(directory),
+                props.getBoolean(QueryServices.SPOOL_FILE_COMPRESSION_ATTRIB, QueryServicesOptions.DEFAULT_SPOOL_FILE_COMPRESSION),
+                props.getLong(QueryServices.MAX_SPOOL_DISK_BYTES_ATTRIB, QueryServicesOptions.DEFAULT_MAX_SPOOL_DISK_BYTES));
+    }
+    
+    /**
+     * @return the number of bytes used on disk by all the spool files of the process
+     */
+    public static long getTotalDiskBytes() {
+        return totalDiskBytes.get();
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    public boolean isCompressed() {
+        return isCompressed;
+    }
+    
+    /**
+     * @return the number of bytes written to the file
+     */
+    public long getDiskBytes() {
+        return diskBytes;
+    }
+    
+    private void reserveDiskBytes(long nBytes) throws IOException {
+        while (true) {
+            long usedBytes = totalDiskBytes.get();
+            if (maxDiskBytes > 0 && usedBytes + nBytes > maxDiskBytes) {
+                throw new IOException("Unable to spool " + nBytes + " more bytes to " + file + ", since the spool files would exceed the quota of " + maxDiskBytes + " bytes");
+            }
+            if (totalDiskBytes.compareAndSet(usedBytes, usedBytes + nBytes)) {
+                diskBytes += nBytes;
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Delete the file and release the disk space it used from the quota. The space is only
+     * released once the file is gone, so if it cannot be deleted now, it's deleted when the
+     * process exits and counts against the quota until then.
+     */
+    public void delete() {
+        if (file.delete() || !file.exists()) {
+            totalDiskBytes.addAndGet(-diskBytes);
+            diskBytes = 0;
+        } else {
+            file.deleteOnExit();
+        }
+    }
+    
+    /**
+     * @return the memory (in bytes) held by the buffers of a stream returned by {@link #newOutputStream()}
+     */
+    static int getOutputStreamBufferSize(boolean isCompressed) {
+        return isCompressed ? BLOCK_SIZE + BLOCK_HEADER_SIZE + Snappy.maxCompressedLength(BLOCK_SIZE) : STREAM_BUFFER_SIZE;
+    }
+    
+    /**
+     * @return the memory (in bytes) held by the buffers of a stream returned by {@link #newInputStream()}
+     */
+    static int getInputStreamBufferSize(boolean isCompressed) {
+        return STREAM_BUFFER_SIZE + (isCompressed ? BLOCK_HEADER_SIZE + Snappy.maxCompressedLength(BLOCK_SIZE) + BLOCK_SIZE : 0);
+    }
+    
+    /**
+     * @return a stream writing to the file from its start
+     */
+    public OutputStream newOutputStream() throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        return isCompressed ? new CompressedOutputStream(out) : new UncompressedOutputStream(new BufferedOutputStream(out, STREAM_BUFFER_SIZE));
+    }
+    
+    /**
+     * @return a stream reading the file from its start
+     */
+    public InputStream newInputStream() throws IOException {
+        return isCompressed ? new CompressedInputStream(file) : new BufferedInputStream(new FileInputStream(file), STREAM_BUFFER_SIZE);
+    }
+    
+    private class UncompressedOutputStream extends FilterOutputStream {
+        private UncompressedOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            reserveDiskBytes(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            reserveDiskBytes(len);
+            out.write(b, off, len);
+        }
+    }
+    
+    private class CompressedOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] compressedBlock = new byte[BLOCK_HEADER_SIZE + Snappy.maxCompressedLength(BLOCK_SIZE)];
+        private int blockLength;
+        
+        private CompressedOutputStream(OutputStream out) {
+            this.out = out;
+        }
+        
+        private void writeBlock() throws IOException {
+            if (blockLength == 0) {
+                return;
+            }
+            int compressedLength = Snappy.compress(block, 0, blockLength, compressedBlock, BLOCK_HEADER_SIZE);
+            Bytes.putInt(compressedBlock, 0, blockLength);
+            Bytes.putInt(compressedBlock, Bytes.SIZEOF_INT, compressedLength);
+            reserveDiskBytes(BLOCK_HEADER_SIZE + compressedLength);
+            out.write(compressedBlock, 0, BLOCK_HEADER_SIZE + compressedLength);
+            blockLength = 0;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            if (blockLength == block.length) {
+                writeBlock();
+            }
+            block[blockLength++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (blockLength == block.length) {
+                    writeBlock();
+                }
+                int n = Math.min(len, block.length - blockLength);
+                System.arraycopy(b, off, block, blockLength, n);
+                blockLength += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeBlock();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writeBlock();
+            } finally {
+                out.close();
+            }
+        }
+    }
+    
+    /**
+     * 
+     * Reads the compressed blocks of a file one after the other. The file is read through a
+     * plain stream rather than mapped into memory, so that no disk or address space is held
+     * once the stream is closed.
+     */
+    private static class CompressedInputStream extends InputStream {
+        private final DataInputStream in;
+        private final byte[] blockHeader = new byte[BLOCK_HEADER_SIZE];
+        private byte[] compressedBlock = new byte[Snappy.maxCompressedLength(BLOCK_SIZE)];
+        private byte[] block = new byte[BLOCK_SIZE];
+        private int blockOffset;
+        private int blockLength;
+        
+        private CompressedInputStream(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), STREAM_BUFFER_SIZE));
+        }
+        
+        /**
+         * Read and uncompress the next block
+         * @return false if the end of the file was reached and true otherwise
+         */
+        private boolean readBlock() throws IOException {
+            int n = in.read(blockHeader);
+            if (n < 0) {
+                return false;
+            }
+            // Throws an EOFException if the file is truncated within the block
+            in.readFully(blockHeader, n, BLOCK_HEADER_SIZE - n);
+            int length = Bytes.toInt(blockHeader, 0);
+            int compressedLength = Bytes.toInt(blockHeader, Bytes.SIZEOF_INT);
+            if (compressedLength > compressedBlock.length) {
+                compressedBlock = new byte[compressedLength];
+            }
+            in.readFully(compressedBlock, 0, compressedLength);
+            if (length > block.length) {
+                block = new byte[length];
+            }
+            Snappy.uncompress(compressedBlock, 0, compressedLength, block, 0);
+            blockOffset = 0;
+            blockLength = length;
+            return true;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            if (blockOffset == blockLength && !readBlock()) {
+                return -1;
+            }
+            return block[blockOffset++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (blockOffset == blockLength && !readBlock()) {
+                return -1;
+            }
+            int n = Math.min(len, blockLength - blockOffset);
+            System.arraycopy(block, blockOffset, b, off, n);
+            blockOffset += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -31,14 +31,17 @@ import java.io.*;
 import java.sql.SQLException;
 import java.util.List;
 
-import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.io.output.ThresholdingOutputStream;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.io.WritableUtils;
 
+import com.salesforce.phoenix.compile.StatementContext;
 import com.salesforce.phoenix.iterate.ParallelIterators.ParallelIteratorFactory;
 import com.salesforce.phoenix.memory.MemoryManager;
 import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+import com.salesforce.phoenix.monitoring.QueryMetrics;
 import com.salesforce.phoenix.query.QueryServices;
 import com.salesforce.phoenix.query.QueryServicesOptions;
 import com.salesforce.phoenix.schema.tuple.ResultTuple;
@@ -65,14 +68,22 @@ public class SpoolingResultIterator implements PeekingResultIterator {
             this.services = services;
         }
         @Override
-        public PeekingResultIterator newIterator(ResultIterator scanner) throws SQLException {
-            return new SpoolingResultIterator(scanner, services);
+        public PeekingResultIterator newIterator(StatementContext context, ResultIterator scanner) throws SQLException {
+            return new SpoolingResultIterator(scanner, context.getMemoryManager(), services.getProps().getInt(QueryServices.SPOOL_THRESHOLD_BYTES_ATTRIB, QueryServicesOptions.DEFAULT_SPOOL_THRESHOLD_BYTES), services.getProps(), context.getQueryMetrics());
         }
         
     }
 
     public SpoolingResultIterator(ResultIterator scanner, QueryServices services) throws SQLException {
-        this (scanner, services.getMemoryManager(), services.getProps().getInt(QueryServices.SPOOL_THRESHOLD_BYTES_ATTRIB, QueryServicesOptions.DEFAULT_SPOOL_THRESHOLD_BYTES));
+        this (scanner, services, null);
+    }
+    
+    public SpoolingResultIterator(ResultIterator scanner, QueryServices services, QueryMetrics metrics) throws SQLException {
+        this (scanner, services.getMemoryManager(), services.getProps().getInt(QueryServices.SPOOL_THRESHOLD_BYTES_ATTRIB, QueryServicesOptions.DEFAULT_SPOOL_THRESHOLD_BYTES), services.getProps(), metrics);
+    }
+    
+    SpoolingResultIterator(ResultIterator scanner, MemoryManager mm, int thresholdBytes) throws SQLException {
+        this (scanner, mm, thresholdBytes, ReadOnlyProps.EMPTY_PROPS, null);
     }
     
     /**
@@ -82,21 +93,28 @@ public class SpoolingResultIterator implements PeekingResultIterator {
     * @param mm memory manager tracking memory usage across threads.
     * @param thresholdBytes the requested threshold.  Will be dialed down if memory usage (as determined by
     *  the memory manager) is exceeded.
+    * @param props the properties determining where and in which format the results are spooled to disk.
+    *  See {@link SpoolFile#newSpoolFile(ReadOnlyProps)}.
+    * @param metrics the metrics to which the time spent waiting for memory and the bytes spooled to disk
+    *  are added, or null if metrics are not being collected
     * @throws SQLException
     */
-    SpoolingResultIterator(ResultIterator scanner, MemoryManager mm, int thresholdBytes) throws SQLException {
+    SpoolingResultIterator(ResultIterator scanner, MemoryManager mm, int thresholdBytes, final ReadOnlyProps props, QueryMetrics metrics) throws SQLException {
         boolean success = false;
         boolean usedOnDiskIterator = false;
+        long startTimeMs = System.currentTimeMillis();
         final MemoryChunk chunk = mm.allocate(0, thresholdBytes);
-        File tempFile = null;
+        if (metrics != null) {
+            metrics.addMemoryWaitTime(System.currentTimeMillis() - startTimeMs);
+        }
+        DeferredSpoolOutputStream spoolTo = null;
         try {
             // Can't be bigger than int, since it's the max of the above allocation
             int size = (int)chunk.getSize();
-            tempFile = File.createTempFile("ResultSpooler",".bin");
-            DeferredFileOutputStream spoolTo = new DeferredFileOutputStream(size, tempFile) {
+            spoolTo = new DeferredSpoolOutputStream(size) {
                 @Override
                 protected void thresholdReached() throws IOException {
-                    super.thresholdReached();
+                    super.thresholdReached(SpoolFile.newSpoolFile(props));
                     chunk.close();
                 }
             };
@@ -112,8 +130,11 @@ public class SpoolingResultIterator implements PeekingResultIterator {
                 chunk.resize(data.length);
                 spoolFrom = new InMemoryResultIterator(data, chunk);
             } else {
-                spoolFrom = new OnDiskResultIterator(maxSize, spoolTo.getFile());
+                spoolFrom = new OnDiskResultIterator(maxSize, spoolTo.getSpoolFile());
                 usedOnDiskIterator = true;
+                if (metrics != null) {
+                    metrics.addSpoolFile(spoolTo.getByteCount());
+                }
             }
             success = true;
         } catch (IOException e) {
@@ -123,8 +144,8 @@ public class SpoolingResultIterator implements PeekingResultIterator {
                 scanner.close();
             } finally {
                 try {
-                    if (!usedOnDiskIterator) {
-                        tempFile.delete();
+                    if (!usedOnDiskIterator && spoolTo != null && spoolTo.getSpoolFile() != null) {
+                        spoolTo.getSpoolFile().delete();
                     }
                 } finally {
                     if (!success) {
@@ -150,6 +171,58 @@ public class SpoolingResultIterator implements PeekingResultIterator {
         spoolFrom.close();
     }
 
+    /**
+     * 
+     * Output stream that keeps what's written in memory until a threshold is reached and then
+     * writes it to a {@link SpoolFile}. Like {@link org.apache.commons.io.output.DeferredFileOutputStream},
+     * but with the file and its format determined once the threshold is reached.
+     *
+     * @author jtaylor
+     * @since 2.1
+     */
+    private static abstract class DeferredSpoolOutputStream extends ThresholdingOutputStream {
+        private ByteArrayOutputStream memoryOutputStream;
+        private OutputStream currentOutputStream;
+        private SpoolFile spoolFile;
+        
+        private DeferredSpoolOutputStream(int threshold) {
+            super(threshold);
+            memoryOutputStream = new ByteArrayOutputStream();
+            currentOutputStream = memoryOutputStream;
+        }
+        
+        @Override
+        protected OutputStream getStream() throws IOException {
+            return currentOutputStream;
+        }
+        
+        /**
+         * Switch from writing to memory to writing to the given spool file
+         */
+        protected void thresholdReached(SpoolFile spoolFile) throws IOException {
+            this.spoolFile = spoolFile;
+            OutputStream out = spoolFile.newOutputStream();
+            memoryOutputStream.writeTo(out);
+            currentOutputStream = out;
+            memoryOutputStream = null;
+        }
+        
+        public boolean isInMemory() {
+            return !isThresholdExceeded();
+        }
+        
+        public byte[] getData() {
+            return memoryOutputStream == null ? null : memoryOutputStream.toByteArray();
+        }
+        
+        /**
+         * @return the file to which was spooled or null if still in memory
+         */
+        public SpoolFile getSpoolFile() {
+            return spoolFile;
+        }
+    }
+    
     /**
      * 
      * Backing result iterator if it was not necessary to spool results to disk.
@@ -211,7 +284,7 @@ public class SpoolingResultIterator implements PeekingResultIterator {
      * @since 0.1
      */
     private static class OnDiskResultIterator implements PeekingResultIterator {
-        private final File file;
+        private final SpoolFile file;
         private DataInputStream spoolFrom;
         private Tuple next;
         private int maxSize;
@@ -219,14 +292,14 @@ public class SpoolingResultIterator implements PeekingResultIterator {
         private byte[][] buffers = new byte[2][];
         private boolean isClosed;
         
-        private OnDiskResultIterator (int maxSize, File file) {
+        private OnDiskResultIterator (int maxSize, SpoolFile file) {
             this.file = file;
             this.maxSize = maxSize;
         }
         
         private synchronized void init() throws IOException {
             if (spoolFrom == null) {
-                spoolFrom = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                spoolFrom = new DataInputStream(file.newInputStream());
                 // We need two so that we can have a current and a next without them stomping on each other
                 buffers[0] = new byte[maxSize];
                 buffers[1] = new byte[maxSize];
@@ -263,7 +336,7 @@ public class SpoolingResultIterator implements PeekingResultIterator {
             bufferIndex = (bufferIndex + 1) % 2;
             byte[] buffer = buffers [bufferIndex];
             while(totalBytesRead < length) {
-                int bytesRead = spoolFrom.read(buffer, offset, length);
+                int bytesRead = spoolFrom.read(buffer, offset, length - totalBytesRead);
                 if (bytesRead == -1) {
                     reachedEnd();
                     return next;
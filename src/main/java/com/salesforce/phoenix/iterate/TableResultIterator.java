@@ -36,15 +36,23 @@ import org.apache.hadoop.hbase.client.Scan;
 
 import com.google.common.io.Closeables;
 import com.salesforce.phoenix.compile.StatementContext;
+import com.salesforce.phoenix.coprocessor.BaseScannerRegionObserver;
+import com.salesforce.phoenix.monitoring.QueryMetrics;
+import com.salesforce.phoenix.query.ConnectionQueryServices;
+import com.salesforce.phoenix.query.QueryConstants;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
 import com.salesforce.phoenix.schema.TableRef;
 import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ReadOnlyProps;
 import com.salesforce.phoenix.util.ServerUtil;
 
 
 /**
  *
  * Wrapper for ResultScanner creation that closes HTableInterface
- * when ResultScanner is closed.
+ * when ResultScanner is closed. Records the time taken by the scan
+ * in the {@link QueryMetrics} of the statement.
  *
  * @author jtaylor
  * @since 0.1
@@ -52,6 +60,12 @@ import com.salesforce.phoenix.util.ServerUtil;
 public class TableResultIterator extends ExplainTable implements ResultIterator {
     private final HTableInterface htable;
     private final ResultIterator delegate;
+    private final QueryMetrics metrics;
+    private final long startTimeMs = System.currentTimeMillis();
+    private final ScanCacheSizer scanCacheSizer;
+    private final int caching;
+    private long observedBytes;
+    private long observedRows;
 
     public TableResultIterator(StatementContext context, TableRef table) throws SQLException {
         this(context, table, context.getScan());
@@ -59,9 +73,22 @@ public class TableResultIterator extends ExplainTable implements ResultIterator
 
     public TableResultIterator(StatementContext context, TableRef table, Scan scan) throws SQLException {
         super(context, table);
-        htable = context.getConnection().getQueryServices().getTable(table.getTableName());
+        metrics = context.getQueryMetrics();
+        if (metrics.isEnabled()) {
+            scan.setAttribute(BaseScannerRegionObserver.QUERY_METRICS, QueryConstants.TRUE);
+        }
+        ConnectionQueryServices services = context.getConnection().getQueryServices();
+        ReadOnlyProps props = services.getProps();
+        int prefetchBatches = props.getInt(QueryServices.SCAN_PREFETCH_BATCHES_ATTRIB, QueryServicesOptions.DEFAULT_SCAN_PREFETCH_BATCHES);
+        scanCacheSizer = context.getScanCacheSizer();
+        if (scanCacheSizer != null) {
+            scan.setCaching(scanCacheSizer.getCaching());
+        }
+        caching = scan.getCaching() > 0 ? scan.getCaching() : props.getInt(QueryServices.SCAN_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_SCAN_CACHE_SIZE);
+        htable = services.getTable(table.getTableName());
         try {
-            delegate = new ScanningResultIterator(htable.getScanner(scan));
+            delegate = new ScanningResultIterator(htable.getScanner(scan), metrics.isEnabled() ? metrics : null,
+                    prefetchBatches > 0 ? services.getExecutor() : null, caching, prefetchBatches);
         } catch (IOException e) {
             Closeables.closeQuietly(htable);
             throw ServerUtil.parseServerException(e);
@@ -70,6 +97,7 @@ public class TableResultIterator extends ExplainTable implements ResultIterator
 
     @Override
     public void close() throws SQLException {
+        addObservedRows();
         try {
             delegate.close();
         } finally {
@@ -77,13 +105,31 @@ public class TableResultIterator extends ExplainTable implements ResultIterator
                 htable.close();
             } catch (IOException e) {
                 throw ServerUtil.parseServerException(e);
+            } finally {
+                metrics.addScanTime(System.currentTimeMillis() - startTimeMs);
             }
         }
     }
 
     @Override
     public Tuple next() throws SQLException {
-        return delegate.next();
+        Tuple tuple = delegate.next();
+        if (scanCacheSizer != null && tuple != null) {
+            observedBytes += ScanCacheSizer.getByteSize(tuple);
+            // Let scans opened later size their caching from the rows read so far
+            if (++observedRows == caching) {
+                addObservedRows();
+            }
+        }
+        return tuple;
+    }
+    
+    private void addObservedRows() {
+        if (scanCacheSizer != null) {
+            scanCacheSizer.addObservedRows(observedBytes, observedRows);
+            observedBytes = 0;
+            observedRows = 0;
+        }
     }
 
     @Override
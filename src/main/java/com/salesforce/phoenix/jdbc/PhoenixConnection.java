@@ -39,6 +39,7 @@ import com.salesforce.phoenix.exception.SQLExceptionCode;
 import com.salesforce.phoenix.exception.SQLExceptionInfo;
 import com.salesforce.phoenix.execute.MutationState;
 import com.salesforce.phoenix.jdbc.PhoenixStatement.PhoenixStatementParser;
+import com.salesforce.phoenix.optimize.QueryPlanCache;
 import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.schema.*;
 import com.salesforce.phoenix.util.*;
@@ -70,6 +71,7 @@ public class PhoenixConnection implements Connection, com.salesforce.phoenix.jdb
     private PMetaData metaData;
     private final byte[] tenantId;
     private final String datePattern;
+    private final QueryPlanCache queryPlanCache;
     
     private boolean isClosed = false;
     
@@ -93,6 +95,7 @@ public class PhoenixConnection implements Connection, com.salesforce.phoenix.jdb
         formatters[PDataType.TIME.ordinal()] = dateTimeFormat;
         this.metaData = metaData;
         this.mutationState = new MutationState(maxSize, this);
+        this.queryPlanCache = new QueryPlanCache(services.getProps().getInt(QueryServices.MAX_PLAN_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MAX_PLAN_CACHE_SIZE));
     }
 
     public int executeStatements(Reader reader, List<Object> binds, PrintStream out) throws IOException, SQLException {
@@ -187,6 +190,13 @@ public class PhoenixConnection implements Connection, com.salesforce.phoenix.jdb
     public PMetaData getPMetaData() {
         return metaData;
     }
+    
+    /**
+     * @return the cache of the plans chosen for the prepared statements of this connection
+     */
+    public QueryPlanCache getQueryPlanCache() {
+        return queryPlanCache;
+    }
 
     public MutationState getMutationState() {
         return mutationState;
@@ -559,6 +569,11 @@ public class PhoenixConnection implements Connection, com.salesforce.phoenix.jdb
         // TODO: since a connection is only used by one thread at a time,
         // we could modify this metadata in place since it's not shared.
         if (scn == null || scn > table.getTimeStamp()) {
+            // The same table is often added again when the cache is updated, so only
+            // throw away the plans chosen by the optimizer if the table has changed.
+            if (isChanged(schemaName, table)) {
+                queryPlanCache.clear();
+            }
             metaData = metaData.addTable(schemaName, table);
         }
         //Cascade through to connectionQueryServices too
@@ -566,10 +581,41 @@ public class PhoenixConnection implements Connection, com.salesforce.phoenix.jdb
         return metaData;
     }
 
+    private boolean isChanged(String schemaName, PTable table) {
+        PSchema schema = metaData.getSchemaOrNull(schemaName == null ? QueryConstants.NULL_SCHEMA_NAME : schemaName);
+        PTable oldTable = schema == null ? null : schema.getTables().get(table.getName().getString());
+        return oldTable == null || isChanged(oldTable, table);
+    }
+    
+    private static boolean isChanged(PTable oldTable, PTable table) {
+        if (oldTable.getSequenceNumber() != table.getSequenceNumber() || oldTable.getIndexState() != table.getIndexState()) {
+            return true;
+        }
+        if (table.getType() == PTableType.INDEX) {
+            return oldTable.getTimeStamp() != table.getTimeStamp();
+        }
+        // The time stamp of a data table is set to the time stamp of its last index
+        // when the index is added, so compare the indexes of the table instead.
+        List<PTable> oldIndexes = oldTable.getIndexes();
+        List<PTable> indexes = table.getIndexes();
+        if (oldIndexes.size() != indexes.size()) {
+            return true;
+        }
+        for (int i = 0; i < indexes.size(); i++) {
+            PTable index = indexes.get(i);
+            PTable oldIndex = oldIndexes.get(i);
+            if (!oldIndex.getName().equals(index.getName()) || isChanged(oldIndex, index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public PMetaData addColumn(String schemaName, String tableName, List<PColumn> columns, long tableTimeStamp, long tableSeqNum, boolean isImmutableRows)
             throws SQLException {
         metaData = metaData.addColumn(schemaName, tableName, columns, tableTimeStamp, tableSeqNum, isImmutableRows);
+        queryPlanCache.clear();
         //Cascade through to connectionQueryServices too
         getQueryServices().addColumn(schemaName, tableName, columns, tableTimeStamp, tableSeqNum, isImmutableRows);
         return metaData;
@@ -578,6 +624,7 @@ public class PhoenixConnection implements Connection, com.salesforce.phoenix.jdb
     @Override
     public PMetaData removeTable(String schemaName, String tableName) throws SQLException {
         metaData = metaData.removeTable(schemaName, tableName);
+        queryPlanCache.clear();
         //Cascade through to connectionQueryServices too
         getQueryServices().removeTable(schemaName, tableName);
         return metaData;
@@ -587,6 +634,7 @@ public class PhoenixConnection implements Connection, com.salesforce.phoenix.jdb
     public PMetaData removeColumn(String schemaName, String tableName, String familyName, String columnName,
             long tableTimeStamp, long tableSeqNum) throws SQLException {
         metaData = metaData.removeColumn(schemaName, tableName, familyName, columnName, tableTimeStamp, tableSeqNum);
+        queryPlanCache.clear();
         //Cascade through to connectionQueryServices too
         getQueryServices().removeColumn(schemaName, tableName, familyName, columnName, tableTimeStamp, tableSeqNum);
         return metaData;
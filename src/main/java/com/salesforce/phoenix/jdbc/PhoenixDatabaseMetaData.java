@@ -75,6 +75,10 @@ public class PhoenixDatabaseMetaData implements DatabaseMetaData, com.salesforce
     public static final byte[] TYPE_TABLE_BYTES = TYPE_TABLE.getBytes();
     public static final byte[] TYPE_SCHEMA_BYTES = TYPE_SCHEMA.getBytes();
     public static final byte[] TYPE_TABLE_NAME = SchemaUtil.getTableName(TYPE_SCHEMA_BYTES, TYPE_TABLE_BYTES);
+    // HBase table holding the guide posts collected for each region of a table (see StatsUtil)
+    public static final String STATS_TABLE = "STATS";
+    public static final byte[] STATS_TABLE_BYTES = STATS_TABLE.getBytes();
+    public static final byte[] STATS_TABLE_NAME = SchemaUtil.getTableName(TYPE_SCHEMA_BYTES, STATS_TABLE_BYTES);
     
     public static final String TABLE_NAME_NAME = "TABLE_NAME";
     public static final String TABLE_TYPE_NAME = "TABLE_TYPE";
@@ -35,13 +35,15 @@ import com.salesforce.phoenix.util.SQLCloseable;
  * {@link #setDate(int, Date)} - {@link #setDate(int, Date, Calendar)} - {@link #setTime(int, Time)} -
  * {@link #setTime(int, Time, Calendar)} - {@link #setTimestamp(int, Timestamp)} -
  * {@link #setTimestamp(int, Timestamp, Calendar)} - {@link #setNull(int, int)} - {@link #setNull(int, int, String)} -
- * {@link #setBytes(int, byte[])} - {@link #clearParameters()} - {@link #getMetaData()}
+ * {@link #setBytes(int, byte[])} - {@link #clearParameters()} - {@link #getMetaData()} - {@link #addBatch()} -
+ * {@link #executeBatch()} - {@link #clearBatch()}
  * 
  * @author jtaylor
  * @since 0.1
  */
 public class PhoenixPreparedStatement extends PhoenixStatement implements PreparedStatement, SQLCloseable {
     private final List<Object> parameters;
+    private final List<List<Object>> batch = new ArrayList<List<Object>>();
     private final ExecutableStatement statement;
 
     private final String query;
@@ -66,8 +68,28 @@ public class PhoenixPreparedStatement extends PhoenixStatement implements Prepar
 
     @Override
     public void addBatch() throws SQLException {
+        throwIfUnboundParameters();
+        batch.add(new ArrayList<Object>(parameters));
+    }
+    
+    @Override
+    public void addBatch(String sql) throws SQLException {
         throw new SQLFeatureNotSupportedException();
     }
+    
+    @Override
+    public void clearBatch() throws SQLException {
+        batch.clear();
+    }
+    
+    @Override
+    public int[] executeBatch() throws SQLException {
+        try {
+            return executeBatch(statement, parameters, batch);
+        } finally {
+            batch.clear();
+        }
+    }
 
     @Override
     public void clearParameters() throws SQLException {
@@ -115,6 +137,11 @@ public class PhoenixPreparedStatement extends PhoenixStatement implements Prepar
         return plan.getParameterMetaData();
     }
 
+    @Override
+    protected String getPlanCacheKey() {
+        return query;
+    }
+
     @Override
     public String toString() {
         return query;
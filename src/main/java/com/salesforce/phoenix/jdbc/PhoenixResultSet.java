@@ -44,6 +44,7 @@ import com.salesforce.phoenix.compile.RowProjector;
 import com.salesforce.phoenix.exception.SQLExceptionCode;
 import com.salesforce.phoenix.exception.SQLExceptionInfo;
 import com.salesforce.phoenix.iterate.ResultIterator;
+import com.salesforce.phoenix.monitoring.QueryMetrics;
 import com.salesforce.phoenix.query.Scanner;
 import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.schema.tuple.ResultTuple;
@@ -92,6 +93,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     private Tuple currentRow = BEFORE_FIRST;
     private boolean isClosed = false;
     private boolean wasNull = false;
+    private QueryMetrics queryMetrics;
     
     public PhoenixResultSet(ResultIterator resultIterator, RowProjector rowProjector, PhoenixStatement statement) throws SQLException {
         this.rowProjector = rowProjector;
@@ -139,8 +141,23 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
         } finally {
             isClosed = true;
             statement.getResultSets().remove(this);
+            if (queryMetrics != null) {
+                queryMetrics.close();
+            }
         }
     }
+    
+    void setQueryMetrics(QueryMetrics queryMetrics) {
+        this.queryMetrics = queryMetrics;
+    }
+    
+    /**
+     * @return the metrics of the query that produced this result set, or null if
+     *  the result set was not produced by a query.
+     */
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
 
     @Override
     public void deleteRow() throws SQLException {
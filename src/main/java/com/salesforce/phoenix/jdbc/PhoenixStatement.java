@@ -62,6 +62,9 @@ import com.salesforce.phoenix.util.*;
  * - {@link #execute(String)}
  * - {@link #getResultSet()}
  * - {@link #getUpdateCount()}
+ * - {@link #addBatch(String)}
+ * - {@link #executeBatch()}
+ * - {@link #clearBatch()}
  * - {@link #close()}
  * The Statement only supports the following options:
  * - ResultSet.FETCH_FORWARD
@@ -98,6 +101,8 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
     private boolean isClosed = false;
     private ResultSetMetaData resultSetMetaData;
     private int maxRows;
+    private int fetchSize;
+    private final List<ExecutableStatement> batch = Lists.newArrayList();
     
     
     public PhoenixStatement(PhoenixConnection connection) {
@@ -108,6 +113,14 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
         return resultSets;
     }
     
+    /**
+     * @return the key under which the plan chosen for the statement is cached by the connection,
+     *  or null if the plan should not be cached because the statement is not reused.
+     */
+    protected String getPlanCacheKey() {
+        return null;
+    }
+    
     protected PhoenixResultSet newResultSet(Scanner scanner) throws SQLException {
         return new PhoenixResultSet(scanner, PhoenixStatement.this);
     }
@@ -135,8 +148,12 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
         @Override
         public PhoenixResultSet executeQuery() throws SQLException {
             QueryPlan plan = optimizePlan();
+            if (fetchSize > 0) {
+                plan.getContext().getScan().setCaching(fetchSize);
+            }
             Scanner scanner = plan.getScanner();
             PhoenixResultSet rs = newResultSet(scanner);
+            rs.setQueryMetrics(plan.getContext().getQueryMetrics());
             resultSets.add(rs);
             lastResultSet = rs;
             lastUpdateCount = NO_UPDATE;
@@ -157,7 +174,7 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
 
         @Override
         public QueryPlan optimizePlan() throws SQLException {
-            return lastQueryPlan = connection.getQueryServices().getOptimizer().optimize(this, PhoenixStatement.this);
+            return lastQueryPlan = connection.getQueryServices().getOptimizer().optimize(this, PhoenixStatement.this, getPlanCacheKey());
         }
         
         @Override
@@ -181,7 +198,10 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
         // Note that the upsert select statements will need to commit any open transaction here,
         // since they'd update data directly from coprocessors, and should thus operate on
         // the latest state
-        MutationState state = plan.execute();
+        return executeMutation(plan.execute());
+    }
+    
+    private int executeMutation(MutationState state) throws SQLException {
         connection.getMutationState().join(state);
         if (connection.getAutoCommit()) {
             connection.commit();
@@ -228,6 +248,30 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
             return compiler.compile(this, binds);
         }
         
+        private int[] executeBatch(List<List<Object>> batch) throws SQLException {
+            lastUpdateOperation = UpdateOperation.UPSERTED;
+            UpsertCompiler compiler = new UpsertCompiler(PhoenixStatement.this);
+            MutationState state;
+            try {
+                state = compiler.compileBatch(this, batch).execute();
+            } catch (SQLException e) {
+                // None of the rows were added to the connection's state
+                throw newBatchUpdateException(e, new int[0]);
+            }
+            // Each statement in the batch upserts a single row, even if a later one in the
+            // batch upserts the same row again and only the last values end up being written
+            int[] updateCounts = new int[batch.size()];
+            Arrays.fill(updateCounts, 1);
+            try {
+                executeMutation(state);
+            } catch (SQLException e) {
+                // Every row was upserted, but committing them failed with auto commit on. The rows
+                // that were not committed are left in the connection's state.
+                throw newBatchUpdateException(e, updateCounts);
+            }
+            return updateCounts;
+        }
+        
         @Override
         public MutationPlan optimizePlan() throws SQLException {
             return compilePlan(getParameters());
@@ -877,7 +921,7 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
     
     @Override
     public void addBatch(String sql) throws SQLException {
-        throw new SQLFeatureNotSupportedException();
+        batch.add(parseStatement(sql));
     }
 
     @Override
@@ -887,7 +931,7 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
 
     @Override
     public void clearBatch() throws SQLException {
-        throw new SQLFeatureNotSupportedException();
+        batch.clear();
     }
 
     @Override
@@ -978,7 +1022,61 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
 
     @Override
     public int[] executeBatch() throws SQLException {
-        throw new SQLFeatureNotSupportedException();
+        int i = 0;
+        int[] updateCounts = new int[batch.size()];
+        try {
+            for (ExecutableStatement statement : batch) {
+                updateCounts[i] = statement.executeUpdate();
+                i++;
+            }
+            return updateCounts;
+        } catch (SQLException e) {
+            throw newBatchUpdateException(e, Arrays.copyOf(updateCounts, i));
+        } finally {
+            batch.clear();
+        }
+    }
+    
+    /**
+     * Execute a statement once for each set of bind values in the batch. An UPSERT VALUES
+     * statement is compiled once for the whole batch, with all of its rows joined into the
+     * connection's MutationState at once. Any other statement is executed row by row.
+     * @param statement the statement to execute
+     * @param parameters the bind values used by the statement when it is executed
+     * @param batch the sets of bind values to execute the statement with
+     * @return the update count of each execution. Each row of an UPSERT VALUES batch counts
+     *  as one, as executing the statement on its own would return, even when rows with the
+     *  same primary key within the batch are collapsed into a single mutation.
+     * @throws BatchUpdateException if any execution fails, holding the update counts of the
+     *  executions that succeeded. If the rows of an UPSERT VALUES batch fail to compile, none
+     *  of them are upserted. If only committing them fails with auto commit on, all of them are.
+     */
+    protected int[] executeBatch(ExecutableStatement statement, List<Object> parameters, List<List<Object>> batch) throws SQLException {
+        if (batch.isEmpty()) {
+            return new int[0];
+        }
+        if (statement instanceof ExecutableUpsertStatement && ((ExecutableUpsertStatement)statement).getValues() != null) {
+            return ((ExecutableUpsertStatement)statement).executeBatch(batch);
+        }
+        int i = 0;
+        int[] updateCounts = new int[batch.size()];
+        try {
+            for (List<Object> binds : batch) {
+                Collections.copy(parameters, binds);
+                updateCounts[i] = statement.executeUpdate();
+                i++;
+            }
+            return updateCounts;
+        } catch (SQLException e) {
+            throw newBatchUpdateException(e, Arrays.copyOf(updateCounts, i));
+        }
+    }
+    
+    private static BatchUpdateException newBatchUpdateException(SQLException e, int[] updateCounts) {
+        BatchUpdateException batchException = new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), updateCounts);
+        batchException.initCause(e);
+        batchException.setNextException(e);
+        return batchException;
     }
 
     @Override
@@ -1008,6 +1106,9 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
 
     @Override
     public int getFetchSize() throws SQLException {
+        if (fetchSize > 0) {
+            return fetchSize;
+        }
         return connection.getQueryServices().getProps().getInt(QueryServices.SCAN_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_SCAN_CACHE_SIZE);
     }
 
@@ -1117,8 +1218,12 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
 
     @Override
     public void setFetchSize(int rows) throws SQLException {
-        // TODO: map to Scan.setBatch() ?
-        throw new SQLFeatureNotSupportedException();
+        if (rows < 0) {
+            throw new SQLExceptionInfo.Builder(SQLExceptionCode.NEGATIVE_FETCH_SIZE)
+                .setMessage(Integer.toString(rows)).build().buildException();
+        }
+        // Used as the scanner caching of the scans of the queries executed by the statement
+        this.fetchSize = rows;
     }
 
     @Override
@@ -79,15 +79,33 @@ public class HashCacheClient  {
      * size
      */
     public ServerCache addHashCache(Scanner scanner, List<Expression> onExpressions) throws SQLException {
+        return addHashCache(scanner, onExpressions, null);
+    }
+    
+    /**
+     * Send the results of scanning through the scanner to all region servers, while
+     * accumulating the join key of each row into the keyFilterBuilder. The resulting
+     * {@link JoinKeyBloomFilter} may be used to filter the other side of the join
+     * through {@link HashJoinInfo#serializeHashJoinIntoScan(org.apache.hadoop.hbase.client.Scan, HashJoinInfo, com.salesforce.phoenix.schema.RowKeySchema)}.
+     * @param scanner scanner for the table or intermediate results being cached
+     * @param onExpressions expressions evaluated against each row to form its join key
+     * @param keyFilterBuilder builder accumulating the join keys or null if none is necessary
+     * @return client-side {@link ServerCache} representing the added hash cache
+     * @throws SQLException 
+     * @throws MaxHashCacheSizeExceededException if size of hash cache exceeds max allowed
+     * size
+     */
+    public ServerCache addHashCache(Scanner scanner, List<Expression> onExpressions, JoinKeyBloomFilter.Builder keyFilterBuilder) throws SQLException {
         /**
          * Serialize and compress hashCacheTable
          */
         ImmutableBytesWritable ptr = new ImmutableBytesWritable();
-        serialize(ptr, scanner, onExpressions);
-        return serverCache.addServerCache(ptr, new HashCacheFactory());
+        serialize(ptr, scanner, onExpressions, keyFilterBuilder);
+        boolean isCompact = serverCache.getConnection().getQueryServices().getProps().getBoolean(QueryServices.COMPACT_HASH_CACHE_ATTRIB, QueryServicesOptions.DEFAULT_COMPACT_HASH_CACHE);
+        return serverCache.addServerCache(ptr, new HashCacheFactory(isCompact));
     }
     
-    private void serialize(ImmutableBytesWritable ptr, Scanner scanner, List<Expression> onExpressions) throws SQLException {
+    private void serialize(ImmutableBytesWritable ptr, Scanner scanner, List<Expression> onExpressions, JoinKeyBloomFilter.Builder keyFilterBuilder) throws SQLException {
         long maxSize = serverCache.getConnection().getQueryServices().getProps().getLong(QueryServices.MAX_HASH_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MAX_HASH_CACHE_SIZE);
         long estimatedSize = Math.min(scanner.getEstimatedSize(), maxSize);
         if (estimatedSize > Integer.MAX_VALUE) {
@@ -109,6 +127,9 @@ public class HashCacheClient  {
             out.writeInt(nRows); // In the end will be replaced with total number of rows            
             for (Tuple result = iterator.next(); result != null; result = iterator.next()) {
                 TupleUtil.write(result, out);
+                if (keyFilterBuilder != null) {
+                    keyFilterBuilder.add(TupleUtil.getConcatenatedValue(result, onExpressions));
+                }
                 if (baOut.size() > maxSize) {
                     throw new MaxHashCacheSizeExceededException("Size of hash cache (" + baOut.size() + " bytes) exceeds the maximum allowed size (" + maxSize + " bytes)");
                 }
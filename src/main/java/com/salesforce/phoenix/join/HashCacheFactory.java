@@ -44,21 +44,34 @@ import com.salesforce.phoenix.coprocessor.ServerCachingProtocol.ServerCacheFacto
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.ExpressionType;
 import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+import com.salesforce.phoenix.query.QueryServicesOptions;
 import com.salesforce.phoenix.schema.tuple.ResultTuple;
 import com.salesforce.phoenix.schema.tuple.Tuple;
 import com.salesforce.phoenix.util.*;
 
 public class HashCacheFactory implements ServerCacheFactory {
+    private boolean isCompact;
 
     public HashCacheFactory() {
+        this(QueryServicesOptions.DEFAULT_COMPACT_HASH_CACHE);
+    }
+
+    /**
+     * @param isCompact if true, the rows of the hash cache are kept in their serialized form and indexed
+     *  by {@link CompactHashCacheImpl}, otherwise they're deserialized into a map by {@link HashCacheImpl}.
+     */
+    public HashCacheFactory(boolean isCompact) {
+        this.isCompact = isCompact;
     }
 
     @Override
     public void readFields(DataInput input) throws IOException {
+        isCompact = input.readBoolean();
     }
 
     @Override
     public void write(DataOutput output) throws IOException {
+        output.writeBoolean(isCompact);
     }
 
     @Override
@@ -67,12 +80,119 @@ public class HashCacheFactory implements ServerCacheFactory {
             int size = Snappy.uncompressedLength(cachePtr.get());
             byte[] uncompressed = new byte[size];
             Snappy.uncompress(cachePtr.get(), 0, cachePtr.getLength(), uncompressed, 0);
-            return new HashCacheImpl(uncompressed, chunk);
+            return isCompact ? new CompactHashCacheImpl(uncompressed, chunk) : new HashCacheImpl(uncompressed, chunk);
         } catch (IOException e) {
             throw ServerUtil.parseServerException(e);
         }
     }
 
+    private static List<Expression> readOnExpressions(DataInput dataInput) throws IOException {
+        int nExprs = dataInput.readInt();
+        List<Expression> onExpressions = new ArrayList<Expression>(nExprs);
+        for (int i = 0; i < nExprs; i++) {
+            int expressionOrdinal = WritableUtils.readVInt(dataInput);
+            Expression expression = ExpressionType.values()[expressionOrdinal].newInstance();
+            expression.readFields(dataInput);
+            onExpressions.add(expression);                        
+        }
+        return onExpressions;
+    }
+    
+    /**
+     * Hash cache that keeps the rows in the uncompressed bytes sent by the client and indexes
+     * them with an open addressing hash table of row numbers, using linear probing. Only the
+     * join keys of the rows are copied, so that they needn't be evaluated again on each probe.
+     * Tuples are only created for the rows that match a probe, which keeps the memory used
+     * close to the serialized size of the cache and creates much less garbage than
+     * {@link HashCacheImpl}.
+     */
+    @Immutable
+    private static class CompactHashCacheImpl implements HashCache {
+        private final byte[] hashCacheBytes;
+        private final MemoryChunk memoryChunk;
+        // Offset and length of each row in hashCacheBytes
+        private final int[] rowOffsets;
+        private final int[] rowLengths;
+        // Join key of row i is in keyBytes from keyOffsets[i] to keyOffsets[i+1]
+        private final byte[] keyBytes;
+        private final int[] keyOffsets;
+        private final int[] keyHashes;
+        // Row number plus one for each slot, with zero denoting an empty slot
+        private final int[] slots;
+        private final int mask;
+        
+        private CompactHashCacheImpl(byte[] hashCacheBytes, MemoryChunk memoryChunk) {
+            try {
+                this.hashCacheBytes = hashCacheBytes;
+                this.memoryChunk = memoryChunk;
+                DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(hashCacheBytes));
+                List<Expression> onExpressions = readOnExpressions(dataInput);
+                int offset = dataInput.readInt();
+                int nRows = dataInput.readInt();
+                offset += Bytes.SIZEOF_INT;
+                // Keep the load factor at or below 0.75 with a power of two number of slots
+                int nSlots = Integer.highestOneBit(Math.max(1, nRows * 4 / 3)) << 1;
+                this.mask = nSlots - 1;
+                int estimatedSize = hashCacheBytes.length + SizedUtil.ARRAY_SIZE * 6 + SizedUtil.INT_SIZE * (nRows * 4 + 1 + nSlots);
+                this.memoryChunk.resize(estimatedSize);
+                this.rowOffsets = new int[nRows];
+                this.rowLengths = new int[nRows];
+                this.keyOffsets = new int[nRows + 1];
+                this.keyHashes = new int[nRows];
+                this.slots = new int[nSlots];
+                TrustedByteArrayOutputStream keyOutput = new TrustedByteArrayOutputStream(nRows * Bytes.SIZEOF_INT);
+                ImmutableBytesWritable value = new ImmutableBytesWritable();
+                for (int i = 0; i < nRows; i++) {
+                    int resultSize = (int)Bytes.readVLong(hashCacheBytes, offset);
+                    offset += WritableUtils.decodeVIntSize(hashCacheBytes[offset]);
+                    value.set(hashCacheBytes, offset, resultSize);
+                    // The key is only needed until it's copied into keyBytes below
+                    ImmutableBytesPtr key = TupleUtil.getConcatenatedValue(new ResultTuple(new Result(value)), onExpressions);
+                    rowOffsets[i] = offset;
+                    rowLengths[i] = resultSize;
+                    keyOffsets[i] = keyOutput.size();
+                    keyOutput.write(key.get(), key.getOffset(), key.getLength());
+                    keyHashes[i] = key.hashCode();
+                    int slot = keyHashes[i] & mask;
+                    while (slots[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    slots[slot] = i + 1;
+                    offset += resultSize;
+                }
+                keyOffsets[nRows] = keyOutput.size();
+                this.keyBytes = keyOutput.toByteArray();
+                this.memoryChunk.resize(estimatedSize + SizedUtil.ARRAY_SIZE + keyBytes.length);
+            } catch (IOException e) { // Not possible with ByteArrayInputStream
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            memoryChunk.close();
+        }
+        
+        @Override
+        public List<Tuple> get(ImmutableBytesPtr hashKey) {
+            int hash = hashKey.hashCode();
+            List<Tuple> tuples = null;
+            // Rows with the same key are found along the probe sequence in the order they were added
+            for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+                int row = slots[slot] - 1;
+                if (keyHashes[row] == hash && Bytes.equals(
+                        keyBytes, keyOffsets[row], keyOffsets[row + 1] - keyOffsets[row], 
+                        hashKey.get(), hashKey.getOffset(), hashKey.getLength())) {
+                    if (tuples == null) {
+                        tuples = new ArrayList<Tuple>(1);
+                    }
+                    tuples.add(new ResultTuple(new Result(new ImmutableBytesWritable(hashCacheBytes, rowOffsets[row], rowLengths[row]))));
+                }
+            }
+            return tuples;
+        }
+    }
+
     @Immutable
     private class HashCacheImpl implements HashCache {
         private final Map<ImmutableBytesPtr,List<Tuple>> hashCache;
@@ -85,14 +205,7 @@ public class HashCacheFactory implements ServerCacheFactory {
                 int offset = 0;
                 ByteArrayInputStream input = new ByteArrayInputStream(hashCacheByteArray, offset, hashCacheBytes.length);
                 DataInputStream dataInput = new DataInputStream(input);
-                int nExprs = dataInput.readInt();
-                List<Expression> onExpressions = new ArrayList<Expression>(nExprs);
-                for (int i = 0; i < nExprs; i++) {
-                    int expressionOrdinal = WritableUtils.readVInt(dataInput);
-                    Expression expression = ExpressionType.values()[expressionOrdinal].newInstance();
-                    expression.readFields(dataInput);
-                    onExpressions.add(expression);                        
-                }
+                List<Expression> onExpressions = readOnExpressions(dataInput);
                 int exprSize = dataInput.readInt();
                 offset += exprSize;
                 int nRows = dataInput.readInt();
@@ -106,7 +219,8 @@ public class HashCacheFactory implements ServerCacheFactory {
                     offset += WritableUtils.decodeVIntSize(hashCacheByteArray[offset]);
                     ImmutableBytesWritable value = new ImmutableBytesWritable(hashCacheByteArray,offset,resultSize);
                     Tuple result = new ResultTuple(new Result(value));
-                    ImmutableBytesPtr key = new ImmutableBytesPtr(TupleUtil.getConcatenatedValue(result, onExpressions));
+                    // Use the key as is, as the ImmutableBytesWritable copy constructor drops the offset
+                    ImmutableBytesPtr key = TupleUtil.getConcatenatedValue(result, onExpressions);
                     List<Tuple> tuples = hashCacheMap.get(key);
                     if (tuples == null) {
                         tuples = new ArrayList<Tuple>(1);
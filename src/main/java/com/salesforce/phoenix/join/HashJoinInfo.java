@@ -31,13 +31,21 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.io.WritableUtils;
 
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.ExpressionType;
+import com.salesforce.phoenix.expression.RowKeyColumnExpression;
+import com.salesforce.phoenix.filter.JoinKeyFilter;
+import com.salesforce.phoenix.filter.SkipScanFilter;
 import com.salesforce.phoenix.parse.JoinTableNode.JoinType;
-import com.salesforce.phoenix.util.ImmutableBytesPtr;
+import com.salesforce.phoenix.query.KeyRange;
+import com.salesforce.phoenix.schema.RowKeySchema;
+import com.salesforce.phoenix.util.*;
 
 public class HashJoinInfo {
     private static final String HASH_JOIN = "HashJoin";
@@ -45,11 +53,25 @@ public class HashJoinInfo {
     private ImmutableBytesPtr[] joinIds;
     private List<Expression>[] joinExpressions;
     private JoinType[] joinTypes;
+    private JoinKeyBloomFilter[] keyFilters;
     
     private HashJoinInfo(ImmutableBytesPtr[] joinIds, List<Expression>[] joinExpressions, JoinType[] joinTypes) {
+        this(joinIds, joinExpressions, joinTypes, null);
+    }
+    
+    /**
+     * @param joinIds ids of the hash caches of the hashed side of each join
+     * @param joinExpressions expressions evaluated against each probe side row to form its join key
+     * @param joinTypes type of each join
+     * @param keyFilters for each join, the filter built over the join keys of the hashed side by
+     *  {@link HashCacheClient#addHashCache(com.salesforce.phoenix.query.Scanner, List, JoinKeyBloomFilter.Builder)} or null if
+     *  there is none. Only used on the client to filter the probe side scan.
+     */
+    public HashJoinInfo(ImmutableBytesPtr[] joinIds, List<Expression>[] joinExpressions, JoinType[] joinTypes, JoinKeyBloomFilter[] keyFilters) {
         this.joinIds = joinIds;
         this.joinExpressions = joinExpressions;
         this.joinTypes = joinTypes;
+        this.keyFilters = keyFilters;
     }
     
     public ImmutableBytesPtr[] getJoinIds() {
@@ -64,7 +86,25 @@ public class HashJoinInfo {
         return joinTypes;
     }
     
+    public JoinKeyBloomFilter[] getKeyFilters() {
+        return keyFilters;
+    }
+    
     public static void serializeHashJoinIntoScan(Scan scan, HashJoinInfo joinInfo) {
+        serializeHashJoinIntoScan(scan, joinInfo, null);
+    }
+    
+    /**
+     * Serialize the join into the probe side scan and push the key filters of inner
+     * joins down into the scan, so that rows whose join key is not in the hashed side
+     * are dropped by the region scanner before they are joined.
+     * @param scan the probe side scan
+     * @param joinInfo the join
+     * @param schema the row key schema of the probe side table used to turn a small number
+     *  of join keys on the leading row key column into a skip scan, or null if not known.
+     */
+    public static void serializeHashJoinIntoScan(Scan scan, HashJoinInfo joinInfo, RowKeySchema schema) {
+        pushDownKeyFilters(scan, joinInfo, schema);
         ByteArrayOutputStream stream = new ByteArrayOutputStream();
         try {
             DataOutputStream output = new DataOutputStream(stream);
@@ -92,6 +132,75 @@ public class HashJoinInfo {
         
     }
     
+    private static void pushDownKeyFilters(Scan scan, HashJoinInfo joinInfo, RowKeySchema schema) {
+        if (joinInfo.keyFilters == null) {
+            return;
+        }
+        List<List<Expression>> filterExpressions = new ArrayList<List<Expression>>(joinInfo.keyFilters.length);
+        List<JoinKeyBloomFilter> filters = new ArrayList<JoinKeyBloomFilter>(joinInfo.keyFilters.length);
+        SkipScanFilter skipScanFilter = null;
+        for (int i = 0; i < joinInfo.keyFilters.length; i++) {
+            JoinKeyBloomFilter keyFilter = joinInfo.keyFilters[i];
+            // Rows without a match must be kept for outer joins. The join key must be
+            // computable from the row key, as the filter runs before the key values are read.
+            if (keyFilter == null || joinInfo.joinTypes[i] != JoinType.Inner || !isRowKeyOnly(joinInfo.joinExpressions[i])) {
+                continue;
+            }
+            filterExpressions.add(joinInfo.joinExpressions[i]);
+            filters.add(keyFilter);
+            // The join key of the leading row key column is in the same form as the row
+            // key, so the min and max key bound the scan and the keys become a skip scan.
+            if (schema != null && keyFilter.getMinKey() != null && isLeadingRowKeyColumn(joinInfo.joinExpressions[i])) {
+                byte[] stopKey = ByteUtil.nextKey(keyFilter.getMaxKey());
+                ScanUtil.intersectScanRange(scan, keyFilter.getMinKey(), stopKey == null ? HConstants.EMPTY_END_ROW : stopKey);
+                if (skipScanFilter == null && keyFilter.getKeys() != null && !hasSkipScanFilter(scan)) {
+                    List<KeyRange> keys = new ArrayList<KeyRange>(keyFilter.getKeys().size());
+                    for (byte[] key : keyFilter.getKeys()) {
+                        if (key.length > 0) {
+                            keys.add(KeyRange.getKeyRange(key, true, key, true));
+                        }
+                    }
+                    if (!keys.isEmpty()) {
+                        List<List<KeyRange>> slots = new ArrayList<List<KeyRange>>(1);
+                        slots.add(keys);
+                        skipScanFilter = new SkipScanFilter(slots, schema);
+                    }
+                }
+            }
+        }
+        if (!filters.isEmpty()) {
+            ScanUtil.andFilterAtEnd(scan, new JoinKeyFilter(filterExpressions, filters));
+        }
+        // The skip scan filter must be first for its seek hints to be used
+        ScanUtil.andFilterAtBeginning(scan, skipScanFilter);
+    }
+    
+    private static boolean isRowKeyOnly(List<Expression> expressions) {
+        for (Expression expression : expressions) {
+            if (!(expression instanceof RowKeyColumnExpression)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isLeadingRowKeyColumn(List<Expression> expressions) {
+        if (expressions.size() != 1) {
+            return false;
+        }
+        RowKeyColumnExpression expression = (RowKeyColumnExpression)expressions.get(0);
+        return expression.getPosition() == 0 && expression.getColumnModifier() == null;
+    }
+    
+    private static boolean hasSkipScanFilter(Scan scan) {
+        Filter filter = scan.getFilter();
+        if (filter instanceof FilterList) {
+            List<Filter> filters = ((FilterList)filter).getFilters();
+            filter = filters.isEmpty() ? null : filters.get(0);
+        }
+        return filter instanceof SkipScanFilter;
+    }
+    
     @SuppressWarnings("unchecked")
     public static HashJoinInfo deserializeHashJoinFromScan(Scan scan) {
         byte[] join = scan.getAttribute(HASH_JOIN);
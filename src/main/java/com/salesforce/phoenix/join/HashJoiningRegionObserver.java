@@ -34,6 +34,7 @@ import org.apache.hadoop.hbase.coprocessor.ObserverContext;
 import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
 import org.apache.hadoop.hbase.regionserver.RegionScanner;
 
+import com.salesforce.phoenix.cache.DeserializationCache;
 import com.salesforce.phoenix.coprocessor.BaseScannerRegionObserver;
 
 
@@ -59,7 +60,7 @@ public class HashJoiningRegionObserver extends BaseScannerRegionObserver  {
 
     @Override
     protected RegionScanner doPostScannerOpen(ObserverContext<RegionCoprocessorEnvironment> c, Scan scan,
-            RegionScanner s) throws IOException {
+            RegionScanner s, DeserializationCache.Lease lease) throws IOException {
         return s;
     }
 }
@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.join;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Hash;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
+import com.salesforce.phoenix.query.Scanner;
+import com.salesforce.phoenix.util.*;
+
+
+/**
+ * 
+ * Compact summary of the join keys of the hashed side of a join: the min and
+ * max key plus a Bloom filter over all keys. Used to drop rows on the probe
+ * side of the join that cannot possibly find a match in the hash cache.
+ * When the number of distinct keys is small, the keys themselves are kept as
+ * well so that they may be turned into point lookups.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class JoinKeyBloomFilter implements Writable {
+    private static final Hash HASH = Hash.getInstance(Hash.MURMUR_HASH);
+    
+    private byte[] minKey;
+    private byte[] maxKey;
+    private int hashCount;
+    private long[] bits;
+    private List<byte[]> keys;
+    
+    public JoinKeyBloomFilter() {
+    }
+    
+    private JoinKeyBloomFilter(byte[] minKey, byte[] maxKey, int hashCount, long[] bits, List<byte[]> keys) {
+        this.minKey = minKey;
+        this.maxKey = maxKey;
+        this.hashCount = hashCount;
+        this.bits = bits;
+        this.keys = keys;
+    }
+    
+    /**
+     * @return the smallest join key or null if there are no keys
+     */
+    public byte[] getMinKey() {
+        return minKey;
+    }
+    
+    /**
+     * @return the largest join key or null if there are no keys
+     */
+    public byte[] getMaxKey() {
+        return maxKey;
+    }
+    
+    /**
+     * @return the distinct join keys in ascending order or null if there
+     * were too many to keep.
+     */
+    public List<byte[]> getKeys() {
+        return keys;
+    }
+    
+    /**
+     * Determines whether or not the key may have been added to the filter.
+     * False positives are possible, but false negatives are not.
+     */
+    public boolean mightContain(byte[] buf, int offset, int length) {
+        if (minKey == null) {
+            return false;
+        }
+        if (Bytes.compareTo(buf, offset, length, minKey, 0, minKey.length) < 0 
+                || Bytes.compareTo(buf, offset, length, maxKey, 0, maxKey.length) > 0) {
+            return false;
+        }
+        long nBits = (long)bits.length * Long.SIZE;
+        int hash1 = HASH.hash(buf, offset, length, 0);
+        int hash2 = HASH.hash(buf, offset, length, hash1);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (int)(((hash1 + (long)i * hash2) & Long.MAX_VALUE) % nBits);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public boolean mightContain(ImmutableBytesWritable ptr) {
+        return mightContain(ptr.get(), ptr.getOffset(), ptr.getLength());
+    }
+    
+    /**
+     * @return the estimated size in bytes of the filter when serialized
+     */
+    public int getEstimatedSize() {
+        int size = (minKey == null ? 0 : minKey.length + maxKey.length) + bits.length * Bytes.SIZEOF_LONG;
+        if (keys != null) {
+            for (byte[] key : keys) {
+                size += key.length + Bytes.SIZEOF_INT;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void readFields(DataInput input) throws IOException {
+        boolean isEmpty = input.readBoolean();
+        if (!isEmpty) {
+            minKey = Bytes.readByteArray(input);
+            maxKey = Bytes.readByteArray(input);
+        }
+        hashCount = WritableUtils.readVInt(input);
+        bits = new long[WritableUtils.readVInt(input)];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = input.readLong();
+        }
+        int nKeys = WritableUtils.readVInt(input);
+        if (nKeys >= 0) {
+            keys = new ArrayList<byte[]>(nKeys);
+            for (int i = 0; i < nKeys; i++) {
+                keys.add(Bytes.readByteArray(input));
+            }
+        }
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        output.writeBoolean(minKey == null);
+        if (minKey != null) {
+            Bytes.writeByteArray(output, minKey);
+            Bytes.writeByteArray(output, maxKey);
+        }
+        WritableUtils.writeVInt(output, hashCount);
+        WritableUtils.writeVInt(output, bits.length);
+        for (long word : bits) {
+            output.writeLong(word);
+        }
+        WritableUtils.writeVInt(output, keys == null ? -1 : keys.size());
+        if (keys != null) {
+            for (byte[] key : keys) {
+                Bytes.writeByteArray(output, key);
+            }
+        }
+    }
+    
+    /**
+     * @param props the properties holding the error rate and the maximum number of keys to keep
+     * @param scanner the scanner of the hashed side of the join, from whose estimated size the
+     *  number of keys is estimated
+     */
+    public static Builder newBuilder(ReadOnlyProps props, Scanner scanner) {
+        float errorRate = props.getFloat(QueryServices.HASH_JOIN_BLOOM_FILTER_ERROR_RATE_ATTRIB, QueryServicesOptions.DEFAULT_HASH_JOIN_BLOOM_FILTER_ERROR_RATE);
+        int maxKeys = props.getInt(QueryServices.MAX_HASH_JOIN_SKIP_SCAN_KEYS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_HASH_JOIN_SKIP_SCAN_KEYS);
+        int estimatedRowSize = Math.max(1, scanner.getProjection().getEstimatedRowByteSize());
+        return new Builder(errorRate, maxKeys, scanner.getEstimatedSize() / estimatedRowSize);
+    }
+    
+    /**
+     * 
+     * Builder that accumulates the join keys as the hashed side of a join is serialized.
+     * The bits of the Bloom filter are set as the keys are added, so that only the distinct
+     * keys that may be turned into point lookups are kept. The filter is sized up front for
+     * the expected number of keys. If more keys are added, the filter has more false positives,
+     * but still never drops a row that may match.
+     *
+     * @author jtaylor
+     * @since 2.1
+     */
+    public static class Builder {
+        private final int maxKeys;
+        private final int hashCount;
+        private final long[] bits;
+        private final long nBits;
+        private Set<ImmutableBytesPtr> keys = new HashSet<ImmutableBytesPtr>();
+        private byte[] minKey;
+        private byte[] maxKey;
+        
+        /**
+         * @param errorRate the rate of false positives when the expected number of keys is added
+         * @param maxKeys the maximum number of distinct keys to keep
+         * @param expectedKeys the expected number of distinct keys
+         */
+        public Builder(float errorRate, int maxKeys, int expectedKeys) {
+            if (errorRate <= 0 || errorRate >= 1) {
+                throw new IllegalArgumentException("Bloom filter error rate must be between 0 and 1 exclusive, but was " + errorRate);
+            }
+            this.maxKeys = maxKeys;
+            int nKeys = Math.max(1, expectedKeys);
+            // Optimal number of bits and hash functions for the given error rate
+            long nBits = Math.max(Long.SIZE, (long)Math.ceil(-nKeys * Math.log(errorRate) / (Math.log(2) * Math.log(2))));
+            int nWords = (int)Math.min(Integer.MAX_VALUE / Long.SIZE, (nBits + Long.SIZE - 1) / Long.SIZE);
+            this.nBits = (long)nWords * Long.SIZE;
+            this.hashCount = Math.max(1, (int)Math.round((double)this.nBits / nKeys * Math.log(2)));
+            this.bits = new long[nWords];
+        }
+        
+        public Builder add(ImmutableBytesWritable key) {
+            byte[] buf = key.get();
+            int offset = key.getOffset();
+            int length = key.getLength();
+            int hash1 = HASH.hash(buf, offset, length, 0);
+            int hash2 = HASH.hash(buf, offset, length, hash1);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = (int)(((hash1 + (long)i * hash2) & Long.MAX_VALUE) % nBits);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+            if (minKey == null || Bytes.compareTo(buf, offset, length, minKey, 0, minKey.length) < 0) {
+                minKey = ByteUtil.copyKeyBytesIfNecessary(key);
+            }
+            if (maxKey == null || Bytes.compareTo(buf, offset, length, maxKey, 0, maxKey.length) > 0) {
+                maxKey = ByteUtil.copyKeyBytesIfNecessary(key);
+            }
+            if (keys != null) {
+                keys.add(new ImmutableBytesPtr(ByteUtil.copyKeyBytesIfNecessary(key)));
+                // Too many keys to turn into point lookups, so stop keeping them
+                if (keys.size() > maxKeys) {
+                    keys = null;
+                }
+            }
+            return this;
+        }
+        
+        public JoinKeyBloomFilter build() {
+            List<byte[]> sortedKeys = null;
+            if (keys != null) {
+                sortedKeys = new ArrayList<byte[]>(keys.size());
+                for (ImmutableBytesPtr key : keys) {
+                    sortedKeys.add(key.get());
+                }
+                Collections.sort(sortedKeys, Bytes.BYTES_COMPARATOR);
+            }
+            return new JoinKeyBloomFilter(minKey, maxKey, hashCount, bits.clone(), sortedKeys);
+        }
+    }
+}
@@ -27,6 +27,19 @@
  ******************************************************************************/
 package com.salesforce.phoenix.memory;
 
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.apache.http.annotation.GuardedBy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,18 +48,40 @@ import org.slf4j.LoggerFactory;
 /**
  * 
  * Global memory manager to track course grained memory usage across all requests.
+ * Requests for memory that isn't available wait in a FIFO queue. Other requests may be
+ * granted memory that is available ahead of the waiting ones, without locking, so that small
+ * requests aren't held up by a big one, but only until the first waiting request has waited
+ * for half of the maximum wait time. From then on, memory is granted in order, so that a big
+ * request can't be passed over indefinitely by smaller ones. Requests to grow an already
+ * allocated chunk are queued ahead of new requests, since the memory held by their query is
+ * only freed once it completes.
  *
  * @author jtaylor
  * @since 0.1
  */
-public class GlobalMemoryManager implements MemoryManager {
+public class GlobalMemoryManager implements MemoryManager, GlobalMemoryManagerMBean {
     private static final Logger logger = LoggerFactory.getLogger(GlobalMemoryManager.class);
+    private static final String OBJECT_NAME_PREFIX = "com.salesforce.phoenix:type=MemoryManager,name=";
+    private static final AtomicInteger MBEAN_ID = new AtomicInteger();
     
-    private final Object sync = new Object();
     private final long maxMemoryBytes;
     private final int maxWaitMs;
-    @GuardedBy("sync")
-    private volatile long usedMemoryBytes;
+    private final AtomicLong usedMemoryBytes = new AtomicLong();
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition memoryFreed = lock.newCondition();
+    @GuardedBy("lock")
+    private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();
+    private volatile int queueDepth;
+    // Time at which the first waiter started waiting, readable without the lock to decide whether it may be bypassed
+    private volatile long firstWaiterStartTimeMs = Long.MAX_VALUE;
+    
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong waitTimeMs = new AtomicLong();
+    private final AtomicLong maxWaitTimeMs = new AtomicLong();
+    private final AtomicLong denialCount = new AtomicLong();
+    private volatile ObjectName objectName;
     
     public GlobalMemoryManager(long maxBytes, int maxWaitMs) {
         if (maxBytes <= 0) {
@@ -57,14 +92,11 @@ public class GlobalMemoryManager implements MemoryManager {
         }
         this.maxMemoryBytes = maxBytes;
         this.maxWaitMs = maxWaitMs;
-        this.usedMemoryBytes = 0;
     }
     
     @Override
     public long getAvailableMemory() {
-        synchronized(sync) {
-            return maxMemoryBytes - usedMemoryBytes;
-        }
+        return maxMemoryBytes - usedMemoryBytes.get();
     }
 
     @Override
@@ -72,42 +104,131 @@ public class GlobalMemoryManager implements MemoryManager {
         return maxMemoryBytes;
     }
 
-
-    // TODO: Work on fairness: One big memory request can cause all others to block here.
-    private long allocateBytes(long minBytes, long reqBytes) {
+    /**
+     * Allocate at most reqBytes, but at least minBytes, if that much is currently available.
+     * @return the number of bytes allocated or -1 if minBytes is not available
+     */
+    private long tryAllocateBytes(long minBytes, long reqBytes) {
+        while (true) {
+            long usedBytes = usedMemoryBytes.get();
+            long availBytes = maxMemoryBytes - usedBytes;
+            if (availBytes < minBytes) {
+                return -1;
+            }
+            long nBytes = Math.min(reqBytes, availBytes);
+            if (usedMemoryBytes.compareAndSet(usedBytes, usedBytes + nBytes)) {
+                return nBytes;
+            }
+        }
+    }
+    
+    private void freeBytes(long nBytes) {
+        usedMemoryBytes.addAndGet(-nBytes);
+        if (queueDepth > 0) {
+            lock.lock();
+            try {
+                memoryFreed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+    
+    @GuardedBy("lock")
+    private void enqueue(Waiter waiter) {
+        if (waiter.isResize) {
+            // Queue behind other resizes, but ahead of new requests
+            int index = 0;
+            for (Iterator<Waiter> iterator = waiters.iterator(); iterator.hasNext() && iterator.next().isResize; ) {
+                index++;
+            }
+            waiters.add(index, waiter);
+        } else {
+            waiters.addLast(waiter);
+        }
+        queueDepth = waiters.size();
+        firstWaiterStartTimeMs = waiters.getFirst().startTimeMs;
+        max(maxQueueDepth, queueDepth);
+    }
+    
+    @GuardedBy("lock")
+    private void dequeue(Waiter waiter) {
+        waiters.remove(waiter);
+        queueDepth = waiters.size();
+        firstWaiterStartTimeMs = waiters.isEmpty() ? Long.MAX_VALUE : waiters.getFirst().startTimeMs;
+        // Let the other waiters try, as they may be satisfied by what's available now
+        memoryFreed.signalAll();
+    }
+    
+    /**
+     * @return true if the first waiter, if any, has not yet waited for half of the maximum
+     *  wait time, in which case others may be granted memory ahead of it.
+     */
+    private boolean canBypassQueue() {
+        return currentTimeMillis() - firstWaiterStartTimeMs < maxWaitMs / 2;
+    }
+    
+    // Not private for testing
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+    
+    private static void max(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+        }
+    }
+    
+    private long allocateBytes(long minBytes, long reqBytes, boolean isResize) {
         if (minBytes < 0 || reqBytes < 0) {
             throw new IllegalStateException("Minimum requested bytes (" + minBytes + ") and requested bytes (" + reqBytes + ") must be greater than zero");
         }
         if (minBytes > maxMemoryBytes) { // No need to wait, since we'll never have this much available
+            denialCount.incrementAndGet();
             throw new InsufficientMemoryException("Requested memory of " + minBytes + " bytes is larger than global pool of " + maxMemoryBytes + " bytes.");
         }
-        long startTimeMs = System.currentTimeMillis(); // Get time outside of sync block to account for waiting for lock
         long nBytes;
-        synchronized(sync) {
-            while (usedMemoryBytes + minBytes > maxMemoryBytes) { // Only wait if minBytes not available
-                try {
-                    long remainingWaitTimeMs = maxWaitMs - (System.currentTimeMillis() - startTimeMs);
+        if (canBypassQueue() && (nBytes = tryAllocateBytes(minBytes, reqBytes)) >= 0) {
+            return nBytes;
+        }
+        long startTimeMs = currentTimeMillis(); // Get time outside of lock to account for waiting for it
+        Waiter waiter = new Waiter(startTimeMs, isResize);
+        lock.lock();
+        try {
+            enqueue(waiter);
+            boolean hasWaited = false;
+            try {
+                while ((waiters.getFirst() != waiter && !canBypassQueue()) || (nBytes = tryAllocateBytes(minBytes, reqBytes)) < 0) { // Only wait if minBytes not available
+                    long remainingWaitTimeMs = maxWaitMs - (currentTimeMillis() - startTimeMs);
                     if (remainingWaitTimeMs <= 0) { // Ran out of time waiting for some memory to get freed up
-                        throw new InsufficientMemoryException("Requested memory of " + minBytes + " bytes could not be allocated from remaining memory of " + usedMemoryBytes + " bytes from global pool of " + maxMemoryBytes + " bytes after waiting for " + maxWaitMs + "ms.");
+                        denialCount.incrementAndGet();
+                        throw new InsufficientMemoryException("Requested memory of " + minBytes + " bytes could not be allocated from remaining memory of " + getAvailableMemory() + " bytes from global pool of " + maxMemoryBytes + " bytes after waiting for " + maxWaitMs + "ms.");
                     }
-                    sync.wait(remainingWaitTimeMs);
-                } catch (InterruptedException ie) {
-                    throw new RuntimeException("Interrupted allocation of " + minBytes + " bytes", ie);
+                    if (!hasWaited) {
+                        hasWaited = true;
+                        waitCount.incrementAndGet();
+                    }
+                    memoryFreed.await(remainingWaitTimeMs, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException ie) {
+                throw new RuntimeException("Interrupted allocation of " + minBytes + " bytes", ie);
+            } finally {
+                dequeue(waiter);
+                if (hasWaited) {
+                    long elapsedTimeMs = currentTimeMillis() - startTimeMs;
+                    waitTimeMs.addAndGet(elapsedTimeMs);
+                    max(maxWaitTimeMs, elapsedTimeMs);
                 }
             }
-            // Allocate at most reqBytes, but at least minBytes
-            nBytes = Math.min(reqBytes, maxMemoryBytes - usedMemoryBytes);
-            if (nBytes < minBytes) {
-                throw new IllegalStateException("Allocated bytes (" + nBytes + ") should be at least the minimum requested bytes (" + minBytes + ")");
-            }
-            usedMemoryBytes += nBytes;
+        } finally {
+            lock.unlock();
         }
         return nBytes;
     }
 
     @Override
     public MemoryChunk allocate(long minBytes, long reqBytes) {
-        long nBytes = allocateBytes(minBytes, reqBytes);
+        long nBytes = allocateBytes(minBytes, reqBytes, false);
         return newMemoryChunk(nBytes);
     }
 
@@ -120,6 +241,96 @@ public class GlobalMemoryManager implements MemoryManager {
         return new GlobalMemoryChunk(sizeBytes);
     }
     
+    @Override
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    @Override
+    public long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    @Override
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    @Override
+    public long getWaitTimeMs() {
+        return waitTimeMs.get();
+    }
+
+    @Override
+    public long getMaxWaitTimeMs() {
+        return maxWaitTimeMs.get();
+    }
+
+    @Override
+    public long getDenialCount() {
+        return denialCount.get();
+    }
+
+    @Override
+    public void resetMetrics() {
+        maxQueueDepth.set(queueDepth);
+        waitCount.set(0);
+        waitTimeMs.set(0);
+        maxWaitTimeMs.set(0);
+        denialCount.set(0);
+    }
+    
+    /**
+     * Register this memory manager with the platform MBean server, so that its usage,
+     * queue depth, wait time and denials may be monitored through JMX.
+     * @param name the name under which to register, distinguished by a sequence number if another
+     *  memory manager is already registered under the same name.
+     */
+    public void registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + name);
+            try {
+                server.registerMBean(this, objectName);
+            } catch (InstanceAlreadyExistsException e) {
+                objectName = new ObjectName(OBJECT_NAME_PREFIX + name + ",id=" + MBEAN_ID.incrementAndGet());
+                server.registerMBean(this, objectName);
+            }
+            this.objectName = objectName;
+        } catch (Exception e) {
+            // Don't fail because of JMX
+            logger.warn("Unable to register memory manager " + name + " with the MBean server", e);
+        }
+    }
+    
+    /**
+     * Unregister this memory manager from the platform MBean server, if it was registered
+     * through {@link #registerMBean(String)}.
+     */
+    public void unregisterMBean() {
+        ObjectName objectName = this.objectName;
+        if (objectName == null) {
+            return;
+        }
+        this.objectName = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            // Don't fail because of JMX
+            logger.warn("Unable to unregister memory manager " + objectName + " from the MBean server", e);
+        }
+    }
+    
+    private static class Waiter {
+        private final long startTimeMs;
+        private final boolean isResize;
+        
+        private Waiter(long startTimeMs, boolean isResize) {
+            this.startTimeMs = startTimeMs;
+            this.isResize = isResize;
+        }
+    }
+    
     private class GlobalMemoryChunk implements MemoryChunk {
         private volatile long size;
 
@@ -132,26 +343,21 @@ public class GlobalMemoryManager implements MemoryManager {
 
         @Override
         public long getSize() {
-            synchronized(sync) {
-                return size; // TODO: does this need to be synchronized?
-            }
+            return size;
         }
         
         @Override
-        public void resize(long nBytes) {
+        public synchronized void resize(long nBytes) {
             if (nBytes < 0) {
                 throw new IllegalStateException("Number of bytes to resize to must be greater than zero, but instead is " + nBytes);
             }
-            synchronized(sync) {
-                long nAdditionalBytes = (nBytes - size);
-                if (nAdditionalBytes < 0) {
-                    usedMemoryBytes += nAdditionalBytes;
-                    size = nBytes;
-                    sync.notifyAll();
-                } else {
-                    allocateBytes(nAdditionalBytes, nAdditionalBytes);
-                    size = nBytes;
-                }
+            long nAdditionalBytes = (nBytes - size);
+            if (nAdditionalBytes < 0) {
+                size = nBytes;
+                freeBytes(-nAdditionalBytes);
+            } else {
+                allocateBytes(nAdditionalBytes, nAdditionalBytes, true);
+                size = nBytes;
             }
         }
         
@@ -174,13 +380,12 @@ public class GlobalMemoryManager implements MemoryManager {
         }
         
         @Override
-        public void close() {
-            synchronized(sync) {
-                usedMemoryBytes -= size;
-                size = 0;
-                sync.notifyAll();
+        public synchronized void close() {
+            long size = this.size;
+            this.size = 0;
+            if (size > 0) {
+                freeBytes(size);
             }
         }
     }
 }
- 
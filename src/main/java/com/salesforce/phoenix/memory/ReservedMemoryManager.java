@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.memory;
+
+import java.io.Closeable;
+
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+
+/**
+ * 
+ * Memory manager that reserves a budget from another memory manager up front, so that
+ * a request needing many chunks, such as the parallel scans of a query, waits for memory
+ * once instead of competing for it chunk by chunk. Chunks are allocated from the reserved
+ * memory without waiting, and from the other memory manager once the reservation runs out.
+ * Once closed, the unused part of the reservation is returned and the memory of chunks still
+ * in use is returned as they're closed.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+@ThreadSafe
+public class ReservedMemoryManager extends DelegatingMemoryManager implements Closeable {
+    private final MemoryChunk reservation;
+    @GuardedBy("this")
+    private long unusedBytes;
+    @GuardedBy("this")
+    private boolean isClosed;
+    
+    /**
+     * Reserve memory from the given memory manager, blocking until at least minBytes
+     * are available as for {@link MemoryManager#allocate(long, long)}
+     * @param mm the memory manager from which to reserve memory
+     * @param minBytes minimum number of bytes to reserve
+     * @param reqBytes requested number of bytes to reserve
+     * @throws InsufficientMemoryException if unable to reserve minBytes
+     */
+    public ReservedMemoryManager(MemoryManager mm, long minBytes, long reqBytes) {
+        super(mm);
+        this.reservation = mm.allocate(minBytes, reqBytes);
+        this.unusedBytes = reservation.getSize();
+    }
+    
+    /**
+     * Get the amount of reserved memory (in bytes) not yet allocated.
+     */
+    public synchronized long getUnusedMemory() {
+        return unusedBytes;
+    }
+    
+    @Override
+    public long getAvailableMemory() {
+        return getUnusedMemory() + super.getAvailableMemory();
+    }
+
+    private synchronized long takeReserved(long nBytes) {
+        long takenBytes = Math.min(nBytes, unusedBytes);
+        unusedBytes -= takenBytes;
+        return takenBytes;
+    }
+    
+    private synchronized void returnReserved(long nBytes) {
+        if (isClosed) {
+            reservation.resize(reservation.getSize() - nBytes);
+        } else {
+            unusedBytes += nBytes;
+        }
+    }
+    
+    @Override
+    public MemoryChunk allocate(long minBytes, long reqBytes) {
+        if (minBytes < 0 || reqBytes < minBytes) {
+            throw new IllegalStateException("Minimum requested bytes (" + minBytes + ") and requested bytes (" + reqBytes + ") must be greater than zero and requested bytes must be at least the minimum");
+        }
+        long reservedBytes = takeReserved(reqBytes);
+        MemoryChunk overflow = null;
+        if (reservedBytes < reqBytes) {
+            boolean success = false;
+            try {
+                overflow = super.allocate(Math.max(0, minBytes - reservedBytes), reqBytes - reservedBytes);
+                success = true;
+            } finally {
+                if (!success) {
+                    returnReserved(reservedBytes);
+                }
+            }
+        }
+        return new ReservedMemoryChunk(reservedBytes, overflow);
+    }
+
+    /**
+     * Return the unused part of the reservation. Chunks that are still in use
+     * return their memory when closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        reservation.resize(reservation.getSize() - unusedBytes);
+        unusedBytes = 0;
+    }
+    
+    private class ReservedMemoryChunk implements MemoryChunk {
+        @GuardedBy("this")
+        private long reservedBytes;
+        // Memory allocated beyond the reservation or null if none
+        @GuardedBy("this")
+        private MemoryChunk overflow;
+        
+        private ReservedMemoryChunk(long reservedBytes, MemoryChunk overflow) {
+            this.reservedBytes = reservedBytes;
+            this.overflow = overflow;
+        }
+        
+        @Override
+        public synchronized long getSize() {
+            return reservedBytes + (overflow == null ? 0 : overflow.getSize());
+        }
+
+        @Override
+        public synchronized void close() {
+            returnReserved(reservedBytes);
+            reservedBytes = 0;
+            if (overflow != null) {
+                overflow.close();
+                overflow = null;
+            }
+        }
+
+        @Override
+        public synchronized void resize(long nBytes) {
+            if (nBytes < 0) {
+                throw new IllegalStateException("Number of bytes to resize to must be greater than zero, but instead is " + nBytes);
+            }
+            long deltaBytes = nBytes - getSize();
+            if (deltaBytes < 0) {
+                // Give back the memory beyond the reservation first
+                if (overflow != null) {
+                    long overflowBytes = overflow.getSize();
+                    long newOverflowBytes = Math.max(0, overflowBytes + deltaBytes);
+                    overflow.resize(newOverflowBytes);
+                    deltaBytes += overflowBytes - newOverflowBytes;
+                }
+                if (deltaBytes < 0) {
+                    returnReserved(-deltaBytes);
+                    reservedBytes += deltaBytes;
+                }
+            } else if (deltaBytes > 0) {
+                long takenBytes = takeReserved(deltaBytes);
+                deltaBytes -= takenBytes;
+                boolean success = false;
+                try {
+                    if (deltaBytes > 0) {
+                        if (overflow == null) {
+                            overflow = getParent().allocate(deltaBytes);
+                        } else {
+                            overflow.resize(overflow.getSize() + deltaBytes);
+                        }
+                    }
+                    success = true;
+                } finally {
+                    if (success) {
+                        reservedBytes += takenBytes;
+                    } else {
+                        returnReserved(takenBytes);
+                    }
+                }
+            }
+        }
+    }
+}
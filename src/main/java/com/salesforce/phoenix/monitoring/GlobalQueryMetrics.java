@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.monitoring;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * 
+ * Totals of the {@link QueryMetrics} of all the queries run by this client, registered
+ * with the platform MBean server under {@link #OBJECT_NAME}.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class GlobalQueryMetrics implements GlobalQueryMetricsMBean {
+    private static final Logger logger = LoggerFactory.getLogger(GlobalQueryMetrics.class);
+    public static final String OBJECT_NAME = "com.salesforce.phoenix:type=QueryMetrics";
+    private static final GlobalQueryMetrics INSTANCE = register(new GlobalQueryMetrics());
+    
+    private final AtomicLong queryCount = new AtomicLong();
+    private final AtomicLong queryTimeMs = new AtomicLong();
+    private final AtomicLong maxQueryTimeMs = new AtomicLong();
+    private final AtomicLong parallelScanCount = new AtomicLong();
+    private final AtomicLong scanTimeMs = new AtomicLong();
+    private final AtomicLong maxScanTimeMs = new AtomicLong();
+    private final AtomicLong spoolFileCount = new AtomicLong();
+    private final AtomicLong spooledBytes = new AtomicLong();
+    private final AtomicLong memoryWaitTimeMs = new AtomicLong();
+    private final AtomicLong serverRowsMatched = new AtomicLong();
+    private final AtomicLong serverRowsReturned = new AtomicLong();
+    private final AtomicLong serverTimeMs = new AtomicLong();
+    private final AtomicLong slowQueryCount = new AtomicLong();
+    private volatile String lastSlowQuery;
+    
+    private GlobalQueryMetrics() {
+    }
+    
+    private static GlobalQueryMetrics register(GlobalQueryMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            // Don't fail queries because of JMX, for example if another copy of Phoenix already registered
+            logger.warn("Unable to register " + OBJECT_NAME + " with the MBean server", e);
+        }
+        return metrics;
+    }
+    
+    public static GlobalQueryMetrics getInstance() {
+        return INSTANCE;
+    }
+    
+    private static void max(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+        }
+    }
+    
+    void add(QueryMetrics metrics, boolean isSlow) {
+        long elapsedTimeMs = metrics.getElapsedTimeMs();
+        queryCount.incrementAndGet();
+        queryTimeMs.addAndGet(elapsedTimeMs);
+        max(maxQueryTimeMs, elapsedTimeMs);
+        parallelScanCount.addAndGet(metrics.getParallelScanCount());
+        scanTimeMs.addAndGet(metrics.getScanTimeMs());
+        max(maxScanTimeMs, metrics.getMaxScanTimeMs());
+        spoolFileCount.addAndGet(metrics.getSpoolFileCount());
+        spooledBytes.addAndGet(metrics.getSpooledBytes());
+        memoryWaitTimeMs.addAndGet(metrics.getMemoryWaitTimeMs());
+        serverRowsMatched.addAndGet(metrics.getServerRowsMatched());
+        serverRowsReturned.addAndGet(metrics.getServerRowsReturned());
+        serverTimeMs.addAndGet(metrics.getServerTimeMs());
+        if (isSlow) {
+            slowQueryCount.incrementAndGet();
+            lastSlowQuery = metrics.toString();
+        }
+    }
+
+    @Override
+    public long getQueryCount() {
+        return queryCount.get();
+    }
+
+    @Override
+    public long getQueryTimeMs() {
+        return queryTimeMs.get();
+    }
+
+    @Override
+    public long getMaxQueryTimeMs() {
+        return maxQueryTimeMs.get();
+    }
+
+    @Override
+    public long getParallelScanCount() {
+        return parallelScanCount.get();
+    }
+
+    @Override
+    public long getScanTimeMs() {
+        return scanTimeMs.get();
+    }
+
+    @Override
+    public long getMaxScanTimeMs() {
+        return maxScanTimeMs.get();
+    }
+
+    @Override
+    public long getSpoolFileCount() {
+        return spoolFileCount.get();
+    }
+
+    @Override
+    public long getSpooledBytes() {
+        return spooledBytes.get();
+    }
+
+    @Override
+    public long getMemoryWaitTimeMs() {
+        return memoryWaitTimeMs.get();
+    }
+
+    @Override
+    public long getServerRowsMatched() {
+        return serverRowsMatched.get();
+    }
+
+    @Override
+    public long getServerRowsReturned() {
+        return serverRowsReturned.get();
+    }
+
+    @Override
+    public long getServerTimeMs() {
+        return serverTimeMs.get();
+    }
+
+    @Override
+    public long getSlowQueryCount() {
+        return slowQueryCount.get();
+    }
+
+    @Override
+    public String getLastSlowQuery() {
+        return lastSlowQuery;
+    }
+
+    @Override
+    public void reset() {
+        queryCount.set(0);
+        queryTimeMs.set(0);
+        maxQueryTimeMs.set(0);
+        parallelScanCount.set(0);
+        scanTimeMs.set(0);
+        maxScanTimeMs.set(0);
+        spoolFileCount.set(0);
+        spooledBytes.set(0);
+        memoryWaitTimeMs.set(0);
+        serverRowsMatched.set(0);
+        serverRowsReturned.set(0);
+        serverTimeMs.set(0);
+        slowQueryCount.set(0);
+        lastSlowQuery = null;
+    }
+}
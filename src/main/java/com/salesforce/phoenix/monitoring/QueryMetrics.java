@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.monitoring;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.salesforce.phoenix.util.KeyValueUtil;
+
+
+/**
+ * 
+ * Metrics collected while executing a single query. The client side metrics are filled in
+ * by the parallel scans as they run, while the server side metrics are sent back by the
+ * region observers in a trailing row at the end of each scan (see
+ * {@link #newServerMetricsKeyValue(byte[], int, int, long, long, long)}). All counters may
+ * be updated concurrently by the threads running the parallel scans.
+ * 
+ * When the result set of the query is closed, the metrics are added to the totals
+ * exposed through JMX by {@link GlobalQueryMetrics}.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class QueryMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(QueryMetrics.class);
+    
+    /**
+     * Column family and qualifier of the key value sent back by the region observers
+     * with the server side metrics of a scan. The family name is reserved, so that no
+     * table may declare it.
+     */
+    public static final String SERVER_METRICS_FAMILY_NAME = "_m";
+    public static final byte[] SERVER_METRICS_FAMILY = Bytes.toBytes(SERVER_METRICS_FAMILY_NAME);
+    public static final byte[] SERVER_METRICS_QUALIFIER = Bytes.toBytes("_m");
+    /**
+     * Timestamp of the key value with the server side metrics. No stored key value can have
+     * it, since the region server replaces it with the current time when a row is written.
+     */
+    private static final long SERVER_METRICS_TIMESTAMP = HConstants.LATEST_TIMESTAMP;
+    private static final int SERVER_METRICS_SIZE = 3 * Bytes.SIZEOF_LONG;
+    
+    private final boolean isEnabled;
+    private final int slowQueryThresholdMs;
+    private final long startTimeMs = System.currentTimeMillis();
+    private final AtomicBoolean isClosed = new AtomicBoolean();
+    private volatile long elapsedTimeMs = -1;
+    
+    private final AtomicLong parallelScanCount = new AtomicLong();
+    private final AtomicLong completedScanCount = new AtomicLong();
+    private final AtomicLong scanTimeMs = new AtomicLong();
+    private final AtomicLong maxScanTimeMs = new AtomicLong();
+    private final AtomicLong spoolFileCount = new AtomicLong();
+    private final AtomicLong spooledBytes = new AtomicLong();
+    private final AtomicLong memoryWaitTimeMs = new AtomicLong();
+    private final AtomicLong serverRowsMatched = new AtomicLong();
+    private final AtomicLong serverRowsReturned = new AtomicLong();
+    private final AtomicLong serverTimeMs = new AtomicLong();
+
+    /**
+     * @param isEnabled if false, nothing is collected and the server side metrics are not requested
+     * @param slowQueryThresholdMs time after which the metrics are logged when the query is closed,
+     *  or zero to never log them
+     */
+    public QueryMetrics(boolean isEnabled, int slowQueryThresholdMs) {
+        this.isEnabled = isEnabled;
+        this.slowQueryThresholdMs = slowQueryThresholdMs;
+    }
+    
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+    
+    /**
+     * Record the submission of scans to run in parallel
+     */
+    public void addParallelScans(int count) {
+        if (isEnabled) {
+            parallelScanCount.addAndGet(count);
+        }
+    }
+    
+    /**
+     * Record the time taken by a single scan, from when it was opened until it was closed
+     */
+    public void addScanTime(long timeMs) {
+        if (isEnabled) {
+            completedScanCount.incrementAndGet();
+            scanTimeMs.addAndGet(timeMs);
+            long maxTimeMs;
+            while (timeMs > (maxTimeMs = maxScanTimeMs.get()) && !maxScanTimeMs.compareAndSet(maxTimeMs, timeMs)) {
+            }
+        }
+    }
+    
+    /**
+     * Record the spooling of the results of a scan to a temp file
+     */
+    public void addSpoolFile(long bytes) {
+        if (isEnabled) {
+            spoolFileCount.incrementAndGet();
+            spooledBytes.addAndGet(bytes);
+        }
+    }
+    
+    /**
+     * Record the time spent waiting for memory to be allocated
+     */
+    public void addMemoryWaitTime(long timeMs) {
+        if (isEnabled) {
+            memoryWaitTimeMs.addAndGet(timeMs);
+        }
+    }
+    
+    /**
+     * Record the metrics sent back by a region observer at the end of a scan
+     */
+    public void addServerMetrics(long rowsMatched, long rowsReturned, long timeMs) {
+        if (isEnabled) {
+            serverRowsMatched.addAndGet(rowsMatched);
+            serverRowsReturned.addAndGet(rowsReturned);
+            serverTimeMs.addAndGet(timeMs);
+        }
+    }
+    
+    /**
+     * Build the key value sent back by a region observer at the end of a scan.
+     * @param row the row key of the key value. The last row returned by the scan is used so that
+     *  the client doesn't restart the scan from its beginning if it must reopen it.
+     * @param rowsMatched the number of rows read by the observer from the region. Only the
+     *  rows that pass the filter of the scan are counted, since the filter is applied by the
+     *  region scanner before the observer sees the rows.
+     * @param rowsReturned the number of rows returned by the observer to the client
+     * @param timeMs the time spent by the observer producing the rows
+     */
+    public static KeyValue newServerMetricsKeyValue(byte[] row, int offset, int length, long rowsMatched, long rowsReturned, long timeMs) {
+        byte[] value = new byte[SERVER_METRICS_SIZE];
+        int valueOffset = Bytes.putLong(value, 0, rowsMatched);
+        valueOffset = Bytes.putLong(value, valueOffset, rowsReturned);
+        Bytes.putLong(value, valueOffset, timeMs);
+        return KeyValueUtil.newKeyValue(row, offset, length, SERVER_METRICS_FAMILY, SERVER_METRICS_QUALIFIER, SERVER_METRICS_TIMESTAMP, value, 0, value.length);
+    }
+    
+    /**
+     * @return true if the result is the trailing row sent back by a region observer with the
+     *  server side metrics of a scan rather than a row of the query.
+     */
+    public static boolean isServerMetrics(Result result) {
+        if (result.size() != 1) {
+            return false;
+        }
+        KeyValue kv = result.raw()[0];
+        return kv.getTimestamp() == SERVER_METRICS_TIMESTAMP && kv.getValueLength() == SERVER_METRICS_SIZE && kv.matchingColumn(SERVER_METRICS_FAMILY, SERVER_METRICS_QUALIFIER);
+    }
+    
+    /**
+     * Record the metrics of a trailing row for which {@link #isServerMetrics(Result)} is true
+     */
+    public void addServerMetrics(Result result) {
+        KeyValue kv = result.raw()[0];
+        byte[] value = kv.getBuffer();
+        int offset = kv.getValueOffset();
+        addServerMetrics(Bytes.toLong(value, offset), Bytes.toLong(value, offset + Bytes.SIZEOF_LONG), Bytes.toLong(value, offset + 2 * Bytes.SIZEOF_LONG));
+    }
+    
+    /**
+     * Mark the query as complete, adding its metrics to the {@link GlobalQueryMetrics}
+     * and logging them if the query took longer than the slow query threshold.
+     * Only the first call has any effect.
+     */
+    public void close() {
+        if (!isEnabled || !isClosed.compareAndSet(false, true)) {
+            return;
+        }
+        elapsedTimeMs = System.currentTimeMillis() - startTimeMs;
+        boolean isSlow = slowQueryThresholdMs > 0 && elapsedTimeMs >= slowQueryThresholdMs;
+        if (isSlow) {
+            logger.warn("Slow query: " + this);
+        }
+        GlobalQueryMetrics.getInstance().add(this, isSlow);
+    }
+    
+    /**
+     * @return the time from when the query was compiled until it was closed, or until now
+     *  if the query has not been closed yet.
+     */
+    public long getElapsedTimeMs() {
+        long elapsedTimeMs = this.elapsedTimeMs;
+        return elapsedTimeMs < 0 ? System.currentTimeMillis() - startTimeMs : elapsedTimeMs;
+    }
+
+    public long getParallelScanCount() {
+        return parallelScanCount.get();
+    }
+
+    public long getCompletedScanCount() {
+        return completedScanCount.get();
+    }
+
+    public long getScanTimeMs() {
+        return scanTimeMs.get();
+    }
+
+    public long getMaxScanTimeMs() {
+        return maxScanTimeMs.get();
+    }
+
+    public long getSpoolFileCount() {
+        return spoolFileCount.get();
+    }
+
+    public long getSpooledBytes() {
+        return spooledBytes.get();
+    }
+
+    public long getMemoryWaitTimeMs() {
+        return memoryWaitTimeMs.get();
+    }
+
+    /**
+     * @return the number of rows that passed the filter of the scans on the region servers.
+     *  Rows skipped by the filter are not included.
+     */
+    public long getServerRowsMatched() {
+        return serverRowsMatched.get();
+    }
+
+    public long getServerRowsReturned() {
+        return serverRowsReturned.get();
+    }
+
+    public long getServerTimeMs() {
+        return serverTimeMs.get();
+    }
+
+    @Override
+    public String toString() {
+        return "elapsedTimeMs=" + getElapsedTimeMs() +
+                ", parallelScans=" + getParallelScanCount() +
+                ", completedScans=" + getCompletedScanCount() +
+                ", scanTimeMs=" + getScanTimeMs() +
+                ", maxScanTimeMs=" + getMaxScanTimeMs() +
+                ", spoolFiles=" + getSpoolFileCount() +
+                ", spooledBytes=" + getSpooledBytes() +
+                ", memoryWaitTimeMs=" + getMemoryWaitTimeMs() +
+                ", serverRowsMatched=" + getServerRowsMatched() +
+                ", serverRowsReturned=" + getServerRowsReturned() +
+                ", serverTimeMs=" + getServerTimeMs();
+    }
+}
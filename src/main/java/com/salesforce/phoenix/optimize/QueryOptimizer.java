@@ -25,8 +25,29 @@ public class QueryOptimizer {
     }
 
     public QueryPlan optimize(SelectStatement select, PhoenixStatement statement) throws SQLException {
+        return optimize(select, statement, null);
+    }
+    
+    /**
+     * Choose the best plan to execute the query, which may be against one of the indexes of the table
+     * @param select the query
+     * @param statement the statement executing the query, holding the bind values
+     * @param cacheKey the key under which the chosen plan is cached in the {@link QueryPlanCache}
+     *  of the connection, or null if the choice should not be cached. A cached choice is made
+     *  with the bind values of the first execution and reused regardless of later bind values.
+     * @return the plan to execute
+     * @throws SQLException
+     */
+    public QueryPlan optimize(SelectStatement select, PhoenixStatement statement, String cacheKey) throws SQLException {
         List<Object> binds = statement.getParameters();
         PhoenixConnection connection = statement.getConnection();
+        QueryPlanCache cache = cacheKey == null || !useIndexes ? null : connection.getQueryPlanCache();
+        if (cache != null) {
+            QueryPlan cachedPlan = getCachedQueryPlan(cache, cacheKey, select, statement);
+            if (cachedPlan != null) {
+                return cachedPlan;
+            }
+        }
         QueryCompiler compiler = new QueryCompiler(connection, statement.getMaxRows());
         QueryPlan dataPlan = compiler.compile(select, binds);
         if (!useIndexes) {
@@ -45,17 +66,49 @@ public class QueryOptimizer {
         
         List<QueryPlan> plans = Lists.newArrayListWithExpectedSize(1 + indexes.size());
         plans.add(dataPlan);
-        ColumnResolver resolver = FromCompiler.getResolver(select, connection);
+        // The data plan has already resolved the table, so no need to resolve it again
+        ColumnResolver resolver = dataPlan.getContext().getResolver();
         SelectStatement translatedSelect = IndexStatementRewriter.translate(select, resolver);
-        QueryPlan hintedPlan = getHintedQueryPlan(statement, translatedSelect, indexes, plans);
-        if (hintedPlan != null) {
-            return hintedPlan;
+        QueryPlan bestPlan = getHintedQueryPlan(statement, translatedSelect, indexes, plans);
+        if (bestPlan == null) {
+            for (PTable index : indexes) {
+                addPlan(statement, translatedSelect, index, plans);
+            }
+            bestPlan = chooseBestPlan(select, plans);
         }
-        for (PTable index : indexes) {
-            addPlan(statement, translatedSelect, index, plans);
+        if (cache != null) {
+            PTable bestTable = bestPlan.getTableRef().getTable();
+            SelectStatement indexSelect = bestPlan == dataPlan ? null : newIndexSelect(dataPlan, translatedSelect, bestTable);
+            cache.put(cacheKey, new QueryPlanCache.Entry(indexSelect, bestTable, dataPlan.getProjector().getColumnCount()));
         }
-        
-        return chooseBestPlan(select, plans);
+        return bestPlan;
+    }
+    
+    /**
+     * Compile the plan previously chosen for the statement with the current bind values
+     * @return the compiled plan or null if there's no previous choice or it's no longer valid
+     */
+    private static QueryPlan getCachedQueryPlan(QueryPlanCache cache, String cacheKey, SelectStatement select, PhoenixStatement statement) throws SQLException {
+        QueryPlanCache.Entry entry = cache.get(cacheKey);
+        if (entry == null) {
+            return null;
+        }
+        SelectStatement cachedSelect = entry.getIndexSelect() == null ? select : entry.getIndexSelect();
+        try {
+            QueryCompiler compiler = new QueryCompiler(statement.getConnection(), statement.getMaxRows());
+            QueryPlan plan = compiler.compile(cachedSelect, statement.getParameters());
+            PTable table = plan.getTableRef().getTable();
+            if (entry.isValid(table) && plan.getProjector().getColumnCount() == entry.getColumnCount()
+                    && (table.getType() != PTableType.INDEX || table.getIndexState() == PIndexState.ACTIVE)) {
+                return plan;
+            }
+        } catch (ColumnNotFoundException e) {
+            // The index no longer has a column used by the query
+        } catch (TableNotFoundException e) {
+            // The index has been dropped
+        }
+        cache.remove(cacheKey);
+        return null;
     }
     
     private static QueryPlan getHintedQueryPlan(PhoenixStatement statement, SelectStatement translatedSelect, List<PTable> indexes, List<QueryPlan> plans) throws SQLException {
@@ -118,14 +171,8 @@ public class QueryOptimizer {
         PhoenixConnection connection = statement.getConnection();        
         QueryPlan dataPlan = plans.get(0);
         int nColumns = dataPlan.getProjector().getColumnCount();
-        String alias = '"' + dataPlan.getTableRef().getTableAlias() + '"'; // double quote in case it's case sensitive
-        PSchema schema = dataPlan.getTableRef().getSchema();
-        String schemaName = schema.getName().length() == 0 ? null :  '"' + schema.getName() + '"';
-
-        String tableName = '"' + index.getName().getString() + '"';
-        List<? extends TableNode> tables = Collections.singletonList(FACTORY.namedTable(alias, FACTORY.table(schemaName, tableName)));
         try {
-            SelectStatement indexSelect = FACTORY.select(translatedSelect, tables);
+            SelectStatement indexSelect = newIndexSelect(dataPlan, translatedSelect, index);
             QueryCompiler compiler = new QueryCompiler(connection, statement.getMaxRows());
             QueryPlan plan = compiler.compile(indexSelect, binds);
             // Checking the index status and number of columns handles the wildcard cases correctly
@@ -144,6 +191,16 @@ public class QueryOptimizer {
         return false;
     }
     
+    private static SelectStatement newIndexSelect(QueryPlan dataPlan, SelectStatement translatedSelect, PTable index) {
+        String alias = '"' + dataPlan.getTableRef().getTableAlias() + '"'; // double quote in case it's case sensitive
+        PSchema schema = dataPlan.getTableRef().getSchema();
+        String schemaName = schema.getName().length() == 0 ? null :  '"' + schema.getName() + '"';
+
+        String tableName = '"' + index.getName().getString() + '"';
+        List<? extends TableNode> tables = Collections.singletonList(FACTORY.namedTable(alias, FACTORY.table(schemaName, tableName)));
+        return FACTORY.select(translatedSelect, tables);
+    }
+    
     /**
      * Choose the best plan among all the possible ones.
      * Since we don't keep stats yet, we use the following simple algorithm:
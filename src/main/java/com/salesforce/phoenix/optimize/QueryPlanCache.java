@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.optimize;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.salesforce.phoenix.parse.SelectStatement;
+import com.salesforce.phoenix.schema.PTable;
+
+
+/**
+ * 
+ * Connection scoped cache of the plans chosen by the {@link QueryOptimizer} for prepared
+ * statements, keyed by the text of the statement. Instead of compiling a candidate plan for
+ * the data table and for every index each time the statement is executed, only the plan
+ * that was chosen is compiled again with the new bind values. A cached choice is only used
+ * if the table it was made for has the same sequence number and time stamp, and the whole
+ * cache is cleared when the metadata of the connection changes. The least recently used
+ * entries are evicted once the cache is full.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class QueryPlanCache {
+    private final int maxSize;
+    private final Map<String,Entry> entries;
+    
+    public QueryPlanCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String,Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+    
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+    
+    public synchronized void put(String key, Entry entry) {
+        if (maxSize > 0) {
+            entries.put(key, entry);
+        }
+    }
+    
+    public synchronized void remove(String key) {
+        entries.remove(key);
+    }
+    
+    public synchronized void clear() {
+        entries.clear();
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    /**
+     * 
+     * The choice of plan made for a statement
+     *
+     * @author jtaylor
+     * @since 2.1
+     */
+    public static class Entry {
+        private final SelectStatement indexSelect;
+        private final long sequenceNumber;
+        private final long timeStamp;
+        private final int columnCount;
+        
+        /**
+         * @param indexSelect the statement rewritten to query the chosen index, or null if
+         *  the data table was chosen
+         * @param table the table of the chosen plan
+         * @param columnCount the number of columns projected by the statement
+         */
+        public Entry(SelectStatement indexSelect, PTable table, int columnCount) {
+            this.indexSelect = indexSelect;
+            this.sequenceNumber = table.getSequenceNumber();
+            this.timeStamp = table.getTimeStamp();
+            this.columnCount = columnCount;
+        }
+        
+        public SelectStatement getIndexSelect() {
+            return indexSelect;
+        }
+        
+        public int getColumnCount() {
+            return columnCount;
+        }
+        
+        /**
+         * @return true if the table of a plan compiled from the cached choice is still
+         *  the same version as when the choice was made
+         */
+        public boolean isValid(PTable table) {
+            return table.getSequenceNumber() == sequenceNumber && table.getTimeStamp() == timeStamp;
+        }
+    }
+}
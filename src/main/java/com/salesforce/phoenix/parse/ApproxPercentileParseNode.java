@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.parse;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.salesforce.phoenix.compile.StatementContext;
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.LiteralExpression;
+import com.salesforce.phoenix.expression.function.*;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
+import com.salesforce.phoenix.schema.PDataType;
+
+/**
+ * 
+ * Parse node for the approximate percentile functions, which defaults the size
+ * of the sketch to the configured {@link QueryServices#APPROX_PERCENTILE_SKETCH_SIZE_ATTRIB}
+ * if not specified in the query.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class ApproxPercentileParseNode extends AggregateFunctionParseNode {
+
+    public ApproxPercentileParseNode(String name, List<ParseNode> children, BuiltInFunctionInfo info) {
+        super(name, children, info);
+    }
+
+    @Override
+    public FunctionExpression create(List<Expression> children, StatementContext context) throws SQLException {
+        if (((LiteralExpression)children.get(3)).getValue() == null) {
+            int sketchSize = context.getConnection().getQueryServices().getProps().getInt(
+                    QueryServices.APPROX_PERCENTILE_SKETCH_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_APPROX_PERCENTILE_SKETCH_SIZE);
+            children = new ArrayList<Expression>(children);
+            children.set(3, LiteralExpression.newConstant(sketchSize, PDataType.INTEGER));
+        }
+        String name = getInfo().getName();
+        if (ApproxPercentileContAggregateFunction.NAME.equals(name)) {
+            return new ApproxPercentileContAggregateFunction(children);
+        } else if (ApproxPercentileDiscAggregateFunction.NAME.equals(name)) {
+            return new ApproxPercentileDiscAggregateFunction(children);
+        }
+        return new ApproxPercentRankAggregateFunction(children);
+    }
+}
@@ -348,14 +348,16 @@ public class ParseNodeFactory {
 
     public FunctionParseNode function(String name, List<ParseNode> valueNodes,
             List<ParseNode> columnNodes, boolean isAscending) {
-        // Right now we support PERCENT functions on only one column
-        if (valueNodes.size() != 1 || columnNodes.size() != 1) {
+        // Right now we support PERCENT functions on only one column. Any values after the
+        // first one are passed through as trailing arguments (i.e. the sketch size of the
+        // APPROX_PERCENTILE functions)
+        if (valueNodes.isEmpty() || columnNodes.size() != 1) {
             throw new UnsupportedOperationException(name + " not supported on multiple columns");
         }
-        List<ParseNode> children = new ArrayList<ParseNode>(3);
+        List<ParseNode> children = new ArrayList<ParseNode>(valueNodes.size() + 2);
         children.add(columnNodes.get(0));
         children.add(new LiteralParseNode(Boolean.valueOf(isAscending)));
-        children.add(valueNodes.get(0));
+        children.addAll(valueNodes);
         return function(name, children);
     }
 
@@ -46,7 +46,8 @@ import com.salesforce.phoenix.util.ReadOnlyProps;
  */
 public abstract class BaseQueryServicesImpl implements QueryServices {
     private final ExecutorService executor;
-    private final MemoryManager memoryManager;
+    private final ExecutorService commitExecutor;
+    private final GlobalMemoryManager memoryManager;
     private final ReadOnlyProps props;
     private final QueryOptimizer queryOptimizer;
     
@@ -55,9 +56,14 @@ public abstract class BaseQueryServicesImpl implements QueryServices {
                 options.getKeepAliveMs(), 
                 options.getThreadPoolSize(), 
                 options.getQueueSize());
+        this.commitExecutor = JobManager.createThreadPoolExec(
+                options.getKeepAliveMs(), 
+                options.getCommitThreadPoolSize(), 
+                options.getQueueSize());
         this.memoryManager = new GlobalMemoryManager(
                 Runtime.getRuntime().totalMemory() * options.getMaxMemoryPerc() / 100,
                 options.getMaxMemoryWaitMs());
+        this.memoryManager.registerMBean("Client");
         this.props = options.getProps();
         this.queryOptimizer = new QueryOptimizer(this);
     }
@@ -67,6 +73,11 @@ public abstract class BaseQueryServicesImpl implements QueryServices {
         return executor;
     }
 
+    @Override
+    public ExecutorService getCommitExecutor() {
+        return commitExecutor;
+    }
+
     @Override
     public MemoryManager getMemoryManager() {
         return memoryManager;
@@ -79,6 +90,7 @@ public abstract class BaseQueryServicesImpl implements QueryServices {
 
     @Override
     public void close() {
+        memoryManager.unregisterMBean();
     }
 
     @Override
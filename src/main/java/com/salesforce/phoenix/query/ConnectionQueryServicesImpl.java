@@ -452,6 +452,10 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
             if (!descriptor.hasCoprocessor(HashJoiningRegionObserver.class.getName())) {
                 descriptor.addCoprocessor(HashJoiningRegionObserver.class.getName(), null, 1, null);
             }
+            // Collect guide posts for the user tables while they're major compacted
+            if (!SchemaUtil.isMetaTable(tableName) && !descriptor.hasCoprocessor(StatsCollectorRegionObserver.class.getName())) {
+                descriptor.addCoprocessor(StatsCollectorRegionObserver.class.getName(), null, 1, null);
+            }
             // Setup split policy on Phoenix metadata table to ensure that the key values of a Phoenix table
             // stay on the same region.
             if (SchemaUtil.isMetaTable(tableName)) {
@@ -891,6 +895,48 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
         return result;
     }
 
+    /**
+     * Create the HBase table in which the guide posts collected by {@link StatsCollectorRegionObserver}
+     * are stored, if it doesn't exist yet.
+     * @throws SQLException
+     */
+    private void ensureStatsTableCreated() throws SQLException {
+        HBaseAdmin admin = null;
+        SQLException sqlE = null;
+        try {
+            admin = new HBaseAdmin(config);
+            if (!admin.tableExists(STATS_TABLE_NAME)) {
+                HTableDescriptor descriptor = new HTableDescriptor(STATS_TABLE_NAME);
+                HColumnDescriptor columnDescriptor = new HColumnDescriptor(StatsUtil.STATS_FAMILY);
+                columnDescriptor.setMaxVersions(1);
+                descriptor.addFamily(columnDescriptor);
+                try {
+                    admin.createTable(descriptor);
+                } catch (org.apache.hadoop.hbase.TableExistsException e) {
+                    // Created by another client in the meantime
+                }
+            }
+        } catch (IOException e) {
+            sqlE = ServerUtil.parseServerException(e);
+        } finally {
+            try {
+                if (admin != null) {
+                    admin.close();
+                }
+            } catch (IOException e) {
+                if (sqlE == null) {
+                    sqlE = ServerUtil.parseServerException(e);
+                } else {
+                    sqlE.setNextException(ServerUtil.parseServerException(e));
+                }
+            } finally {
+                if (sqlE != null) {
+                    throw sqlE;
+                }
+            }
+        }
+    }
+
     @Override
     public void init(String url, Properties props) throws SQLException {
         props = new Properties(props);
@@ -898,6 +944,7 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
         PhoenixConnection metaConnection = new PhoenixConnection(this, url, props, PMetaDataImpl.EMPTY_META_DATA);
         SQLException sqlE = null;
         try {
+            ensureStatsTableCreated();
             metaConnection.createStatement().executeUpdate(QueryConstants.CREATE_METADATA);
         } catch (TableAlreadyExistsException e) {
             SchemaUtil.updateSystemTableTo2(metaConnection, e.getTable());
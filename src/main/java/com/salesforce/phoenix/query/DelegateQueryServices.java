@@ -60,6 +60,11 @@ public class DelegateQueryServices implements QueryServices {
         return parent.getExecutor();
     }
 
+    @Override
+    public ExecutorService getCommitExecutor() {
+        return parent.getCommitExecutor();
+    }
+
     @Override
     public MemoryManager getMemoryManager() {
         return parent.getMemoryManager();
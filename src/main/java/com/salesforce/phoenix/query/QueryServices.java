@@ -109,6 +109,11 @@ import com.salesforce.phoenix.util.SQLCloseable;
  *     if the stats could not be updated for this length of time, the stats
  *     are considered too old and thus no longer accurate enough to use).
  *     Defaults to {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_STATS_AGE_MS}.</li>
+ *   <li><strong>phoenix.stats.guidepost.width</strong>: the number of bytes of a region
+ *     between consecutive guide posts, the row keys collected on the server while a region
+ *     is major compacted and used to split queries into chunks of similar size. Read by the
+ *     region servers. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_STATS_GUIDEPOST_WIDTH_BYTES}.</li>
  *   <li><strong>phoenix.mutate.maxSize</strong>: the maximum number of rows
  *     that may be collected in {@link com.salesforce.phoenix.execute.MutationState}
  *     before a commit or rollback must be called. For better performance and to
@@ -126,10 +131,133 @@ import com.salesforce.phoenix.util.SQLCloseable;
  *     batch size used by the coprocessor when these statements are executed
  *     completely on the server side. Defaults to
  *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MUTATE_BATCH_SIZE}.</li>
+ *   <li><strong>phoenix.mutate.commitBatchSize</strong>: the maximum number of
+ *     mutations sent to a region server in a single batch when the uncommitted
+ *     state of a connection is committed. The mutations for each region server
+ *     are sent in parallel. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_COMMIT_BATCH_SIZE}.</li>
+ *   <li><strong>phoenix.mutate.commitThreadPoolSize</strong>: number of threads
+ *     in the client side thread pool executor used to send the batches of a
+ *     commit to the region servers in parallel. This pool is separate from the
+ *     one used by scans and by HTable, so that concurrent commits cannot starve
+ *     the HBase client of the threads it needs to complete them. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_COMMIT_THREAD_POOL_SIZE}.</li>
  *   <li><strong>phoenix.query.regionBoundaryCacheTTL</strong>: the time-to-live
  *     in milliseconds of the region boundary cache used to guide the split
  *     points for query parallelization. Defaults to
  *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_REGION_BOUNDARY_CACHE_TTL_MS}.</li>
+ *   <li><strong>phoenix.query.completionOrderScan</strong>: if true, the rows of a
+ *     query without an ORDER BY are returned in the order in which its parallel scans
+ *     complete rather than in row key order, so that rows may be returned before the
+ *     slowest scan completes. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_COMPLETION_ORDER_SCAN}.</li>
+ *   <li><strong>phoenix.query.compactHashCache</strong>: if true, the hash cache sent
+ *     to the region servers for a hash join is kept in its serialized form and indexed
+ *     by row offset, rather than being deserialized into a map of row objects. This uses
+ *     much less memory on the region servers, so larger tables may be joined within
+ *     phoenix.query.maxHashCacheBytes. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_COMPACT_HASH_CACHE}.</li>
+ *   <li><strong>phoenix.query.metrics.enabled</strong>: if true, metrics are collected
+ *     for each query on the client and on the region servers and are available through
+ *     {@link com.salesforce.phoenix.util.PhoenixRuntime#getQueryMetrics(java.sql.ResultSet)}
+ *     and through JMX. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_QUERY_METRICS_ENABLED}.</li>
+ *   <li><strong>phoenix.query.metrics.slowQueryThresholdMs</strong>: the time in milliseconds
+ *     after which the metrics of a query are logged as a warning when its result set is
+ *     closed. Zero disables the logging. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_SLOW_QUERY_THRESHOLD_MS}.</li>
+ *   <li><strong>phoenix.query.maxPlanCacheSize</strong>: the maximum number of prepared
+ *     statements per connection for which the plan chosen by the optimizer is cached, so
+ *     that the plans for the other indexes of the table need not be compiled again each
+ *     time the statement is executed. The chosen plan itself is still compiled for each
+ *     execution, so only queries against tables with immutable rows and indexes benefit.
+ *     The plan is chosen with the bind values of the first
+ *     execution and reused for every later one, even if other bind values would make another
+ *     plan cheaper, for example a null or a LIKE pattern starting with a wildcard bound to a
+ *     primary key or index column. Disable the cache for statements whose best plan depends
+ *     on their bind values. Zero disables the cache. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_PLAN_CACHE_SIZE}.</li>
+ *   <li><strong>phoenix.query.approxPercentileSketchSize</strong>: the size of the sketch used by the
+ *     APPROX_PERCENTILE_CONT, APPROX_PERCENTILE_DISC and APPROX_PERCENT_RANK functions when the
+ *     size is not specified in the query. Larger sketches are more accurate but use more memory
+ *     per group. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_APPROX_PERCENTILE_SKETCH_SIZE}.</li>
+ *   <li><strong>phoenix.query.approxCountDistinctPrecision</strong>: the precision of the sketch used
+ *     by the APPROX_COUNT_DISTINCT function when the precision is not specified in the query. The
+ *     sketch uses 2^precision bytes per group. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_APPROX_COUNT_DISTINCT_PRECISION}.</li>
+ *   <li><strong>phoenix.query.inListSkipScanThreshold</strong>: the minimum number of values of an
+ *     IN list on a PK column for a skip scan to be used, even when the PK columns before it are
+ *     not constrained by the query. Zero disables this. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_IN_LIST_SKIP_SCAN_THRESHOLD}.</li>
+ *   <li><strong>phoenix.query.maxMemoryReservationPercentage</strong>: maximum percentage of
+ *     phoenix.query.maxGlobalMemoryPercentage that a query reserves up front for spooling the
+ *     results of its parallel scans, so that its scans draw from a single allocation rather than
+ *     competing one at a time with the scans of other queries. A query waits in the memory queue
+ *     for its whole reservation and, if it can't get it, falls back to allocating memory for each
+ *     scan separately. Zero disables reservations. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_MEMORY_RESERVATION_PERC}.</li>
+ *   <li><strong>phoenix.query.spoolDirectory</strong>: the directory in which the results of parallel
+ *     scans are spooled to disk once they exceed phoenix.query.spoolThresholdBytes. Defaults to the
+ *     directory given by the java.io.tmpdir system property.</li>
+ *   <li><strong>phoenix.query.spoolFileCompression</strong>: whether results spooled to disk are
+ *     written as Snappy compressed blocks, trading CPU for less disk I/O. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_SPOOL_FILE_COMPRESSION}.</li>
+ *   <li><strong>phoenix.query.maxSpoolDiskBytes</strong>: maximum number of bytes that all the
+ *     results spooled to disk by the client may use, beyond which queries fail rather than filling
+ *     up the disk. Zero means no limit. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_SPOOL_DISK_BYTES}.</li>
+ *   <li><strong>phoenix.query.sortRunSizeBytes</strong>: maximum number of bytes of rows sorted in
+ *     memory at a time by an ORDER BY without a LIMIT. Rows beyond it are sorted in more runs that
+ *     are spooled to disk and then merged. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_SORT_RUN_SIZE_BYTES}.</li>
+ *   <li><strong>phoenix.coprocessor.maxMetaDataCacheSize</strong>: maximum estimated heap size in
+ *     bytes of the tables cached by a region server hosting the SYSTEM.TABLE, beyond which the least
+ *     recently used tables are evicted. Read by the region servers. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_METADATA_CACHE_SIZE}.</li>
+ *   <li><strong>phoenix.coprocessor.maxMetaDataCacheTimeToLiveMs</strong>: time in milliseconds
+ *     after which a table that has not been accessed is evicted from the metadata cache of a region
+ *     server. Read by the region servers. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_METADATA_CACHE_TIME_TO_LIVE_MS}.</li>
+ *   <li><strong>phoenix.query.pointLookupBatchSize</strong>: number of rows retrieved at a time by a
+ *     query that fully qualifies the primary key of each row, such as an equality comparison or an
+ *     IN list on every PK column. Such rows are looked up directly by their keys rather than through
+ *     parallel scans. Zero disables point lookups. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_POINT_LOOKUP_BATCH_SIZE}.</li>
+ *   <li><strong>phoenix.query.maxPointLookupKeys</strong>: maximum number of keys looked up directly
+ *     by a query that fully qualifies the primary key. The keys are formed from every combination of
+ *     the values of the PK columns and held on the client, so a query with more of them, for example
+ *     with several large IN lists, runs a skip scan instead. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_POINT_LOOKUP_KEYS}.</li>
+ *   <li><strong>phoenix.query.hashJoinBloomFilterErrorRate</strong>: false positive rate of the
+ *     Bloom filter built over the join keys of the hashed side of a join and used to drop rows
+ *     from the other side of the join that cannot match. Lower rates use more memory. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_HASH_JOIN_BLOOM_FILTER_ERROR_RATE}.</li>
+ *   <li><strong>phoenix.query.maxHashJoinSkipScanKeys</strong>: maximum number of distinct join keys
+ *     of the hashed side of a join for which the scan of the other side of the join is turned into a
+ *     skip scan, when joining on its leading primary key column. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_HASH_JOIN_SKIP_SCAN_KEYS}.</li>
+ *   <li><strong>phoenix.query.scanPrefetchBatches</strong>: maximum number of batches of rows,
+ *     each the size of the scanner caching, that a scan fetches in the background ahead of the
+ *     rows being processed by the client. Each scan holds up to this many batches in memory.
+ *     Zero disables prefetching. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_SCAN_PREFETCH_BATCHES}.</li>
+ *   <li><strong>phoenix.query.scanCacheTargetBytes</strong>: number of bytes of rows that each
+ *     RPC of a scan should return. The scanner caching of each scan is sized from this and from
+ *     the size of the rows of the query, first as estimated from its projection and then as
+ *     observed while the rows are read. Zero uses hbase.client.scanner.caching for every scan
+ *     instead. Either way, the fetch size of a statement takes precedence. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_SCAN_CACHE_TARGET_BYTES}.</li>
+ *   <li><strong>phoenix.query.maxScanCacheSize</strong>: maximum number of rows that each RPC
+ *     of a scan returns when the scanner caching is sized from phoenix.query.scanCacheTargetBytes,
+ *     which bounds the caching of scans of very narrow rows, such as key only scans. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_SCAN_CACHE_SIZE}.</li>
+ *   <li><strong>phoenix.coprocessor.maxDeserializationCacheSize</strong>: maximum estimated size in
+ *     bytes of the expression trees and other objects deserialized from the attributes and filters
+ *     of scans that a region server caches, so that scans sending the same ones need not deserialize
+ *     them again. The least recently used objects are evicted beyond it. Zero disables the cache.
+ *     Read by the region servers. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_DESERIALIZATION_CACHE_SIZE}.</li>
  *   </ul>
  *     
  * @author jtaylor
@@ -147,22 +275,49 @@ public interface QueryServices extends SQLCloseable {
     public static final String MAX_MEMORY_WAIT_MS_ATTRIB = "phoenix.query.maxGlobalMemoryWaitMs";
     public static final String MAX_TENANT_MEMORY_PERC_ATTRIB = "phoenix.query.maxTenantMemoryPercentage";
     public static final String MAX_HASH_CACHE_SIZE_ATTRIB = "phoenix.query.maxHashCacheBytes";
+    public static final String COMPACT_HASH_CACHE_ATTRIB = "phoenix.query.compactHashCache";
     public static final String TARGET_QUERY_CONCURRENCY_ATTRIB = "phoenix.query.targetConcurrency";
     public static final String MAX_QUERY_CONCURRENCY_ATTRIB = "phoenix.query.maxConcurrency";
     public static final String DATE_FORMAT_ATTRIB = "phoenix.query.dateFormat";
     public static final String NUMBER_FORMAT_ATTRIB = "phoenix.query.numberFormat";
     public static final String STATS_UPDATE_FREQ_MS_ATTRIB = "phoenix.query.statsUpdateFrequency";
     public static final String MAX_STATS_AGE_MS_ATTRIB = "phoenix.query.maxStatsAge";
+    public static final String STATS_GUIDEPOST_WIDTH_BYTES_ATTRIB = "phoenix.stats.guidepost.width";
     public static final String CALL_QUEUE_ROUND_ROBIN_ATTRIB = "ipc.server.callqueue.roundrobin";
     public static final String SCAN_CACHE_SIZE_ATTRIB = "hbase.client.scanner.caching";
     public static final String MAX_MUTATION_SIZE_ATTRIB = "phoenix.mutate.maxSize";
     public static final String MUTATE_BATCH_SIZE_ATTRIB = "phoenix.mutate.batchSize";
+    public static final String COMMIT_BATCH_SIZE_ATTRIB = "phoenix.mutate.commitBatchSize";
+    public static final String COMMIT_THREAD_POOL_SIZE_ATTRIB = "phoenix.mutate.commitThreadPoolSize";
     public static final String REGION_BOUNDARY_CACHE_TTL_MS_ATTRIB = "phoenix.query.regionBoundaryCacheTTL";
     public static final String MAX_SERVER_CACHE_TIME_TO_LIVE_MS = "phoenix.coprocessor.maxServerCacheTimeToLiveMs";
     public static final String MAX_INTRA_REGION_PARALLELIZATION_ATTRIB  = "phoenix.query.maxIntraRegionParallelization";
     public static final String ROW_KEY_ORDER_SALTED_TABLE_ATTRIB  = "phoenix.query.rowKeyOrderSaltedTable";
+    public static final String COMPLETION_ORDER_SCAN_ATTRIB  = "phoenix.query.completionOrderScan";
     public static final String USE_INDEXES_ATTRIB  = "phoenix.query.useIndexes";
     public static final String IMMUTABLE_ROWS_ATTRIB  = "phoenix.mutate.immutableRows";
+    public static final String GROUPBY_SPILLABLE_ATTRIB  = "phoenix.groupby.spillable";
+    public static final String QUERY_METRICS_ENABLED_ATTRIB  = "phoenix.query.metrics.enabled";
+    public static final String SLOW_QUERY_THRESHOLD_MS_ATTRIB  = "phoenix.query.metrics.slowQueryThresholdMs";
+    public static final String MAX_PLAN_CACHE_SIZE_ATTRIB  = "phoenix.query.maxPlanCacheSize";
+    public static final String APPROX_PERCENTILE_SKETCH_SIZE_ATTRIB  = "phoenix.query.approxPercentileSketchSize";
+    public static final String APPROX_COUNT_DISTINCT_PRECISION_ATTRIB  = "phoenix.query.approxCountDistinctPrecision";
+    public static final String IN_LIST_SKIP_SCAN_THRESHOLD_ATTRIB  = "phoenix.query.inListSkipScanThreshold";
+    public static final String MAX_MEMORY_RESERVATION_PERC_ATTRIB  = "phoenix.query.maxMemoryReservationPercentage";
+    public static final String SPOOL_DIRECTORY_ATTRIB  = "phoenix.query.spoolDirectory";
+    public static final String SPOOL_FILE_COMPRESSION_ATTRIB  = "phoenix.query.spoolFileCompression";
+    public static final String MAX_SPOOL_DISK_BYTES_ATTRIB  = "phoenix.query.maxSpoolDiskBytes";
+    public static final String SORT_RUN_SIZE_BYTES_ATTRIB  = "phoenix.query.sortRunSizeBytes";
+    public static final String MAX_METADATA_CACHE_SIZE_ATTRIB  = "phoenix.coprocessor.maxMetaDataCacheSize";
+    public static final String MAX_METADATA_CACHE_TIME_TO_LIVE_MS_ATTRIB  = "phoenix.coprocessor.maxMetaDataCacheTimeToLiveMs";
+    public static final String POINT_LOOKUP_BATCH_SIZE_ATTRIB  = "phoenix.query.pointLookupBatchSize";
+    public static final String MAX_POINT_LOOKUP_KEYS_ATTRIB  = "phoenix.query.maxPointLookupKeys";
+    public static final String HASH_JOIN_BLOOM_FILTER_ERROR_RATE_ATTRIB  = "phoenix.query.hashJoinBloomFilterErrorRate";
+    public static final String MAX_HASH_JOIN_SKIP_SCAN_KEYS_ATTRIB  = "phoenix.query.maxHashJoinSkipScanKeys";
+    public static final String SCAN_PREFETCH_BATCHES_ATTRIB  = "phoenix.query.scanPrefetchBatches";
+    public static final String SCAN_CACHE_TARGET_BYTES_ATTRIB  = "phoenix.query.scanCacheTargetBytes";
+    public static final String MAX_SCAN_CACHE_SIZE_ATTRIB  = "phoenix.query.maxScanCacheSize";
+    public static final String MAX_DESERIALIZATION_CACHE_SIZE_ATTRIB  = "phoenix.coprocessor.maxDeserializationCacheSize";
 
     public static final String CALL_QUEUE_PRODUCER_ATTRIB_NAME = "CALL_QUEUE_PRODUCER";
     
@@ -179,6 +334,11 @@ public interface QueryServices extends SQLCloseable {
      * Get executor service used for parallel scans
      */
     public ExecutorService getExecutor();
+    /**
+     * Get executor service used to send the batches of a commit
+     * to the region servers in parallel
+     */
+    public ExecutorService getCommitExecutor();
     /**
      * Get the memory manager used to track memory usage
      */
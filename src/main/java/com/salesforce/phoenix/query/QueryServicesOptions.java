@@ -54,18 +54,44 @@ public class QueryServicesOptions {
 	public static final int DEFAULT_MAX_MEMORY_WAIT_MS = 10000;
 	public static final int DEFAULT_MAX_TENANT_MEMORY_PERC = 100;
 	public static final long DEFAULT_MAX_HASH_CACHE_SIZE = 1024*1024*100;  // 100 Mb
+	public static final boolean DEFAULT_COMPACT_HASH_CACHE = true; // Keep hash cache rows serialized on the server
     public static final int DEFAULT_TARGET_QUERY_CONCURRENCY = 32;
     public static final int DEFAULT_MAX_QUERY_CONCURRENCY = 64;
     public static final String DEFAULT_DATE_FORMAT = DateUtil.DEFAULT_DATE_FORMAT;
     public static final int DEFAULT_STATS_UPDATE_FREQ_MS = 15 * 60000; // 15min
     public static final int DEFAULT_MAX_STATS_AGE_MS = 24 * 60 * 60000; // 1 day
+    public static final long DEFAULT_STATS_GUIDEPOST_WIDTH_BYTES = 100 * 1024 * 1024; // 100MB between guide posts
     public static final boolean DEFAULT_CALL_QUEUE_ROUND_ROBIN = true; 
     public static final int DEFAULT_MAX_MUTATION_SIZE = 500000;
     public static final boolean DEFAULT_ROW_KEY_ORDER_SALTED_TABLE = true; // Merge sort on client to ensure salted tables are row key ordered
+    public static final boolean DEFAULT_COMPLETION_ORDER_SCAN = false; // Return rows of unordered scans in row key order of the parallel scans
     public static final boolean DEFAULT_USE_INDEXES = true; // Use indexes
     public static final boolean DEFAULT_IMMUTABLE_ROWS = false; // Tables rows may be updated
+    public static final boolean DEFAULT_GROUPBY_SPILLABLE = true; // Spill distinct groups to disk on the server when out of memory
+    public static final boolean DEFAULT_QUERY_METRICS_ENABLED = false; // Off, as each scan then sends back an extra row of metrics
+    public static final int DEFAULT_SLOW_QUERY_THRESHOLD_MS = 0; // Don't log slow queries
+    public static final int DEFAULT_MAX_PLAN_CACHE_SIZE = 0; // Off, as the cached choice ignores later bind values
+    public static final int DEFAULT_APPROX_PERCENTILE_SKETCH_SIZE = 200; // Rank error within about 1.7% of the total count
+    public static final int DEFAULT_APPROX_COUNT_DISTINCT_PRECISION = 12; // 4K registers, within about 1.6% of the exact count
+    public static final int DEFAULT_IN_LIST_SKIP_SCAN_THRESHOLD = 100; // Min number of IN list values on a non leading PK column to use a skip scan
+    public static final int DEFAULT_MAX_MEMORY_RESERVATION_PERC = 10; // 10% of global memory
+    public static final boolean DEFAULT_SPOOL_FILE_COMPRESSION = false;
+    public static final long DEFAULT_MAX_SPOOL_DISK_BYTES = 0; // No limit
+    public static final long DEFAULT_SORT_RUN_SIZE_BYTES = 1024 * 1024 * 20; // 20m
+    public static final long DEFAULT_MAX_METADATA_CACHE_SIZE = 1024 * 1024 * 20; // 20m
+    public static final long DEFAULT_MAX_METADATA_CACHE_TIME_TO_LIVE_MS = 30 * 60000; // 30min (with no activity)
+    public static final int DEFAULT_POINT_LOOKUP_BATCH_SIZE = 1000; // Number of rows looked up by each batch of gets
+    public static final int DEFAULT_MAX_POINT_LOOKUP_KEYS = 50000; // Skip scan beyond this many keys
+    public static final float DEFAULT_HASH_JOIN_BLOOM_FILTER_ERROR_RATE = 0.01f; // 1% false positives
+    public static final int DEFAULT_MAX_HASH_JOIN_SKIP_SCAN_KEYS = 1000;
+    public static final int DEFAULT_SCAN_PREFETCH_BATCHES = 0; // Off, as each scan may hold extra batches of rows in memory
+    public static final long DEFAULT_SCAN_CACHE_TARGET_BYTES = 1024 * 1024 * 2; // 2m per RPC
+    public static final int DEFAULT_MAX_SCAN_CACHE_SIZE = 10000; // 10x the default hbase.client.scanner.caching
+    public static final long DEFAULT_MAX_DESERIALIZATION_CACHE_SIZE = 1024 * 1024 * 10; // 10m
     
     public final static int DEFAULT_MUTATE_BATCH_SIZE = 15000; // Batch size for UPSERT SELECT and DELETE
+    public final static int DEFAULT_COMMIT_BATCH_SIZE = 5000; // Max number of mutations sent to a region server at once on commit
+    public final static int DEFAULT_COMMIT_THREAD_POOL_SIZE = 16; // Max number of batches of a commit in flight at once
 	// The only downside of it being out-of-sync is that the parallelization of the scan won't be as balanced as it could be.
 	public static final int DEFAULT_REGION_BOUNDARY_CACHE_TTL_MS = 60000; // How long to cache region boundary info for parallelization calculation
     public static final int DEFAULT_MAX_SERVER_CACHE_TIME_TO_LIVE_MS = 30000; // 30 sec (with no activity)
@@ -107,18 +133,44 @@ public class QueryServicesOptions {
             .setIfUnset(MAX_MEMORY_WAIT_MS_ATTRIB, DEFAULT_MAX_MEMORY_WAIT_MS)
             .setIfUnset(MAX_TENANT_MEMORY_PERC_ATTRIB, DEFAULT_MAX_TENANT_MEMORY_PERC)
             .setIfUnset(MAX_HASH_CACHE_SIZE_ATTRIB, DEFAULT_MAX_HASH_CACHE_SIZE)
+            .setIfUnset(COMPACT_HASH_CACHE_ATTRIB, DEFAULT_COMPACT_HASH_CACHE)
             .setIfUnset(SCAN_CACHE_SIZE_ATTRIB, DEFAULT_SCAN_CACHE_SIZE)
             .setIfUnset(TARGET_QUERY_CONCURRENCY_ATTRIB, DEFAULT_TARGET_QUERY_CONCURRENCY)
             .setIfUnset(MAX_QUERY_CONCURRENCY_ATTRIB, DEFAULT_MAX_QUERY_CONCURRENCY)
             .setIfUnset(DATE_FORMAT_ATTRIB, DEFAULT_DATE_FORMAT)
             .setIfUnset(STATS_UPDATE_FREQ_MS_ATTRIB, DEFAULT_STATS_UPDATE_FREQ_MS)
+            .setIfUnset(STATS_GUIDEPOST_WIDTH_BYTES_ATTRIB, DEFAULT_STATS_GUIDEPOST_WIDTH_BYTES)
             .setIfUnset(CALL_QUEUE_ROUND_ROBIN_ATTRIB, DEFAULT_CALL_QUEUE_ROUND_ROBIN)
             .setIfUnset(MAX_MUTATION_SIZE_ATTRIB, DEFAULT_MAX_MUTATION_SIZE)
+            .setIfUnset(COMMIT_BATCH_SIZE_ATTRIB, DEFAULT_COMMIT_BATCH_SIZE)
+            .setIfUnset(COMMIT_THREAD_POOL_SIZE_ATTRIB, DEFAULT_COMMIT_THREAD_POOL_SIZE)
             .setIfUnset(REGION_BOUNDARY_CACHE_TTL_MS_ATTRIB, DEFAULT_REGION_BOUNDARY_CACHE_TTL_MS)
             .setIfUnset(MAX_INTRA_REGION_PARALLELIZATION_ATTRIB, DEFAULT_MAX_INTRA_REGION_PARALLELIZATION)
             .setIfUnset(ROW_KEY_ORDER_SALTED_TABLE_ATTRIB, DEFAULT_ROW_KEY_ORDER_SALTED_TABLE)
+            .setIfUnset(COMPLETION_ORDER_SCAN_ATTRIB, DEFAULT_COMPLETION_ORDER_SCAN)
             .setIfUnset(USE_INDEXES_ATTRIB, DEFAULT_USE_INDEXES)
             .setIfUnset(IMMUTABLE_ROWS_ATTRIB, DEFAULT_IMMUTABLE_ROWS)
+            .setIfUnset(GROUPBY_SPILLABLE_ATTRIB, DEFAULT_GROUPBY_SPILLABLE)
+            .setIfUnset(QUERY_METRICS_ENABLED_ATTRIB, DEFAULT_QUERY_METRICS_ENABLED)
+            .setIfUnset(SLOW_QUERY_THRESHOLD_MS_ATTRIB, DEFAULT_SLOW_QUERY_THRESHOLD_MS)
+            .setIfUnset(MAX_PLAN_CACHE_SIZE_ATTRIB, DEFAULT_MAX_PLAN_CACHE_SIZE)
+            .setIfUnset(APPROX_PERCENTILE_SKETCH_SIZE_ATTRIB, DEFAULT_APPROX_PERCENTILE_SKETCH_SIZE)
+            .setIfUnset(APPROX_COUNT_DISTINCT_PRECISION_ATTRIB, DEFAULT_APPROX_COUNT_DISTINCT_PRECISION)
+            .setIfUnset(IN_LIST_SKIP_SCAN_THRESHOLD_ATTRIB, DEFAULT_IN_LIST_SKIP_SCAN_THRESHOLD)
+            .setIfUnset(MAX_MEMORY_RESERVATION_PERC_ATTRIB, DEFAULT_MAX_MEMORY_RESERVATION_PERC)
+            .setIfUnset(SPOOL_FILE_COMPRESSION_ATTRIB, DEFAULT_SPOOL_FILE_COMPRESSION)
+            .setIfUnset(MAX_SPOOL_DISK_BYTES_ATTRIB, DEFAULT_MAX_SPOOL_DISK_BYTES)
+            .setIfUnset(SORT_RUN_SIZE_BYTES_ATTRIB, DEFAULT_SORT_RUN_SIZE_BYTES)
+            .setIfUnset(MAX_METADATA_CACHE_SIZE_ATTRIB, DEFAULT_MAX_METADATA_CACHE_SIZE)
+            .setIfUnset(MAX_METADATA_CACHE_TIME_TO_LIVE_MS_ATTRIB, DEFAULT_MAX_METADATA_CACHE_TIME_TO_LIVE_MS)
+            .setIfUnset(POINT_LOOKUP_BATCH_SIZE_ATTRIB, DEFAULT_POINT_LOOKUP_BATCH_SIZE)
+            .setIfUnset(MAX_POINT_LOOKUP_KEYS_ATTRIB, DEFAULT_MAX_POINT_LOOKUP_KEYS)
+            .setIfUnset(HASH_JOIN_BLOOM_FILTER_ERROR_RATE_ATTRIB, DEFAULT_HASH_JOIN_BLOOM_FILTER_ERROR_RATE)
+            .setIfUnset(MAX_HASH_JOIN_SKIP_SCAN_KEYS_ATTRIB, DEFAULT_MAX_HASH_JOIN_SKIP_SCAN_KEYS)
+            .setIfUnset(SCAN_PREFETCH_BATCHES_ATTRIB, DEFAULT_SCAN_PREFETCH_BATCHES)
+            .setIfUnset(SCAN_CACHE_TARGET_BYTES_ATTRIB, DEFAULT_SCAN_CACHE_TARGET_BYTES)
+            .setIfUnset(MAX_SCAN_CACHE_SIZE_ATTRIB, DEFAULT_MAX_SCAN_CACHE_SIZE)
+            .setIfUnset(MAX_DESERIALIZATION_CACHE_SIZE_ATTRIB, DEFAULT_MAX_DESERIALIZATION_CACHE_SIZE)
             ;
         // HBase sets this to 1, so we reset it to something more appropriate.
         // Hopefully HBase will change this, because we can't know if a user set
@@ -151,6 +203,11 @@ public class QueryServicesOptions {
         return this;
     }
     
+    private QueryServicesOptions setIfUnset(String name, float value) {
+        config.setIfUnset(name, Float.toString(value));
+        return this;
+    }
+    
     private QueryServicesOptions setIfUnset(String name, String value) {
         config.setIfUnset(name, value);
         return this;
@@ -192,6 +249,10 @@ public class QueryServicesOptions {
     public QueryServicesOptions setMaxHashCacheSize(long maxHashCacheSize) {
         return set(MAX_HASH_CACHE_SIZE_ATTRIB, maxHashCacheSize);
     }
+    
+    public QueryServicesOptions setCompactHashCache(boolean isCompact) {
+        return set(COMPACT_HASH_CACHE_ATTRIB, isCompact);
+    }
 
     public QueryServicesOptions setScanFetchSize(int scanFetchSize) {
         return set(SCAN_CACHE_SIZE_ATTRIB, scanFetchSize);
@@ -213,6 +274,10 @@ public class QueryServicesOptions {
         return set(STATS_UPDATE_FREQ_MS_ATTRIB, frequencyMs);
     }
     
+    public QueryServicesOptions setStatsGuidePostWidth(long guidePostWidth) {
+        return set(STATS_GUIDEPOST_WIDTH_BYTES_ATTRIB, guidePostWidth);
+    }
+    
     public QueryServicesOptions setCallQueueRoundRobin(boolean isRoundRobin) {
         return set(CALL_QUEUE_PRODUCER_ATTRIB_NAME, isRoundRobin);
     }
@@ -225,6 +290,14 @@ public class QueryServicesOptions {
         return set(MUTATE_BATCH_SIZE_ATTRIB, mutateBatchSize);
     }
     
+    public QueryServicesOptions setCommitBatchSize(int commitBatchSize) {
+        return set(COMMIT_BATCH_SIZE_ATTRIB, commitBatchSize);
+    }
+    
+    public QueryServicesOptions setCommitThreadPoolSize(int commitThreadPoolSize) {
+        return set(COMMIT_THREAD_POOL_SIZE_ATTRIB, commitThreadPoolSize);
+    }
+    
     public QueryServicesOptions setMaxIntraRegionParallelization(int maxIntraRegionParallelization) {
         return set(MAX_INTRA_REGION_PARALLELIZATION_ATTRIB, maxIntraRegionParallelization);
     }
@@ -237,6 +310,94 @@ public class QueryServicesOptions {
         return set(ROW_KEY_ORDER_SALTED_TABLE_ATTRIB, rowKeyOrderSaltedTable);
     }
     
+    public QueryServicesOptions setCompletionOrderScan(boolean completionOrderScan) {
+        return set(COMPLETION_ORDER_SCAN_ATTRIB, completionOrderScan);
+    }
+    
+    public QueryServicesOptions setQueryMetricsEnabled(boolean isEnabled) {
+        return set(QUERY_METRICS_ENABLED_ATTRIB, isEnabled);
+    }
+    
+    public QueryServicesOptions setSlowQueryThresholdMs(int slowQueryThresholdMs) {
+        return set(SLOW_QUERY_THRESHOLD_MS_ATTRIB, slowQueryThresholdMs);
+    }
+    
+    public QueryServicesOptions setMaxPlanCacheSize(int maxPlanCacheSize) {
+        return set(MAX_PLAN_CACHE_SIZE_ATTRIB, maxPlanCacheSize);
+    }
+    
+    public QueryServicesOptions setApproxPercentileSketchSize(int sketchSize) {
+        return set(APPROX_PERCENTILE_SKETCH_SIZE_ATTRIB, sketchSize);
+    }
+    
+    public QueryServicesOptions setApproxCountDistinctPrecision(int precision) {
+        return set(APPROX_COUNT_DISTINCT_PRECISION_ATTRIB, precision);
+    }
+    
+    public QueryServicesOptions setInListSkipScanThreshold(int threshold) {
+        return set(IN_LIST_SKIP_SCAN_THRESHOLD_ATTRIB, threshold);
+    }
+    
+    public QueryServicesOptions setMaxMemoryReservationPerc(int maxMemoryReservationPerc) {
+        return set(MAX_MEMORY_RESERVATION_PERC_ATTRIB, maxMemoryReservationPerc);
+    }
+    
+    public QueryServicesOptions setSpoolDirectory(String directory) {
+        return set(SPOOL_DIRECTORY_ATTRIB, directory);
+    }
+    
+    public QueryServicesOptions setSpoolFileCompression(boolean isCompressed) {
+        return set(SPOOL_FILE_COMPRESSION_ATTRIB, isCompressed);
+    }
+    
+    public QueryServicesOptions setMaxSpoolDiskBytes(long maxSpoolDiskBytes) {
+        return set(MAX_SPOOL_DISK_BYTES_ATTRIB, maxSpoolDiskBytes);
+    }
+    
+    public QueryServicesOptions setSortRunSizeBytes(long sortRunSizeBytes) {
+        return set(SORT_RUN_SIZE_BYTES_ATTRIB, sortRunSizeBytes);
+    }
+    
+    public QueryServicesOptions setMaxMetaDataCacheSize(long maxMetaDataCacheSize) {
+        return set(MAX_METADATA_CACHE_SIZE_ATTRIB, maxMetaDataCacheSize);
+    }
+    
+    public QueryServicesOptions setMaxMetaDataCacheTTLMs(long ttl) {
+        return set(MAX_METADATA_CACHE_TIME_TO_LIVE_MS_ATTRIB, ttl);
+    }
+    
+    public QueryServicesOptions setPointLookupBatchSize(int pointLookupBatchSize) {
+        return set(POINT_LOOKUP_BATCH_SIZE_ATTRIB, pointLookupBatchSize);
+    }
+    
+    public QueryServicesOptions setMaxPointLookupKeys(int maxPointLookupKeys) {
+        return set(MAX_POINT_LOOKUP_KEYS_ATTRIB, maxPointLookupKeys);
+    }
+    
+    public QueryServicesOptions setHashJoinBloomFilterErrorRate(float errorRate) {
+        return set(HASH_JOIN_BLOOM_FILTER_ERROR_RATE_ATTRIB, errorRate);
+    }
+    
+    public QueryServicesOptions setMaxHashJoinSkipScanKeys(int maxKeys) {
+        return set(MAX_HASH_JOIN_SKIP_SCAN_KEYS_ATTRIB, maxKeys);
+    }
+    
+    public QueryServicesOptions setScanPrefetchBatches(int scanPrefetchBatches) {
+        return set(SCAN_PREFETCH_BATCHES_ATTRIB, scanPrefetchBatches);
+    }
+    
+    public QueryServicesOptions setScanCacheTargetBytes(long scanCacheTargetBytes) {
+        return set(SCAN_CACHE_TARGET_BYTES_ATTRIB, scanCacheTargetBytes);
+    }
+    
+    public QueryServicesOptions setMaxScanCacheSize(int maxScanCacheSize) {
+        return set(MAX_SCAN_CACHE_SIZE_ATTRIB, maxScanCacheSize);
+    }
+    
+    public QueryServicesOptions setMaxDeserializationCacheSize(long maxDeserializationCacheSize) {
+        return set(MAX_DESERIALIZATION_CACHE_SIZE_ATTRIB, maxDeserializationCacheSize);
+    }
+    
     private QueryServicesOptions set(String name, boolean value) {
         config.set(name, Boolean.toString(value));
         return this;
@@ -256,6 +417,11 @@ public class QueryServicesOptions {
         config.set(name, Long.toString(value));
         return this;
     }
+    
+    private QueryServicesOptions set(String name, float value) {
+        config.set(name, Float.toString(value));
+        return this;
+    }
 
     public int getKeepAliveMs() {
         return config.getInt(KEEP_ALIVE_MS_ATTRIB, DEFAULT_KEEP_ALIVE_MS);
@@ -285,6 +451,14 @@ public class QueryServicesOptions {
         return config.getInt(MUTATE_BATCH_SIZE_ATTRIB, DEFAULT_MUTATE_BATCH_SIZE);
     }
     
+    public int getCommitBatchSize() {
+        return config.getInt(COMMIT_BATCH_SIZE_ATTRIB, DEFAULT_COMMIT_BATCH_SIZE);
+    }
+    
+    public int getCommitThreadPoolSize() {
+        return config.getInt(COMMIT_THREAD_POOL_SIZE_ATTRIB, DEFAULT_COMMIT_THREAD_POOL_SIZE);
+    }
+    
     public int getMaxIntraRegionParallelization() {
         return config.getInt(MAX_INTRA_REGION_PARALLELIZATION_ATTRIB, DEFAULT_MAX_INTRA_REGION_PARALLELIZATION);
     }
@@ -329,4 +503,8 @@ public class QueryServicesOptions {
         return set(IMMUTABLE_ROWS_ATTRIB, isImmutableRows);
     }
     
+    public QueryServicesOptions setGroupBySpillable(boolean isSpillable) {
+        return set(GROUPBY_SPILLABLE_ATTRIB, isSpillable);
+    }
+    
 }
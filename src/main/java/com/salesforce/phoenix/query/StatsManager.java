@@ -28,6 +28,7 @@
 package com.salesforce.phoenix.query;
 
 import java.sql.SQLException;
+import java.util.List;
 
 import com.salesforce.phoenix.schema.TableRef;
 
@@ -58,6 +59,15 @@ public interface StatsManager {
      */
     byte[] getMaxKey(TableRef table);
     
+    /**
+     * Get the guide posts for the given table. The data between two consecutive
+     * guide posts is roughly the same size, regardless of how the keys are distributed.
+     * @param table the table
+     * @return the guide posts of all regions of the table sorted by key, or an empty
+     *  list if unknown. The list must not be modified.
+     */
+    List<byte[]> getGuidePosts(TableRef table);
+    
     /**
      * Manually update the cached table statistics
      * @param table the table
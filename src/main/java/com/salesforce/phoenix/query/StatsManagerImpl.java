@@ -29,16 +29,18 @@ package com.salesforce.phoenix.query;
 
 import java.io.IOException;
 import java.sql.SQLException;
-import java.util.Arrays;
+import java.util.*;
 import java.util.concurrent.*;
 
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.util.Bytes;
 
+import com.salesforce.phoenix.jdbc.PhoenixDatabaseMetaData;
 import com.salesforce.phoenix.schema.TableRef;
-import com.salesforce.phoenix.util.SchemaUtil;
-import com.salesforce.phoenix.util.ServerUtil;
+import com.salesforce.phoenix.util.*;
 
 
 /**
@@ -54,6 +56,8 @@ import com.salesforce.phoenix.util.ServerUtil;
  * 2) the query to get the stats pulls a single row so it's very cheap
  * 3) it's async and if it takes too long it won't lead to anything except less optimal
  *  parallelization.
+ * The guide posts of a table are read from the SYSTEM.STATS table, in which they are
+ * stored by the region servers when the regions of the table are major compacted.
  *
  * @author jtaylor
  * @since 0.1
@@ -118,7 +122,8 @@ public class StatsManagerImpl implements StatsManager {
             if (r != null) {
                 maxKey = r.getRow();
             }
-            tableStatsMap.put(table, new PTableStats(timeKeeper.currentTimeMillis(),minKey,maxKey));
+            List<byte[]> guidePosts = getGuidePostsFromServer(table);
+            tableStatsMap.put(table, new PTableStats(timeKeeper.currentTimeMillis(),minKey,maxKey,guidePosts));
         } catch (IOException e) {
             sqlE = ServerUtil.parseServerException(e);
         } finally {
@@ -138,6 +143,56 @@ public class StatsManagerImpl implements StatsManager {
         }
     }
     
+    /**
+     * Read the guide posts of all regions of the table from the SYSTEM.STATS table. Each column
+     * family has its own guide posts, spaced by the size of its own data, so mixing them would
+     * space the guide posts unevenly. Instead, the guide posts of the column family holding the
+     * empty key value are used, since every row has data in it. If none were collected for it,
+     * those of the column family with the most guide posts are used.
+     * @return the sorted guide posts
+     */
+    private List<byte[]> getGuidePostsFromServer(TableRef table) throws SQLException, IOException {
+        byte[] prefix = StatsUtil.getRowKeyPrefix(table.getTableName());
+        Scan scan = new Scan(prefix, ByteUtil.nextKey(prefix));
+        scan.addFamily(StatsUtil.STATS_FAMILY);
+        // The guide posts of each column family, across all the regions of the table
+        Map<ImmutableBytesPtr,SortedSet<byte[]>> guidePostsByFamily = new HashMap<ImmutableBytesPtr,SortedSet<byte[]>>();
+        HTableInterface statsTable = services.getTable(PhoenixDatabaseMetaData.STATS_TABLE_NAME);
+        try {
+            ResultScanner scanner = statsTable.getScanner(scan);
+            try {
+                for (Result r = scanner.next(); r != null; r = scanner.next()) {
+                    for (KeyValue kv : r.raw()) {
+                        ImmutableBytesPtr family = new ImmutableBytesPtr(kv.getBuffer(), kv.getQualifierOffset(), kv.getQualifierLength());
+                        SortedSet<byte[]> guidePosts = guidePostsByFamily.get(family);
+                        if (guidePosts == null) {
+                            guidePosts = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+                            guidePostsByFamily.put(family, guidePosts);
+                        }
+                        guidePosts.addAll(StatsUtil.fromBytes(kv.getValue()));
+                    }
+                }
+            } finally {
+                scanner.close();
+            }
+        } catch (org.apache.hadoop.hbase.TableNotFoundException e) {
+            // No guide posts have been collected
+        } finally {
+            statsTable.close();
+        }
+        byte[] emptyFamily = SchemaUtil.getEmptyColumnFamily(table.getTable().getColumnFamilies());
+        SortedSet<byte[]> guidePosts = guidePostsByFamily.get(new ImmutableBytesPtr(emptyFamily));
+        if (guidePosts == null || guidePosts.isEmpty()) {
+            guidePosts = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+            for (SortedSet<byte[]> familyGuidePosts : guidePostsByFamily.values()) {
+                if (familyGuidePosts.size() > guidePosts.size()) {
+                    guidePosts = familyGuidePosts;
+                }
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<byte[]>(guidePosts));
+    }
+    
     private PTableStats getStats(final TableRef table) {
         PTableStats stats = tableStatsMap.get(table);
         if (stats == null) {
@@ -185,19 +240,27 @@ public class StatsManagerImpl implements StatsManager {
         return stats.getMaxKey();
     }
 
+    @Override
+    public List<byte[]> getGuidePosts(TableRef table) {
+        PTableStats stats = getStats(table);
+        return stats.getGuidePosts();
+    }
+
     private static class PTableStats {
         private static final PTableStats NO_STATS = new PTableStats();
         private long initiatedTime;
         private final long completedTime;
         private final byte[] minKey;
         private final byte[] maxKey;
+        private final List<byte[]> guidePosts;
         
         public PTableStats() {
-            this(-1,null,null);
+            this(-1,null,null,Collections.<byte[]>emptyList());
         }
-        public PTableStats(long completedTime, byte[] minKey, byte[] maxKey) {
+        public PTableStats(long completedTime, byte[] minKey, byte[] maxKey, List<byte[]> guidePosts) {
             this.minKey = minKey;
             this.maxKey = maxKey;
+            this.guidePosts = guidePosts;
             this.completedTime = this.initiatedTime = completedTime;
         }
 
@@ -209,6 +272,10 @@ public class StatsManagerImpl implements StatsManager {
             return maxKey;
         }
 
+        private List<byte[]> getGuidePosts() {
+            return guidePosts;
+        }
+
         private long getCompletedTime() {
             return completedTime;
         }
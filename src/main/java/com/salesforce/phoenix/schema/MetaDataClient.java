@@ -50,6 +50,7 @@ import com.salesforce.phoenix.exception.SQLExceptionInfo;
 import com.salesforce.phoenix.execute.MutationState;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
 import com.salesforce.phoenix.jdbc.PhoenixDatabaseMetaData;
+import com.salesforce.phoenix.monitoring.QueryMetrics;
 import com.salesforce.phoenix.parse.*;
 import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.util.*;
@@ -260,6 +261,9 @@ public class MetaDataClient {
                 } else if (!def.isNull()) {
                     throw new SQLExceptionInfo.Builder(SQLExceptionCode.KEY_VALUE_NOT_NULL)
                         .setColumnName(columnName).setFamilyName(family).build().buildException();
+                } else if (family.equals(QueryMetrics.SERVER_METRICS_FAMILY_NAME)) {
+                    throw new SQLExceptionInfo.Builder(SQLExceptionCode.RESERVED_FAMILY_NAME)
+                        .setColumnName(columnName).setFamilyName(family).build().buildException();
                 }
                 familyName = new PNameImpl(family);
             } else if (!isPK) {
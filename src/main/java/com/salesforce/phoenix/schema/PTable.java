@@ -178,4 +178,10 @@ public interface PTable extends Writable {
      */
     PName getDataTableName();
     boolean isImmutableRows();
+
+    /**
+     * Estimate the heap size of this table, including its columns, indexes and stats.
+     * @return the estimated size in bytes
+     */
+    int getEstimatedSize();
 }
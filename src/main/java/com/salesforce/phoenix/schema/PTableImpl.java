@@ -61,6 +61,14 @@ import com.salesforce.phoenix.util.*;
  */
 public class PTableImpl implements PTable {
     private static final Integer NO_SALTING = -1;
+    // Object header and fields of a table
+    private static final int TABLE_SIZE = SizedUtil.OBJECT_SIZE + 16 * SizedUtil.POINTER_SIZE + 2 * SizedUtil.LONG_SIZE;
+    // A column and the entries referencing it from the column lists and maps of the table and its family
+    private static final int COLUMN_SIZE = SizedUtil.OBJECT_SIZE + 6 * SizedUtil.POINTER_SIZE + 2 * SizedUtil.INT_SIZE +
+            2 * SizedUtil.POINTER_SIZE + 3 * SizedUtil.MAP_ENTRY_SIZE;
+    // A column family and the entries referencing it from the family list and maps of the table
+    private static final int COLUMN_FAMILY_SIZE = SizedUtil.OBJECT_SIZE + 4 * SizedUtil.POINTER_SIZE +
+            SizedUtil.POINTER_SIZE + 2 * SizedUtil.MAP_ENTRY_SIZE;
     
     private PName name;
     private PTableType type;
@@ -245,6 +253,39 @@ public class PTableImpl implements PTable {
     public boolean isImmutableRows() {
         return isImmutableRows;
     }
+
+    @Override
+    public int getEstimatedSize() {
+        int size = TABLE_SIZE + sizeOf(name) + sizeOf(pkName) + sizeOf(dataTableName);
+        if (allColumns != null) {
+            for (PColumn column : allColumns) {
+                // The family name is shared by all the columns of the family
+                size += COLUMN_SIZE + sizeOf(column.getName());
+            }
+        }
+        if (families != null) {
+            for (PColumnFamily family : families) {
+                size += COLUMN_FAMILY_SIZE + sizeOf(family.getName());
+            }
+        }
+        if (stats != null) {
+            size += stats.getEstimatedSize();
+        }
+        if (indexes != null) {
+            for (PTable index : indexes) {
+                size += index.getEstimatedSize();
+            }
+        }
+        return size;
+    }
+
+    private static int sizeOf(PName name) {
+        if (name == null) {
+            return 0;
+        }
+        // A name keeps both its String and its bytes
+        return 2 * SizedUtil.OBJECT_SIZE + 2 * SizedUtil.ARRAY_SIZE + name.getString().length() * SizedUtil.CHAR_SIZE + name.getBytes().length;
+    }
     
     @Override
     public String toString() {
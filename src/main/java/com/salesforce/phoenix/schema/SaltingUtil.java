@@ -151,18 +151,10 @@ public class SaltingUtil {
             byte[] saltedKey = Arrays.copyOf(key, length + 1);
             KeyRange range = PDataType.VARBINARY.getKeyRange(saltedKey, true, saltedKey, true);
             expandedRanges[idx++] = range;
-        } while (incrementKey(ranges, position));
+        } while (ScanUtil.incrementKey(ranges, position));
         // The comparator is imperfect, but sufficient for all single keys.
         Arrays.sort(expandedRanges, KeyRange.COMPARATOR);
         List<KeyRange> expandedRangesList = Arrays.asList(expandedRanges);
         return Collections.singletonList(expandedRangesList);
     }
-
-    private static boolean incrementKey(List<List<KeyRange>> slots, int[] position) {
-        int idx = slots.size() - 1;
-        while (idx >= 0 && (position[idx] = (position[idx] + 1) % slots.get(idx).size()) == 0) {
-            idx--;
-        }
-        return idx >= 0;
-    }
 }
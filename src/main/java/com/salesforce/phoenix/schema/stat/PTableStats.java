@@ -52,4 +52,9 @@ public interface PTableStats {
     byte[][] getRegionGuidePosts(HRegionInfo region);
 
     void write(DataOutput output) throws IOException;
+
+    /**
+     * @return the estimated heap size in bytes of the guide posts
+     */
+    int getEstimatedSize();
 }
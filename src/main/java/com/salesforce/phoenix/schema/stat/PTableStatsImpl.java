@@ -37,6 +37,7 @@ import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.WritableUtils;
 
 import com.google.common.collect.ImmutableMap;
+import com.salesforce.phoenix.util.SizedUtil;
 
 
 /**
@@ -75,4 +76,21 @@ public class PTableStatsImpl implements PTableStats {
             }
         }
     }
+
+    @Override
+    public int getEstimatedSize() {
+        if (regionGuidePosts == null) {
+            return 0;
+        }
+        int size = 0;
+        for (Entry<String, byte[][]> entry : regionGuidePosts.entrySet()) {
+            size += SizedUtil.MAP_ENTRY_SIZE + SizedUtil.OBJECT_SIZE + SizedUtil.ARRAY_SIZE + entry.getKey().length() * SizedUtil.CHAR_SIZE;
+            byte[][] value = entry.getValue();
+            size += SizedUtil.ARRAY_SIZE + value.length * SizedUtil.POINTER_SIZE;
+            for (int i=0; i<value.length; i++) {
+                size += SizedUtil.ARRAY_SIZE + value[i].length;
+            }
+        }
+        return size;
+    }
 }
@@ -27,13 +27,18 @@
  ******************************************************************************/
 package com.salesforce.phoenix.util;
 
-import java.io.FileReader;
+import java.io.*;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
+import au.com.bytecode.opencsv.CSVParser;
 import au.com.bytecode.opencsv.CSVReader;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.salesforce.phoenix.exception.SQLExceptionCode;
 import com.salesforce.phoenix.exception.SQLExceptionInfo;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
@@ -41,24 +46,48 @@ import com.salesforce.phoenix.schema.PDataType;
 
 /***
  * Upserts CSV data using Phoenix JDBC connection
+ * <p>
+ * With more than one thread, a file is loaded in parallel: the reading thread splits it into
+ * chunks of rows, which a pool of worker threads parse and upsert in batches through their
+ * own connections. Each worker alternates between two connections, committing the rows of one
+ * in the background while it continues with the other, so that parsing doesn't wait on commits.
+ * Rows are routed to workers by a hash of their primary key values, which the reading thread
+ * takes from the text of the primary key fields without parsing the row, and each worker commits
+ * its rows in order, so that, as when loading with a single thread, the last of the rows with the
+ * same primary key in the file wins. Rows must write the same key identically for this to hold
+ * (for example, 1 and 01 for an integer key may be routed to different workers).
  * 
  * @author mchohan
  * 
  */
 public class CSVLoader {
+    // Number of rows in each chunk handed to a worker thread, which are upserted as one batch
+    private static final int CHUNK_SIZE = 1000;
+    private static final long PROGRESS_INTERVAL_MS = 10000;
+    // Signals a worker thread that there are no more chunks
+    private static final String END_OF_INPUT = new String();
 
 	private final PhoenixConnection conn;
 	private final String tableName;
     private final List<String> columns;
     private final boolean isStrict;
+    private final int threadCount;
     
     private int unfoundColumnCount;
 
 	public CSVLoader(PhoenixConnection conn, String tableName, List<String> columns, boolean isStrict) {
+	    this(conn, tableName, columns, isStrict, 1);
+	}
+
+	/**
+	 * @param threadCount the number of threads that parse and upsert the rows of a file in parallel
+	 */
+	public CSVLoader(PhoenixConnection conn, String tableName, List<String> columns, boolean isStrict, int threadCount) {
 		this.conn = conn;
 		this.tableName = tableName;
 		this.columns = columns;
 		this.isStrict = isStrict;
+		this.threadCount = threadCount;
 	}
 
 	/**
@@ -71,8 +100,27 @@ public class CSVLoader {
 	 * @throws Exception
 	 */
 	public void upsert(String fileName) throws Exception {
-		CSVReader reader = new CSVReader(new FileReader(fileName));
-		upsert(reader);
+	    Reader reader = new FileReader(fileName);
+	    try {
+	        upsert(reader);
+	    } finally {
+	        reader.close();
+	    }
+	}
+
+	/**
+	 * Upserts CSV data from a reader, in parallel if more than one thread
+	 * was requested. Note: Column Names are expected as first line of CSV file.
+	 * 
+	 * @param reader Reader of the CSV data
+	 * @throws Exception
+	 */
+	public void upsert(Reader reader) throws Exception {
+	    if (threadCount > 1) {
+	        upsertInParallel(new BufferedReader(reader));
+	    } else {
+	        upsert(new CSVReader(reader));
+	    }
 	}
 
 	/**
@@ -101,7 +149,6 @@ public class CSVLoader {
 		String[] nextLine;
 		int rowCount = 0;
 		int upsertBatchSize = conn.getMutateBatchSize();
-		Object upsertValue = null;
 		long start = System.currentTimeMillis();
 
 		// Upsert data based on SqlType of each column
@@ -114,17 +161,7 @@ public class CSVLoader {
 	                stmtCache[nextLine.length-1] = stmt;
 		        }
 		    }
-			for (int index = 0; index < columnInfo.length; index++) {
-			    if (columnInfo[index] == null) {
-			        continue;
-			    }
-				upsertValue = convertTypeSpecificValue(nextLine[index], columnInfo[index].getSqlType());
-				if (upsertValue != null) {
-					stmt.setObject(index + 1, upsertValue, columnInfo[index].getSqlType());
-				} else {
-					stmt.setNull(index + 1, columnInfo[index].getSqlType());
-				}
-			}
+			setValues(stmt, columnInfo, nextLine);
 			stmt.execute();
 
 			// Commit when batch size is reached
@@ -134,11 +171,361 @@ public class CSVLoader {
 			}
 		}
 		conn.commit();
+		printSummary(rowCount, start);
+	}
+	
+	private static void printSummary(long rowCount, long start) {
 		double elapsedDuration = ((System.currentTimeMillis() - start) / 1000.0);
 		System.out.println("CSV Upsert complete. " + rowCount + " rows upserted");
 		System.out.println("Time: " + elapsedDuration + " sec(s)\n");
 	}
 	
+	private static void printProgress(long rowCount, long start) {
+	    long elapsedMs = Math.max(1, System.currentTimeMillis() - start);
+	    System.out.println("Rows upserted: " + rowCount + " (" + (rowCount * 1000 / elapsedMs) + " rows/sec)");
+	}
+	
+	private void setValues(PreparedStatement stmt, ColumnInfo[] columnInfo, String[] nextLine) throws Exception {
+		for (int index = 0; index < columnInfo.length; index++) {
+		    if (columnInfo[index] == null) {
+		        continue;
+		    }
+			Object upsertValue = convertTypeSpecificValue(nextLine[index], columnInfo[index].getSqlType());
+			if (upsertValue != null) {
+				stmt.setObject(index + 1, upsertValue, columnInfo[index].getSqlType());
+			} else {
+				stmt.setNull(index + 1, columnInfo[index].getSqlType());
+			}
+		}
+	}
+	
+	/**
+	 * Reads CSV data line by line, splitting it into chunks of rows that are parsed and
+	 * upserted by worker threads. A chunk only ends at the end of a row, i.e. outside
+	 * of a quoted value that spans lines.
+	 */
+	private void upsertInParallel(BufferedReader reader) throws Exception {
+	    List<String> columns = this.columns;
+	    if (columns != null && columns.isEmpty()) {
+	        String header = readRow(reader);
+	        columns = header == null ? null : Arrays.asList(new CSVReader(new StringReader(header)).readNext());
+	    }
+	    ColumnInfo[] columnInfo = generateColumnInfo(columns);
+	    int[] pkPositions = getPrimaryKeyPositions(columnInfo);
+	    long start = System.currentTimeMillis();
+	    AtomicLong committedRowCount = new AtomicLong();
+	    // Commits run in a pool of their own, so that a worker waiting on a commit never holds
+	    // the thread the commit needs. The commit itself runs on the commit executor of the
+	    // query services rather than on the pool of the HTables it commits to.
+	    ExecutorService workerPool = Executors.newFixedThreadPool(threadCount);
+	    ExecutorService commitPool = Executors.newFixedThreadPool(threadCount);
+	    try {
+	        List<BlockingQueue<String>> chunks = Lists.newArrayListWithExpectedSize(threadCount);
+	        List<Future<Long>> workers = Lists.newArrayListWithExpectedSize(threadCount);
+	        StringBuilder[] chunk = new StringBuilder[threadCount];
+	        int[] chunkRowCount = new int[threadCount];
+	        for (int i = 0; i < threadCount; i++) {
+	            chunks.add(new ArrayBlockingQueue<String>(2));
+	            chunk[i] = new StringBuilder();
+	            workers.add(workerPool.submit(new UpsertWorker(columns != null, columnInfo, chunks.get(i), commitPool, committedRowCount)));
+	        }
+	        long lastProgressTime = start;
+	        String row;
+	        while ((row = readRow(reader)) != null) {
+	            int i = getWorkerIndex(row, pkPositions);
+	            chunk[i].append(row).append('\n');
+	            if (++chunkRowCount[i] == CHUNK_SIZE) {
+	                addChunk(chunks.get(i), chunk[i].toString(), workers);
+	                chunk[i].setLength(0);
+	                chunkRowCount[i] = 0;
+	                if (System.currentTimeMillis() - lastProgressTime >= PROGRESS_INTERVAL_MS) {
+	                    printProgress(committedRowCount.get(), start);
+	                    lastProgressTime = System.currentTimeMillis();
+	                }
+	            }
+	        }
+	        for (int i = 0; i < threadCount; i++) {
+	            if (chunkRowCount[i] > 0) {
+	                addChunk(chunks.get(i), chunk[i].toString(), workers);
+	            }
+	            addChunk(chunks.get(i), END_OF_INPUT, workers);
+	        }
+	        long rowCount = 0;
+	        for (Future<Long> worker : workers) {
+	            while (true) {
+	                try {
+	                    rowCount += getResult(worker, PROGRESS_INTERVAL_MS);
+	                    break;
+	                } catch (TimeoutException e) {
+	                    printProgress(committedRowCount.get(), start);
+	                }
+	            }
+	        }
+	        printSummary(rowCount, start);
+	    } finally {
+	        workerPool.shutdownNow();
+	        commitPool.shutdownNow();
+	    }
+	}
+	
+	/**
+	 * Get the worker to which a row is routed, the same for all rows with the same primary key values.
+	 * The hash covers the characters of the primary key fields as {@link CSVParser} would parse them,
+	 * leaving out quotes, but the row is only scanned up to the last of these fields and no values
+	 * are created, so that routing doesn't keep the reading thread from splitting the input.
+	 */
+	private int getWorkerIndex(String row, int[] pkPositions) {
+	    int hash = 0;
+	    int fieldHash = 0;
+	    int field = 0;
+	    int pk = 0;
+	    boolean inQuotes = false;
+	    for (int i = 0; i < row.length() && pk < pkPositions.length; i++) {
+	        char c = row.charAt(i);
+	        if (c == CSVParser.DEFAULT_ESCAPE_CHARACTER && inQuotes && i + 1 < row.length()
+	                && (row.charAt(i + 1) == CSVParser.DEFAULT_QUOTE_CHARACTER || row.charAt(i + 1) == CSVParser.DEFAULT_ESCAPE_CHARACTER)) {
+	            c = row.charAt(++i);
+	        } else if (c == CSVParser.DEFAULT_QUOTE_CHARACTER) {
+	            if (inQuotes && i + 1 < row.length() && row.charAt(i + 1) == CSVParser.DEFAULT_QUOTE_CHARACTER) {
+	                // Doubled quote within a quoted value
+	                i++;
+	            } else {
+	                inQuotes = !inQuotes;
+	                continue;
+	            }
+	        } else if (c == CSVParser.DEFAULT_SEPARATOR && !inQuotes) {
+	            if (field++ == pkPositions[pk]) {
+	                hash = 31 * hash + fieldHash;
+	                fieldHash = 0;
+	                pk++;
+	            }
+	            continue;
+	        }
+	        if (field == pkPositions[pk]) {
+	            fieldHash = 31 * fieldHash + c;
+	        }
+	    }
+	    if (pk < pkPositions.length && field == pkPositions[pk]) {
+	        hash = 31 * hash + fieldHash;
+	    }
+	    return (hash & Integer.MAX_VALUE) % threadCount;
+	}
+	
+	/**
+	 * Read the lines of the next row, which may span more than one line when a quoted value contains line breaks
+	 * @return the lines of the row or null if the end of the input was reached
+	 */
+	private static String readRow(BufferedReader reader) throws IOException {
+	    String line = reader.readLine();
+	    if (line == null || !isInQuotes(line, false)) {
+	        return line;
+	    }
+	    StringBuilder row = new StringBuilder(line);
+	    boolean inQuotes = true;
+	    while (inQuotes && (line = reader.readLine()) != null) {
+	        row.append('\n').append(line);
+	        inQuotes = isInQuotes(line, inQuotes);
+	    }
+	    return row.toString();
+	}
+	
+	/**
+	 * @return whether the end of the line is within a quoted value, following the rules of {@link CSVParser}
+	 */
+	private static boolean isInQuotes(String line, boolean inQuotes) {
+	    for (int i = 0; i < line.length(); i++) {
+	        char c = line.charAt(i);
+	        if (c == CSVParser.DEFAULT_ESCAPE_CHARACTER && inQuotes && i + 1 < line.length()
+	                && (line.charAt(i + 1) == CSVParser.DEFAULT_QUOTE_CHARACTER || line.charAt(i + 1) == CSVParser.DEFAULT_ESCAPE_CHARACTER)) {
+	            i++;
+	        } else if (c == CSVParser.DEFAULT_QUOTE_CHARACTER) {
+	            inQuotes = !inQuotes;
+	        }
+	    }
+	    return inQuotes;
+	}
+	
+	/**
+	 * Hand a chunk to a worker thread, failing if any of them failed while waiting for room
+	 */
+	private static void addChunk(BlockingQueue<String> chunks, String chunk, List<Future<Long>> workers) throws Exception {
+	    while (!chunks.offer(chunk, 1, TimeUnit.SECONDS)) {
+	        for (Future<Long> worker : workers) {
+	            if (worker.isDone()) {
+	                getResult(worker, 0);
+	            }
+	        }
+	    }
+	}
+	
+	private static long getResult(Future<Long> worker, long timeoutMs) throws Exception {
+	    try {
+	        return worker.get(timeoutMs, TimeUnit.MILLISECONDS);
+	    } catch (ExecutionException e) {
+	        Throwable cause = e.getCause();
+	        if (cause instanceof Exception) {
+	            throw (Exception)cause;
+	        }
+	        throw e;
+	    }
+	}
+	
+	/**
+	 * 
+	 * Connection of a worker thread to which rows are upserted, along with the prepared statements
+	 * that upsert them and the commit of its rows that may be in progress in the background.
+	 */
+	private class WorkerConnection {
+	    private final PhoenixConnection connection;
+	    private final boolean hasColumns;
+	    private final ColumnInfo[] columnInfo;
+	    private final PreparedStatement[] stmtCache;
+	    private PreparedStatement batchedStmt;
+	    private int uncommittedRowCount;
+	    private Future<?> commit;
+	    
+	    private WorkerConnection(boolean hasColumns, ColumnInfo[] columnInfo) throws SQLException {
+	        this.connection = new PhoenixConnection(conn);
+	        this.connection.setAutoCommit(false);
+	        this.hasColumns = hasColumns;
+	        this.columnInfo = columnInfo;
+	        this.stmtCache = new PreparedStatement[hasColumns ? 1 : columnInfo.length];
+	    }
+	    
+	    private PreparedStatement getStatement(int valueCount) throws SQLException {
+	        int index = hasColumns ? 0 : valueCount - 1;
+	        PreparedStatement stmt = stmtCache[index];
+	        if (stmt == null) {
+	            String upsertStatement = QueryUtil.constructUpsertStatement(columnInfo, tableName, hasColumns ? columnInfo.length - unfoundColumnCount : valueCount);
+	            stmt = stmtCache[index] = connection.prepareStatement(upsertStatement);
+	        }
+	        return stmt;
+	    }
+	    
+	    /**
+	     * Parse the rows of the chunk and upsert them as a batch, which compiles the UPSERT only once.
+	     * A batch is executed before rows are batched with another statement, to upsert rows in order.
+	     * @return the number of rows upserted
+	     */
+	    private int upsert(String chunk) throws Exception {
+	        CSVReader reader = new CSVReader(new StringReader(chunk));
+	        int rowCount = 0;
+	        String[] nextLine;
+	        while ((nextLine = reader.readNext()) != null) {
+	            PreparedStatement stmt = getStatement(nextLine.length);
+	            if (batchedStmt != null && batchedStmt != stmt) {
+	                batchedStmt.executeBatch();
+	            }
+	            setValues(stmt, columnInfo, nextLine);
+	            stmt.addBatch();
+	            batchedStmt = stmt;
+	            rowCount++;
+	        }
+	        if (batchedStmt != null) {
+	            batchedStmt.executeBatch();
+	            batchedStmt = null;
+	        }
+	        uncommittedRowCount += rowCount;
+	        return rowCount;
+	    }
+	    
+	    private void commitInBackground(ExecutorService commitPool, final AtomicLong committedRowCount) {
+	        if (uncommittedRowCount == 0) {
+	            return;
+	        }
+	        final int rowCount = uncommittedRowCount;
+	        uncommittedRowCount = 0;
+	        commit = commitPool.submit(new Callable<Void>() {
+	            @Override
+	            public Void call() throws Exception {
+	                connection.commit();
+	                committedRowCount.addAndGet(rowCount);
+	                return null;
+	            }
+	        });
+	    }
+	    
+	    private void waitForCommit() throws Exception {
+	        if (commit != null) {
+	            Future<?> commit = this.commit;
+	            this.commit = null;
+	            try {
+	                commit.get();
+	            } catch (ExecutionException e) {
+	                Throwable cause = e.getCause();
+	                if (cause instanceof Exception) {
+	                    throw (Exception)cause;
+	                }
+	                throw e;
+	            }
+	        }
+	    }
+	    
+	    private void close() {
+	        try {
+	            if (commit != null) {
+	                commit.cancel(false);
+	            }
+	            connection.close();
+	        } catch (SQLException ignored) {
+	        }
+	    }
+	}
+	
+	/**
+	 * 
+	 * Worker thread that upserts chunks of rows until it gets {@link #END_OF_INPUT}
+	 */
+	private class UpsertWorker implements Callable<Long> {
+	    private final boolean hasColumns;
+	    private final ColumnInfo[] columnInfo;
+	    private final BlockingQueue<String> chunks;
+	    private final ExecutorService commitPool;
+	    private final AtomicLong committedRowCount;
+	    
+	    private UpsertWorker(boolean hasColumns, ColumnInfo[] columnInfo, BlockingQueue<String> chunks, ExecutorService commitPool, AtomicLong committedRowCount) {
+	        this.hasColumns = hasColumns;
+	        this.columnInfo = columnInfo;
+	        this.chunks = chunks;
+	        this.commitPool = commitPool;
+	        this.committedRowCount = committedRowCount;
+	    }
+
+	    @Override
+	    public Long call() throws Exception {
+	        int upsertBatchSize = conn.getMutateBatchSize();
+	        WorkerConnection[] connections = new WorkerConnection[2];
+	        try {
+	            connections[0] = new WorkerConnection(hasColumns, columnInfo);
+	            connections[1] = new WorkerConnection(hasColumns, columnInfo);
+	            int current = 0;
+	            long rowCount = 0;
+	            String chunk;
+	            while ((chunk = chunks.take()) != END_OF_INPUT) {
+	                WorkerConnection connection = connections[current];
+	                rowCount += connection.upsert(chunk);
+	                // Commit in the background and continue with the other connection. Only one
+	                // commit is in progress at a time, so that rows are committed in order.
+	                if (connection.uncommittedRowCount >= upsertBatchSize) {
+	                    connections[1 - current].waitForCommit();
+	                    connection.commitInBackground(commitPool, committedRowCount);
+	                    current = 1 - current;
+	                }
+	            }
+	            connections[1 - current].waitForCommit();
+	            connections[current].commitInBackground(commitPool, committedRowCount);
+	            connections[current].waitForCommit();
+	            return rowCount;
+	        } finally {
+	            for (WorkerConnection connection : connections) {
+	                if (connection != null) {
+	                    connection.close();
+	                }
+	            }
+	        }
+	    }
+	}
+	
 	/**
 	 * Gets CSV string input converted to correct type 
 	 */
@@ -146,6 +533,30 @@ public class CSVLoader {
 	    return PDataType.fromTypeId(sqlType).toObject(s);
 	}
 
+	/**
+	 * Get the positions in the CSV data of the primary key columns of the table
+	 */
+	private int[] getPrimaryKeyPositions(ColumnInfo[] columnInfo) throws SQLException {
+	    Set<String> pkColumnNames = Sets.newHashSet();
+	    String[] schemaAndTable = tableName.split("\\.");
+	    ResultSet rs = conn.getMetaData().getPrimaryKeys(null, (schemaAndTable.length == 1 ? "" : schemaAndTable[0]),
+	            (schemaAndTable.length == 1 ? tableName : schemaAndTable[1]));
+	    while (rs.next()) {
+	        pkColumnNames.add(rs.getString(QueryUtil.COLUMN_NAME_POSITION));
+	    }
+	    List<Integer> pkPositions = Lists.newArrayListWithExpectedSize(pkColumnNames.size());
+	    for (int i = 0; i < columnInfo.length; i++) {
+	        if (columnInfo[i] != null && pkColumnNames.contains(columnInfo[i].getColumnName())) {
+	            pkPositions.add(i);
+	        }
+	    }
+	    int[] positions = new int[pkPositions.size()];
+	    for (int i = 0; i < positions.length; i++) {
+	        positions[i] = pkPositions.get(i);
+	    }
+	    return positions;
+	}
+
 	/**
 	 * Get array of ColumnInfos that contain Column Name and its associated
 	 * PDataType
@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+
+/**
+ * 
+ * Mergeable sketch used to estimate the number of distinct values in a stream,
+ * based on the HyperLogLog algorithm (Flajolet et al, "HyperLogLog: the analysis of
+ * a near-optimal cardinality estimation algorithm"). Each value is hashed to 64 bits,
+ * the first precision bits of which select one of 2^precision registers that keeps
+ * the maximum position of the first one bit in the rest of the hash. The memory used
+ * is at most 2^precision bytes, independent of the number of values, and the standard
+ * error of the estimate is about 1.04/sqrt(2^precision). While few registers are set,
+ * they are kept in a sorted list instead, so that a sketch per group is cheap when
+ * the groups have few distinct values.
+ * 
+ * Not thread safe.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+    
+    private static final byte DENSE = 0;
+    private static final byte SPARSE = 1;
+    private static final int SPARSE_ENTRY_SIZE = Bytes.SIZEOF_SHORT + 1;
+    // Constants of the MurmurHash64A hash function
+    private static final long M = 0xc6a4a7935bd1e995L;
+    private static final int R = 47;
+    private static final long SEED = 0xe17a1465L;
+    
+    private static final int INITIAL_SPARSE_CAPACITY = 4;
+    
+    private final int precision;
+    // Either null while the sketch is sparse or all the registers
+    private byte[] registers;
+    // Index and value of each register that's set, sorted by index, while the sketch is sparse
+    private int[] sparseRegisters;
+    private int nonZeroCount;
+    
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ", but was " + precision);
+        }
+        this.precision = precision;
+        reset();
+    }
+    
+    public int getPrecision() {
+        return precision;
+    }
+    
+    public void reset() {
+        registers = null;
+        sparseRegisters = new int[INITIAL_SPARSE_CAPACITY];
+        nonZeroCount = 0;
+    }
+    
+    private int getRegisterCount() {
+        return 1 << precision;
+    }
+    
+    public void add(byte[] b, int offset, int length) {
+        long hash = hash64(b, offset, length);
+        int index = (int)(hash >>> (Long.SIZE - precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision) + 1, Long.SIZE - precision + 1);
+        setRegister(index, rank);
+    }
+    
+    private void setRegister(int index, int rank) {
+        if (rank == 0) {
+            return;
+        }
+        if (registers == null) {
+            int i = findSparseRegister(index);
+            if (i >= 0) {
+                if (rank > (sparseRegisters[i] & 0xFF)) {
+                    sparseRegisters[i] = (index << Byte.SIZE) | rank;
+                }
+                return;
+            }
+            // Switch to all the registers once the sorted list would take more space
+            if ((nonZeroCount + 1) * Bytes.SIZEOF_INT < getRegisterCount()) {
+                i = -(i + 1);
+                if (nonZeroCount == sparseRegisters.length) {
+                    sparseRegisters = Arrays.copyOf(sparseRegisters, sparseRegisters.length * 2);
+                }
+                System.arraycopy(sparseRegisters, i, sparseRegisters, i + 1, nonZeroCount - i);
+                sparseRegisters[i] = (index << Byte.SIZE) | rank;
+                nonZeroCount++;
+                return;
+            }
+            registers = new byte[getRegisterCount()];
+            for (int j = 0; j < nonZeroCount; j++) {
+                registers[sparseRegisters[j] >>> Byte.SIZE] = (byte)sparseRegisters[j];
+            }
+            sparseRegisters = null;
+        }
+        if (rank > registers[index]) {
+            if (registers[index] == 0) {
+                nonZeroCount++;
+            }
+            registers[index] = (byte)rank;
+        }
+    }
+    
+    private int findSparseRegister(int index) {
+        int low = 0;
+        int high = nonZeroCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midIndex = sparseRegisters[mid] >>> Byte.SIZE;
+            if (midIndex < index) {
+                low = mid + 1;
+            } else if (midIndex > index) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+    
+    /**
+     * @return the estimated number of distinct values added to the sketch
+     */
+    public long estimate() {
+        int m = getRegisterCount();
+        int zeroCount = m - nonZeroCount;
+        double sum = zeroCount;
+        if (registers == null) {
+            for (int i = 0; i < nonZeroCount; i++) {
+                sum += 1.0 / (1L << (sparseRegisters[i] & 0xFF));
+            }
+        } else {
+            for (byte register : registers) {
+                if (register != 0) {
+                    sum += 1.0 / (1L << register);
+                }
+            }
+        }
+        double estimate = getAlpha(m) * m * m / sum;
+        // Use linear counting for small cardinalities, for which HyperLogLog is biased
+        if (estimate <= 2.5 * m && zeroCount > 0) {
+            estimate = m * Math.log((double)m / zeroCount);
+        }
+        return Math.round(estimate);
+    }
+    
+    private static double getAlpha(int m) {
+        switch (m) {
+        case 16:
+            return 0.673;
+        case 32:
+            return 0.697;
+        case 64:
+            return 0.709;
+        default:
+            return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+    
+    private int getSparseSize() {
+        return 2 + Bytes.SIZEOF_INT + nonZeroCount * SPARSE_ENTRY_SIZE;
+    }
+    
+    private int getDenseSize() {
+        return 2 + getRegisterCount();
+    }
+    
+    public int getSerializedSize() {
+        return Math.min(getSparseSize(), getDenseSize());
+    }
+    
+    /**
+     * Serialize the sketch as its precision and format, followed by either all the registers or,
+     * if fewer bytes are needed, the index and value of each register that's set.
+     */
+    public byte[] toBytes() {
+        byte[] b;
+        if (getSparseSize() < getDenseSize()) {
+            b = new byte[getSparseSize()];
+            b[0] = (byte)precision;
+            b[1] = SPARSE;
+            int offset = Bytes.putInt(b, 2, nonZeroCount);
+            if (registers == null) {
+                for (int i = 0; i < nonZeroCount; i++) {
+                    offset = Bytes.putShort(b, offset, (short)(sparseRegisters[i] >>> Byte.SIZE));
+                    b[offset++] = (byte)sparseRegisters[i];
+                }
+            } else {
+                for (int i = 0; i < registers.length; i++) {
+                    if (registers[i] != 0) {
+                        offset = Bytes.putShort(b, offset, (short)i);
+                        b[offset++] = registers[i];
+                    }
+                }
+            }
+        } else {
+            b = new byte[getDenseSize()];
+            b[0] = (byte)precision;
+            b[1] = DENSE;
+            if (registers == null) {
+                for (int i = 0; i < nonZeroCount; i++) {
+                    b[2 + (sparseRegisters[i] >>> Byte.SIZE)] = (byte)sparseRegisters[i];
+                }
+            } else {
+                System.arraycopy(registers, 0, b, 2, registers.length);
+            }
+        }
+        return b;
+    }
+    
+    /**
+     * Merge a sketch serialized with {@link #toBytes()} into this one
+     */
+    public void merge(byte[] b, int offset) {
+        if (b[offset] != precision) {
+            throw new IllegalArgumentException("Cannot merge sketch with precision " + b[offset] + " into sketch with precision " + precision);
+        }
+        if (b[offset + 1] == SPARSE) {
+            int size = Bytes.toInt(b, offset + 2);
+            offset += 2 + Bytes.SIZEOF_INT;
+            for (int i = 0; i < size; i++) {
+                int index = Bytes.toShort(b, offset) & 0xFFFF;
+                setRegister(index, b[offset + Bytes.SIZEOF_SHORT]);
+                offset += SPARSE_ENTRY_SIZE;
+            }
+        } else {
+            offset += 2;
+            for (int i = 0; i < getRegisterCount(); i++) {
+                setRegister(i, b[offset + i]);
+            }
+        }
+    }
+    
+    /**
+     * @return an estimate of the current heap size of the sketch
+     */
+    public int getHeapSize() {
+        return SizedUtil.OBJECT_SIZE + 2 * SizedUtil.INT_SIZE + 2 * SizedUtil.POINTER_SIZE + SizedUtil.ARRAY_SIZE
+                + (registers == null ? sparseRegisters.length * Bytes.SIZEOF_INT : registers.length);
+    }
+    
+    /**
+     * @return an estimate of the maximum heap size of a sketch with the given precision
+     */
+    public static int getEstimatedSize(int precision) {
+        return SizedUtil.OBJECT_SIZE + 2 * SizedUtil.INT_SIZE + SizedUtil.ARRAY_SIZE + (1 << precision);
+    }
+    
+    /**
+     * 64-bit MurmurHash2 (MurmurHash64A) of the given bytes
+     */
+    static long hash64(byte[] b, int offset, int length) {
+        long h = SEED ^ (length * M);
+        int end = offset + (length & ~7);
+        for (int i = offset; i < end; i += 8) {
+            long k = (b[i] & 0xFFL) | (b[i+1] & 0xFFL) << 8 | (b[i+2] & 0xFFL) << 16 | (b[i+3] & 0xFFL) << 24
+                    | (b[i+4] & 0xFFL) << 32 | (b[i+5] & 0xFFL) << 40 | (b[i+6] & 0xFFL) << 48 | (b[i+7] & 0xFFL) << 56;
+            k *= M;
+            k ^= k >>> R;
+            k *= M;
+            h ^= k;
+            h *= M;
+        }
+        int remaining = length & 7;
+        if (remaining > 0) {
+            for (int i = remaining - 1; i >= 0; i--) {
+                h ^= (b[end + i] & 0xFFL) << (8 * i);
+            }
+            h *= M;
+        }
+        h ^= h >>> R;
+        h *= M;
+        h ^= h >>> R;
+        return h;
+    }
+}
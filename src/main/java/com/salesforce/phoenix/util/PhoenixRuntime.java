@@ -37,6 +37,9 @@ import org.apache.hadoop.hbase.util.Pair;
 
 import com.google.common.collect.Lists;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.jdbc.PhoenixResultSet;
+import com.salesforce.phoenix.monitoring.GlobalQueryMetrics;
+import com.salesforce.phoenix.monitoring.QueryMetrics;
 
 /**
  * 
@@ -93,12 +96,13 @@ public class PhoenixRuntime {
     private static final String TABLE_OPTION = "-t";
     private static final String HEADER_OPTION = "-h";
     private static final String STRICT_OPTION = "-s";
+    private static final String PARALLEL_OPTION = "-p";
     private static final String HEADER_IN_LINE = "in-line";
     private static final String SQL_FILE_EXT = ".sql";
     private static final String CSV_FILE_EXT = ".csv";
     
     private static void usageError() {
-        System.err.println("Usage: psql [-t table-name] [-h comma-separated-column-names | in-line] <zookeeper>  <path-to-sql-or-csv-file>...\n" +
+        System.err.println("Usage: psql [-t table-name] [-h comma-separated-column-names | in-line] [-p thread-count] <zookeeper>  <path-to-sql-or-csv-file>...\n" +
                 "  By default, the name of the CSV file is used to determine the Phoenix table into which the CSV data is loaded\n" +
                 "  and the ordinal value of the columns determines the mapping.\n" +
                 "  -t overrides the table into which the CSV data is loaded\n" +
@@ -106,11 +110,15 @@ public class PhoenixRuntime {
                 "     A special value of in-line indicating that the first line of the CSV file\n" +
                 "     determines the column to which the data maps.\n" +
                 "  -s uses strict mode by throwing an exception if a column name doesn't match during CSV loading.\n" +
+                "  -p loads CSV files with the given number of threads parsing and upserting rows in parallel,\n" +
+                "     reporting the number of rows upserted and the throughput as it goes. As with a single thread,\n" +
+                "     the last of the rows with the same primary key in a file wins.\n" +
                 "Examples:\n" +
                 "  psql localhost my_ddl.sql\n" +
                 "  psql localhost my_ddl.sql my_table.csv\n" +
                 "  psql my_cluster:1825 -t my_table my_table2012-Q3.csv\n" +
-                "  psql my_cluster -t my_table -h col1,col2,col3 my_table2012-Q3.csv\n"
+                "  psql my_cluster -t my_table -h col1,col2,col3 my_table2012-Q3.csv\n" +
+                "  psql my_cluster -p 8 my_table2012-Q3.csv\n"
         );
         System.exit(-1);
     }
@@ -132,6 +140,7 @@ public class PhoenixRuntime {
             List<String> columns = null;
             boolean isStrict = false;
             boolean isUpgrade = false;
+            int threadCount = 1;
 
             int i = 0;
             for (; i < args.length; i++) {
@@ -156,6 +165,18 @@ public class PhoenixRuntime {
                     }
                 } else if (STRICT_OPTION.equals(args[i])) {
                     isStrict = true;
+                } else if (PARALLEL_OPTION.equals(args[i])) {
+                    if (++i == args.length) {
+                        usageError();
+                    }
+                    try {
+                        threadCount = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) {
+                        usageError();
+                    }
+                    if (threadCount < 1) {
+                        usageError();
+                    }
                 } else if (UPGRADE_OPTION.equals(args[i])) {
                     isUpgrade = true;
                 } else {
@@ -186,7 +207,7 @@ public class PhoenixRuntime {
                     if (tableName == null) {
                         tableName = fileName.substring(fileName.lastIndexOf(File.separatorChar) + 1, fileName.length()-CSV_FILE_EXT.length());
                     }
-                    CSVLoader csvLoader = new CSVLoader(conn, tableName, columns, isStrict);
+                    CSVLoader csvLoader = new CSVLoader(conn, tableName, columns, isStrict, threadCount);
                     csvLoader.upsert(fileName);
                 } else {
                     usageError();
@@ -228,6 +249,19 @@ public class PhoenixRuntime {
         return pconn.executeStatements(reader, binds, System.out);
     }
     
+    /**
+     * Get the metrics collected while executing the query that produced the result set.
+     * The client side metrics are updated as the query runs, while the server side metrics
+     * of each parallel scan are added once the scan has been read to completion. The totals
+     * across all queries are available through JMX under {@link GlobalQueryMetrics#OBJECT_NAME}.
+     * @param rs a result set returned by a Phoenix query
+     * @return the metrics of the query, or null if the result set was not produced by a query
+     * @throws SQLException if the result set is not a Phoenix result set
+     */
+    public static QueryMetrics getQueryMetrics(ResultSet rs) throws SQLException {
+        return rs.unwrap(PhoenixResultSet.class).getQueryMetrics();
+    }
+    
     /**
      * Get the list of uncommitted KeyValues for the connection. Currently used to write an
      * Phoenix-compliant HFile from a map/reduce job.
@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+
+/**
+ * 
+ * Mergeable sketch of a stream of double values from which approximate quantiles and
+ * ranks may be obtained, based on the KLL algorithm (Karnin, Lang, Liberty, "Optimal
+ * Quantile Approximation in Streams"). Values are kept in a hierarchy of compactors,
+ * where a value at level h stands for 2^h values of the stream. When a level is full,
+ * it is sorted and every other value is promoted to the level above, so the memory used
+ * is bounded by about three times the size parameter k, regardless of the number of
+ * values. The rank error decreases as k increases. The minimum and maximum values are
+ * tracked separately, so that the first and last ranks are exact.
+ * 
+ * Not thread safe.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class QuantileSketch {
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    private static final int MIN_LEVEL_CAPACITY = 2;
+    private static final int INITIAL_LEVEL_SIZE = 16;
+    
+    private final int k;
+    private long count;
+    private double minValue;
+    private double maxValue;
+    private double[][] levels;
+    private int[] sizes;
+    private int numLevels;
+    // Alternates which half of a level is promoted, so that the errors cancel out
+    private boolean isOddOffset;
+    private SortedView sortedView;
+    
+    public QuantileSketch(int k) {
+        if (k < MIN_LEVEL_CAPACITY) {
+            throw new IllegalArgumentException("Sketch size must be at least " + MIN_LEVEL_CAPACITY + ", but was " + k);
+        }
+        this.k = k;
+        reset();
+    }
+    
+    public void reset() {
+        count = 0;
+        minValue = Double.NaN;
+        maxValue = Double.NaN;
+        numLevels = 1;
+        levels = new double[1][];
+        levels[0] = new double[Math.min(k, INITIAL_LEVEL_SIZE)];
+        sizes = new int[1];
+        isOddOffset = false;
+        sortedView = null;
+    }
+    
+    public int getK() {
+        return k;
+    }
+    
+    /**
+     * @return the number of values added to the sketch
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    public boolean isEmpty() {
+        return count == 0;
+    }
+    
+    private int getCapacity(int level) {
+        return Math.max(MIN_LEVEL_CAPACITY, (int)Math.ceil(k * Math.pow(CAPACITY_DECAY, numLevels - level - 1)));
+    }
+    
+    private int getTotalCapacity() {
+        int capacity = 0;
+        for (int i = 0; i < numLevels; i++) {
+            capacity += getCapacity(i);
+        }
+        return capacity;
+    }
+    
+    private int getRetainedCount() {
+        int retained = 0;
+        for (int i = 0; i < numLevels; i++) {
+            retained += sizes[i];
+        }
+        return retained;
+    }
+    
+    private void append(int level, double value) {
+        double[] items = levels[level];
+        if (sizes[level] == items.length) {
+            levels[level] = items = Arrays.copyOf(items, Math.max(MIN_LEVEL_CAPACITY, items.length * 2));
+        }
+        items[sizes[level]++] = value;
+    }
+    
+    private void addLevel() {
+        levels = Arrays.copyOf(levels, numLevels + 1);
+        sizes = Arrays.copyOf(sizes, numLevels + 1);
+        levels[numLevels] = new double[MIN_LEVEL_CAPACITY];
+        numLevels++;
+    }
+    
+    private void updateMinMax(double min, double max) {
+        if (isEmpty()) {
+            minValue = min;
+            maxValue = max;
+        } else {
+            minValue = Math.min(minValue, min);
+            maxValue = Math.max(maxValue, max);
+        }
+    }
+    
+    public void update(double value) {
+        sortedView = null;
+        updateMinMax(value, value);
+        append(0, value);
+        count++;
+        compress();
+    }
+    
+    /**
+     * Compact the lowest level that's over its capacity until the sketch fits within its total capacity
+     */
+    private void compress() {
+        while (getRetainedCount() > getTotalCapacity()) {
+            for (int level = 0; level < numLevels; level++) {
+                if (sizes[level] >= getCapacity(level)) {
+                    compact(level);
+                    break;
+                }
+            }
+        }
+    }
+    
+    private void compact(int level) {
+        if (level + 1 == numLevels) {
+            addLevel();
+        }
+        double[] items = levels[level];
+        int size = sizes[level];
+        // Leave one value behind if there's an odd number of them, since values are promoted in pairs
+        int compactedSize = size & ~1;
+        Arrays.sort(items, 0, size);
+        int offset = isOddOffset ? 1 : 0;
+        isOddOffset = !isOddOffset;
+        for (int i = offset; i < compactedSize; i += 2) {
+            append(level + 1, items[i]);
+        }
+        if (compactedSize < size) {
+            items[0] = items[size - 1];
+        }
+        sizes[level] = size - compactedSize;
+    }
+    
+    /**
+     * Merge another sketch into this one
+     */
+    public void merge(QuantileSketch other) {
+        if (other.isEmpty()) {
+            return;
+        }
+        sortedView = null;
+        updateMinMax(other.minValue, other.maxValue);
+        while (numLevels < other.numLevels) {
+            addLevel();
+        }
+        for (int level = 0; level < other.numLevels; level++) {
+            double[] items = other.levels[level];
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, items[i]);
+            }
+        }
+        count += other.count;
+        compress();
+    }
+    
+    /**
+     * Merge a sketch serialized with {@link #toBytes()} into this one
+     */
+    public void merge(byte[] b, int offset) {
+        long otherCount = Bytes.toLong(b, offset + Bytes.SIZEOF_INT);
+        if (otherCount == 0) {
+            return;
+        }
+        sortedView = null;
+        offset += Bytes.SIZEOF_INT + Bytes.SIZEOF_LONG;
+        updateMinMax(Bytes.toDouble(b, offset), Bytes.toDouble(b, offset + Bytes.SIZEOF_DOUBLE));
+        offset += 2 * Bytes.SIZEOF_DOUBLE;
+        int otherNumLevels = Bytes.toInt(b, offset);
+        offset += Bytes.SIZEOF_INT;
+        while (numLevels < otherNumLevels) {
+            addLevel();
+        }
+        for (int level = 0; level < otherNumLevels; level++) {
+            int size = Bytes.toInt(b, offset);
+            offset += Bytes.SIZEOF_INT;
+            for (int i = 0; i < size; i++) {
+                append(level, Bytes.toDouble(b, offset));
+                offset += Bytes.SIZEOF_DOUBLE;
+            }
+        }
+        count += otherCount;
+        compress();
+    }
+    
+    public int getSerializedSize() {
+        return Bytes.SIZEOF_INT + Bytes.SIZEOF_LONG + 2 * Bytes.SIZEOF_DOUBLE + Bytes.SIZEOF_INT + numLevels * Bytes.SIZEOF_INT + getRetainedCount() * Bytes.SIZEOF_DOUBLE;
+    }
+    
+    /**
+     * Serialize the sketch as the size parameter k, the count, the minimum and maximum values,
+     * the number of levels and then the number of values followed by the values of each level.
+     */
+    public byte[] toBytes() {
+        byte[] b = new byte[getSerializedSize()];
+        int offset = Bytes.putInt(b, 0, k);
+        offset = Bytes.putLong(b, offset, count);
+        offset = Bytes.putDouble(b, offset, minValue);
+        offset = Bytes.putDouble(b, offset, maxValue);
+        offset = Bytes.putInt(b, offset, numLevels);
+        for (int level = 0; level < numLevels; level++) {
+            offset = Bytes.putInt(b, offset, sizes[level]);
+            double[] items = levels[level];
+            for (int i = 0; i < sizes[level]; i++) {
+                offset = Bytes.putDouble(b, offset, items[i]);
+            }
+        }
+        return b;
+    }
+    
+    /**
+     * @return an estimate of the current heap size of the sketch
+     */
+    public int getHeapSize() {
+        int size = SizedUtil.OBJECT_SIZE + SizedUtil.INT_SIZE * 3 + Bytes.SIZEOF_LONG + Bytes.SIZEOF_DOUBLE * 2
+                + SizedUtil.POINTER_SIZE * 3 + SizedUtil.ARRAY_SIZE * 2 + levels.length * (SizedUtil.POINTER_SIZE + Bytes.SIZEOF_INT);
+        for (int i = 0; i < numLevels; i++) {
+            size += SizedUtil.ARRAY_SIZE + levels[i].length * Bytes.SIZEOF_DOUBLE;
+        }
+        return size;
+    }
+    
+    /**
+     * @return an estimate of the maximum heap size of a sketch with the given size parameter
+     */
+    public static int getEstimatedSize(int k) {
+        // The levels together hold at most about 3k values. Allow for some levels being over capacity.
+        return SizedUtil.OBJECT_SIZE + SizedUtil.ARRAY_SIZE * 4 + 4 * k * Bytes.SIZEOF_DOUBLE;
+    }
+    
+    /**
+     * Sorted view of the retained values, along with the cumulative weight up to and including each value.
+     * Since values are always promoted in pairs, the total weight is equal to the count.
+     */
+    private static class SortedView {
+        private final double[] values;
+        private final long[] cumulativeWeights;
+        
+        private SortedView(double[] values, long[] cumulativeWeights) {
+            this.values = values;
+            this.cumulativeWeights = cumulativeWeights;
+        }
+    }
+    
+    private SortedView getSortedView() {
+        if (sortedView != null) {
+            return sortedView;
+        }
+        int retained = getRetainedCount();
+        double[] values = new double[retained];
+        int[] valueLevels = new int[retained];
+        Integer[] order = new Integer[retained];
+        int n = 0;
+        for (int level = 0; level < numLevels; level++) {
+            double[] items = levels[level];
+            for (int i = 0; i < sizes[level]; i++) {
+                values[n] = items[i];
+                valueLevels[n] = level;
+                order[n] = n;
+                n++;
+            }
+        }
+        final double[] unsortedValues = values;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(unsortedValues[o1], unsortedValues[o2]);
+            }
+        });
+        double[] sortedValues = new double[retained];
+        long[] cumulativeWeights = new long[retained];
+        long weight = 0;
+        for (int i = 0; i < retained; i++) {
+            sortedValues[i] = values[order[i]];
+            weight += 1L << valueLevels[order[i]];
+            cumulativeWeights[i] = weight;
+        }
+        return sortedView = new SortedView(sortedValues, cumulativeWeights);
+    }
+    
+    /**
+     * Get the approximate value at the given rank
+     * @param rank the one-based rank of the value in the stream sorted in ascending order
+     * @return the minimum or maximum value for the first or last rank and otherwise
+     *  the smallest retained value whose cumulative weight is at least rank
+     */
+    public double getValueAtRank(long rank) {
+        if (isEmpty()) {
+            throw new IllegalStateException("No values in sketch");
+        }
+        if (rank <= 1) {
+            return minValue;
+        }
+        if (rank >= count) {
+            return maxValue;
+        }
+        SortedView view = getSortedView();
+        int index = Arrays.binarySearch(view.cumulativeWeights, rank);
+        if (index < 0) {
+            index = -(index + 1);
+        }
+        return view.values[Math.max(0, Math.min(index, view.values.length - 1))];
+    }
+    
+    /**
+     * Get the approximate number of values in the stream less than (or equal to) the given value
+     * @param value the value
+     * @param isInclusive true to include the values equal to the given value
+     */
+    public long getRank(double value, boolean isInclusive) {
+        if (isEmpty() || value < minValue || (value == minValue && !isInclusive)) {
+            return 0;
+        }
+        if (value > maxValue || (value == maxValue && isInclusive)) {
+            return count;
+        }
+        SortedView view = getSortedView();
+        long rank = 0;
+        for (int i = 0; i < view.values.length; i++) {
+            int c = Double.compare(view.values[i], value);
+            if (c > 0 || (c == 0 && !isInclusive)) {
+                break;
+            }
+            rank = view.cumulativeWeights[i];
+        }
+        return rank;
+    }
+}
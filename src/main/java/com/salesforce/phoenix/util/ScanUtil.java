@@ -340,6 +340,19 @@ public class ScanUtil {
         return offset - byteOffset;
     }
 
+    /**
+     * Advance position to the next combination of the key ranges of slots, incrementing the
+     * position of the last slot first.
+     * @return false if all the combinations have been visited and true otherwise
+     */
+    public static boolean incrementKey(List<List<KeyRange>> slots, int[] position) {
+        int idx = slots.size() - 1;
+        while (idx >= 0 && (position[idx] = (position[idx] + 1) % slots.get(idx).size()) == 0) {
+            idx--;
+        }
+        return idx >= 0;
+    }
+
     public static boolean isAllSingleRowScan(List<List<KeyRange>> ranges, RowKeySchema schema) {
         if (ranges.size() < schema.getMaxFields()) {
             return false;
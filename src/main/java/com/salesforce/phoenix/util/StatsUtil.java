@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.salesforce.phoenix.query.QueryConstants;
+
+
+/**
+ * 
+ * Utilities for the guide posts stored in the SYSTEM.STATS table. Guide posts are
+ * row keys collected while a region is major compacted, one every
+ * {@link com.salesforce.phoenix.query.QueryServices#STATS_GUIDEPOST_WIDTH_BYTES_ATTRIB}
+ * bytes, so that the data between two consecutive guide posts is roughly the same size.
+ * Each region of a table stores its guide posts in a row keyed by the table name followed
+ * by the region name, with one column per column family.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class StatsUtil {
+    public static final byte[] STATS_FAMILY = QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES;
+
+    private StatsUtil() {
+    }
+    
+    /**
+     * Get the row key prefix shared by the stats rows of all regions of a table
+     * @param tableName the physical table name
+     */
+    public static byte[] getRowKeyPrefix(byte[] tableName) {
+        return ByteUtil.concat(tableName, QueryConstants.SEPARATOR_BYTE_ARRAY);
+    }
+    
+    /**
+     * Get the row key of the stats row of a region
+     * @param tableName the physical table name
+     * @param regionName the region name
+     */
+    public static byte[] getRowKey(byte[] tableName, byte[] regionName) {
+        return ByteUtil.concat(tableName, QueryConstants.SEPARATOR_BYTE_ARRAY, regionName);
+    }
+    
+    public static byte[] toBytes(List<byte[]> guidePosts) {
+        ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytesOut);
+        try {
+            WritableUtils.writeVInt(output, guidePosts.size());
+            for (byte[] guidePost : guidePosts) {
+                Bytes.writeByteArray(output, guidePost);
+            }
+            output.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e); // Impossible
+        }
+        return bytesOut.toByteArray();
+    }
+    
+    public static List<byte[]> fromBytes(byte[] b) {
+        DataInput input = new DataInputStream(new ByteArrayInputStream(b));
+        try {
+            int size = WritableUtils.readVInt(input);
+            List<byte[]> guidePosts = new ArrayList<byte[]>(size);
+            for (int i = 0; i < size; i++) {
+                guidePosts.add(Bytes.readByteArray(input));
+            }
+            return guidePosts;
+        } catch (IOException e) {
+            throw new RuntimeException(e); // Impossible
+        }
+    }
+}
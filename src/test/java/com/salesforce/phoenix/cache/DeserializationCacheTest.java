@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.cache;
+
+import static org.junit.Assert.*;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.salesforce.phoenix.cache.DeserializationCache.Deserializer;
+import com.salesforce.phoenix.cache.DeserializationCache.Lease;
+
+
+public class DeserializationCacheTest {
+    private static final String NAME = "Test";
+    
+    private static class CountingDeserializer extends Deserializer<String> {
+        private final boolean isImmutable;
+        private int deserializeCount;
+        private int resetCount;
+        
+        private CountingDeserializer(boolean isImmutable) {
+            this.isImmutable = isImmutable;
+        }
+        
+        @Override
+        public String deserialize(byte[] b) {
+            deserializeCount++;
+            return new String(Bytes.toString(b));
+        }
+
+        @Override
+        public boolean isImmutable() {
+            return isImmutable;
+        }
+
+        @Override
+        public void reset(String instance) {
+            resetCount++;
+        }
+    }
+    
+    private static String get(Lease lease, String value, Deserializer<String> deserializer) throws Exception {
+        byte[] b = Bytes.toBytes(value);
+        return lease.get(NAME, DeserializationCache.hash(b), b, deserializer);
+    }
+    
+    @Test
+    public void testPooledInstances() throws Exception {
+        DeserializationCache cache = new DeserializationCache(1024 * 1024);
+        CountingDeserializer deserializer = new CountingDeserializer(false);
+        Lease lease1 = cache.newLease();
+        String instance1 = get(lease1, "a", deserializer);
+        assertEquals("a", instance1);
+        // Concurrent scans of the same statement each get their own instance
+        Lease lease2 = cache.newLease();
+        String instance2 = get(lease2, "a", deserializer);
+        assertEquals("a", instance2);
+        assertNotSame(instance1, instance2);
+        assertEquals(2, deserializer.deserializeCount);
+        
+        lease1.close();
+        assertEquals(1, deserializer.resetCount);
+        Lease lease3 = cache.newLease();
+        assertSame(instance1, get(lease3, "a", deserializer));
+        assertEquals(2, deserializer.deserializeCount);
+        lease2.close();
+        lease3.close();
+        assertEquals(3, deserializer.resetCount);
+        
+        Lease lease4 = cache.newLease();
+        assertEquals("b", get(lease4, "b", deserializer));
+        assertEquals(3, deserializer.deserializeCount);
+        lease4.close();
+        assertEquals(2, cache.size());
+    }
+    
+    @Test
+    public void testImmutableInstances() throws Exception {
+        DeserializationCache cache = new DeserializationCache(1024 * 1024);
+        CountingDeserializer deserializer = new CountingDeserializer(true);
+        Lease lease1 = cache.newLease();
+        Lease lease2 = cache.newLease();
+        String instance = get(lease1, "a", deserializer);
+        assertSame(instance, get(lease2, "a", deserializer));
+        lease1.close();
+        lease2.close();
+        assertEquals(1, deserializer.deserializeCount);
+        assertEquals(0, deserializer.resetCount);
+    }
+    
+    @Test
+    public void testScanAttribute() throws Exception {
+        DeserializationCache cache = new DeserializationCache(1024 * 1024);
+        CountingDeserializer deserializer = new CountingDeserializer(false);
+        Scan scan = new Scan();
+        byte[] value = Bytes.toBytes("a");
+        DeserializationCache.setAttribute(scan, NAME, value);
+        assertEquals(DeserializationCache.hash(value), Bytes.toInt(scan.getAttribute(NAME + DeserializationCache.HASH_ATTRIB_SUFFIX)));
+        
+        Lease lease = cache.newLease();
+        assertEquals("a", lease.get(scan, NAME, deserializer));
+        assertNull(lease.get(scan, "Other", deserializer));
+        lease.close();
+        // Without the hash, the region server hashes the value itself
+        Scan otherScan = new Scan();
+        otherScan.setAttribute(NAME, Bytes.toBytes("a"));
+        lease = cache.newLease();
+        assertEquals("a", lease.get(otherScan, NAME, deserializer));
+        lease.close();
+        assertEquals(1, deserializer.deserializeCount);
+    }
+    
+    @Test
+    public void testEviction() throws Exception {
+        DeserializationCache cache = new DeserializationCache(0);
+        CountingDeserializer deserializer = new CountingDeserializer(false);
+        for (int i = 0; i < 2; i++) {
+            Lease lease = cache.newLease();
+            assertEquals("a", get(lease, "a", deserializer));
+            lease.close();
+        }
+        assertEquals(2, deserializer.deserializeCount);
+        assertEquals(0, cache.size());
+    }
+    
+    @Test
+    public void testStats() throws Exception {
+        DeserializationCache cache = new DeserializationCache(1024 * 1024);
+        CountingDeserializer deserializer = new CountingDeserializer(false);
+        for (int i = 0; i < 3; i++) {
+            Lease lease = cache.newLease();
+            assertEquals("a", get(lease, "a", deserializer));
+            lease.close();
+        }
+        assertEquals(1, cache.stats().missCount());
+        assertEquals(2, cache.stats().hitCount());
+    }
+}
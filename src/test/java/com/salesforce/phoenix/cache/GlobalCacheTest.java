@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.sql.*;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.salesforce.phoenix.coprocessor.ServerCachingProtocol.ServerCacheFactory;
+import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.jdbc.PhoenixDriver;
+import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.schema.PTable;
+import com.salesforce.phoenix.util.*;
+
+
+public class GlobalCacheTest {
+    private static final int TIME_TO_LIVE_MS = 50;
+    
+    private static String getUrl() {
+        return PhoenixRuntime.JDBC_PROTOCOL + PhoenixRuntime.JDBC_PROTOCOL_SEPARATOR + PhoenixRuntime.CONNECTIONLESS;
+    }
+    
+    @BeforeClass
+    public static void verifyDriverRegistered() throws SQLException {
+        assertTrue(DriverManager.getDriver(getUrl()) == PhoenixDriver.INSTANCE);
+    }
+    
+    private static GlobalCache newGlobalCache(long maxMetaDataCacheSize) {
+        Configuration config = new Configuration(false);
+        config.setLong(QueryServices.MAX_METADATA_CACHE_SIZE_ATTRIB, maxMetaDataCacheSize);
+        config.setLong(QueryServices.MAX_METADATA_CACHE_TIME_TO_LIVE_MS_ATTRIB, TIME_TO_LIVE_MS);
+        config.setInt(QueryServices.MAX_SERVER_CACHE_TIME_TO_LIVE_MS, TIME_TO_LIVE_MS);
+        return new GlobalCache(config);
+    }
+    
+    private static PTable createTable(String tableName, int columnCount) throws SQLException {
+        StringBuilder buf = new StringBuilder("CREATE TABLE " + tableName + "(k VARCHAR PRIMARY KEY");
+        for (int i = 0; i < columnCount; i++) {
+            buf.append(", column" + i + " VARCHAR");
+        }
+        buf.append(")");
+        PhoenixConnection conn = DriverManager.getConnection(getUrl()).unwrap(PhoenixConnection.class);
+        try {
+            conn.createStatement().execute(buf.toString());
+            return conn.getPMetaData().getSchema("").getTable(tableName);
+        } finally {
+            conn.close();
+        }
+    }
+    
+    private static int weigh(ImmutableBytesPtr key, PTable table) {
+        return SizedUtil.IMMUTABLE_BYTES_PTR_SIZE + key.getLength() + table.getEstimatedSize();
+    }
+    
+    @Test
+    public void testEstimatedSize() throws Exception {
+        PTable narrowTable = createTable("GLOBAL_CACHE_NARROW", 1);
+        PTable wideTable = createTable("GLOBAL_CACHE_WIDE", 10);
+        assertTrue(narrowTable.getEstimatedSize() > "GLOBAL_CACHE_NARROW".length());
+        assertTrue(wideTable.getEstimatedSize() > narrowTable.getEstimatedSize());
+    }
+    
+    @Test
+    public void testMetaDataCacheEvictedByWeight() throws Exception {
+        PTable table = createTable("GLOBAL_CACHE_WEIGHT", 5);
+        ImmutableBytesPtr firstKey = new ImmutableBytesPtr(Bytes.toBytes("TABLE0"));
+        GlobalCache cache = newGlobalCache(3 * weigh(firstKey, table));
+        int tableCount = 10;
+        for (int i = 0; i < tableCount; i++) {
+            cache.getMetaDataCache().put(new ImmutableBytesPtr(Bytes.toBytes("TABLE" + i)), table);
+        }
+        assertTrue(cache.getMetaDataCacheSize() < tableCount);
+        assertTrue(cache.getMetaDataCacheEvictionCount() > 0);
+        long totalWeight = 0;
+        for (Map.Entry<ImmutableBytesPtr,PTable> entry : cache.getMetaDataCache().asMap().entrySet()) {
+            totalWeight += weigh(entry.getKey(), entry.getValue());
+        }
+        assertTrue(totalWeight <= 3 * weigh(firstKey, table));
+    }
+    
+    @Test
+    public void testMetaDataCacheExpiresAfterAccess() throws Exception {
+        PTable table = createTable("GLOBAL_CACHE_TTL", 1);
+        GlobalCache cache = newGlobalCache(1024 * 1024);
+        ImmutableBytesPtr key = new ImmutableBytesPtr(Bytes.toBytes("GLOBAL_CACHE_TTL"));
+        cache.getMetaDataCache().put(key, table);
+        assertSame(table, cache.getMetaDataCache().getIfPresent(key));
+        assertEquals(1, cache.getMetaDataCacheHitCount());
+        Thread.sleep(2 * TIME_TO_LIVE_MS);
+        assertNull(cache.getMetaDataCache().getIfPresent(key));
+        assertEquals(1, cache.getMetaDataCacheMissCount());
+    }
+    
+    private static class TestServerCacheFactory implements ServerCacheFactory {
+        private boolean isClosed;
+        
+        @Override
+        public void readFields(DataInput input) throws IOException {
+        }
+
+        @Override
+        public void write(DataOutput output) throws IOException {
+        }
+
+        @Override
+        public Closeable newCache(ImmutableBytesWritable cachePtr, final MemoryChunk chunk) throws SQLException {
+            return new Closeable() {
+                @Override
+                public void close() {
+                    isClosed = true;
+                    chunk.close();
+                }
+            };
+        }
+    }
+    
+    @Test
+    public void testTenantCacheRemovedOnceIdle() throws Exception {
+        GlobalCache cache = newGlobalCache(1024 * 1024);
+        ImmutableBytesWritable idleTenantId = new ImmutableBytesWritable(Bytes.toBytes("idle"));
+        ImmutableBytesWritable busyTenantId = new ImmutableBytesWritable(Bytes.toBytes("busy"));
+        TenantCache idleTenantCache = cache.getChildTenantCache(idleTenantId);
+        TestServerCacheFactory cacheFactory = new TestServerCacheFactory();
+        idleTenantCache.addServerCache(new ImmutableBytesPtr(Bytes.toBytes("cache")), new ImmutableBytesWritable(new byte[100]), cacheFactory);
+        TenantCache busyTenantCache = cache.getChildTenantCache(busyTenantId);
+        // Memory held by a query keeps the tenant cache from being removed
+        MemoryChunk chunk = busyTenantCache.getMemoryManager().allocate(100);
+        
+        Thread.sleep(2 * TIME_TO_LIVE_MS);
+        assertSame(busyTenantCache, cache.getChildTenantCache(busyTenantId));
+        assertNotSame(idleTenantCache, cache.getChildTenantCache(idleTenantId));
+        assertTrue(cacheFactory.isClosed);
+        assertEquals(1, cache.getTenantCacheEvictionCount());
+        
+        chunk.close();
+        Thread.sleep(2 * TIME_TO_LIVE_MS);
+        assertNotSame(busyTenantCache, cache.getChildTenantCache(busyTenantId));
+        assertEquals(3, cache.getTenantCacheEvictionCount());
+    }
+}
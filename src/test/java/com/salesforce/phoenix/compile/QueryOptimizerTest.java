@@ -2,14 +2,22 @@ package com.salesforce.phoenix.compile;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 
+import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
 import com.salesforce.phoenix.compile.OrderByCompiler.OrderBy;
+import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.jdbc.PhoenixPreparedStatement;
 import com.salesforce.phoenix.jdbc.PhoenixStatement;
+import com.salesforce.phoenix.optimize.QueryPlanCache;
 import com.salesforce.phoenix.query.BaseConnectionlessQueryTest;
 
 public class QueryOptimizerTest extends BaseConnectionlessQueryTest {
@@ -201,5 +209,59 @@ public class QueryOptimizerTest extends BaseConnectionlessQueryTest {
         assertEquals("IDX", plan.getTableRef().getTable().getName().getString());
     }
     
-
+    @Test
+    public void testPlanCachedForPreparedStatement() throws Exception {
+        Connection conn = DriverManager.getConnection(getUrl());
+        conn.createStatement().execute("CREATE TABLE t (k INTEGER NOT NULL PRIMARY KEY, v1 VARCHAR, v2 VARCHAR) IMMUTABLE_ROWS=true");
+        conn.createStatement().execute("CREATE INDEX idx ON t(v1)");
+        String query = "SELECT k FROM t WHERE v1 = ?";
+        PreparedStatement stmt = conn.prepareStatement(query);
+        stmt.setString(1, "foo");
+        QueryPlan plan = stmt.unwrap(PhoenixPreparedStatement.class).optimizeQuery();
+        assertEquals("IDX", plan.getTableRef().getTable().getName().getString());
+        QueryPlanCache cache = conn.unwrap(PhoenixConnection.class).getQueryPlanCache();
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get(query).getIndexSelect());
+        
+        // The cached choice is used with the new bind value
+        stmt.setString(1, "bar");
+        plan = stmt.unwrap(PhoenixPreparedStatement.class).optimizeQuery();
+        assertEquals("IDX", plan.getTableRef().getTable().getName().getString());
+        assertTrue(Bytes.toString(plan.getContext().getScan().getStartRow()).startsWith("bar"));
+        
+        // and by other statements with the same text
+        stmt = conn.prepareStatement(query);
+        stmt.setString(1, "baz");
+        plan = stmt.unwrap(PhoenixPreparedStatement.class).optimizeQuery();
+        assertEquals("IDX", plan.getTableRef().getTable().getName().getString());
+        assertEquals(1, cache.size());
+        
+        // but not by statements that are not prepared
+        String otherQuery = "SELECT v2 FROM t WHERE k = 1";
+        plan = conn.createStatement().unwrap(PhoenixStatement.class).optimizeQuery(otherQuery);
+        assertEquals("T", plan.getTableRef().getTable().getName().getString());
+        assertNull(cache.get(otherQuery));
+    }
+    
+    @Test
+    public void testPlanCacheClearedOnMetaDataChange() throws Exception {
+        Connection conn = DriverManager.getConnection(getUrl());
+        conn.createStatement().execute("CREATE TABLE t (k INTEGER NOT NULL PRIMARY KEY, v1 VARCHAR, v2 VARCHAR) IMMUTABLE_ROWS=true");
+        conn.createStatement().execute("CREATE INDEX idx1 ON t(v1) INCLUDE (v2)");
+        String query = "SELECT k FROM t WHERE v1 = ? AND v2 = ?";
+        PreparedStatement stmt = conn.prepareStatement(query);
+        stmt.setString(1, "foo");
+        stmt.setString(2, "bar");
+        QueryPlan plan = stmt.unwrap(PhoenixPreparedStatement.class).optimizeQuery();
+        assertEquals("IDX1", plan.getTableRef().getTable().getName().getString());
+        QueryPlanCache cache = conn.unwrap(PhoenixConnection.class).getQueryPlanCache();
+        assertEquals(1, cache.size());
+        
+        // A better index is created, so the plan must be chosen again
+        conn.createStatement().execute("CREATE INDEX idx2 ON t(v1,v2)");
+        assertEquals(0, cache.size());
+        plan = stmt.unwrap(PhoenixPreparedStatement.class).optimizeQuery();
+        assertEquals("IDX2", plan.getTableRef().getTable().getName().getString());
+        assertEquals(1, cache.size());
+    }
 }
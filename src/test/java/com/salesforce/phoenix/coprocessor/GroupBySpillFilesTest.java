@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.coprocessor;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.*;
+
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.salesforce.phoenix.expression.aggregator.Aggregator;
+import com.salesforce.phoenix.expression.aggregator.ServerAggregators;
+import com.salesforce.phoenix.memory.GlobalMemoryManager;
+import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+
+
+public class GroupBySpillFilesTest {
+
+    private static Map<ImmutableBytesWritable, Aggregator[]> newAggregateMap(String... keys) {
+        Map<ImmutableBytesWritable, Aggregator[]> map = new HashMap<ImmutableBytesWritable, Aggregator[]>();
+        for (String key : keys) {
+            map.put(new ImmutableBytesWritable(Bytes.toBytes(key)), ServerAggregators.EMPTY_AGGREGATORS.newAggregators());
+        }
+        return map;
+    }
+    
+    @Test
+    public void testMergeSpilledRuns() throws IOException {
+        GlobalMemoryManager mm = new GlobalMemoryManager(1000, 0);
+        MemoryChunk chunk = mm.allocate(100);
+        GroupBySpillFiles spillFiles = new GroupBySpillFiles();
+        assertTrue(spillFiles.isEmpty());
+        spillFiles.spill(newAggregateMap("d", "a", "c"), ServerAggregators.EMPTY_AGGREGATORS);
+        spillFiles.spill(newAggregateMap("b", "e", "a"), ServerAggregators.EMPTY_AGGREGATORS);
+        spillFiles.spill(newAggregateMap(), ServerAggregators.EMPTY_AGGREGATORS);
+        assertEquals(3, spillFiles.size());
+        
+        final boolean[] isClosed = new boolean[1];
+        RegionScanner s = new BaseRegionScanner() {
+            @Override
+            public HRegionInfo getRegionInfo() {
+                return null;
+            }
+
+            @Override
+            public boolean next(List<KeyValue> results) throws IOException {
+                return false;
+            }
+
+            @Override
+            public void close() throws IOException {
+                isClosed[0] = true;
+            }
+        };
+        RegionScanner scanner = spillFiles.newMergingScanner(s, chunk);
+        List<String> keys = new ArrayList<String>();
+        boolean hasMore;
+        do {
+            List<KeyValue> results = new ArrayList<KeyValue>();
+            hasMore = scanner.next(results);
+            for (KeyValue kv : results) {
+                keys.add(Bytes.toString(kv.getRow()));
+            }
+        } while (hasMore);
+        // Partial aggregations of the same group from different runs come back next to each other
+        assertEquals(Arrays.asList("a", "a", "b", "c", "d", "e"), keys);
+        
+        scanner.close();
+        assertTrue(isClosed[0]);
+        assertTrue(spillFiles.isEmpty());
+        assertEquals(1000, mm.getAvailableMemory());
+    }
+}
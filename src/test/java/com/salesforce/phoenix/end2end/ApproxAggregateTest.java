@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.end2end;
+
+import static com.salesforce.phoenix.util.TestUtil.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.salesforce.phoenix.util.PhoenixRuntime;
+
+
+/**
+ * Tests for the sketch based APPROX_PERCENTILE_CONT, APPROX_PERCENTILE_DISC,
+ * APPROX_PERCENT_RANK and APPROX_COUNT_DISTINCT aggregate functions.
+ * 
+ * @author jtaylor
+ * @since 2.1
+ */
+public class ApproxAggregateTest extends BaseClientMangedTimeTest {
+    private static final int NUM_ROWS = 1000;
+
+    private static void initTableValues(long ts) throws Exception {
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts));
+        Connection conn = DriverManager.getConnection(getUrl(), props);
+        conn.createStatement().execute("CREATE TABLE approx_aggregate_test (k INTEGER NOT NULL PRIMARY KEY, g CHAR(1), v INTEGER, d DECIMAL) SPLIT ON (250,500,750)");
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts+1));
+        conn = DriverManager.getConnection(getUrl(), props);
+        PreparedStatement stmt = conn.prepareStatement("UPSERT INTO approx_aggregate_test VALUES(?,?,?,?)");
+        for (int i = 0; i < NUM_ROWS; i++) {
+            stmt.setInt(1, i);
+            stmt.setString(2, i % 2 == 0 ? "a" : "b");
+            stmt.setInt(3, i + 1);
+            stmt.setBigDecimal(4, i % 10 == 0 ? null : BigDecimal.valueOf(i % 100, 1));
+            stmt.execute();
+        }
+        conn.commit();
+        conn.close();
+    }
+    
+    private static Connection getConnection(long ts) throws SQLException {
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts));
+        return DriverManager.getConnection(getUrl(), props);
+    }
+
+    @Test
+    public void testApproxPercentile() throws Exception {
+        long ts = nextTimestamp();
+        initTableValues(ts);
+        Connection conn = getConnection(ts+2);
+        try {
+            ResultSet rs = conn.createStatement().executeQuery("SELECT APPROX_PERCENTILE_CONT(0.5, 2000) WITHIN GROUP (ORDER BY v ASC),"
+                    + " APPROX_PERCENTILE_CONT(0.9, 2000) WITHIN GROUP (ORDER BY v DESC),"
+                    + " APPROX_PERCENTILE_DISC(0.25, 2000) WITHIN GROUP (ORDER BY v ASC),"
+                    + " APPROX_PERCENT_RANK(100, 2000) WITHIN GROUP (ORDER BY v ASC)"
+                    + " FROM approx_aggregate_test");
+            assertTrue(rs.next());
+            // The sketches are large enough to keep every value, so the results are exact
+            assertEquals(500.5, rs.getBigDecimal(1).doubleValue(), 0.001);
+            assertEquals(100.5, rs.getBigDecimal(2).doubleValue(), 0.001);
+            assertEquals(250, rs.getInt(3));
+            assertEquals(0.1, rs.getBigDecimal(4).doubleValue(), 0.001);
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testApproxPercentileGroupedBy() throws Exception {
+        long ts = nextTimestamp();
+        initTableValues(ts);
+        Connection conn = getConnection(ts+2);
+        try {
+            ResultSet rs = conn.createStatement().executeQuery("SELECT g, APPROX_PERCENTILE_CONT(0.5, 8) WITHIN GROUP (ORDER BY v ASC),"
+                    + " APPROX_PERCENTILE_DISC(0.5, 1000) WITHIN GROUP (ORDER BY d DESC)"
+                    + " FROM approx_aggregate_test GROUP BY g");
+            assertTrue(rs.next());
+            assertEquals("a", rs.getString(1));
+            // Even a small sketch is close to the exact median, while nulls are ignored
+            assertEquals(500, rs.getBigDecimal(2).doubleValue(), NUM_ROWS * 0.1);
+            assertEquals(5.2, rs.getBigDecimal(3).doubleValue(), 0.001);
+            assertTrue(rs.next());
+            assertEquals("b", rs.getString(1));
+            assertEquals(501, rs.getBigDecimal(2).doubleValue(), NUM_ROWS * 0.1);
+            assertEquals(5.1, rs.getBigDecimal(3).doubleValue(), 0.001);
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testApproxCountDistinct() throws Exception {
+        long ts = nextTimestamp();
+        initTableValues(ts);
+        Connection conn = getConnection(ts+2);
+        try {
+            ResultSet rs = conn.createStatement().executeQuery("SELECT APPROX_COUNT_DISTINCT(v), APPROX_COUNT_DISTINCT(d, 16), APPROX_COUNT_DISTINCT(g)"
+                    + " FROM approx_aggregate_test");
+            assertTrue(rs.next());
+            assertEquals(NUM_ROWS, rs.getLong(1), NUM_ROWS * 0.05);
+            // Nulls are not counted
+            assertEquals(90, rs.getLong(2), 2);
+            assertEquals(2, rs.getLong(3));
+            assertFalse(rs.next());
+            
+            rs = conn.createStatement().executeQuery("SELECT APPROX_COUNT_DISTINCT(v), APPROX_PERCENTILE_CONT(0.5) WITHIN GROUP (ORDER BY v ASC)"
+                    + " FROM approx_aggregate_test WHERE k > " + NUM_ROWS);
+            assertTrue(rs.next());
+            assertEquals(0, rs.getLong(1));
+            assertNull(rs.getBigDecimal(2));
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+}
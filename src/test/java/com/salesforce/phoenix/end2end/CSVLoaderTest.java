@@ -33,6 +33,7 @@ import java.io.StringReader;
 import java.sql.*;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Properties;
 
 import org.junit.Test;
 
@@ -214,6 +215,74 @@ public class CSVLoaderTest extends BaseHBaseManagedTimeTest {
         conn.close();
     }
 
+    @Test
+    public void testParallelCSVUpsert() throws Exception {
+        // Create table
+        String statements = "CREATE TABLE IF NOT EXISTS " + STOCK_TABLE + "(SYMBOL VARCHAR NOT NULL PRIMARY KEY, COMPANY VARCHAR);";
+        PhoenixConnection conn = DriverManager.getConnection(getUrl()).unwrap(PhoenixConnection.class);
+        PhoenixRuntime.executeStatements(conn, new StringReader(statements), null);
+        
+        // Enough rows for several chunks per thread, with some quoted values spanning lines
+        int rowCount = 5000;
+        StringBuilder csv = new StringBuilder(STOCK_COLUMNS[0] + "," + STOCK_COLUMNS[1] + "\n");
+        for (int i = 0; i < rowCount; i++) {
+            csv.append("SYM" + i + "," + (i % 100 == 0 ? "\"Company\n" + i + "\"" : "Company " + i) + "\n");
+        }
+        
+        // Upsert CSV file
+        CSVLoader csvUtil = new CSVLoader(conn, STOCK_TABLE, Collections.<String>emptyList(), true, 4);
+        csvUtil.upsert(new StringReader(csv.toString()));
+
+        // Compare Phoenix ResultSet with CSV file content
+        PreparedStatement statement = conn.prepareStatement("SELECT COUNT(*) FROM " + STOCK_TABLE);
+        ResultSet phoenixResultSet = statement.executeQuery();
+        assertTrue(phoenixResultSet.next());
+        assertEquals(rowCount, phoenixResultSet.getInt(1));
+        statement = conn.prepareStatement("SELECT COMPANY FROM " + STOCK_TABLE + " WHERE SYMBOL = ?");
+        for (int i = 0; i < rowCount; i += 50) {
+            statement.setString(1, "SYM" + i);
+            phoenixResultSet = statement.executeQuery();
+            assertTrue(phoenixResultSet.next());
+            assertEquals(i % 100 == 0 ? "Company\n" + i : "Company " + i, phoenixResultSet.getString(1));
+        }
+        conn.close();
+    }
+
+    @Test
+    public void testCSVUpsertInParallelWithDuplicateKeys() throws Exception {
+        // Create table
+        String statements = "CREATE TABLE IF NOT EXISTS " + STOCK_TABLE + "(SYMBOL VARCHAR NOT NULL PRIMARY KEY, COMPANY VARCHAR);";
+        Properties props = new Properties();
+        props.setProperty(PhoenixRuntime.UPSERT_BATCH_SIZE_ATTRIB, Integer.toString(1000));
+        PhoenixConnection conn = DriverManager.getConnection(getUrl(), props).unwrap(PhoenixConnection.class);
+        PhoenixRuntime.executeStatements(conn, new StringReader(statements), null);
+        
+        // Each symbol appears once in every pass, with several commits per thread in between
+        int symbolCount = 100;
+        int passCount = 100;
+        StringBuilder csv = new StringBuilder(STOCK_COLUMNS[0] + "," + STOCK_COLUMNS[1] + "\n");
+        for (int pass = 0; pass < passCount; pass++) {
+            for (int i = 0; i < symbolCount; i++) {
+                csv.append("SYM" + i + ",Company " + pass + "\n");
+            }
+        }
+        
+        // Upsert CSV file
+        CSVLoader csvUtil = new CSVLoader(conn, STOCK_TABLE, Collections.<String>emptyList(), true, 4);
+        csvUtil.upsert(new StringReader(csv.toString()));
+
+        // The last row of each symbol wins
+        PreparedStatement statement = conn.prepareStatement("SELECT SYMBOL, COMPANY FROM " + STOCK_TABLE);
+        ResultSet phoenixResultSet = statement.executeQuery();
+        int rowCount = 0;
+        while (phoenixResultSet.next()) {
+            assertEquals(phoenixResultSet.getString(1), "Company " + (passCount - 1), phoenixResultSet.getString(2));
+            rowCount++;
+        }
+        assertEquals(symbolCount, rowCount);
+        conn.close();
+    }
+
     @Test
     public void testAllDatatypes() throws Exception {
     	// Create table
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.end2end;
+
+import static com.salesforce.phoenix.util.TestUtil.*;
+import static org.junit.Assert.*;
+
+import java.sql.*;
+import java.util.*;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.util.PhoenixRuntime;
+import com.salesforce.phoenix.util.ReadOnlyProps;
+
+
+/**
+ * Tests for queries whose parallel scans are processed in the order in which they complete.
+ * 
+ * @author jtaylor
+ * @since 2.1
+ */
+public class CompletionOrderScanTest extends BaseClientMangedTimeTest {
+    private static final int NUM_ROWS = 20;
+
+    @BeforeClass
+    public static void doSetup() throws Exception {
+        Map<String,String> props = Maps.newHashMapWithExpectedSize(1);
+        props.put(QueryServices.COMPLETION_ORDER_SCAN_ATTRIB, Boolean.toString(true));
+        // Must update config before starting server
+        startServer(getUrl(), new ReadOnlyProps(props.entrySet().iterator()));
+    }
+
+    private static void initTableValues(long ts) throws Exception {
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts));
+        Connection conn = DriverManager.getConnection(getUrl(), props);
+        conn.createStatement().execute("CREATE TABLE completion_order_test (k VARCHAR NOT NULL PRIMARY KEY, v INTEGER) SPLIT ON ('e','j','o')");
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts+1));
+        conn = DriverManager.getConnection(getUrl(), props);
+        PreparedStatement stmt = conn.prepareStatement("UPSERT INTO completion_order_test VALUES(?,?)");
+        for (int i = 0; i < NUM_ROWS; i++) {
+            stmt.setString(1, Character.toString((char)('a' + i)));
+            stmt.setInt(2, i);
+            stmt.execute();
+        }
+        conn.commit();
+        conn.close();
+    }
+
+    @Test
+    public void testScanReturnsAllRows() throws Exception {
+        long ts = nextTimestamp();
+        initTableValues(ts);
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts+2));
+        Connection conn = DriverManager.getConnection(getUrl(), props);
+        try {
+            ResultSet rs = conn.createStatement().executeQuery("SELECT k, v FROM completion_order_test");
+            Set<String> keys = new HashSet<String>();
+            while (rs.next()) {
+                String k = rs.getString(1);
+                assertEquals(k.charAt(0) - 'a', rs.getInt(2));
+                assertTrue(keys.add(k));
+            }
+            assertEquals(NUM_ROWS, keys.size());
+            
+            rs = conn.createStatement().executeQuery("SELECT k FROM completion_order_test LIMIT 3");
+            for (int i = 0; i < 3; i++) {
+                assertTrue(rs.next());
+            }
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testRowKeyOrderIsKept() throws Exception {
+        long ts = nextTimestamp();
+        initTableValues(ts);
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts+2));
+        Connection conn = DriverManager.getConnection(getUrl(), props);
+        try {
+            // ORDER BY on the row key is optimized out, so the rows must still come back in row key order
+            ResultSet rs = conn.createStatement().executeQuery("SELECT k FROM completion_order_test ORDER BY k");
+            for (int i = 0; i < NUM_ROWS; i++) {
+                assertTrue(rs.next());
+                assertEquals(Character.toString((char)('a' + i)), rs.getString(1));
+            }
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testUngroupedAggregate() throws Exception {
+        long ts = nextTimestamp();
+        initTableValues(ts);
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts+2));
+        Connection conn = DriverManager.getConnection(getUrl(), props);
+        try {
+            ResultSet rs = conn.createStatement().executeQuery("SELECT count(*), sum(v), min(k), max(k) FROM completion_order_test");
+            assertTrue(rs.next());
+            assertEquals(NUM_ROWS, rs.getInt(1));
+            assertEquals(NUM_ROWS * (NUM_ROWS - 1) / 2, rs.getInt(2));
+            assertEquals("a", rs.getString(3));
+            assertEquals("t", rs.getString(4));
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+}
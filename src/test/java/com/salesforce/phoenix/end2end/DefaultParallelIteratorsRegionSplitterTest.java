@@ -342,6 +342,23 @@ public class DefaultParallelIteratorsRegionSplitterTest extends BaseClientManged
         assertArrayEquals(KMAX2, stats.getMaxKey(table));
     }
 
+    @Test
+    public void testGetGuidePostsOfRegion() {
+        List<byte[]> guidePosts = Arrays.asList(K1, K3, K4, K6, K9, K12);
+        // Guide posts equal to the region boundaries are excluded
+        List<byte[]> regionGuidePosts = DefaultParallelIteratorRegionSplitter.getGuidePosts(guidePosts, K3, K9);
+        assertEquals(2, regionGuidePosts.size());
+        assertArrayEquals(K4, regionGuidePosts.get(0));
+        assertArrayEquals(K6, regionGuidePosts.get(1));
+        regionGuidePosts = DefaultParallelIteratorRegionSplitter.getGuidePosts(guidePosts, HConstants.EMPTY_START_ROW, K5);
+        assertEquals(3, regionGuidePosts.size());
+        assertArrayEquals(K1, regionGuidePosts.get(0));
+        regionGuidePosts = DefaultParallelIteratorRegionSplitter.getGuidePosts(guidePosts, K11, HConstants.EMPTY_END_ROW);
+        assertEquals(1, regionGuidePosts.size());
+        assertArrayEquals(K12, regionGuidePosts.get(0));
+        assertTrue(DefaultParallelIteratorRegionSplitter.getGuidePosts(guidePosts, K4, K5).isEmpty());
+    }
+
     private static KeyRange newKeyRange(byte[] lowerRange, byte[] upperRange) {
         return PDataType.CHAR.getKeyRange(lowerRange, true, upperRange, false);
     }
@@ -35,6 +35,11 @@ import java.util.Properties;
 
 import org.junit.Test;
 
+import com.salesforce.phoenix.compile.StatementContext;
+import com.salesforce.phoenix.exception.SQLExceptionCode;
+import com.salesforce.phoenix.iterate.ScanCacheSizer;
+import com.salesforce.phoenix.jdbc.PhoenixPreparedStatement;
+import com.salesforce.phoenix.query.QueryServicesOptions;
 import com.salesforce.phoenix.util.PhoenixRuntime;
 
 
@@ -107,6 +112,50 @@ public class KeyOnlyTest extends BaseClientMangedTimeTest {
         conn8.close();
     }
     
+    @Test
+    public void testScanCaching() throws Exception {
+        long ts = nextTimestamp();
+        ensureTableCreated(getUrl(),KEYONLY_NAME,null, ts);
+        initTableValues(ts+1);
+        Properties props = new Properties();
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts+5));
+        Connection conn = DriverManager.getConnection(getUrl(), props);
+        String query = "SELECT i1, i2 FROM KEYONLY";
+        
+        // The caching is sized from the rows, which are narrow
+        PhoenixPreparedStatement statement = conn.prepareStatement(query).unwrap(PhoenixPreparedStatement.class);
+        ResultSet rs = statement.executeQuery();
+        assertTrue(rs.next());
+        assertTrue(rs.next());
+        assertFalse(rs.next());
+        StatementContext context = statement.getQueryPlan().getContext();
+        ScanCacheSizer sizer = context.getScanCacheSizer();
+        assertNotNull(sizer);
+        assertTrue(sizer.getCaching() > QueryServicesOptions.DEFAULT_SCAN_CACHE_SIZE);
+        assertTrue(sizer.getCaching() <= QueryServicesOptions.DEFAULT_MAX_SCAN_CACHE_SIZE);
+        
+        // The fetch size of the statement takes precedence
+        statement = conn.prepareStatement(query).unwrap(PhoenixPreparedStatement.class);
+        try {
+            statement.setFetchSize(-1);
+            fail();
+        } catch (SQLException e) {
+            assertEquals(SQLExceptionCode.NEGATIVE_FETCH_SIZE.getErrorCode(), e.getErrorCode());
+        }
+        statement.setFetchSize(1);
+        assertEquals(1, statement.getFetchSize());
+        rs = statement.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+        assertTrue(rs.next());
+        assertEquals(3, rs.getInt(1));
+        assertFalse(rs.next());
+        context = statement.getQueryPlan().getContext();
+        assertNull(context.getScanCacheSizer());
+        assertEquals(1, context.getScan().getCaching());
+        conn.close();
+    }
+    
     protected static void initTableValues(long ts) throws Exception {
         String url = PHOENIX_JDBC_URL + ";" + PhoenixRuntime.CURRENT_SCN_ATTRIB + "=" + ts;
         Properties props = new Properties(TEST_PROPERTIES);
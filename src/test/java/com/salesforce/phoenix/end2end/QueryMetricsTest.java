@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.end2end;
+
+import static com.salesforce.phoenix.util.TestUtil.*;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.sql.*;
+import java.util.*;
+
+import javax.management.ObjectName;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.salesforce.phoenix.exception.SQLExceptionCode;
+import com.salesforce.phoenix.monitoring.GlobalQueryMetrics;
+import com.salesforce.phoenix.monitoring.QueryMetrics;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.util.PhoenixRuntime;
+import com.salesforce.phoenix.util.ReadOnlyProps;
+
+
+/**
+ * Tests for the metrics collected for each query on the client and on the region servers.
+ * 
+ * @author jtaylor
+ * @since 2.1
+ */
+public class QueryMetricsTest extends BaseClientMangedTimeTest {
+    private static final int NUM_ROWS = 20;
+
+    @BeforeClass
+    public static void doSetup() throws Exception {
+        Map<String,String> props = Maps.newHashMapWithExpectedSize(1);
+        props.put(QueryServices.QUERY_METRICS_ENABLED_ATTRIB, Boolean.toString(true));
+        // Must update config before starting server
+        startServer(getUrl(), new ReadOnlyProps(props.entrySet().iterator()));
+    }
+
+    private static void initTableValues(long ts) throws Exception {
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts));
+        Connection conn = DriverManager.getConnection(getUrl(), props);
+        conn.createStatement().execute("CREATE TABLE query_metrics_test (k VARCHAR NOT NULL PRIMARY KEY, v INTEGER) SPLIT ON ('e','j','o')");
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts+1));
+        conn = DriverManager.getConnection(getUrl(), props);
+        PreparedStatement stmt = conn.prepareStatement("UPSERT INTO query_metrics_test VALUES(?,?)");
+        for (int i = 0; i < NUM_ROWS; i++) {
+            stmt.setString(1, Character.toString((char)('a' + i)));
+            stmt.setInt(2, i);
+            stmt.execute();
+        }
+        conn.commit();
+        conn.close();
+    }
+
+    @Test
+    public void testScanMetrics() throws Exception {
+        long ts = nextTimestamp();
+        initTableValues(ts);
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts+2));
+        Connection conn = DriverManager.getConnection(getUrl(), props);
+        try {
+            long queryCount = GlobalQueryMetrics.getInstance().getQueryCount();
+            ResultSet rs = conn.createStatement().executeQuery("SELECT k, v FROM query_metrics_test WHERE v >= 5");
+            int rowCount = 0;
+            while (rs.next()) {
+                assertEquals(rs.getString(1).charAt(0) - 'a', rs.getInt(2));
+                rowCount++;
+            }
+            // The trailing rows with the server side metrics must not be returned
+            assertEquals(NUM_ROWS - 5, rowCount);
+            rs.close();
+            
+            QueryMetrics metrics = PhoenixRuntime.getQueryMetrics(rs);
+            assertTrue(metrics.getParallelScanCount() >= 4);
+            assertEquals(metrics.getParallelScanCount(), metrics.getCompletedScanCount());
+            assertTrue(metrics.getMaxScanTimeMs() <= metrics.getScanTimeMs());
+            // The filter is applied by the region, so the observer only sees the matching rows
+            assertEquals(NUM_ROWS - 5, metrics.getServerRowsMatched());
+            assertEquals(NUM_ROWS - 5, metrics.getServerRowsReturned());
+            assertEquals(0, metrics.getSpoolFileCount());
+            
+            assertEquals(queryCount + 1, GlobalQueryMetrics.getInstance().getQueryCount());
+            Object jmxQueryCount = ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(GlobalQueryMetrics.OBJECT_NAME), "QueryCount");
+            assertEquals(queryCount + 1, jmxQueryCount);
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testAggregateMetrics() throws Exception {
+        long ts = nextTimestamp();
+        initTableValues(ts);
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts+2));
+        Connection conn = DriverManager.getConnection(getUrl(), props);
+        try {
+            ResultSet rs = conn.createStatement().executeQuery("SELECT count(*), sum(v) FROM query_metrics_test");
+            assertTrue(rs.next());
+            assertEquals(NUM_ROWS, rs.getInt(1));
+            assertEquals(NUM_ROWS * (NUM_ROWS - 1) / 2, rs.getInt(2));
+            assertFalse(rs.next());
+            rs.close();
+            
+            QueryMetrics metrics = PhoenixRuntime.getQueryMetrics(rs);
+            assertEquals(NUM_ROWS, metrics.getServerRowsMatched());
+            // At most one aggregated row is returned by each scan
+            assertTrue(metrics.getServerRowsReturned() >= 1);
+            assertTrue(metrics.getServerRowsReturned() <= metrics.getParallelScanCount());
+            
+            rs = conn.createStatement().executeQuery("SELECT v, count(*) FROM query_metrics_test GROUP BY v");
+            rowCount(rs, NUM_ROWS);
+            metrics = PhoenixRuntime.getQueryMetrics(rs);
+            assertEquals(NUM_ROWS, metrics.getServerRowsMatched());
+            assertEquals(NUM_ROWS, metrics.getServerRowsReturned());
+        } finally {
+            conn.close();
+        }
+    }
+    
+    private static void rowCount(ResultSet rs, int expectedRowCount) throws SQLException {
+        int rowCount = 0;
+        while (rs.next()) {
+            rowCount++;
+        }
+        rs.close();
+        assertEquals(expectedRowCount, rowCount);
+    }
+
+    @Test
+    public void testMetricsNotRequestedWhenDisabled() throws Exception {
+        QueryMetrics metrics = new QueryMetrics(false, 0);
+        metrics.addParallelScans(3);
+        metrics.addServerMetrics(10, 5, 1);
+        metrics.addScanTime(5);
+        assertEquals(0, metrics.getParallelScanCount());
+        assertEquals(0, metrics.getServerRowsMatched());
+        assertEquals(0, metrics.getCompletedScanCount());
+    }
+    
+    @Test
+    public void testServerMetricsFamilyReserved() throws Exception {
+        long ts = nextTimestamp();
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts));
+        Connection conn = DriverManager.getConnection(getUrl(), props);
+        try {
+            conn.createStatement().execute("CREATE TABLE query_metrics_reserved (k VARCHAR NOT NULL PRIMARY KEY, \"_m\".v BIGINT)");
+            fail();
+        } catch (SQLException e) {
+            assertEquals(SQLExceptionCode.RESERVED_FAMILY_NAME.getErrorCode(), e.getErrorCode());
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testStoredKeyValueNotServerMetrics() throws Exception {
+        byte[] row = Bytes.toBytes("a");
+        KeyValue metricsKeyValue = QueryMetrics.newServerMetricsKeyValue(row, 0, row.length, 1, 1, 1);
+        assertTrue(QueryMetrics.isServerMetrics(new Result(Collections.singletonList(metricsKeyValue))));
+        // Same column and value length as the metrics, but with the timestamp of a stored key value
+        KeyValue storedKeyValue = new KeyValue(row, QueryMetrics.SERVER_METRICS_FAMILY, QueryMetrics.SERVER_METRICS_QUALIFIER, 
+                System.currentTimeMillis(), new byte[3 * Bytes.SIZEOF_LONG]);
+        assertFalse(QueryMetrics.isServerMetrics(new Result(Collections.singletonList(storedKeyValue))));
+    }
+}
@@ -8,6 +8,8 @@ import java.util.List;
 
 import org.junit.Test;
 
+import com.salesforce.phoenix.util.QueryUtil;
+
 public class SkipScanQueryTest extends BaseHBaseManagedTimeTest {
     
     private void initIntInTable(Connection conn, List<Integer> data) throws SQLException {
@@ -145,4 +147,88 @@ public class SkipScanQueryTest extends BaseHBaseManagedTimeTest {
         }
     }
     
+    @Test
+    public void testLargeInListOnNonLeadingPKColumn() throws Exception {
+        Connection conn = DriverManager.getConnection(getUrl());
+        conn.setAutoCommit(false);
+        try {
+            conn.createStatement().execute("CREATE TABLE IF NOT EXISTS inLargeTest (" + 
+                    "  a INTEGER NOT NULL, b INTEGER NOT NULL CONSTRAINT pk PRIMARY KEY (a,b))");
+            PreparedStatement stmt = conn.prepareStatement("UPSERT INTO inLargeTest VALUES(?,?)");
+            for (int a = 0; a < 3; a++) {
+                for (int b = 0; b < 200; b++) {
+                    stmt.setInt(1, a);
+                    stmt.setInt(2, b);
+                    stmt.execute();
+                }
+            }
+            conn.commit();
+            // Every even value from 0 to 398, of which those under 200 exist
+            StringBuilder inList = new StringBuilder();
+            for (int b = 0; b < 400; b += 2) {
+                inList.append(inList.length() == 0 ? "" : ",").append(b);
+            }
+            String query = "SELECT a,b FROM inLargeTest WHERE b IN (" + inList + ")";
+            ResultSet rs = conn.createStatement().executeQuery("EXPLAIN " + query);
+            String plan = QueryUtil.getExplainPlan(rs);
+            assertTrue(plan, plan.contains("SKIP SCAN"));
+            rs = conn.createStatement().executeQuery(query);
+            for (int a = 0; a < 3; a++) {
+                for (int b = 0; b < 200; b += 2) {
+                    assertTrue(rs.next());
+                    assertEquals(a, rs.getInt(1));
+                    assertEquals(b, rs.getInt(2));
+                }
+            }
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testPointLookup() throws Exception {
+        Connection conn = DriverManager.getConnection(getUrl());
+        conn.setAutoCommit(false);
+        try {
+            conn.createStatement().execute("CREATE TABLE IF NOT EXISTS pointLookupTest (" + 
+                    "  a VARCHAR NOT NULL, b INTEGER NOT NULL, c VARCHAR CONSTRAINT pk PRIMARY KEY (a,b)) SALT_BUCKETS=4");
+            PreparedStatement stmt = conn.prepareStatement("UPSERT INTO pointLookupTest VALUES(?,?,?)");
+            for (String a : Arrays.asList("x","y","z")) {
+                for (int b = 0; b < 10; b++) {
+                    stmt.setString(1, a);
+                    stmt.setInt(2, b);
+                    stmt.setString(3, b % 2 == 0 ? "even" : "odd");
+                    stmt.execute();
+                }
+            }
+            conn.commit();
+            String query = "SELECT a,b FROM pointLookupTest WHERE a IN ('z','x','w') AND b IN (9,2,4,20) AND c = 'even'";
+            ResultSet rs = conn.createStatement().executeQuery("EXPLAIN " + query);
+            String plan = QueryUtil.getExplainPlan(rs);
+            assertTrue(plan, plan.startsWith("CLIENT POINT LOOKUP ON 12 KEYS OVER POINTLOOKUPTEST"));
+            assertTrue(plan, plan.contains("SERVER FILTER BY C = 'even'"));
+            rs = conn.createStatement().executeQuery(query);
+            assertTrue(rs.next());
+            assertEquals("x", rs.getString(1));
+            assertEquals(2, rs.getInt(2));
+            assertTrue(rs.next());
+            assertEquals("x", rs.getString(1));
+            assertEquals(4, rs.getInt(2));
+            assertTrue(rs.next());
+            assertEquals("z", rs.getString(1));
+            assertEquals(2, rs.getInt(2));
+            assertTrue(rs.next());
+            assertEquals("z", rs.getString(1));
+            assertEquals(4, rs.getInt(2));
+            assertFalse(rs.next());
+            
+            rs = conn.createStatement().executeQuery("SELECT c FROM pointLookupTest WHERE a = 'y' AND b = 3");
+            assertTrue(rs.next());
+            assertEquals("odd", rs.getString(1));
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
 }
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.end2end;
+
+import static com.salesforce.phoenix.util.TestUtil.*;
+import static org.junit.Assert.*;
+
+import java.sql.*;
+import java.util.*;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.salesforce.phoenix.jdbc.*;
+import com.salesforce.phoenix.query.*;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.util.*;
+
+
+/**
+ * Tests for the guide posts collected by {@link com.salesforce.phoenix.coprocessor.StatsCollectorRegionObserver}
+ * while a table is major compacted and for the splits computed from them.
+ * 
+ * @author jtaylor
+ * @since 2.1
+ */
+public class StatsCollectorTest extends BaseHBaseManagedTimeTest {
+    private static final String STATS_TEST_NAME = "STATS_TEST";
+    private static final int NUM_ROWS = 200;
+    private static final int TARGET_QUERY_CONCURRENCY = 4;
+    private static final long MAX_WAIT_MS = 60000;
+
+    @BeforeClass
+    public static void doSetup() throws Exception {
+        Map<String,String> props = Maps.newHashMapWithExpectedSize(4);
+        props.put(QueryServices.STATS_GUIDEPOST_WIDTH_BYTES_ATTRIB, Integer.toString(2000));
+        props.put(QueryServices.TARGET_QUERY_CONCURRENCY_ATTRIB, Integer.toString(TARGET_QUERY_CONCURRENCY));
+        props.put(QueryServices.MAX_QUERY_CONCURRENCY_ATTRIB, Integer.toString(TARGET_QUERY_CONCURRENCY * 2));
+        props.put(QueryServices.MAX_INTRA_REGION_PARALLELIZATION_ATTRIB, Integer.toString(Integer.MAX_VALUE));
+        // Must update config before starting server
+        startServer(getUrl(), new ReadOnlyProps(props.entrySet().iterator()));
+    }
+
+    private static void initTableValues() throws Exception {
+        Connection conn = DriverManager.getConnection(getUrl(), TEST_PROPERTIES);
+        try {
+            conn.createStatement().execute("CREATE TABLE " + STATS_TEST_NAME + " (k VARCHAR NOT NULL PRIMARY KEY, a.v1 VARCHAR, b.v2 VARCHAR)");
+            char[] chars = new char[100];
+            Arrays.fill(chars, 'x');
+            String value = new String(chars);
+            PreparedStatement stmt = conn.prepareStatement("UPSERT INTO " + STATS_TEST_NAME + "(k, a.v1, b.v2) VALUES(?,?,?)");
+            for (int i = 0; i < NUM_ROWS; i++) {
+                stmt.setString(1, String.format("%03d", i));
+                stmt.setString(2, value);
+                // Only half the rows have data in the second column family, so it gets fewer guide posts
+                stmt.setString(3, i % 2 == 0 ? value : null);
+                stmt.execute();
+            }
+            conn.commit();
+        } finally {
+            conn.close();
+        }
+    }
+    
+    /**
+     * Wait until the guide posts of both column families have been written to the
+     * SYSTEM.STATS table, since a major compaction runs asynchronously.
+     * @return the guide posts by column family name
+     */
+    private static Map<String,List<byte[]>> waitForGuidePosts(ConnectionQueryServices services) throws Exception {
+        byte[] prefix = StatsUtil.getRowKeyPrefix(Bytes.toBytes(STATS_TEST_NAME));
+        long endTime = System.currentTimeMillis() + MAX_WAIT_MS;
+        HTableInterface statsTable = services.getTable(PhoenixDatabaseMetaData.STATS_TABLE_NAME);
+        try {
+            while (true) {
+                Map<String,List<byte[]>> guidePostsByFamily = Maps.newHashMap();
+                Scan scan = new Scan(prefix, ByteUtil.nextKey(prefix));
+                scan.addFamily(StatsUtil.STATS_FAMILY);
+                ResultScanner scanner = statsTable.getScanner(scan);
+                try {
+                    for (Result r = scanner.next(); r != null; r = scanner.next()) {
+                        for (KeyValue kv : r.raw()) {
+                            guidePostsByFamily.put(Bytes.toString(kv.getQualifier()), StatsUtil.fromBytes(kv.getValue()));
+                        }
+                    }
+                } finally {
+                    scanner.close();
+                }
+                if (guidePostsByFamily.size() == 2) {
+                    return guidePostsByFamily;
+                }
+                assertTrue("Guide posts not collected after " + MAX_WAIT_MS + " ms", System.currentTimeMillis() < endTime);
+                Thread.sleep(500);
+            }
+        } finally {
+            statsTable.close();
+        }
+    }
+    
+    @Test
+    public void testGuidePostsCollectedOnMajorCompaction() throws Exception {
+        initTableValues();
+        ConnectionQueryServices services = driver.getConnectionQueryServices(getUrl(), TEST_PROPERTIES);
+        HBaseAdmin admin = services.getAdmin();
+        try {
+            admin.flush(STATS_TEST_NAME);
+            admin.majorCompact(STATS_TEST_NAME);
+        } finally {
+            admin.close();
+        }
+        Map<String,List<byte[]>> guidePostsByFamily = waitForGuidePosts(services);
+        List<byte[]> familyAGuidePosts = guidePostsByFamily.get("A");
+        List<byte[]> familyBGuidePosts = guidePostsByFamily.get("B");
+        assertNotNull(familyAGuidePosts);
+        assertNotNull(familyBGuidePosts);
+        // Column family A holds the empty key value and has more data
+        assertTrue(familyAGuidePosts.size() > familyBGuidePosts.size());
+        assertTrue(familyAGuidePosts.size() >= TARGET_QUERY_CONCURRENCY);
+        
+        Connection conn = DriverManager.getConnection(getUrl(), TEST_PROPERTIES);
+        try {
+            PhoenixConnection pconn = conn.unwrap(PhoenixConnection.class);
+            PSchema schema = pconn.getPMetaData().getSchema("");
+            PTable table = schema.getTable(STATS_TEST_NAME);
+            TableRef tableRef = new TableRef(null, table, schema, table.getTimeStamp(), false);
+            StatsManager statsManager = services.getStatsManager();
+            statsManager.updateStats(tableRef);
+            
+            // Only the guide posts of the column family with the empty key value are used
+            List<byte[]> guidePosts = statsManager.getGuidePosts(tableRef);
+            assertEquals(familyAGuidePosts.size(), guidePosts.size());
+            for (int i = 0; i < guidePosts.size(); i++) {
+                assertArrayEquals(familyAGuidePosts.get(i), guidePosts.get(i));
+            }
+            
+            // The single region is split on the guide posts
+            Statement statement = conn.createStatement();
+            ResultSet rs = statement.executeQuery("SELECT count(*) FROM " + STATS_TEST_NAME);
+            assertTrue(rs.next());
+            assertEquals(NUM_ROWS, rs.getInt(1));
+            List<KeyRange> splits = statement.unwrap(PhoenixStatement.class).getQueryPlan().getSplits();
+            assertEquals(TARGET_QUERY_CONCURRENCY, splits.size());
+            for (int i = 1; i < splits.size(); i++) {
+                byte[] boundary = splits.get(i).getLowerRange();
+                assertArrayEquals(boundary, splits.get(i-1).getUpperRange());
+                assertTrue(Collections.binarySearch(familyAGuidePosts, boundary, Bytes.BYTES_COMPARATOR) >= 0);
+            }
+        } finally {
+            conn.close();
+        }
+    }
+}
@@ -27,8 +27,7 @@
  ******************************************************************************/
 package com.salesforce.phoenix.end2end;
 
-import static com.salesforce.phoenix.util.TestUtil.PHOENIX_JDBC_URL;
-import static com.salesforce.phoenix.util.TestUtil.TEST_PROPERTIES;
+import static com.salesforce.phoenix.util.TestUtil.*;
 import static org.junit.Assert.*;
 
 import java.math.BigDecimal;
@@ -92,4 +91,39 @@ public class StddevTest extends BaseClientMangedTimeTest {
         }
     }
     
+    @Test
+    public void testSTDDEVGroupedBy() throws Exception {
+        long ts = nextTimestamp();
+        String tenantId = getOrganizationId();
+        initATableValues(tenantId, getDefaultSplits(tenantId), null, ts);
+
+        String query = "SELECT a_string, STDDEV_POP(a_integer), STDDEV_SAMP(a_integer) FROM aTable GROUP BY a_string";
+
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 2)); // Execute at
+                                                                                     // timestamp 2
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        try {
+            PreparedStatement statement = conn.prepareStatement(query);
+            ResultSet rs = statement.executeQuery();
+            // 1, 2, 3, 4
+            assertTrue(rs.next());
+            assertEquals(A_VALUE, rs.getString(1));
+            assertEquals(Math.sqrt(5.0 / 4), rs.getBigDecimal(2).doubleValue(), 1e-9);
+            assertEquals(Math.sqrt(5.0 / 3), rs.getBigDecimal(3).doubleValue(), 1e-9);
+            // 5, 6, 7, 8
+            assertTrue(rs.next());
+            assertEquals(B_VALUE, rs.getString(1));
+            assertEquals(Math.sqrt(5.0 / 4), rs.getBigDecimal(2).doubleValue(), 1e-9);
+            assertEquals(Math.sqrt(5.0 / 3), rs.getBigDecimal(3).doubleValue(), 1e-9);
+            // 9, for which there's no sample standard deviation
+            assertTrue(rs.next());
+            assertEquals(C_VALUE, rs.getString(1));
+            assertEquals(0.0, rs.getBigDecimal(2).doubleValue(), 0.0);
+            assertNull(rs.getBigDecimal(3));
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
 }
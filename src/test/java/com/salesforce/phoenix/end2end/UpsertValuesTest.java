@@ -35,6 +35,7 @@ import java.util.Properties;
 
 import org.junit.Test;
 
+import com.salesforce.phoenix.exception.SQLExceptionCode;
 import com.salesforce.phoenix.util.*;
 
 
@@ -180,5 +181,83 @@ public class UpsertValuesTest extends BaseClientMangedTimeTest {
         assertEquals(100, rs.getInt(1));
         assertFalse(rs.next());
     }
+    
+    @Test
+    public void testBatchedUpsertValues() throws Exception {
+        long ts = nextTimestamp();
+        Properties props = new Properties();
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts));
+        Connection conn = DriverManager.getConnection(getUrl(), props);
+        conn.createStatement().execute("create table UpsertBatchTest (k VARCHAR not null primary key, v INTEGER)");
+        conn.close();
 
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts+5));
+        conn = DriverManager.getConnection(getUrl(), props);
+        PreparedStatement stmt = conn.prepareStatement("upsert into UpsertBatchTest values (?, ?)");
+        for (int i = 0; i < 100; i++) {
+            stmt.setString(1, "k" + (i % 50));
+            stmt.setInt(2, i);
+            stmt.addBatch();
+        }
+        int[] updateCounts = stmt.executeBatch();
+        assertEquals(100, updateCounts.length);
+        for (int updateCount : updateCounts) {
+            assertEquals(1, updateCount);
+        }
+        // Batch is cleared after execution
+        assertEquals(0, stmt.executeBatch().length);
+        
+        Statement batchStmt = conn.createStatement();
+        batchStmt.addBatch("upsert into UpsertBatchTest values ('x', 1000)");
+        batchStmt.addBatch("upsert into UpsertBatchTest values ('y', 1001)");
+        assertArrayEquals(new int[] {1, 1}, batchStmt.executeBatch());
+        conn.commit();
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts+10));
+        conn = DriverManager.getConnection(getUrl(), props);
+        ResultSet rs = conn.createStatement().executeQuery("select count(*), sum(v) from UpsertBatchTest");
+        assertTrue(rs.next());
+        assertEquals(52, rs.getInt(1));
+        // Last value in the batch wins for duplicate keys: sum of 50..99 plus 1000 and 1001
+        assertEquals(3725 + 2001, rs.getInt(2));
+        assertFalse(rs.next());
+        conn.close();
+    }
+    
+    @Test
+    public void testBatchedUpsertValuesFailure() throws Exception {
+        long ts = nextTimestamp();
+        Properties props = new Properties();
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts));
+        Connection conn = DriverManager.getConnection(getUrl(), props);
+        conn.createStatement().execute("create table UpsertBatchFailTest (k VARCHAR not null primary key, v CHAR(2))");
+        conn.close();
+
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts+5));
+        conn = DriverManager.getConnection(getUrl(), props);
+        PreparedStatement stmt = conn.prepareStatement("upsert into UpsertBatchFailTest values (?, ?)");
+        stmt.setString(1, "a");
+        stmt.setString(2, "ab");
+        stmt.addBatch();
+        stmt.setString(1, "b");
+        stmt.setString(2, "abc");
+        stmt.addBatch();
+        try {
+            stmt.executeBatch();
+            fail();
+        } catch (BatchUpdateException e) {
+            assertEquals(0, e.getUpdateCounts().length);
+            assertEquals(SQLExceptionCode.DATA_INCOMPATIBLE_WITH_TYPE.getErrorCode(), e.getErrorCode());
+        }
+        conn.commit();
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts+10));
+        conn = DriverManager.getConnection(getUrl(), props);
+        ResultSet rs = conn.createStatement().executeQuery("select count(*) from UpsertBatchFailTest");
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        conn.close();
+    }
 }
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.execute;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+import org.junit.*;
+
+import com.google.common.collect.*;
+import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.jdbc.PhoenixDriver;
+import com.salesforce.phoenix.query.*;
+import com.salesforce.phoenix.util.PhoenixRuntime;
+import com.salesforce.phoenix.util.ReadOnlyProps;
+
+
+public class MutationStateTest {
+    private static String getUrl() {
+        return PhoenixRuntime.JDBC_PROTOCOL + PhoenixRuntime.JDBC_PROTOCOL_SEPARATOR + PhoenixRuntime.CONNECTIONLESS;
+    }
+    
+    @BeforeClass
+    public static void verifyDriverRegistered() throws SQLException {
+        assertTrue(DriverManager.getDriver(getUrl()) == PhoenixDriver.INSTANCE);
+    }
+    
+    /**
+     * HTable that locates each row on the server named by the first character
+     * of the row key and records the batches it is sent instead of sending them.
+     */
+    private static class RecordingHTable extends HTable {
+        private final String tableName;
+        private final List<String> batches;
+        private final boolean fail;
+        
+        private RecordingHTable(byte[] tableName, ConnectionQueryServices services, List<String> batches, boolean fail) throws IOException {
+            super(tableName, newHConnection(), services.getExecutor());
+            this.tableName = Bytes.toString(tableName);
+            this.batches = batches;
+            this.fail = fail;
+        }
+        
+        private static HConnection newHConnection() {
+            final Configuration config = new Configuration(false);
+            return (HConnection)Proxy.newProxyInstance(HConnection.class.getClassLoader(), new Class<?>[] {HConnection.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("getConfiguration".equals(method.getName())) {
+                        return config;
+                    }
+                    return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                }
+            });
+        }
+        
+        private static String getServer(byte[] row) {
+            return "server" + (char)row[0];
+        }
+        
+        @Override
+        public HRegionLocation getRegionLocation(byte[] row, boolean reload) {
+            return new HRegionLocation(null, getServer(row), 60020);
+        }
+
+        @Override
+        public Object[] batch(List<? extends Row> actions) throws IOException {
+            Set<String> servers = Sets.newHashSet();
+            for (Row action : actions) {
+                servers.add(getServer(action.getRow()));
+            }
+            assertEquals("All rows of a batch must be on the same server", 1, servers.size());
+            if (fail) {
+                throw new IOException("Failed to commit to " + tableName);
+            }
+            synchronized (batches) {
+                batches.add(tableName + ":" + servers.iterator().next() + ":" + actions.size());
+            }
+            return new Object[actions.size()];
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+    
+    private static PhoenixConnection getConnection(final List<String> batches, final String failingTableName) throws SQLException {
+        PhoenixConnection conn = DriverManager.getConnection(getUrl()).unwrap(PhoenixConnection.class);
+        final ConnectionQueryServices services = conn.getQueryServices();
+        Map<String,String> props = Maps.newHashMap();
+        for (Map.Entry<String,String> entry : services.getProps()) {
+            props.put(entry.getKey(), entry.getValue());
+        }
+        props.put(QueryServices.COMMIT_BATCH_SIZE_ATTRIB, Integer.toString(2));
+        final ReadOnlyProps commitProps = new ReadOnlyProps(props.entrySet().iterator());
+        ConnectionQueryServices recordingServices = new DelegateConnectionQueryServices(services) {
+            @Override
+            public ReadOnlyProps getProps() {
+                return commitProps;
+            }
+
+            @Override
+            public HTableInterface getTable(byte[] tableName) throws SQLException {
+                try {
+                    return new RecordingHTable(tableName, services, batches, Bytes.toString(tableName).equals(failingTableName));
+                } catch (IOException e) {
+                    throw new SQLException(e);
+                }
+            }
+        };
+        return new PhoenixConnection(recordingServices, getUrl(), null, conn.getPMetaData());
+    }
+    
+    private static void upsertRows(Connection conn, String tableName, String... keys) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement("UPSERT INTO " + tableName + " VALUES(?)");
+        for (String key : keys) {
+            stmt.setString(1, key);
+            stmt.execute();
+        }
+    }
+    
+    private static void createTables(String... tableNames) throws SQLException {
+        Connection conn = DriverManager.getConnection(getUrl());
+        try {
+            for (String tableName : tableNames) {
+                conn.createStatement().execute("CREATE TABLE " + tableName + "(k VARCHAR PRIMARY KEY)");
+            }
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testCommitGroupsByServerAndChunks() throws Exception {
+        createTables("COMMIT_GROUP_T");
+        List<String> batches = Lists.newArrayList();
+        PhoenixConnection conn = getConnection(batches, null);
+        try {
+            upsertRows(conn, "COMMIT_GROUP_T", "a1", "b1", "a2", "a3", "b2", "a4", "b3", "a5");
+            conn.commit();
+        } finally {
+            conn.close();
+        }
+        Collections.sort(batches);
+        assertEquals(Arrays.asList(
+                "COMMIT_GROUP_T:servera:1",
+                "COMMIT_GROUP_T:servera:2",
+                "COMMIT_GROUP_T:servera:2",
+                "COMMIT_GROUP_T:serverb:1",
+                "COMMIT_GROUP_T:serverb:2"), batches);
+    }
+    
+    @Test
+    public void testCommitExceptionHoldsPartialState() throws Exception {
+        createTables("COMMIT_OK_T", "COMMIT_FAIL_T");
+        List<String> batches = Lists.newArrayList();
+        PhoenixConnection conn = getConnection(batches, "COMMIT_FAIL_T");
+        try {
+            upsertRows(conn, "COMMIT_OK_T", "a1", "a2", "a3");
+            upsertRows(conn, "COMMIT_FAIL_T", "b1", "b2");
+            try {
+                conn.commit();
+                fail();
+            } catch (CommitException e) {
+                assertTrue(e.getCause() instanceof IOException);
+                assertEquals(3, e.getCommittedState().getUpdateCount());
+                assertTables(e.getCommittedState(), "COMMIT_OK_T");
+                assertEquals(2, e.getUncommittedState().getUpdateCount());
+                assertTables(e.getUncommittedState(), "COMMIT_FAIL_T");
+            }
+            Collections.sort(batches);
+            assertEquals(Arrays.asList(
+                    "COMMIT_OK_T:servera:1",
+                    "COMMIT_OK_T:servera:2"), batches);
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testAutoCommitBatchFailureUpdateCounts() throws Exception {
+        createTables("COMMIT_BATCH_FAIL_T");
+        List<String> batches = Lists.newArrayList();
+        PhoenixConnection conn = getConnection(batches, "COMMIT_BATCH_FAIL_T");
+        try {
+            conn.setAutoCommit(true);
+            PreparedStatement stmt = conn.prepareStatement("UPSERT INTO COMMIT_BATCH_FAIL_T VALUES(?)");
+            for (String key : new String[] {"a1", "a2", "b1"}) {
+                stmt.setString(1, key);
+                stmt.addBatch();
+            }
+            try {
+                stmt.executeBatch();
+                fail();
+            } catch (BatchUpdateException e) {
+                // Every row was upserted, but committing them failed
+                assertArrayEquals(new int[] {1, 1, 1}, e.getUpdateCounts());
+                assertTrue(e.getNextException() instanceof CommitException);
+            }
+            assertEquals(3, conn.getMutationState().getUpdateCount());
+            assertTrue(batches.isEmpty());
+        } finally {
+            conn.close();
+        }
+    }
+    
+    private static void assertTables(MutationState state, String... tableNames) {
+        Set<String> actualTableNames = Sets.newHashSet();
+        Iterator<Pair<byte[],List<Mutation>>> iterator = state.toMutations();
+        while (iterator.hasNext()) {
+            actualTableNames.add(Bytes.toString(iterator.next().getFirst()));
+        }
+        assertEquals(Sets.newHashSet(tableNames), actualTableNames);
+    }
+}
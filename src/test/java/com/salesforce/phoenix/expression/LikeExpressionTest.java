@@ -28,14 +28,19 @@
 package com.salesforce.phoenix.expression;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
+import com.salesforce.phoenix.schema.ColumnModifier;
+
 public class LikeExpressionTest {
     @Test
     public void testStartWildcard() throws Exception {
@@ -50,4 +55,37 @@ public class LikeExpressionTest {
         assertEquals(Boolean.FALSE,result);
     }
 
+    private static boolean evaluate(String value, String likePattern) throws Exception {
+        LikeExpression e = new LikeExpression(Arrays.<Expression>asList(LiteralExpression.newConstant(value), LiteralExpression.newConstant(likePattern)));
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        assertTrue(e.evaluate(null, ptr));
+        return (Boolean)e.getDataType().toObject(ptr);
+    }
+    
+    @Test
+    public void testMatchersAgreeWithRegex() throws Exception {
+        String[] patterns = {"abc", "abc%", "%abc", "%abc%", "a%c", "a%b%c", "%a%c%", "ab%%c", "%", "%%", 
+                "a_c", "_bc%", "a\\%c", "a\\_c%", "%\u00e9t\u00e9%", "aa%aa"};
+        String[] values = {"", "abc", "abcd", "xabc", "xabcx", "ac", "a%c", "a_c", "abbc", "axbxc", "aa", "aaa", "aaaa",
+                "\u00e9t\u00e9", "l'\u00e9t\u00e9 dernier", "ab\nc", "ABC"};
+        for (String likePattern : patterns) {
+            Pattern regex = Pattern.compile(LikeExpression.toPattern(likePattern), Pattern.DOTALL);
+            for (String value : values) {
+                boolean expected = regex.matcher(value).matches();
+                // An empty string is null
+                if (!value.isEmpty()) {
+                    assertEquals("'" + value + "' LIKE '" + likePattern + "'", expected, evaluate(value, likePattern));
+                }
+                byte[] b = Bytes.toBytes("xx" + value);
+                byte[] desc = ColumnModifier.SORT_DESC.apply(b, 0, new byte[b.length], 0, b.length);
+                assertEquals("'" + value + "' LIKE '" + likePattern + "' DESC", expected,
+                        LikeMatcher.get(likePattern).matches(desc, 2, desc.length - 2, ColumnModifier.SORT_DESC));
+            }
+        }
+    }
+    
+    @Test
+    public void testMatcherCache() throws Exception {
+        assertSame(LikeMatcher.get("abc%"), LikeMatcher.get("abc%"));
+    }
 }
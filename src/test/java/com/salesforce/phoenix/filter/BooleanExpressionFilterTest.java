@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.filter;
+
+import static org.junit.Assert.*;
+
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Writables;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.salesforce.phoenix.cache.DeserializationCache;
+import com.salesforce.phoenix.cache.GlobalCache;
+import com.salesforce.phoenix.expression.LiteralExpression;
+
+
+public class BooleanExpressionFilterTest {
+    private static final byte[] FILTER_BYTES;
+    static {
+        try {
+            FILTER_BYTES = Writables.getBytes(new RowKeyComparisonFilter(LiteralExpression.newConstant(true), Bytes.toBytes("a")));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    @BeforeClass
+    public static void createCache() {
+        // Filters only take their expression from the cache once the region server created it
+        GlobalCache.getInstance(HBaseConfiguration.create());
+    }
+    
+    private static RowKeyComparisonFilter newFilter() throws Exception {
+        return (RowKeyComparisonFilter)Writables.getWritable(FILTER_BYTES, new RowKeyComparisonFilter());
+    }
+    
+    @Test
+    public void testExpressionReturnedOnceLeaseClosed() throws Exception {
+        RowKeyComparisonFilter filter1 = newFilter();
+        assertTrue(filter1.hasLease());
+        // Concurrent scans each use their own instance of the expression
+        RowKeyComparisonFilter filter2 = newFilter();
+        assertNotSame(filter1.expression, filter2.expression);
+        
+        DeserializationCache.Lease lease = filter1.takeLease();
+        assertNotNull(lease);
+        // Only one scanner may return the expression
+        assertFalse(filter1.hasLease());
+        assertNull(filter1.takeLease());
+        lease.close();
+        RowKeyComparisonFilter filter3 = newFilter();
+        assertSame(filter1.expression, filter3.expression);
+        filter2.takeLease().close();
+        filter3.takeLease().close();
+    }
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.*;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.salesforce.phoenix.expression.BaseTerminalExpression;
+import com.salesforce.phoenix.expression.OrderByExpression;
+import com.salesforce.phoenix.memory.GlobalMemoryManager;
+import com.salesforce.phoenix.memory.MemoryManager;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.ResultTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ReadOnlyProps;
+
+
+public class ExternalSorterTest {
+    private static final byte[] ROW = Bytes.toBytes("r");
+    private static final byte[] A = Bytes.toBytes("a");
+    private static final byte[] B = Bytes.toBytes("b");
+    // Includes zero bytes and values that are a prefix of others to exercise the normalized sort keys
+    private static final byte[] ALPHABET = new byte[] {0, 1, 'a', (byte)0xFF};
+    private static final int MAX_MEMORY = 100 * 1024 * 1024;
+    
+    private static class ColumnValueExpression extends BaseTerminalExpression {
+        private final byte[] qualifier;
+        private final PDataType type;
+        
+        private ColumnValueExpression(byte[] qualifier, PDataType type) {
+            this.qualifier = qualifier;
+            this.type = type;
+        }
+        
+        @Override
+        public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+            KeyValue kv = tuple.getValue(SINGLE_COLUMN_FAMILY, qualifier);
+            if (kv == null) {
+                return false;
+            }
+            ptr.set(kv.getBuffer(), kv.getValueOffset(), kv.getValueLength());
+            return true;
+        }
+
+        @Override
+        public PDataType getDataType() {
+            return type;
+        }
+    }
+    
+    private static List<Tuple> newTuples(int count) {
+        Random random = new Random(count);
+        List<Tuple> tuples = Lists.newArrayListWithExpectedSize(count);
+        for (int i = 0; i < count; i++) {
+            List<KeyValue> kvs = Lists.newArrayListWithExpectedSize(2);
+            // Leave out some of the values so that they sort as nulls
+            byte[] a = new byte[random.nextInt(5)];
+            for (int j = 0; j < a.length; j++) {
+                a[j] = ALPHABET[random.nextInt(ALPHABET.length)];
+            }
+            if (a.length > 0) {
+                kvs.add(new KeyValue(ROW, SINGLE_COLUMN_FAMILY, A, a));
+            }
+            if (random.nextInt(10) > 0) {
+                kvs.add(new KeyValue(ROW, SINGLE_COLUMN_FAMILY, B, PDataType.INTEGER.toBytes(random.nextInt(100) - 50)));
+            }
+            tuples.add(new ResultTuple(new Result(kvs)));
+        }
+        return tuples;
+    }
+    
+    private static List<OrderByExpression> newOrderByExpressions() {
+        return Arrays.asList(
+                new OrderByExpression(new ColumnValueExpression(A, PDataType.VARBINARY), true, false),
+                new OrderByExpression(new ColumnValueExpression(B, PDataType.INTEGER), false, true));
+    }
+    
+    /**
+     * Order by A descending with nulls last and then by B ascending with nulls first
+     */
+    private static final Comparator<Tuple> EXPECTED_ORDER = new Comparator<Tuple>() {
+        @Override
+        public int compare(Tuple t1, Tuple t2) {
+            KeyValue a1 = t1.getValue(SINGLE_COLUMN_FAMILY, A);
+            KeyValue a2 = t2.getValue(SINGLE_COLUMN_FAMILY, A);
+            if (a1 == null || a2 == null) {
+                if (a1 != a2) {
+                    return a1 == null ? 1 : -1;
+                }
+            } else {
+                int c = Bytes.compareTo(a2.getValue(), a1.getValue());
+                if (c != 0) {
+                    return c;
+                }
+            }
+            KeyValue b1 = t1.getValue(SINGLE_COLUMN_FAMILY, B);
+            KeyValue b2 = t2.getValue(SINGLE_COLUMN_FAMILY, B);
+            if (b1 == null || b2 == null) {
+                return b1 == b2 ? 0 : b1 == null ? -1 : 1;
+            }
+            return Bytes.compareTo(b1.getValue(), b2.getValue());
+        }
+    };
+    
+    private static void testSort(int rowCount, ReadOnlyProps props, int minRunCount) throws SQLException {
+        MemoryManager mm = new GlobalMemoryManager(MAX_MEMORY, 0);
+        long diskBytes = SpoolFile.getTotalDiskBytes();
+        List<Tuple> tuples = newTuples(rowCount);
+        ExternalSorter sorter = new ExternalSorter(newOrderByExpressions(), mm, props);
+        for (Tuple tuple : tuples) {
+            sorter.add(tuple);
+        }
+        ResultIterator iterator = sorter.getResultIterator();
+        assertTrue(sorter.getRunCount() >= minRunCount);
+        assertTrue(mm.getAvailableMemory() < MAX_MEMORY);
+        
+        List<Tuple> expectedTuples = Lists.newArrayList(tuples);
+        Collections.sort(expectedTuples, EXPECTED_ORDER);
+        for (Tuple expectedTuple : expectedTuples) {
+            Tuple tuple = iterator.next();
+            assertNotNull(tuple);
+            assertEquals(0, EXPECTED_ORDER.compare(expectedTuple, tuple));
+        }
+        assertNull(iterator.next());
+        iterator.close();
+        // All the memory and disk space used by the sort is released
+        assertEquals(MAX_MEMORY, mm.getAvailableMemory());
+        assertEquals(diskBytes, SpoolFile.getTotalDiskBytes());
+    }
+    
+    private static ReadOnlyProps newProps(long sortRunSizeBytes, boolean isCompressed) {
+        Map<String,String> props = new HashMap<String,String>();
+        props.put(QueryServices.SORT_RUN_SIZE_BYTES_ATTRIB, Long.toString(sortRunSizeBytes));
+        props.put(QueryServices.SPOOL_FILE_COMPRESSION_ATTRIB, Boolean.toString(isCompressed));
+        return new ReadOnlyProps(props.entrySet().iterator());
+    }
+    
+    @Test
+    public void testInMemorySort() throws SQLException {
+        testSort(1000, ReadOnlyProps.EMPTY_PROPS, 1);
+    }
+    
+    @Test
+    public void testExternalSort() throws SQLException {
+        // Small enough runs that they're merged two at a time in more than one pass
+        testSort(5000, newProps(20 * 1024, false), 10);
+    }
+    
+    @Test
+    public void testExternalSortCompressed() throws SQLException {
+        testSort(5000, newProps(20 * 1024, true), 10);
+    }
+    
+    @Test
+    public void testCloseBeforeEnd() throws SQLException {
+        MemoryManager mm = new GlobalMemoryManager(MAX_MEMORY, 0);
+        long diskBytes = SpoolFile.getTotalDiskBytes();
+        ExternalSorter sorter = new ExternalSorter(newOrderByExpressions(), mm, newProps(20 * 1024, false));
+        for (Tuple tuple : newTuples(5000)) {
+            sorter.add(tuple);
+        }
+        ResultIterator iterator = sorter.getResultIterator();
+        assertNotNull(iterator.next());
+        assertTrue(SpoolFile.getTotalDiskBytes() > diskBytes);
+        iterator.close();
+        assertEquals(MAX_MEMORY, mm.getAvailableMemory());
+        assertEquals(diskBytes, SpoolFile.getTotalDiskBytes());
+    }
+}
@@ -34,12 +34,14 @@ import java.sql.SQLException;
 import java.util.*;
 
 import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
 import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
 import com.salesforce.phoenix.schema.tuple.Tuple;
 import com.salesforce.phoenix.util.AssertResults;
+import com.salesforce.phoenix.util.TupleUtil;
 
 
 public class MergeSortResultIteratorTest {
@@ -88,4 +90,53 @@ public class MergeSortResultIteratorTest {
         AssertResults.assertResults(scanner, expectedResults);
     }
 
+    @Test
+    public void testMergeSortManyIterators() throws Throwable {
+        int iteratorCount = 250;
+        Random random = new Random(1);
+        List<Tuple> allResults = new ArrayList<Tuple>();
+        final List<PeekingResultIterator> results = new ArrayList<PeekingResultIterator>(iteratorCount);
+        for (int i = 0; i < iteratorCount; i++) {
+            int rowCount = random.nextInt(20);
+            int[] keys = new int[rowCount];
+            for (int j = 0; j < rowCount; j++) {
+                keys[j] = random.nextInt(1000);
+            }
+            Arrays.sort(keys);
+            List<Tuple> iteratorResults = new ArrayList<Tuple>(rowCount);
+            for (int key : keys) {
+                iteratorResults.add(new SingleKeyValueTuple(new KeyValue(Bytes.toBytes(key), SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(1))));
+            }
+            allResults.addAll(iteratorResults);
+            results.add(new MaterializedResultIterator(iteratorResults));
+        }
+        final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        Collections.sort(allResults, new Comparator<Tuple>() {
+            @Override
+            public int compare(Tuple t1, Tuple t2) {
+                return TupleUtil.compare(t1, t2, ptr);
+            }
+        });
+        Tuple[] expectedResults = allResults.toArray(new Tuple[allResults.size()]);
+        
+        ResultIterators iterators = new ResultIterators() {
+
+            @Override
+            public List<PeekingResultIterator> getIterators() throws SQLException {
+                return results;
+            }
+
+            @Override
+            public int size() {
+                return results.size();
+            }
+
+            @Override
+            public void explain(List<String> planSteps) {
+            }
+            
+        };
+        ResultIterator scanner = new MergeSortRowKeyResultIterator(iterators);
+        AssertResults.assertResults(scanner, expectedResults);
+    }
 }
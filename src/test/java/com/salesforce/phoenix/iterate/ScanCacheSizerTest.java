@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN;
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.salesforce.phoenix.schema.tuple.ResultTuple;
+
+
+public class ScanCacheSizerTest {
+
+    @Test
+    public void testEstimatedRowSize() {
+        assertEquals(1000, new ScanCacheSizer(100000, 100, 10, 10000).getCaching());
+        // Rows wider than the target are still returned one at a time
+        assertEquals(1, new ScanCacheSizer(100, 1000, 10, 10000).getCaching());
+        // Falls back to the default caching until a row size is known
+        assertEquals(10, new ScanCacheSizer(100000, 0, 10, 10000).getCaching());
+    }
+    
+    @Test
+    public void testObservedRowSize() {
+        ScanCacheSizer sizer = new ScanCacheSizer(100000, 100, 10, 10000);
+        sizer.addObservedRows(0, 0);
+        assertEquals(1000, sizer.getCaching());
+        // Rows turn out to be wider than estimated
+        sizer.addObservedRows(10000, 10);
+        assertEquals(100, sizer.getCaching());
+        sizer.addObservedRows(30000, 10);
+        assertEquals(50, sizer.getCaching());
+        
+        sizer = new ScanCacheSizer(100000, 0, 10, 10000);
+        sizer.addObservedRows(500, 10);
+        assertEquals(2000, sizer.getCaching());
+    }
+    
+    @Test
+    public void testMaxCaching() {
+        // Very narrow rows are capped at the maximum caching
+        assertEquals(500, new ScanCacheSizer(100000, 1, 10, 500).getCaching());
+        ScanCacheSizer sizer = new ScanCacheSizer(100000, 0, 10, 500);
+        sizer.addObservedRows(10, 10);
+        assertEquals(500, sizer.getCaching());
+        // The maximum doesn't apply to the default caching used when the row size is unknown
+        assertEquals(1000, new ScanCacheSizer(100000, 0, 1000, 500).getCaching());
+    }
+    
+    @Test
+    public void testByteSize() {
+        KeyValue kv1 = new KeyValue(Bytes.toBytes("a"), SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(1));
+        KeyValue kv2 = new KeyValue(Bytes.toBytes("a"), SINGLE_COLUMN_FAMILY, Bytes.toBytes("b"), Bytes.toBytes("foo"));
+        ResultTuple tuple = new ResultTuple(new Result(new KeyValue[] {kv1, kv2}));
+        assertEquals(kv1.getLength() + kv2.getLength(), ScanCacheSizer.getByteSize(tuple));
+    }
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN;
+import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.salesforce.phoenix.schema.tuple.Tuple;
+
+
+public class ScanningResultIteratorTest {
+    private ExecutorService executor;
+    
+    @Before
+    public void setup() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+    
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+    
+    private static class TestResultScanner implements ResultScanner {
+        private final Result[] results;
+        private volatile int index;
+        private volatile boolean isClosed;
+        private volatile int nextBatchCount;
+        
+        private TestResultScanner(int nRows) {
+            results = new Result[nRows];
+            for (int i = 0; i < nRows; i++) {
+                results[i] = new Result(new KeyValue[] {new KeyValue(Bytes.toBytes(i), SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(i))});
+            }
+        }
+        
+        @Override
+        public Result next() throws IOException {
+            assertFalse(isClosed);
+            return index < results.length ? results[index++] : null;
+        }
+
+        @Override
+        public Result[] next(int nbRows) throws IOException {
+            assertFalse(isClosed);
+            nextBatchCount++;
+            int nRows = Math.min(nbRows, results.length - index);
+            Result[] batch = Arrays.copyOfRange(results, index, index + nRows);
+            index += nRows;
+            return batch;
+        }
+
+        @Override
+        public void close() {
+            isClosed = true;
+        }
+
+        @Override
+        public Iterator<Result> iterator() {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
+    private static void assertRows(ResultIterator iterator, int nRows) throws SQLException {
+        for (int i = 0; i < nRows; i++) {
+            Tuple tuple = iterator.next();
+            assertNotNull(tuple);
+            assertArrayEquals(Bytes.toBytes(i), tuple.getValue(0).getRow());
+        }
+        assertNull(iterator.next());
+        assertNull(iterator.next());
+    }
+    
+    @Test
+    public void testPrefetch() throws SQLException {
+        TestResultScanner scanner = new TestResultScanner(10);
+        ResultIterator iterator = new ScanningResultIterator(scanner, null, executor, 3, 2);
+        assertRows(iterator, 10);
+        iterator.close();
+        assertTrue(scanner.isClosed);
+        // Three full batches, a partial one, and an empty one marking the end of the scan
+        assertEquals(5, scanner.nextBatchCount);
+    }
+    
+    @Test
+    public void testNoPrefetch() throws SQLException {
+        TestResultScanner scanner = new TestResultScanner(10);
+        ResultIterator iterator = new ScanningResultIterator(scanner, null, executor, 3, 0);
+        assertRows(iterator, 10);
+        iterator.close();
+        assertTrue(scanner.isClosed);
+        assertEquals(0, scanner.nextBatchCount);
+    }
+    
+    @Test
+    public void testBusyExecutor() throws Exception {
+        // Occupy the only thread of the executor, as happens when the scan itself runs on it.
+        // The consumer must then fetch the batches itself rather than waiting on the executor.
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                latch.await();
+                return null;
+            }
+        });
+        TestResultScanner scanner = new TestResultScanner(10);
+        ResultIterator iterator = new ScanningResultIterator(scanner, null, executor, 4, 2);
+        assertRows(iterator, 10);
+        iterator.close();
+        latch.countDown();
+        assertTrue(scanner.isClosed);
+    }
+    
+    @Test
+    public void testCloseEarly() throws Exception {
+        TestResultScanner scanner = new TestResultScanner(100);
+        ResultIterator iterator = new ScanningResultIterator(scanner, null, executor, 5, 3);
+        assertNotNull(iterator.next());
+        iterator.close();
+        assertTrue(scanner.isClosed);
+        // Any fetch still queued on the executor must not touch the closed scanner
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(scanner.nextBatchCount <= 4);
+    }
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class SpoolFileTest {
+    
+    private static byte[] newData(int length) {
+        // Repetitive enough to be compressible
+        byte[] data = new byte[length];
+        Random random = new Random(length);
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte)('a' + random.nextInt(4));
+        }
+        return data;
+    }
+    
+    private static void testRoundTrip(boolean isCompressed) throws IOException {
+        SpoolFile spoolFile = new SpoolFile(null, isCompressed, 0);
+        try {
+            // Write more than a block with a mix of single bytes and arrays
+            byte[] data = newData(SpoolFile.BLOCK_SIZE * 3 + 123);
+            OutputStream out = spoolFile.newOutputStream();
+            out.write(data, 0, 10);
+            out.write(data[10]);
+            out.write(data, 11, data.length - 11);
+            out.close();
+            assertEquals(spoolFile.getFile().length(), spoolFile.getDiskBytes());
+            if (isCompressed) {
+                assertTrue(spoolFile.getDiskBytes() < data.length);
+            }
+            
+            DataInputStream in = new DataInputStream(spoolFile.newInputStream());
+            byte[] read = new byte[data.length];
+            assertEquals(data[0], (byte)in.read());
+            in.readFully(read, 1, data.length - 1);
+            read[0] = data[0];
+            assertArrayEquals(data, read);
+            assertEquals(-1, in.read());
+            in.close();
+        } finally {
+            spoolFile.delete();
+        }
+        assertFalse(spoolFile.getFile().exists());
+    }
+    
+    @Test
+    public void testUncompressed() throws IOException {
+        testRoundTrip(false);
+    }
+    
+    @Test
+    public void testCompressed() throws IOException {
+        testRoundTrip(true);
+    }
+    
+    @Test
+    public void testDiskQuota() throws IOException {
+        long diskBytes = SpoolFile.getTotalDiskBytes();
+        SpoolFile spoolFile1 = new SpoolFile(null, false, diskBytes + 1000);
+        SpoolFile spoolFile2 = new SpoolFile(null, false, diskBytes + 1000);
+        try {
+            OutputStream out1 = spoolFile1.newOutputStream();
+            out1.write(new byte[600]);
+            out1.close();
+            assertEquals(diskBytes + 600, SpoolFile.getTotalDiskBytes());
+            OutputStream out2 = spoolFile2.newOutputStream();
+            try {
+                out2.write(new byte[600]);
+                fail();
+            } catch (IOException e) { // expected
+            }
+            out2.close();
+            // Deleting a file makes room for others
+            spoolFile1.delete();
+            out2 = spoolFile2.newOutputStream();
+            out2.write(new byte[600]);
+            out2.close();
+        } finally {
+            spoolFile1.delete();
+            spoolFile2.delete();
+        }
+        assertEquals(diskBytes, SpoolFile.getTotalDiskBytes());
+    }
+}
@@ -30,16 +30,18 @@ package com.salesforce.phoenix.iterate;
 import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN;
 import static com.salesforce.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
 
-import java.util.Arrays;
+import java.util.*;
 
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
 import com.salesforce.phoenix.memory.*;
+import com.salesforce.phoenix.query.QueryServices;
 import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
 import com.salesforce.phoenix.schema.tuple.Tuple;
 import com.salesforce.phoenix.util.AssertResults;
+import com.salesforce.phoenix.util.ReadOnlyProps;
 
 
 
@@ -48,6 +50,10 @@ public class SpoolingResultIteratorTest {
     private final static byte[] B = Bytes.toBytes("b");
 
     private void testSpooling(int threshold) throws Throwable {
+        testSpooling(threshold, ReadOnlyProps.EMPTY_PROPS);
+    }
+    
+    private void testSpooling(int threshold, ReadOnlyProps props) throws Throwable {
         Tuple[] results = new Tuple[] {
                 new SingleKeyValueTuple(new KeyValue(A, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(1))),
                 new SingleKeyValueTuple(new KeyValue(B, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(1))),
@@ -60,7 +66,7 @@ public class SpoolingResultIteratorTest {
             };
 
         MemoryManager memoryManager = new DelegatingMemoryManager(new GlobalMemoryManager(threshold, 0));
-        ResultIterator scanner = new SpoolingResultIterator(iterator, memoryManager, threshold);
+        ResultIterator scanner = new SpoolingResultIterator(iterator, memoryManager, threshold, props, null);
         AssertResults.assertResults(scanner, expectedResults);
     }
 
@@ -72,5 +78,10 @@ public class SpoolingResultIteratorTest {
     public void testOnDiskSpooling() throws Throwable {
         testSpooling(1);
     }
+    @Test
+    public void testCompressedOnDiskSpooling() throws Throwable {
+        Map<String,String> props = Collections.singletonMap(QueryServices.SPOOL_FILE_COMPRESSION_ATTRIB, "true");
+        testSpooling(1, new ReadOnlyProps(props.entrySet().iterator()));
+    }
 
 }
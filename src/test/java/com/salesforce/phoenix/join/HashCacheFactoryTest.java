@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.join;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.util.*;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+import org.junit.Test;
+import org.xerial.snappy.Snappy;
+
+import com.salesforce.phoenix.cache.HashCache;
+import com.salesforce.phoenix.expression.*;
+import com.salesforce.phoenix.memory.GlobalMemoryManager;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.schema.tuple.ResultTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.*;
+
+
+/**
+ * Tests that the hash caches built by {@link HashCacheFactory} find the same rows for a join key,
+ * whether or not the cache is compact.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class HashCacheFactoryTest {
+    private static final byte[] CF = Bytes.toBytes("CF");
+    private static final byte[] CQ = Bytes.toBytes("V");
+    private static final int NUM_ROWS = 200;
+    private static final int NUM_KEYS = 50;
+    
+    private static ImmutableBytesWritable serialize(List<Expression> onExpressions, List<Tuple> tuples) throws Exception {
+        // Same format as HashCacheClient
+        TrustedByteArrayOutputStream baOut = new TrustedByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(baOut);
+        out.writeInt(onExpressions.size());
+        for (Expression expression : onExpressions) {
+            WritableUtils.writeVInt(out, ExpressionType.valueOf(expression).ordinal());
+            expression.write(out);                
+        }
+        out.writeInt(baOut.size() + Bytes.SIZEOF_INT);
+        out.writeInt(tuples.size());
+        for (Tuple tuple : tuples) {
+            TupleUtil.write(tuple, out);
+        }
+        out.flush();
+        byte[] compressed = Snappy.compress(baOut.toByteArray());
+        return new ImmutableBytesWritable(compressed);
+    }
+    
+    private static List<Tuple> getTuples() {
+        List<Tuple> tuples = new ArrayList<Tuple>(NUM_ROWS + 1);
+        for (int i = 0; i < NUM_ROWS; i++) {
+            KeyValue kv = new KeyValue(Bytes.toBytes("row" + i), CF, CQ, Bytes.toBytes("k" + (i % NUM_KEYS)));
+            tuples.add(new ResultTuple(new Result(Collections.singletonList(kv))));
+        }
+        // Row without a value for the join key
+        KeyValue kv = new KeyValue(Bytes.toBytes("rownull"), CF, Bytes.toBytes("OTHER"), Bytes.toBytes("x"));
+        tuples.add(new ResultTuple(new Result(Collections.singletonList(kv))));
+        return tuples;
+    }
+    
+    private static List<String> getRows(HashCache cache, String key) {
+        List<Tuple> tuples = cache.get(new ImmutableBytesPtr(Bytes.toBytes(key)));
+        if (tuples == null) {
+            return null;
+        }
+        List<String> rows = new ArrayList<String>(tuples.size());
+        for (Tuple tuple : tuples) {
+            rows.add(Bytes.toString(((ResultTuple)tuple).getResult().getRow()));
+        }
+        return rows;
+    }
+    
+    @Test
+    public void testCompactHashCache() throws Exception {
+        PColumn column = new PColumnImpl(new PNameImpl("V"), new PNameImpl("CF"), PDataType.VARCHAR, null, null, true, 0, null);
+        List<Expression> onExpressions = Collections.<Expression>singletonList(new KeyValueColumnExpression(column));
+        ImmutableBytesWritable cachePtr = serialize(onExpressions, getTuples());
+        
+        GlobalMemoryManager mapMemory = new GlobalMemoryManager(1024 * 1024, 1);
+        GlobalMemoryManager compactMemory = new GlobalMemoryManager(1024 * 1024, 1);
+        HashCache mapCache = (HashCache)new HashCacheFactory(false).newCache(cachePtr, mapMemory.allocate(cachePtr.getLength()));
+        HashCache compactCache = (HashCache)new HashCacheFactory(true).newCache(cachePtr, compactMemory.allocate(cachePtr.getLength()));
+        assertTrue(compactMemory.getAvailableMemory() > mapMemory.getAvailableMemory());
+        
+        for (int i = 0; i < NUM_KEYS; i++) {
+            List<String> rows = getRows(compactCache, "k" + i);
+            assertEquals(NUM_ROWS / NUM_KEYS, rows.size());
+            for (int j = 0; j < rows.size(); j++) {
+                assertEquals("row" + (i + j * NUM_KEYS), rows.get(j));
+            }
+            assertEquals(getRows(mapCache, "k" + i), rows);
+        }
+        assertNull(getRows(compactCache, "k" + NUM_KEYS));
+        assertNull(getRows(compactCache, "j0"));
+        assertEquals(Collections.singletonList("rownull"), getRows(compactCache, ""));
+        assertEquals(getRows(mapCache, ""), getRows(compactCache, ""));
+        
+        mapCache.close();
+        compactCache.close();
+        assertEquals(compactMemory.getMaxMemory(), compactMemory.getAvailableMemory());
+    }
+}
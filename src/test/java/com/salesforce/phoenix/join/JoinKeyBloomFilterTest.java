@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.join;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.RowKeyColumnExpression;
+import com.salesforce.phoenix.filter.JoinKeyFilter;
+import com.salesforce.phoenix.filter.SkipScanFilter;
+import com.salesforce.phoenix.parse.JoinTableNode.JoinType;
+import com.salesforce.phoenix.query.QueryConstants;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.schema.RowKeySchema.RowKeySchemaBuilder;
+import com.salesforce.phoenix.util.ByteUtil;
+import com.salesforce.phoenix.util.ImmutableBytesPtr;
+
+
+/**
+ * Tests for the {@link JoinKeyBloomFilter} built over the keys of the hashed side of a join
+ * and its push down into the scan of the other side of the join.
+ *
+ * @author jtaylor
+ * @since 2.1
+ */
+public class JoinKeyBloomFilterTest {
+    private static final int NUM_KEYS = 1000;
+    
+    private static ImmutableBytesWritable key(int i) {
+        return new ImmutableBytesWritable(Bytes.toBytes(String.format("k%05d", i)));
+    }
+    
+    private static JoinKeyBloomFilter buildFilter(int maxKeys) {
+        JoinKeyBloomFilter.Builder builder = new JoinKeyBloomFilter.Builder(0.01f, maxKeys, NUM_KEYS);
+        // Only add even keys, each one twice
+        for (int i = 0; i < 2 * NUM_KEYS; i += 2) {
+            builder.add(key(i));
+            builder.add(key(i));
+        }
+        return builder.build();
+    }
+    
+    @Test
+    public void testMightContain() {
+        JoinKeyBloomFilter filter = buildFilter(NUM_KEYS);
+        for (int i = 0; i < 2 * NUM_KEYS; i += 2) {
+            assertTrue(filter.mightContain(key(i)));
+        }
+        int falsePositives = 0;
+        for (int i = 1; i < 2 * NUM_KEYS; i += 2) {
+            if (filter.mightContain(key(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("Too many false positives: " + falsePositives, falsePositives < NUM_KEYS / 20);
+        // Outside of min/max bounds
+        assertFalse(filter.mightContain(new ImmutableBytesWritable(Bytes.toBytes("a"))));
+        assertFalse(filter.mightContain(new ImmutableBytesWritable(Bytes.toBytes("z"))));
+        assertArrayEquals(key(0).copyBytes(), filter.getMinKey());
+        assertArrayEquals(key(2 * NUM_KEYS - 2).copyBytes(), filter.getMaxKey());
+    }
+    
+    @Test
+    public void testEmpty() {
+        JoinKeyBloomFilter filter = new JoinKeyBloomFilter.Builder(0.01f, NUM_KEYS, 0).build();
+        assertFalse(filter.mightContain(key(0)));
+        assertNull(filter.getMinKey());
+        assertEquals(0, filter.getKeys().size());
+    }
+    
+    @Test
+    public void testKeys() {
+        List<byte[]> keys = buildFilter(NUM_KEYS).getKeys();
+        assertEquals(NUM_KEYS, keys.size());
+        for (int i = 0; i < NUM_KEYS; i++) {
+            assertArrayEquals(key(2 * i).copyBytes(), keys.get(i));
+        }
+        assertNull(buildFilter(NUM_KEYS - 1).getKeys());
+    }
+    
+    @Test
+    public void testMoreKeysThanExpected() {
+        JoinKeyBloomFilter.Builder builder = new JoinKeyBloomFilter.Builder(0.01f, NUM_KEYS, NUM_KEYS / 100);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            builder.add(key(i));
+        }
+        JoinKeyBloomFilter filter = builder.build();
+        // More false positives, but never a false negative
+        for (int i = 0; i < NUM_KEYS; i++) {
+            assertTrue(filter.mightContain(key(i)));
+        }
+        assertEquals(NUM_KEYS, filter.getKeys().size());
+    }
+    
+    @Test
+    public void testSerialization() throws IOException {
+        JoinKeyBloomFilter filter = buildFilter(NUM_KEYS);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        filter.write(new DataOutputStream(stream));
+        JoinKeyBloomFilter copy = new JoinKeyBloomFilter();
+        copy.readFields(new DataInputStream(new ByteArrayInputStream(stream.toByteArray())));
+        for (int i = 0; i < 2 * NUM_KEYS; i++) {
+            assertEquals(filter.mightContain(key(i)), copy.mightContain(key(i)));
+        }
+        assertArrayEquals(filter.getMinKey(), copy.getMinKey());
+        assertArrayEquals(filter.getMaxKey(), copy.getMaxKey());
+        assertEquals(filter.getKeys().size(), copy.getKeys().size());
+    }
+    
+    private static PDatum newDatum() {
+        return new PDatum() {
+            @Override
+            public boolean isNullable() {
+                return false;
+            }
+            @Override
+            public PDataType getDataType() {
+                return PDataType.VARCHAR;
+            }
+            @Override
+            public Integer getByteSize() {
+                return null;
+            }
+            @Override
+            public Integer getMaxLength() {
+                return null;
+            }
+            @Override
+            public Integer getScale() {
+                return null;
+            }
+            @Override
+            public ColumnModifier getColumnModifier() {
+                return null;
+            }
+        };
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPushDownIntoScan() throws IOException {
+        List<PDatum> pkColumns = Arrays.asList(newDatum(), newDatum());
+        RowKeySchema schema = new RowKeySchemaBuilder().setMinNullable(2).addField(pkColumns.get(0)).addField(pkColumns.get(1)).build();
+        Expression leadingColumn = new RowKeyColumnExpression(pkColumns.get(0), new RowKeyValueAccessor(pkColumns, 0));
+        HashJoinInfo joinInfo = new HashJoinInfo(
+                new ImmutableBytesPtr[] {new ImmutableBytesPtr(Bytes.toBytes("id"))},
+                new List[] {Collections.singletonList(leadingColumn)},
+                new JoinType[] {JoinType.Inner},
+                new JoinKeyBloomFilter[] {buildFilter(NUM_KEYS)});
+        Scan scan = new Scan();
+        HashJoinInfo.serializeHashJoinIntoScan(scan, joinInfo, schema);
+        
+        assertArrayEquals(key(0).copyBytes(), scan.getStartRow());
+        assertArrayEquals(Bytes.toBytes(String.format("k%05d", 2 * NUM_KEYS - 1)), scan.getStopRow());
+        List<Filter> filters = ((FilterList)scan.getFilter()).getFilters();
+        assertEquals(2, filters.size());
+        assertTrue(filters.get(0) instanceof SkipScanFilter);
+        assertTrue(filters.get(1) instanceof JoinKeyFilter);
+        
+        // Rows are dropped by their row key alone
+        JoinKeyFilter filter = (JoinKeyFilter)filters.get(1);
+        byte[] match = ByteUtil.concat(Bytes.toBytes("k00002"), QueryConstants.SEPARATOR_BYTE_ARRAY, Bytes.toBytes("k00001"));
+        byte[] noMatch = ByteUtil.concat(Bytes.toBytes("k00003"), QueryConstants.SEPARATOR_BYTE_ARRAY, Bytes.toBytes("k00001"));
+        assertFalse(filter.filterRowKey(match, 0, match.length));
+        assertTrue(filter.filterRowKey(noMatch, 0, noMatch.length));
+        
+        // Same result once shipped to the region server
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        filter.write(new DataOutputStream(stream));
+        filter = new JoinKeyFilter();
+        filter.readFields(new DataInputStream(new ByteArrayInputStream(stream.toByteArray())));
+        assertFalse(filter.filterRowKey(match, 0, match.length));
+        assertTrue(filter.filterRowKey(noMatch, 0, noMatch.length));
+        
+        // Outer joins must see every row
+        joinInfo = new HashJoinInfo(joinInfo.getJoinIds(), joinInfo.getJoinExpressions(), new JoinType[] {JoinType.Left}, joinInfo.getKeyFilters());
+        scan = new Scan();
+        HashJoinInfo.serializeHashJoinIntoScan(scan, joinInfo, schema);
+        assertNull(scan.getFilter());
+        assertEquals(0, scan.getStartRow().length);
+    }
+}
@@ -27,9 +27,20 @@
  ******************************************************************************/
 package com.salesforce.phoenix.memory;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.junit.Test;
 
 import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
@@ -272,4 +283,149 @@ public class MemoryManagerTest {
         assertTrue(rmm3.getAvailableMemory() == rmm3.getMaxMemory());
         assertTrue(rmm4.getAvailableMemory() == rmm4.getMaxMemory());
     }
+    
+    /**
+     * Memory manager whose clock only advances when told to, so that tests need not sleep
+     */
+    private static class ManualClockMemoryManager extends GlobalMemoryManager {
+        private final AtomicLong timeMs = new AtomicLong();
+        
+        private ManualClockMemoryManager(long maxBytes, int maxWaitMs) {
+            super(maxBytes, maxWaitMs);
+        }
+        
+        @Override
+        long currentTimeMillis() {
+            return timeMs.get();
+        }
+        
+        private void advance(long ms) {
+            timeMs.addAndGet(ms);
+        }
+    }
+    
+    private static void waitForQueueDepth(GlobalMemoryManager gmm, int queueDepth) {
+        while (gmm.getQueueDepth() != queueDepth) {
+            sleepFor(10);
+        }
+    }
+    
+    @Test
+    public void testWaitInOrderOnceFirstWaiterStarved() throws Exception {
+        final ManualClockMemoryManager gmm = new ManualClockMemoryManager(100,60000);
+        MemoryChunk c1 = gmm.allocate(60);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch c2Allocated = new CountDownLatch(1);
+        final CountDownLatch c2Closed = new CountDownLatch(1);
+        Thread t1 = new Thread() {
+            @Override
+            public void run() {
+                // Must wait for c1 to be freed
+                MemoryChunk c2 = gmm.allocate(80);
+                order.add(1);
+                c2Allocated.countDown();
+                try {
+                    c2Closed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                c2.close();
+            }
+        };
+        t1.start();
+        waitForQueueDepth(gmm, 1);
+        // Smaller requests may go ahead of the waiting one for a while
+        MemoryChunk c3 = gmm.allocate(30);
+        c3.close();
+        // Once the first waiter has waited for half of the maximum wait time, requests queue behind it
+        gmm.advance(30000);
+        Thread t2 = new Thread() {
+            @Override
+            public void run() {
+                // Would fit, but must not jump ahead of the request that's waited for too long already
+                MemoryChunk c4 = gmm.allocate(30);
+                order.add(2);
+                c4.close();
+            }
+        };
+        t2.start();
+        waitForQueueDepth(gmm, 2);
+        c1.close();
+        assertTrue(c2Allocated.await(60, TimeUnit.SECONDS));
+        // Only 20 bytes are left while the first waiter holds its memory
+        waitForQueueDepth(gmm, 1);
+        assertEquals(Arrays.asList(1), order);
+        c2Closed.countDown();
+        t1.join();
+        t2.join();
+        assertEquals(Arrays.asList(1,2), order);
+        assertEquals(0, gmm.getQueueDepth());
+        assertEquals(2, gmm.getMaxQueueDepth());
+        assertEquals(2, gmm.getWaitCount());
+        assertEquals(0, gmm.getDenialCount());
+        assertEquals(gmm.getMaxMemory(), gmm.getAvailableMemory());
+    }
+    
+    @Test
+    public void testUnregisterMBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("com.salesforce.phoenix:type=MemoryManager,name=" + MemoryManagerTest.class.getSimpleName());
+        GlobalMemoryManager gmm = new GlobalMemoryManager(100,1);
+        gmm.registerMBean(MemoryManagerTest.class.getSimpleName());
+        assertTrue(server.isRegistered(objectName));
+        gmm.unregisterMBean();
+        assertFalse(server.isRegistered(objectName));
+        // Nothing left to unregister
+        gmm.unregisterMBean();
+    }
+    
+    @Test
+    public void testDenialCount() throws Exception {
+        GlobalMemoryManager gmm = new GlobalMemoryManager(100,1);
+        MemoryChunk c1 = gmm.allocate(60);
+        try {
+            gmm.allocate(50);
+            fail();
+        } catch (InsufficientMemoryException e) { // expected
+        }
+        try {
+            gmm.allocate(200);
+            fail();
+        } catch (InsufficientMemoryException e) { // expected
+        }
+        assertEquals(2, gmm.getDenialCount());
+        assertEquals(0, gmm.getQueueDepth());
+        c1.close();
+        gmm.resetMetrics();
+        assertEquals(0, gmm.getDenialCount());
+        assertEquals(0, gmm.getWaitCount());
+    }
+    
+    @Test
+    public void testReservedMemory() throws Exception {
+        GlobalMemoryManager gmm = new GlobalMemoryManager(100,1);
+        ReservedMemoryManager rmm = new ReservedMemoryManager(gmm, 0, 50);
+        assertEquals(50, gmm.getAvailableMemory());
+        assertEquals(50, rmm.getUnusedMemory());
+        MemoryChunk c1 = rmm.allocate(20);
+        MemoryChunk c2 = rmm.allocate(20);
+        assertEquals(50, gmm.getAvailableMemory());
+        assertEquals(10, rmm.getUnusedMemory());
+        // Beyond the reservation, memory comes from the global pool
+        MemoryChunk c3 = rmm.allocate(30);
+        assertEquals(30, c3.getSize());
+        assertEquals(0, rmm.getUnusedMemory());
+        assertEquals(30, gmm.getAvailableMemory());
+        c3.resize(5);
+        assertEquals(50, gmm.getAvailableMemory());
+        assertEquals(5, rmm.getUnusedMemory());
+        c2.close();
+        assertEquals(25, rmm.getUnusedMemory());
+        // Unused memory goes back to the global pool and the rest as chunks are closed
+        rmm.close();
+        assertEquals(75, gmm.getAvailableMemory());
+        c1.close();
+        c3.close();
+        assertEquals(gmm.getMaxMemory(), gmm.getAvailableMemory());
+    }
 }
@@ -57,6 +57,7 @@ public final class QueryServicesTestImpl extends BaseQueryServicesImpl {
     private static final int DEFAULT_REGIONSERVER_INFO_PORT = -1;
     private static final int DEFAULT_REGIONSERVER_LEASE_PERIOD_MS = 9000000;
     private static final int DEFAULT_RPC_TIMEOUT_MS = 9000000;
+    private static final int DEFAULT_MAX_PLAN_CACHE_SIZE = 100;
     
     public QueryServicesTestImpl() {
         this(ReadOnlyProps.EMPTY_PROPS);
@@ -80,6 +81,7 @@ public final class QueryServicesTestImpl extends BaseQueryServicesImpl {
                 .setRegionServerInfoPort(DEFAULT_REGIONSERVER_INFO_PORT)
                 .setRegionServerLeasePeriodMs(DEFAULT_REGIONSERVER_LEASE_PERIOD_MS)
                 .setRpcTimeoutMs(DEFAULT_RPC_TIMEOUT_MS)
+                .setMaxPlanCacheSize(DEFAULT_MAX_PLAN_CACHE_SIZE)
                 .setAll(overrideProps)
         );
     }    
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import static org.junit.Assert.*;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+
+public class HyperLogLogTest {
+    
+    private static void add(HyperLogLog hll, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte[] b = Bytes.toBytes("value" + i);
+            hll.add(b, 0, b.length);
+        }
+    }
+    
+    @Test
+    public void testSmallCardinality() {
+        HyperLogLog hll = new HyperLogLog(12);
+        assertEquals(0, hll.estimate());
+        add(hll, 0, 10);
+        add(hll, 0, 10);
+        assertEquals(10, hll.estimate());
+    }
+    
+    @Test
+    public void testLargeCardinality() {
+        for (int n : new int[] {1000, 100000, 1000000}) {
+            HyperLogLog hll = new HyperLogLog(12);
+            add(hll, 0, n);
+            // Standard error is 1.04/sqrt(2^12), so allow for more than three times that
+            assertEquals(n, hll.estimate(), n * 0.06);
+        }
+    }
+    
+    @Test
+    public void testMergeSerialized() {
+        HyperLogLog merged = new HyperLogLog(14);
+        int n = 200000;
+        for (int i = 0; i < 4; i++) {
+            HyperLogLog hll = new HyperLogLog(14);
+            // Overlapping ranges, so that the union has n distinct values
+            add(hll, i * n / 8, i * n / 8 + n / 2);
+            byte[] b = new byte[hll.getSerializedSize() + 2];
+            System.arraycopy(hll.toBytes(), 0, b, 2, hll.getSerializedSize());
+            merged.merge(b, 2);
+        }
+        assertEquals(7 * n / 8, merged.estimate(), n * 0.03);
+        
+        HyperLogLog sparse = new HyperLogLog(14);
+        add(sparse, 0, 5);
+        assertTrue(sparse.getSerializedSize() < HyperLogLog.getEstimatedSize(14));
+        assertTrue(sparse.getHeapSize() < HyperLogLog.getEstimatedSize(14));
+        HyperLogLog copy = new HyperLogLog(14);
+        copy.merge(sparse.toBytes(), 0);
+        assertEquals(5, copy.estimate());
+    }
+    
+    @Test
+    public void testMergeDifferentPrecision() {
+        HyperLogLog hll = new HyperLogLog(10);
+        try {
+            hll.merge(new HyperLogLog(12).toBytes(), 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
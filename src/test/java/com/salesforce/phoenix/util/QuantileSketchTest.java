@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+
+public class QuantileSketchTest {
+    private static final int N = 100000;
+    
+    private static List<Double> shuffledValues(int n, long seed) {
+        List<Double> values = new ArrayList<Double>(n);
+        for (int i = 1; i <= n; i++) {
+            values.add((double)i);
+        }
+        Collections.shuffle(values, new Random(seed));
+        return values;
+    }
+    
+    private static void assertRankError(QuantileSketch sketch, long n, double maxError) {
+        for (int i = 1; i < 100; i++) {
+            long rank = n * i / 100;
+            double value = sketch.getValueAtRank(rank);
+            // Values are 1 through n, so the value is its own exact rank
+            assertEquals("rank " + rank, rank, value, n * maxError);
+            assertEquals("value " + value, value, sketch.getRank(value, true), n * maxError);
+        }
+    }
+
+    @Test
+    public void testExactWhenSmall() {
+        QuantileSketch sketch = new QuantileSketch(200);
+        for (double value : shuffledValues(100, 0)) {
+            sketch.update(value);
+        }
+        assertEquals(100, sketch.getCount());
+        for (int rank = 1; rank <= 100; rank++) {
+            assertEquals(rank, sketch.getValueAtRank(rank), 0);
+        }
+        assertEquals(49, sketch.getRank(50, false));
+        assertEquals(50, sketch.getRank(50, true));
+        assertEquals(0, sketch.getRank(0, true));
+        assertEquals(100, sketch.getRank(1000, true));
+    }
+    
+    @Test
+    public void testBoundedRankError() {
+        QuantileSketch sketch = new QuantileSketch(200);
+        for (double value : shuffledValues(N, 1)) {
+            sketch.update(value);
+        }
+        assertEquals(N, sketch.getCount());
+        assertEquals(1, sketch.getValueAtRank(1), 0);
+        assertEquals(N, sketch.getValueAtRank(N), 0);
+        assertRankError(sketch, N, 0.02);
+        assertTrue(sketch.getSerializedSize() < QuantileSketch.getEstimatedSize(200));
+    }
+    
+    @Test
+    public void testMergeSerialized() {
+        QuantileSketch merged = new QuantileSketch(200);
+        List<Double> values = shuffledValues(N, 2);
+        int nSketches = 7;
+        for (int i = 0; i < nSketches; i++) {
+            QuantileSketch sketch = new QuantileSketch(200);
+            for (int j = i; j < N; j += nSketches) {
+                sketch.update(values.get(j));
+            }
+            byte[] b = new byte[sketch.getSerializedSize() + 3];
+            System.arraycopy(sketch.toBytes(), 0, b, 3, sketch.getSerializedSize());
+            merged.merge(b, 3);
+        }
+        assertEquals(N, merged.getCount());
+        assertRankError(merged, N, 0.02);
+    }
+    
+    @Test
+    public void testReset() {
+        QuantileSketch sketch = new QuantileSketch(8);
+        for (double value : shuffledValues(1000, 3)) {
+            sketch.update(value);
+        }
+        sketch.reset();
+        assertTrue(sketch.isEmpty());
+        sketch.update(5);
+        assertEquals(1, sketch.getCount());
+        assertEquals(5, sketch.getValueAtRank(1), 0);
+    }
+}